@@ -24,6 +24,10 @@ package com.googlecode.jmxtrans;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.googlecode.jmxtrans.exceptions.LifecycleException;
 import com.googlecode.jmxtrans.model.JmxProcess;
 import com.googlecode.jmxtrans.model.Server;
@@ -34,9 +38,12 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.CheckReturnValue;
 import javax.inject.Inject;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.google.common.base.Charsets.UTF_8;
+
 public class ConfigurationParser {
 
 	private static final Logger log = LoggerFactory.getLogger(ConfigurationParser.class);
@@ -49,7 +56,13 @@ public class ConfigurationParser {
 	}
 
 	public ImmutableList parseServers(Iterable<File> jsonFiles, boolean continueOnJsonError) throws LifecycleException {
-		ServerListBuilder serverListBuilder = new ServerListBuilder();
+		return parseServers(jsonFiles, continueOnJsonError, new ServerListBuilder());
+	}
+
+	public ImmutableList<Server> parseServers(
+			Iterable<File> jsonFiles,
+			boolean continueOnJsonError,
+			ServerListBuilder serverListBuilder) throws LifecycleException {
 		for (File jsonFile : jsonFiles) {
 			try {
 				JmxProcess process = jsonUtils.parseProcess(jsonFile);
@@ -65,6 +78,26 @@ public class ConfigurationParser {
 		return serverListBuilder.build();
 	}
 
+	/**
+	 * Hashes the json content of the files. Formatting changes (or a file
+	 * that was only touched) give the same hash, so that the configuration
+	 * is reloaded only when its content actually changed.
+	 */
+	public HashCode hash(Iterable<File> jsonFiles) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		for (File jsonFile : Ordering.natural().sortedCopy(jsonFiles)) {
+			hasher.putString(jsonFile.getAbsolutePath(), UTF_8);
+			try {
+				hasher.putBytes(jsonUtils.hashContent(jsonFile).asBytes());
+			} catch (IOException ioe) {
+				// the file will fail again when parsed, all we need is a stable hash
+				log.debug("Could not hash {}", jsonFile, ioe);
+				hasher.putBoolean(false);
+			}
+		}
+		return hasher.hash();
+	}
+
 	/**
 	 * Merges two lists of servers (and their queries). Based on the equality of
 	 * both sets of objects. Public for testing purposes.
@@ -25,51 +25,51 @@ package com.googlecode.jmxtrans;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Injector;
 import com.google.inject.name.Named;
 import com.googlecode.jmxtrans.classloader.ClassLoaderEnricher;
 import com.googlecode.jmxtrans.cli.JCommanderArgumentParser;
 import com.googlecode.jmxtrans.cli.JmxTransConfiguration;
+import com.googlecode.jmxtrans.connections.CircuitBreakers;
+import com.googlecode.jmxtrans.connections.JmxConnectionManager;
 import com.googlecode.jmxtrans.exceptions.LifecycleException;
 import com.googlecode.jmxtrans.guice.JmxTransModule;
-import com.googlecode.jmxtrans.jobs.ServerJob;
+import com.googlecode.jmxtrans.jmx.OutputSpools;
+import com.googlecode.jmxtrans.jmx.ServerBulkheads;
 import com.googlecode.jmxtrans.model.JmxProcess;
 import com.googlecode.jmxtrans.model.OutputWriter;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Server;
 import com.googlecode.jmxtrans.model.ValidationException;
 import com.googlecode.jmxtrans.monitoring.ManagedThreadPoolExecutor;
+import com.googlecode.jmxtrans.scheduler.ServerScheduler;
+import com.googlecode.jmxtrans.util.BatchedWatchedCallback;
+import com.googlecode.jmxtrans.util.DebouncedWatchedCallback;
+import com.googlecode.jmxtrans.util.FileChanges;
+import com.googlecode.jmxtrans.util.SystemClock;
 import com.googlecode.jmxtrans.util.WatchDir;
-import com.googlecode.jmxtrans.util.WatchedCallback;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang.RandomStringUtils;
-import org.quartz.CronExpression;
-import org.quartz.CronTrigger;
-import org.quartz.JobDataMap;
-import org.quartz.JobDetail;
-import org.quartz.Scheduler;
-import org.quartz.SchedulerException;
-import org.quartz.Trigger;
-import org.quartz.TriggerUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.management.MBeanServer;
 import java.io.File;
 import java.lang.management.ManagementFactory;
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.util.concurrent.MoreExecutors.shutdownAndAwaitTermination;
-import static java.lang.Thread.currentThread;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
@@ -80,11 +80,14 @@ import static java.util.concurrent.TimeUnit.SECONDS;
  *
  * @author jon
  */
-public class JmxTransformer implements WatchedCallback {
+public class JmxTransformer implements BatchedWatchedCallback {
 
 	private static final Logger log = LoggerFactory.getLogger(JmxTransformer.class);
 
-	private final Scheduler serverScheduler;
+	/** A directory that keeps changing is reloaded at least every 10 quiet periods. */
+	private static final int MAX_RELOAD_DELAY_IN_QUIET_PERIODS = 10;
+
+	private final ServerScheduler serverScheduler;
 
 	private final JmxTransConfiguration configuration;
 
@@ -92,31 +95,53 @@ public class JmxTransformer implements WatchedCallback {
 
 	private final Injector injector;
 
+	private final ServerBulkheads serverBulkheads;
+	private final CircuitBreakers circuitBreakers;
+	private final JmxConnectionManager connectionManager;
+	private final OutputSpools outputSpools;
+
 	private WatchDir watcher;
 
+	private DebouncedWatchedCallback debouncedCallback;
+
 	private ImmutableList<Server> masterServersList = ImmutableList.of();
 
+	private ServerListBuilder serverListBuilder = new ServerListBuilder();
+
+	@Nullable private HashCode configurationHash;
+
 	private Thread shutdownHook = new ShutdownHook();
 
 	private volatile boolean isRunning = false;
 	@Nonnull private final ThreadPoolExecutor queryProcessorExecutor;
 	@Nonnull private final ThreadPoolExecutor resultProcessorExecutor;
+	@Nonnull private final ExecutorService queryTimeoutExecutor;
 	@Nonnull private final ThreadLocalRandom random = ThreadLocalRandom.current();
 
 	@Inject
 	public JmxTransformer(
-			Scheduler serverScheduler,
+			ServerScheduler serverScheduler,
 			JmxTransConfiguration configuration,
 			ConfigurationParser configurationParser,
 			Injector injector,
+			ServerBulkheads serverBulkheads,
+			CircuitBreakers circuitBreakers,
+			JmxConnectionManager connectionManager,
+			OutputSpools outputSpools,
 			@Nonnull @Named("queryProcessorExecutor") ThreadPoolExecutor queryProcessorExecutor,
-			@Nonnull @Named("resultProcessorExecutor") ThreadPoolExecutor resultProcessorExecutor) {
+			@Nonnull @Named("resultProcessorExecutor") ThreadPoolExecutor resultProcessorExecutor,
+			@Nonnull @Named("queryTimeoutExecutor") ExecutorService queryTimeoutExecutor) {
 		this.serverScheduler = serverScheduler;
 		this.configuration = configuration;
 		this.configurationParser = configurationParser;
 		this.injector = injector;
+		this.serverBulkheads = serverBulkheads;
+		this.circuitBreakers = circuitBreakers;
+		this.connectionManager = connectionManager;
+		this.outputSpools = outputSpools;
 		this.queryProcessorExecutor = queryProcessorExecutor;
 		this.resultProcessorExecutor = resultProcessorExecutor;
+		this.queryTimeoutExecutor = queryTimeoutExecutor;
 	}
 
 	public static void main(String[] args) throws Exception {
@@ -153,6 +178,8 @@ public class JmxTransformer implements WatchedCallback {
 		ManagedThreadPoolExecutor resultExecutorMBean = new ManagedThreadPoolExecutor(resultProcessorExecutor, "resultProcessorExecutor");
 		platformMBeanServer.registerMBean(resultExecutorMBean, resultExecutorMBean.getObjectName());
 
+		platformMBeanServer.registerMBean(connectionManager, connectionManager.getObjectName());
+
 		// Start the process
 		this.start();
 
@@ -172,6 +199,7 @@ public class JmxTransformer implements WatchedCallback {
 		platformMBeanServer.unregisterMBean(mbean.getObjectName());
 		platformMBeanServer.unregisterMBean(queryExecutorMBean.getObjectName());
 		platformMBeanServer.unregisterMBean(resultExecutorMBean.getObjectName());
+		platformMBeanServer.unregisterMBean(connectionManager.getObjectName());
 	}
 
 	public synchronized void start() throws LifecycleException {
@@ -218,27 +246,15 @@ public class JmxTransformer implements WatchedCallback {
 		}
 	}
 
-	// There is a sleep to work around a Quartz issue. The issue is marked to be
-	// fixed, but will require further analysis. This should not be reported by
-	// Findbugs, but as a more complex issue.
-	@SuppressFBWarnings(value = "SWL_SLEEP_WITH_LOCK_HELD", justification = "Workaround for Quartz issue")
 	private synchronized void stopServices() throws LifecycleException {
 		try {
 			// Shutdown the scheduler
-			if (serverScheduler.isStarted()) {
-				serverScheduler.shutdown(true);
-				log.debug("Shutdown server scheduler");
-				try {
-					// FIXME: Quartz issue, need to sleep
-					Thread.sleep(1500);
-				} catch (InterruptedException e) {
-					log.error(e.getMessage(), e);
-					currentThread().interrupt();
-				}
-			}
+			serverScheduler.shutdown();
 
 			shutdownAndAwaitTermination(queryProcessorExecutor, 10, SECONDS);
 			shutdownAndAwaitTermination(resultProcessorExecutor, 10, SECONDS);
+			// abandoned queries may hold their thread until the read timeout, do not wait for them
+			queryTimeoutExecutor.shutdownNow();
 
 			// Shutdown the file watch service
 			if (watcher != null) {
@@ -246,10 +262,17 @@ public class JmxTransformer implements WatchedCallback {
 				watcher = null;
 				log.debug("Shutdown watch service");
 			}
+			if (debouncedCallback != null) {
+				debouncedCallback.stop();
+				debouncedCallback = null;
+			}
 
 			// Shutdown the outputwriters
 			stopWriterAndClearMasterServerList();
 
+			// Close the shared JMX connections and stop checking their liveness
+			connectionManager.close();
+
 		} catch (Exception e) {
 			throw new LifecycleException(e);
 		}
@@ -257,37 +280,54 @@ public class JmxTransformer implements WatchedCallback {
 
 	/**
 	 * Shut down the output writers and clear the master server list
-	 * Used both during shutdown and when re-reading config files
 	 */
-	private void stopWriterAndClearMasterServerList() {
-		for (Server server : this.masterServersList) {
-			for (Query query : server.getQueries()) {
-				for (OutputWriter writer : query.getOutputWriterInstances()) {
-					try {
-						writer.stop();
-						log.debug("Stopped writer: {} for query: {}", writer, query);
-					} catch (LifecycleException ex) {
-						log.error("Error stopping writer: {} for query: {}", writer, query, ex);
-					}
-				}
+	private synchronized void stopWriterAndClearMasterServerList() {
+		stopWriters(ServerListDiff.between(this.masterServersList, ImmutableList.<Server>of()).getStoppedOutputWriters());
+		this.masterServersList = ImmutableList.of();
+		this.serverListBuilder = new ServerListBuilder();
+		this.configurationHash = null;
+	}
+
+	private void stopWriters(Iterable<OutputWriter> writers) {
+		// stop replaying spooled results before the writers they are replayed to
+		outputSpools.release(writers);
+		for (OutputWriter writer : writers) {
+			try {
+				writer.stop();
+				log.debug("Stopped writer: {}", writer);
+			} catch (LifecycleException ex) {
+				log.error("Error stopping writer: {}", writer, ex);
 			}
 		}
-		this.masterServersList = ImmutableList.of();
 	}
 
 	/**
-	 * Startup the watchdir service.
+	 * Startup the watchdir service. File events are coalesced, so that a
+	 * burst of changes (a whole directory being deployed) triggers a single
+	 * reload once the directory stays quiet.
 	 */
 	private void startupWatchdir() throws Exception {
 		File dirToWatch;
+		boolean recursive;
 		if (this.configuration.getJsonDirOrFile().isFile()) {
 			dirToWatch = new File(FilenameUtils.getFullPath(this.configuration.getJsonDirOrFile().getAbsolutePath()));
+			recursive = false;
 		} else {
 			dirToWatch = this.configuration.getJsonDirOrFile();
+			recursive = true;
 		}
 
+		long quietPeriod = configuration.getConfigReloadQuietPeriod();
+		this.debouncedCallback = new DebouncedWatchedCallback(
+				this,
+				new SystemClock(),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jmxtrans-config-reload-%d").build(),
+				quietPeriod,
+				MAX_RELOAD_DELAY_IN_QUIET_PERIODS * quietPeriod);
+		this.debouncedCallback.start();
+
 		// start the watcher
-		this.watcher = new WatchDir(dirToWatch, this);
+		this.watcher = new WatchDir(dirToWatch, debouncedCallback, recursive);
 		this.watcher.start();
 	}
 
@@ -295,11 +335,9 @@ public class JmxTransformer implements WatchedCallback {
 	 * Handy method which runs the JmxProcess
 	 */
 	public void executeStandalone(JmxProcess process) throws Exception {
-		this.masterServersList = process.getServers();
-
 		this.serverScheduler.start();
 
-		this.processServersIntoJobs();
+		this.applyServerList(process.getServers());
 
 		// Sleep for 10 seconds to wait for jobs to complete.
 		// There should be a better way, but it seems that way isn't working
@@ -308,14 +346,24 @@ public class JmxTransformer implements WatchedCallback {
 	}
 
 	/**
-	 * Processes files into Server objects and then processesServers into jobs
+	 * Processes files into Server objects and then applies the differences
+	 * with the current servers. Does nothing if the content of the files did
+	 * not change since the last time they were loaded.
 	 */
-	private void startupSystem() throws LifecycleException {
-		// process all the json files into Server objects
-		this.processFilesIntoServers();
+	private synchronized void startupSystem() throws LifecycleException {
+		List<File> jsonFiles = getJsonFiles();
+		HashCode hash = configurationParser.hash(jsonFiles);
+		if (hash.equals(configurationHash)) {
+			log.info("Configuration content did not change, nothing to reload");
+			return;
+		}
 
-		// process the servers into jobs
-		this.processServersIntoJobs();
+		ServerListBuilder builder = new ServerListBuilder(serverListBuilder);
+		ImmutableList<Server> servers = configurationParser.parseServers(jsonFiles, configuration.isContinueOnJsonError(), builder);
+		this.applyServerList(servers);
+
+		this.serverListBuilder = builder;
+		this.configurationHash = hash;
 	}
 
 	private void validateSetup(Server server, ImmutableSet<Query> queries) throws ValidationException {
@@ -332,85 +380,47 @@ public class JmxTransformer implements WatchedCallback {
 	}
 
 	/**
-	 * Processes all the json files and manages the dedup process
+	 * Replaces the master server list. Only the servers that changed are
+	 * rescheduled, and only the output writers that are not used anymore are
+	 * stopped, the others keep running (with their connection pools).
 	 */
-	private void processFilesIntoServers() throws LifecycleException {
-		// Shutdown the outputwriters and clear the current server list - this gives us a clean
-		// start when re-reading the json config files
-		try {
-			this.stopWriterAndClearMasterServerList();
-		} catch (Exception e) {
-			log.error("Error while clearing master server list: " + e.getMessage(), e);
-			throw new LifecycleException(e);
-		}
+	private synchronized void applyServerList(ImmutableList<Server> servers) throws LifecycleException {
+		ServerListDiff diff = ServerListDiff.between(this.masterServersList, servers);
+		log.info("Applying configuration: {} servers removed, {} added, {} unchanged",
+				diff.getRemovedServers().size(), diff.getAddedServers().size(), diff.getUnchangedServers().size());
 
-		this.masterServersList = configurationParser.parseServers(getJsonFiles(), configuration.isContinueOnJsonError());
-	}
+		for (Server server : diff.getRemovedServers()) {
+			serverScheduler.unschedule(server);
+		}
+		stopWriters(diff.getStoppedOutputWriters());
+		serverBulkheads.retain(servers);
+		circuitBreakers.retain(servers);
+		connectionManager.retain(servers);
+		connectionManager.prewarm(diff.getAddedServers());
+
+		// need to inject the poolMap
+		for (OutputWriter writer : diff.getStartedOutputWriters()) {
+			writer.start();
+		}
+		this.masterServersList = servers;
 
-	/**
-	 * Processes all the Servers into Job's
-	 * <p/>
-	 * Needs to be called after processFiles()
-	 */
-	private void processServersIntoJobs() throws LifecycleException {
-		for (Server server : this.masterServersList) {
+		for (Server server : diff.getAddedServers()) {
 			try {
-
-				// need to inject the poolMap
-				for (Query query : server.getQueries()) {
-					for (OutputWriter writer : query.getOutputWriterInstances()) {
-						writer.start();
-					}
-				}
-
 				// Now validate the setup of each of the OutputWriter's per
 				// query.
 				this.validateSetup(server, server.getQueries());
 
 				// Now schedule the jobs for execution.
 				this.scheduleJob(server);
-			} catch (ParseException ex) {
-				throw new LifecycleException("Error parsing cron expression: " + server.getCronExpression(), ex);
-			} catch (SchedulerException ex) {
-				throw new LifecycleException("Error scheduling job for server: " + server, ex);
 			} catch (ValidationException ex) {
 				throw new LifecycleException("Error validating json setup for query", ex);
 			}
 		}
 	}
 
-	private void scheduleJob(Server server) throws ParseException, SchedulerException {
-
-		String name = server.getHost() + ":" + server.getPort() + "-" + System.currentTimeMillis() + "-" + RandomStringUtils.randomNumeric(10);
-		JobDetail jd = new JobDetail(name, "ServerJob", ServerJob.class);
-
-		JobDataMap map = new JobDataMap();
-		map.put(Server.class.getName(), server);
-		jd.setJobDataMap(map);
-
-		Trigger trigger;
-
-		if ((server.getCronExpression() != null) && CronExpression.isValidExpression(server.getCronExpression())) {
-			trigger = new CronTrigger();
-			((CronTrigger) trigger).setCronExpression(server.getCronExpression());
-			trigger.setName(server.getHost() + ":" + server.getPort() + "-" + Long.toString(System.currentTimeMillis()));
-			trigger.setStartTime(computeSpreadStartDate(configuration.getRunPeriod()));
-		} else {
-			int runPeriod = configuration.getRunPeriod();
-			if (server.getRunPeriodSeconds() != null) runPeriod = server.getRunPeriodSeconds();
-			Trigger minuteTrigger = TriggerUtils.makeSecondlyTrigger(runPeriod);
-			minuteTrigger.setName(server.getHost() + ":" + server.getPort() + "-" + Long.toString(System.currentTimeMillis()));
-			minuteTrigger.setStartTime(computeSpreadStartDate(runPeriod));
-
-			trigger = minuteTrigger;
-
-			// TODO replace Quartz with a ScheduledExecutorService
-		}
-
-		serverScheduler.scheduleJob(jd, trigger);
-		if (log.isDebugEnabled()) {
-			log.debug("Scheduled job: " + jd.getName() + " for server: " + server);
-		}
+	private void scheduleJob(Server server) throws LifecycleException {
+		int runPeriod = firstNonNull(server.getRunPeriodSeconds(), configuration.getRunPeriod());
+		serverScheduler.schedule(server, computeSpreadStartDate(runPeriod), runPeriod);
 	}
 
 	@VisibleForTesting
@@ -419,51 +429,34 @@ public class JmxTransformer implements WatchedCallback {
 		return new Date(new Date().getTime() + spread);
 	}
 
-	private void deleteAllJobs() throws Exception {
-		List<JobDetail> allJobs = new ArrayList<>();
-		String[] jobGroups = serverScheduler.getJobGroupNames();
-		for (String jobGroup : jobGroups) {
-			String[] jobNames = serverScheduler.getJobNames(jobGroup);
-			for (String jobName : jobNames) {
-				allJobs.add(serverScheduler.getJobDetail(jobName, jobGroup));
-			}
-		}
-
-		for (JobDetail jd : allJobs) {
-			serverScheduler.deleteJob(jd.getName(), jd.getGroup());
-			if (log.isDebugEnabled()) {
-				log.debug("Deleted scheduled job: " + jd.getName() + " group: " + jd.getGroup());
-			}
-		}
-	}
-
 	/**
 	 * If getJsonFile() is a file, then that is all we load. Otherwise, look in
-	 * the jsonDir for files.
+	 * the jsonDir and its subdirectories for files.
 	 * <p/>
 	 * Files must end with .json as the suffix.
 	 */
 	private List<File> getJsonFiles() {
-		// TODO : should use a FileVisitor (Once we update to Java 7)
-		File[] files;
 		File jsonDirOrFile = configuration.getJsonDirOrFile();
 		if (jsonDirOrFile == null) {
 			throw new IllegalStateException("Configuration should specify configuration directory or file, with -j of -f option");
 		}
+		List<File> result = new ArrayList<>();
 		if (jsonDirOrFile.isFile()) {
-			files = new File[1];
-			files[0] = jsonDirOrFile;
+			result.add(jsonDirOrFile);
 		} else {
-			files = firstNonNull(jsonDirOrFile.listFiles(), new File[0]);
+			addJsonFiles(jsonDirOrFile, result);
 		}
+		return result;
+	}
 
-		List<File> result = new ArrayList<>();
-		for (File file : files) {
-			if (this.isJsonFile(file)) {
+	private void addJsonFiles(File dir, List<File> result) {
+		for (File file : firstNonNull(dir.listFiles(), new File[0])) {
+			if (file.isDirectory()) {
+				addJsonFiles(file, result);
+			} else if (this.isJsonFile(file)) {
 				result.add(file);
 			}
 		}
-		return result;
 	}
 
 	/**
@@ -478,31 +471,25 @@ public class JmxTransformer implements WatchedCallback {
 	}
 
 	@Override
-	public void fileModified(File file) throws Exception {
-		if (this.isJsonFile(file)) {
-			Thread.sleep(1000);
-			log.info("Configuration file modified: " + file);
-			this.deleteAllJobs();
+	public synchronized void filesChanged(@Nonnull FileChanges changes) throws Exception {
+		if (isRunning && this.isConfigurationChange(changes)) {
+			log.info("Configuration files changed, {} added, {} modified, {} deleted",
+					changes.getAdded().size(), changes.getModified().size(), changes.getDeleted().size());
+			log.debug("Configuration changes: {}", changes);
 			this.startupSystem();
 		}
 	}
 
-	@Override
-	public void fileDeleted(File file) throws Exception {
-		log.info("Configuration file deleted: " + file);
-		Thread.sleep(1000);
-		this.deleteAllJobs();
-		this.startupSystem();
-	}
-
-	@Override
-	public void fileAdded(File file) throws Exception {
-		if (this.isJsonFile(file)) {
-			Thread.sleep(1000);
-			log.info("Configuration file added: " + file);
-			this.deleteAllJobs();
-			this.startupSystem();
+	/**
+	 * Deletions always count as a change, as deleted files (or directories)
+	 * cannot be checked anymore.
+	 */
+	private boolean isConfigurationChange(FileChanges changes) {
+		if (!changes.getDeleted().isEmpty()) return true;
+		for (File file : Iterables.concat(changes.getAdded(), changes.getModified())) {
+			if (this.isJsonFile(file)) return true;
 		}
+		return false;
 	}
 
 	protected class ShutdownHook extends Thread {
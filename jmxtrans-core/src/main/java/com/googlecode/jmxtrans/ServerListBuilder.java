@@ -24,6 +24,7 @@ package com.googlecode.jmxtrans;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.googlecode.jmxtrans.model.OutputWriter;
 import com.googlecode.jmxtrans.model.OutputWriterFactory;
 import com.googlecode.jmxtrans.model.Query;
@@ -47,6 +48,20 @@ public class ServerListBuilder {
 
 	@Nonnull private final Map<Server, TemporaryServer> servers = newHashMap();
 	@Nonnull private final Map<OutputWriterFactory, OutputWriterFactory> outputWriters = newHashMap();
+	@Nonnull private final ImmutableMap<OutputWriterFactory, OutputWriterFactory> previousOutputWriters;
+
+	public ServerListBuilder() {
+		this.previousOutputWriters = ImmutableMap.of();
+	}
+
+	/**
+	 * Output writers created by the previous builder are reused for equal
+	 * factories, so that reloading the configuration keeps the writers (and
+	 * their connection pools) that did not change.
+	 */
+	public ServerListBuilder(@Nonnull ServerListBuilder previous) {
+		this.previousOutputWriters = ImmutableMap.copyOf(previous.outputWriters);
+	}
 
 	public ServerListBuilder add(Iterable<Server> servers) {
 		for (Server server : servers) {
@@ -67,8 +82,10 @@ public class ServerListBuilder {
 	}
 
 	private OutputWriterFactory singleton(OutputWriterFactory outputWriter) {
-		outputWriter = new SingletonOutputWriterFactory(outputWriter);
-		if (!outputWriters.containsKey(outputWriter)) outputWriters.put(outputWriter, outputWriter);
+		if (!outputWriters.containsKey(outputWriter)) {
+			OutputWriterFactory previous = previousOutputWriters.get(outputWriter);
+			outputWriters.put(outputWriter, previous != null ? previous : new SingletonOutputWriterFactory(outputWriter));
+		}
 		return outputWriters.get(outputWriter);
 	}
 
@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.OutputWriter;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Server;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newIdentityHashSet;
+
+/**
+ * Difference between two server lists built by {@link ServerListBuilder}.
+ * <p/>
+ * A server is unchanged if the other list contains an equal server, with the
+ * same queries, sending to the same output writer instances. Changed servers
+ * are both removed (the previous version) and added (the current version).
+ * Output writers are compared by identity: the builder reuses instances across
+ * reloads, so a writer is only stopped once no query uses it anymore.
+ */
+@Immutable
+public final class ServerListDiff {
+
+	@Nonnull @Getter private final ImmutableList<Server> removedServers;
+	@Nonnull @Getter private final ImmutableList<Server> addedServers;
+	@Nonnull @Getter private final ImmutableList<Server> unchangedServers;
+	@Nonnull @Getter private final Set<OutputWriter> stoppedOutputWriters;
+	@Nonnull @Getter private final Set<OutputWriter> startedOutputWriters;
+
+	private ServerListDiff(
+			@Nonnull ImmutableList<Server> removedServers,
+			@Nonnull ImmutableList<Server> addedServers,
+			@Nonnull ImmutableList<Server> unchangedServers,
+			@Nonnull Set<OutputWriter> stoppedOutputWriters,
+			@Nonnull Set<OutputWriter> startedOutputWriters) {
+		this.removedServers = removedServers;
+		this.addedServers = addedServers;
+		this.unchangedServers = unchangedServers;
+		this.stoppedOutputWriters = Collections.unmodifiableSet(stoppedOutputWriters);
+		this.startedOutputWriters = Collections.unmodifiableSet(startedOutputWriters);
+	}
+
+	public boolean isEmpty() {
+		return removedServers.isEmpty() && addedServers.isEmpty();
+	}
+
+	@Nonnull
+	public static ServerListDiff between(@Nonnull Iterable<Server> previous, @Nonnull Iterable<Server> current) {
+		Map<Server, Server> previousServers = newHashMap();
+		for (Server server : previous) {
+			previousServers.put(server, server);
+		}
+
+		ImmutableList.Builder<Server> added = ImmutableList.builder();
+		ImmutableList.Builder<Server> unchanged = ImmutableList.builder();
+		for (Server server : current) {
+			Server previousServer = previousServers.remove(server);
+			if (previousServer != null && sameConfiguration(previousServer, server)) {
+				unchanged.add(previousServer);
+			} else {
+				if (previousServer != null) previousServers.put(previousServer, previousServer);
+				added.add(server);
+			}
+		}
+		ImmutableList<Server> removed = ImmutableList.copyOf(previousServers.values());
+
+		Set<OutputWriter> previousWriters = outputWriters(previous);
+		Set<OutputWriter> currentWriters = outputWriters(current);
+		Set<OutputWriter> stopped = newIdentityHashSet();
+		for (OutputWriter writer : previousWriters) {
+			if (!currentWriters.contains(writer)) stopped.add(writer);
+		}
+		Set<OutputWriter> started = newIdentityHashSet();
+		for (OutputWriter writer : currentWriters) {
+			if (!previousWriters.contains(writer)) started.add(writer);
+		}
+
+		return new ServerListDiff(removed, added.build(), unchanged.build(), stopped, started);
+	}
+
+	private static boolean sameConfiguration(@Nonnull Server previous, @Nonnull Server current) {
+		if (!sameInstances(previous.getOutputWriters(), current.getOutputWriters())) return false;
+		if (!previous.getQueries().equals(current.getQueries())) return false;
+
+		Map<Query, Query> previousQueries = newHashMap();
+		for (Query query : previous.getQueries()) {
+			previousQueries.put(query, query);
+		}
+		for (Query query : current.getQueries()) {
+			Query previousQuery = previousQueries.get(query);
+			if (!sameInstances(previousQuery.getOutputWriterInstances(), query.getOutputWriterInstances())) return false;
+		}
+		return true;
+	}
+
+	private static boolean sameInstances(@Nonnull Iterable<OutputWriter> previous, @Nonnull Iterable<OutputWriter> current) {
+		Set<OutputWriter> previousInstances = newIdentityHashSet();
+		for (OutputWriter writer : previous) {
+			previousInstances.add(writer);
+		}
+		Set<OutputWriter> currentInstances = newIdentityHashSet();
+		for (OutputWriter writer : current) {
+			currentInstances.add(writer);
+		}
+		return previousInstances.equals(currentInstances);
+	}
+
+	/** Output writers of all queries, as those are the ones started and stopped with the configuration. */
+	@Nonnull
+	private static Set<OutputWriter> outputWriters(@Nonnull Iterable<Server> servers) {
+		Set<OutputWriter> writers = newIdentityHashSet();
+		for (Server server : servers) {
+			for (Query query : server.getQueries()) {
+				for (OutputWriter writer : query.getOutputWriterInstances()) {
+					writers.add(writer);
+				}
+			}
+		}
+		return writers;
+	}
+}
@@ -27,6 +27,7 @@ import com.beust.jcommander.validators.PositiveInteger;
 import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.CycleOverrunPolicy;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -72,6 +73,16 @@ public class JmxTransConfiguration {
 	@Getter @Setter
 	private File quartzPropertiesFile = null;
 
+	/**
+	 * Use Quartz instead of the built-in scheduler to trigger server jobs.
+	 */
+	@Parameter(
+			names = {"--use-quartz-scheduler"},
+			description = "Use the Quartz scheduler (configured with --quartz-properties-file) instead of the built-in one."
+	)
+	@Getter @Setter
+	private boolean useQuartzScheduler = false;
+
 	/**
 	 * The seconds between server job runs.
 	 */
@@ -83,6 +94,157 @@ public class JmxTransConfiguration {
 	@Getter @Setter
 	private int runPeriod = 60;
 
+	/**
+	 * Milliseconds without change to the configuration files before reloading them.
+	 */
+	@Parameter(
+			names = {"--config-reload-quiet-period-in-millis"},
+			description = "Milliseconds without change to the configuration files before they are reloaded. " +
+					"All the changes made during that time are applied in a single reload.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int configReloadQuietPeriod = 1000;
+
+	/**
+	 * Queries of a server waiting for one of its numQueryThreads to be free.
+	 */
+	@Parameter(
+			names = {"--max-queued-queries-per-server"},
+			description = "Number of queries of a single server allowed to wait when all of its numQueryThreads are busy. " +
+					"Queries over that limit are rejected.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int maxQueuedQueriesPerServer = 1000;
+
+	@Parameter(
+			names = {"--cycle-overrun-policy"},
+			description = "What to do when a server is due while its previous collection is still running: " +
+					"SKIP the new collection, COALESCE all the due collections in a single one, " +
+					"or QUEUE them (up to --max-queued-cycles)."
+	)
+	@Getter @Setter
+	private CycleOverrunPolicy cycleOverrunPolicy = CycleOverrunPolicy.SKIP;
+
+	@Parameter(
+			names = {"--max-queued-cycles"},
+			description = "Number of collections of a single server allowed to wait with the QUEUE overrun policy.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int maxQueuedCycles = 1;
+
+	@Parameter(
+			names = {"--mbean-metadata-cache-ttl-in-seconds"},
+			description = "How long the MBeanInfo of collected MBeans is cached for each connection, 0 disables the cache.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int mbeanMetadataCacheTtlSeconds = 600;
+
+	@Parameter(
+			names = {"--mbean-metadata-cache-size"},
+			description = "Maximum number of MBeans whose MBeanInfo is cached for each connection.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int mbeanMetadataCacheSize = 10000;
+
+	@Parameter(
+			names = {"--mbean-name-cache-resync-in-seconds"},
+			description = "How often the names matching wildcard queries are fully refreshed. In between, they are " +
+					"kept up to date with MBean registration notifications. 0 disables the cache.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int mbeanNameCacheResyncSeconds = 300;
+
+	@Parameter(
+			names = {"--circuit-breaker-failure-threshold"},
+			description = "Number of consecutive failures to connect to a server before backing off. 0 never backs off.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int circuitBreakerFailureThreshold = 3;
+
+	@Parameter(
+			names = {"--circuit-breaker-initial-backoff-in-seconds"},
+			description = "How long to wait before trying to connect again to a failing server. " +
+					"Doubles each time the server fails again.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int circuitBreakerInitialBackoffSeconds = 10;
+
+	@Parameter(
+			names = {"--circuit-breaker-max-backoff-in-seconds"},
+			description = "Maximum time to wait before trying to connect again to a failing server.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int circuitBreakerMaxBackoffSeconds = 600;
+
+	@Parameter(
+			names = {"--connection-liveness-check-in-seconds"},
+			description = "How often shared JMX connections are checked, dead ones being closed. 0 disables the checks.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int connectionLivenessCheckSeconds = 60;
+
+	@Parameter(
+			names = {"--result-chunk-size"},
+			description = "Number of MBeans whose results are sent to the output writers together, so that writing " +
+					"starts before large wildcard queries complete. 0 sends the results once all MBeans are fetched.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int resultChunkSize = 0;
+
+	@Parameter(
+			names = {"--align-cycle-timestamps"},
+			description = "Timestamp the results of a collection cycle with the start of its run period instead of " +
+					"the time the cycle was triggered, so that all servers report on the same period boundaries."
+	)
+	@Getter @Setter
+	private boolean alignCycleTimestamps = false;
+
+	/**
+	 * Directory where results are spooled while an output writer is failing.
+	 */
+	@Parameter(
+			names = {"--spool-directory"},
+			description = "Directory where results are spooled while an output writer is failing, to be replayed " +
+					"once it recovers. Spooling is disabled if not set."
+	)
+	@Getter @Setter @Nullable
+	private File spoolDirectory = null;
+
+	@Parameter(
+			names = {"--spool-max-size-mb"},
+			description = "Maximum disk space used by the spool of each output writer, older results are dropped first.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int spoolMaxSizeMb = 64;
+
+	@Parameter(
+			names = {"--spool-max-age-seconds"},
+			description = "Spooled results older than this are dropped instead of being replayed.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int spoolMaxAgeSeconds = 3600;
+
+	@Parameter(
+			names = {"--spool-replay-rate"},
+			description = "Maximum number of spooled batches of results replayed per second to a recovering output writer.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int spoolReplayRate = 100;
+
 	@Parameter(names = {"-h", "--help"}, help = true)
 	@Getter @Setter
 	private boolean help = false;
@@ -122,6 +284,15 @@ public class JmxTransConfiguration {
 	@Getter @Setter
 	private int queryProcessorExecutorWorkQueueCapacity = 100000;
 
+	@Parameter(
+			names = {"--query-worker-pool-size"},
+			description = "Maximum number of threads running queries with a timeout and fetching the partitions of " +
+					"large queries. Queries time out right away when all of them are busy.",
+			validateWith = PositiveInteger.class
+	)
+	@Getter @Setter
+	private int queryWorkerPoolSize = 100;
+
 	@Parameter(
 			names = {"--result-processor-executor-pool-size"},
 			description = "Number of threads used to process results",
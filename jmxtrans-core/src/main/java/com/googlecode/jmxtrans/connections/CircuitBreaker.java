@@ -0,0 +1,205 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.googlecode.jmxtrans.monitoring.CircuitBreakerMXBean;
+import lombok.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.ObjectName;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Stops connecting to a target after repeated failures.
+ * <p/>
+ * The breaker opens after failureThreshold consecutive failures. While
+ * open, connection attempts are rejected without trying. Once the backoff
+ * has elapsed, the breaker is half open and a single attempt goes through:
+ * its success closes the breaker, its failure opens it again with twice the
+ * backoff, up to maxBackoff. Backoffs are randomized between half and all of
+ * their value, so that targets failing together do not retry together.
+ */
+@ThreadSafe
+@ToString(of = {"objectName", "state", "consecutiveFailures"})
+public class CircuitBreaker implements CircuitBreakerMXBean {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	@Nonnull private final String target;
+	private final int failureThreshold;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	@Nonnull private final Ticker ticker;
+	@Nonnull private final Random random;
+	@Nonnull private final ObjectName objectName;
+
+	@GuardedBy("this") private State state = State.CLOSED;
+	@GuardedBy("this") private int consecutiveFailures = 0;
+	@GuardedBy("this") private int consecutiveOpenings = 0;
+	@GuardedBy("this") private long openUntil;
+	@GuardedBy("this") private long openCount = 0;
+	@GuardedBy("this") private long rejectedCount = 0;
+
+	/**
+	 * @param failureThreshold number of consecutive failures opening the breaker, 0 to never open it.
+	 */
+	public CircuitBreaker(
+			@Nonnull String target,
+			int failureThreshold,
+			long initialBackoffMillis,
+			long maxBackoffMillis,
+			@Nonnull ObjectName objectName) {
+		this(target, failureThreshold, initialBackoffMillis, maxBackoffMillis, objectName, Ticker.systemTicker(), new Random());
+	}
+
+	@VisibleForTesting
+	CircuitBreaker(
+			@Nonnull String target,
+			int failureThreshold,
+			long initialBackoffMillis,
+			long maxBackoffMillis,
+			@Nonnull ObjectName objectName,
+			@Nonnull Ticker ticker,
+			@Nonnull Random random) {
+		this.target = target;
+		this.failureThreshold = failureThreshold;
+		this.initialBackoffNanos = MILLISECONDS.toNanos(initialBackoffMillis);
+		this.maxBackoffNanos = MILLISECONDS.toNanos(maxBackoffMillis);
+		this.objectName = objectName;
+		this.ticker = ticker;
+		this.random = random;
+	}
+
+	/**
+	 * @return true if a connection attempt can be made. Each accepted attempt
+	 * must be followed by a call to {@link #onSuccess()} or {@link #onFailure(Throwable)}.
+	 */
+	public synchronized boolean tryAcquire() {
+		switch (state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (ticker.read() - openUntil >= 0) {
+					state = State.HALF_OPEN;
+					return true;
+				}
+				rejectedCount++;
+				return false;
+			default:
+				// an attempt is already in progress
+				rejectedCount++;
+				return false;
+		}
+	}
+
+	public synchronized void onSuccess() {
+		if (state != State.CLOSED) {
+			log.info("Connection to {} recovered, closing circuit breaker", target);
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		consecutiveOpenings = 0;
+	}
+
+	public synchronized void onFailure(@Nonnull Throwable cause) {
+		consecutiveFailures++;
+		if (failureThreshold <= 0) return;
+		if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+			long backoff = nextBackoff();
+			state = State.OPEN;
+			openUntil = ticker.read() + backoff;
+			openCount++;
+			log.warn("Could not connect to {} after {} attempts ({}), not trying again for {} ms",
+					target, consecutiveFailures, cause.toString(), NANOSECONDS.toMillis(backoff));
+		}
+	}
+
+	@GuardedBy("this")
+	private long nextBackoff() {
+		long backoff = initialBackoffNanos;
+		for (int i = 0; i < consecutiveOpenings && backoff < maxBackoffNanos; i++) {
+			backoff *= 2;
+		}
+		backoff = Math.min(backoff, maxBackoffNanos);
+		consecutiveOpenings++;
+		long half = backoff / 2;
+		return half + (long) (random.nextDouble() * (backoff - half));
+	}
+
+	@Nonnull
+	public synchronized State state() {
+		return state;
+	}
+
+	@Override
+	public String getTarget() {
+		return target;
+	}
+
+	@Override
+	public synchronized String getState() {
+		return state.name();
+	}
+
+	@Override
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	@Override
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	@Override
+	public synchronized long getOpenCount() {
+		return openCount;
+	}
+
+	@Override
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	@Override
+	public synchronized long getRemainingOpenMillis() {
+		if (state != State.OPEN) return 0;
+		return Math.max(0, NANOSECONDS.toMillis(openUntil - ticker.read()));
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds one {@link CircuitBreaker} per connection target.
+ * <p/>
+ * Each breaker is registered as an MBean under
+ * com.googlecode.jmxtrans:Type=CircuitBreaker,Target=...,Id=... The id tells
+ * apart the targets configured several times for the same JVM.
+ */
+@ThreadSafe
+public class CircuitBreakers {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreakers.class);
+
+	private final int failureThreshold;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	@Nonnull private final MBeanServer mbeanServer;
+	@Nonnull private final ConcurrentMap<JmxConnectionProvider, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+	@Nonnull private final AtomicInteger ids = new AtomicInteger();
+	@Nonnull private final Set<ObjectName> registered = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName, Boolean>());
+
+	public CircuitBreakers(
+			int failureThreshold,
+			long initialBackoffMillis,
+			long maxBackoffMillis,
+			@Nonnull MBeanServer mbeanServer) {
+		this.failureThreshold = failureThreshold;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+		this.mbeanServer = mbeanServer;
+	}
+
+	@Nonnull
+	public CircuitBreaker forTarget(@Nonnull JmxConnectionProvider target) {
+		CircuitBreaker breaker = breakers.get(target);
+		if (breaker != null) return breaker;
+
+		String name = String.valueOf(target);
+		CircuitBreaker created = new CircuitBreaker(
+				name, failureThreshold, initialBackoffMillis, maxBackoffMillis, objectName(name));
+		breaker = breakers.putIfAbsent(target, created);
+		if (breaker != null) return breaker;
+
+		register(created);
+		return created;
+	}
+
+	/**
+	 * Drops the breakers of the targets that are not part of the given list anymore.
+	 */
+	public void retain(@Nonnull Iterable<? extends JmxConnectionProvider> targets) {
+		ImmutableSet<JmxConnectionProvider> retained = ImmutableSet.<JmxConnectionProvider>copyOf(targets);
+		for (Map.Entry<JmxConnectionProvider, CircuitBreaker> entry : breakers.entrySet()) {
+			if (!retained.contains(entry.getKey()) && breakers.remove(entry.getKey(), entry.getValue())) {
+				unregister(entry.getValue());
+			}
+		}
+	}
+
+	@Nonnull
+	private ObjectName objectName(@Nonnull String target) {
+		try {
+			return new ObjectName("com.googlecode.jmxtrans:Type=CircuitBreaker,Target=" + ObjectName.quote(target)
+					+ ",Id=" + ids.incrementAndGet());
+		} catch (MalformedObjectNameException e) {
+			// the target is quoted, this cannot happen
+			throw new IllegalArgumentException("Invalid circuit breaker target " + target, e);
+		}
+	}
+
+	private void register(@Nonnull CircuitBreaker breaker) {
+		try {
+			mbeanServer.registerMBean(breaker, breaker.getObjectName());
+			registered.add(breaker.getObjectName());
+		} catch (JMException e) {
+			log.warn("Could not register circuit breaker MBean {}", breaker.getObjectName(), e);
+		}
+	}
+
+	private void unregister(@Nonnull CircuitBreaker breaker) {
+		// never unregister an MBean registered by someone else under the same name
+		if (!registered.remove(breaker.getObjectName())) return;
+		try {
+			mbeanServer.unregisterMBean(breaker.getObjectName());
+		} catch (JMException e) {
+			log.warn("Could not unregister circuit breaker MBean {}", breaker.getObjectName(), e);
+		}
+	}
+}
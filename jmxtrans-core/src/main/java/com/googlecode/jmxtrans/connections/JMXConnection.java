@@ -28,24 +28,62 @@ import lombok.ToString;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
 import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
 import javax.management.remote.JMXConnector;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Set;
 
-@ToString
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+@ToString(exclude = {"metadataCache", "nameCache"})
 @ThreadSafe
 public class JMXConnection implements Closeable {
 	@Nullable private final JMXConnector connector;
 	@Nonnull @Getter private final MBeanServerConnection mBeanServerConnection;
+	@Nonnull private final MBeanMetadataCache metadataCache;
+	@Nonnull private final MBeanNameCache nameCache;
 
+	/**
+	 * Creates a connection that does not cache MBean metadata nor names.
+	 */
 	public JMXConnection(@Nullable JMXConnector connector, @Nonnull MBeanServerConnection mBeanServerConnection) {
+		this(connector, mBeanServerConnection, new MBeanMetadataCache(0, SECONDS, 0), new MBeanNameCache(0, SECONDS));
+	}
+
+	public JMXConnection(
+			@Nullable JMXConnector connector,
+			@Nonnull MBeanServerConnection mBeanServerConnection,
+			@Nonnull MBeanMetadataCache metadataCache,
+			@Nonnull MBeanNameCache nameCache) {
 		this.connector = connector;
 		this.mBeanServerConnection = mBeanServerConnection;
+		this.metadataCache = metadataCache;
+		this.nameCache = nameCache;
+	}
+
+	@Nonnull
+	public Set<ObjectName> queryNames(@Nullable ObjectName name) throws IOException {
+		return nameCache.queryNames(mBeanServerConnection, name);
+	}
+
+	@Nonnull
+	public MBeanMetadata getMetadata(@Nonnull ObjectName name)
+			throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+		return metadataCache.get(mBeanServerConnection, name);
 	}
 
 	@Override
 	public void close() throws IOException {
 		if (connector != null) connector.close();
+		// the local MBean server outlives this connection, do not leak our listeners
+		else {
+			metadataCache.stopListeningTo(mBeanServerConnection);
+			nameCache.stopListeningTo(mBeanServerConnection);
+		}
 	}
 }
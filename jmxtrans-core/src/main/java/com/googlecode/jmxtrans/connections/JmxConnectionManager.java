@@ -0,0 +1,337 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.collect.ImmutableSet;
+import com.googlecode.jmxtrans.monitoring.JmxConnectionManagerMXBean;
+import org.apache.commons.pool.BaseKeyedObjectPool;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares a single connection per {@link JmxEndpoint}.
+ * <p/>
+ * JMX connections can be used by several threads at once, so all the servers
+ * describing the same JVM multiplex their queries on the same connection
+ * instead of each opening their own. Borrowing a connection does not take it
+ * away from other threads and returning it does nothing, while invalidating
+ * it closes it for everyone: the next borrower will reconnect.
+ * <p/>
+ * Instead of testing connections each time they are borrowed, a background
+ * task periodically checks that they are still alive.
+ * <p/>
+ * The manager can be monitored as an MBean under
+ * com.googlecode.jmxtrans:Type=JmxConnectionManager
+ */
+@ThreadSafe
+public class JmxConnectionManager extends BaseKeyedObjectPool<JmxConnectionProvider, JMXConnection>
+		implements JmxConnectionManagerMXBean {
+
+	private static final Logger log = LoggerFactory.getLogger(JmxConnectionManager.class);
+	private static final String OBJECT_NAME = "com.googlecode.jmxtrans:Type=JmxConnectionManager";
+
+	@Nonnull private final KeyedPoolableObjectFactory<JmxConnectionProvider, JMXConnection> factory;
+	/** Runs liveness checks and opens connections in advance. */
+	@Nonnull private final ScheduledExecutorService executor;
+	@Nonnull private final ConcurrentMap<JmxEndpoint, SharedConnection> connections = new ConcurrentHashMap<>();
+
+	public JmxConnectionManager(
+			@Nonnull KeyedPoolableObjectFactory<JmxConnectionProvider, JMXConnection> factory,
+			@Nonnull ScheduledExecutorService executor) {
+		this.factory = factory;
+		this.executor = executor;
+	}
+
+	/**
+	 * Periodically checks the liveness of the connections, closing the dead ones.
+	 */
+	public void scheduleLivenessChecks(long period, @Nonnull TimeUnit unit) {
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					checkLiveness();
+				} catch (RuntimeException e) {
+					log.warn("Could not check the liveness of JMX connections", e);
+				}
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Opens the connections of the given targets in the background, so that
+	 * the first collection does not pay for the connection handshake.
+	 */
+	public void prewarm(@Nonnull Iterable<? extends JmxConnectionProvider> targets) {
+		for (final JmxConnectionProvider target : targets) {
+			if (target.isLocal()) continue;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						addObject(target);
+					} catch (Exception e) {
+						log.info("Could not open connection to {} in advance: {}", target, e.toString());
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Closes the connections that are not used by any of the given targets.
+	 */
+	public void retain(@Nonnull Iterable<? extends JmxConnectionProvider> targets) {
+		Set<JmxEndpoint> endpoints = new HashSet<>();
+		for (JmxConnectionProvider target : targets) {
+			endpoints.add(target.getEndpoint());
+		}
+		for (Map.Entry<JmxEndpoint, SharedConnection> entry : connections.entrySet()) {
+			if (!endpoints.contains(entry.getKey()) && connections.remove(entry.getKey(), entry.getValue())) {
+				entry.getValue().close();
+			}
+		}
+	}
+
+	@Override
+	public JMXConnection borrowObject(JmxConnectionProvider key) throws Exception {
+		assertOpen();
+		return sharedConnection(key).borrow(key);
+	}
+
+	@Override
+	public void returnObject(JmxConnectionProvider key, JMXConnection connection) throws Exception {
+		SharedConnection shared = connections.get(key.getEndpoint());
+		if (shared != null) shared.release(connection);
+	}
+
+	@Override
+	public void invalidateObject(JmxConnectionProvider key, JMXConnection connection) throws Exception {
+		SharedConnection shared = connections.get(key.getEndpoint());
+		if (shared != null) {
+			shared.release(connection);
+			shared.invalidate(connection);
+		} else {
+			factory.destroyObject(key, connection);
+		}
+	}
+
+	@Override
+	public void addObject(JmxConnectionProvider key) throws Exception {
+		assertOpen();
+		sharedConnection(key).open(key);
+	}
+
+	@Override
+	public int getNumActive() {
+		int active = 0;
+		for (SharedConnection shared : connections.values()) {
+			active += shared.borrowers.get();
+		}
+		return active;
+	}
+
+	@Override
+	public int getNumActive(JmxConnectionProvider key) {
+		SharedConnection shared = connections.get(key.getEndpoint());
+		return shared == null ? 0 : shared.borrowers.get();
+	}
+
+	@Override
+	public int getNumIdle() {
+		int idle = 0;
+		for (SharedConnection shared : connections.values()) {
+			if (shared.isIdle()) idle++;
+		}
+		return idle;
+	}
+
+	@Override
+	public int getNumIdle(JmxConnectionProvider key) {
+		SharedConnection shared = connections.get(key.getEndpoint());
+		return shared != null && shared.isIdle() ? 1 : 0;
+	}
+
+	@Override
+	public int getNumOpenConnections() {
+		int open = 0;
+		for (SharedConnection shared : connections.values()) {
+			if (shared.isOpen()) open++;
+		}
+		return open;
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		try {
+			return new ObjectName(OBJECT_NAME);
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (JmxEndpoint endpoint : ImmutableSet.copyOf(connections.keySet())) {
+			SharedConnection shared = connections.remove(endpoint);
+			if (shared != null) shared.close();
+		}
+	}
+
+	@Override
+	public void clear(JmxConnectionProvider key) {
+		SharedConnection shared = connections.remove(key.getEndpoint());
+		if (shared != null) shared.close();
+	}
+
+	@Override
+	public void close() throws Exception {
+		super.close();
+		executor.shutdownNow();
+		clear();
+	}
+
+	void checkLiveness() {
+		for (SharedConnection shared : connections.values()) {
+			shared.checkLiveness();
+		}
+	}
+
+	@Nonnull
+	private SharedConnection sharedConnection(@Nonnull JmxConnectionProvider key) {
+		JmxEndpoint endpoint = key.getEndpoint();
+		SharedConnection shared = connections.get(endpoint);
+		if (shared == null) {
+			SharedConnection created = new SharedConnection(endpoint);
+			shared = connections.putIfAbsent(endpoint, created);
+			if (shared == null) shared = created;
+		}
+		return shared;
+	}
+
+	@ThreadSafe
+	private final class SharedConnection {
+		@Nonnull private final JmxEndpoint endpoint;
+		@Nonnull private final AtomicInteger borrowers = new AtomicInteger();
+		@GuardedBy("this") @Nullable private JMXConnection connection;
+		/** The target the connection was opened for, to destroy it with the factory. */
+		@GuardedBy("this") @Nullable private JmxConnectionProvider owner;
+
+		private SharedConnection(@Nonnull JmxEndpoint endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		@Nonnull
+		JMXConnection borrow(@Nonnull JmxConnectionProvider key) throws Exception {
+			JMXConnection borrowed = open(key);
+			borrowers.incrementAndGet();
+			return borrowed;
+		}
+
+		/**
+		 * Concurrent borrowers wait for a single connection attempt.
+		 */
+		@Nonnull
+		synchronized JMXConnection open(@Nonnull JmxConnectionProvider key) throws Exception {
+			if (connection == null) {
+				connection = factory.makeObject(key);
+				owner = key;
+				log.debug("Opened shared connection to {}", endpoint);
+			}
+			return connection;
+		}
+
+		void release(@Nonnull JMXConnection released) {
+			borrowers.decrementAndGet();
+		}
+
+		void invalidate(@Nonnull JMXConnection invalid) {
+			JmxConnectionProvider invalidOwner;
+			synchronized (this) {
+				// the connection might already have been replaced by another borrower
+				if (connection != invalid) return;
+				connection = null;
+				invalidOwner = owner;
+				owner = null;
+			}
+			destroy(invalidOwner, invalid);
+		}
+
+		synchronized boolean isOpen() {
+			return connection != null;
+		}
+
+		synchronized boolean isIdle() {
+			return connection != null && borrowers.get() == 0;
+		}
+
+		void checkLiveness() {
+			JMXConnection checked;
+			JmxConnectionProvider checkedOwner;
+			synchronized (this) {
+				checked = connection;
+				checkedOwner = owner;
+			}
+			if (checked == null || factory.validateObject(checkedOwner, checked)) return;
+
+			log.info("Connection to {} is not alive anymore, closing it", endpoint);
+			invalidate(checked);
+		}
+
+		void close() {
+			JMXConnection closed;
+			JmxConnectionProvider closedOwner;
+			synchronized (this) {
+				closed = connection;
+				closedOwner = owner;
+				connection = null;
+				owner = null;
+			}
+			if (closed != null) destroy(closedOwner, closed);
+		}
+
+		private void destroy(@Nullable JmxConnectionProvider key, @Nonnull JMXConnection destroyed) {
+			try {
+				factory.destroyObject(key, destroyed);
+			} catch (Exception e) {
+				log.warn("Could not close connection to {}", endpoint, e);
+			}
+		}
+	}
+}
@@ -39,4 +39,10 @@ public interface JmxConnectionProvider {
 	MBeanServer getLocalMBeanServer();
 
 	boolean isLocal();
+
+	/**
+	 * Targets with the same endpoint share their connection.
+	 */
+	@JsonIgnore
+	JmxEndpoint getEndpoint();
 }
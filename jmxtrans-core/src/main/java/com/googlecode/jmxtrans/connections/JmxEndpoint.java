@@ -0,0 +1,104 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.management.remote.JMXServiceURL;
+import java.net.MalformedURLException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Identifies the JVM a connection is made to, so that servers describing
+ * the same JVM (with different aliases or periods, for example) can share
+ * their connection.
+ */
+@Immutable
+@EqualsAndHashCode
+public final class JmxEndpoint {
+
+	private static final Pattern JNDI_HOST = Pattern.compile("(/jndi/[^:/]+://)([^:/]*)(.*)");
+
+	private static final JmxEndpoint LOCAL = new JmxEndpoint("local", null, null);
+
+	@Nonnull @Getter private final String address;
+	@Nullable @Getter private final String username;
+	@Nullable private final String password;
+
+	private JmxEndpoint(@Nonnull String address, @Nullable String username, @Nullable String password) {
+		this.address = address;
+		this.username = username;
+		this.password = password;
+	}
+
+	@Nonnull
+	public static JmxEndpoint local() {
+		return LOCAL;
+	}
+
+	@Nonnull
+	public static JmxEndpoint ofPid(@Nonnull String pid) {
+		return new JmxEndpoint("pid:" + pid, null, null);
+	}
+
+	@Nonnull
+	public static JmxEndpoint ofUrl(@Nonnull String url, @Nullable String username, @Nullable String password) {
+		return new JmxEndpoint(normalize(url), username, password);
+	}
+
+	/**
+	 * Host names are case insensitive, both in the service URL and in the
+	 * JNDI name of the RMI connector.
+	 */
+	@Nonnull
+	static String normalize(@Nonnull String url) {
+		JMXServiceURL serviceURL;
+		try {
+			serviceURL = new JMXServiceURL(url.trim());
+		} catch (MalformedURLException e) {
+			return url.trim();
+		}
+
+		String urlPath = serviceURL.getURLPath();
+		Matcher jndi = JNDI_HOST.matcher(urlPath);
+		if (jndi.matches()) {
+			urlPath = jndi.group(1) + jndi.group(2).toLowerCase(Locale.ENGLISH) + jndi.group(3);
+		}
+
+		return "service:jmx:" + serviceURL.getProtocol().toLowerCase(Locale.ENGLISH)
+				+ "://" + serviceURL.getHost().toLowerCase(Locale.ENGLISH)
+				+ (serviceURL.getPort() == 0 ? "" : ":" + serviceURL.getPort())
+				+ urlPath;
+	}
+
+	@Override
+	public String toString() {
+		return username == null ? address : username + "@" + address;
+	}
+}
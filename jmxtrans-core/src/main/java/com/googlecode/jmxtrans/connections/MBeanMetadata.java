@@ -0,0 +1,59 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+
+/**
+ * What we need to know about an MBean, besides its attribute values.
+ */
+@Immutable
+@ToString
+public final class MBeanMetadata {
+
+	@Nonnull @Getter private final MBeanInfo info;
+	@Nonnull @Getter private final ObjectInstance objectInstance;
+
+	public MBeanMetadata(@Nonnull MBeanInfo info, @Nonnull ObjectInstance objectInstance) {
+		this.info = info;
+		this.objectInstance = objectInstance;
+	}
+
+	@Nonnull
+	public static MBeanMetadata fetch(@Nonnull MBeanServerConnection connection, @Nonnull ObjectName name)
+			throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+		return new MBeanMetadata(connection.getMBeanInfo(name), connection.getObjectInstance(name));
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.relation.MBeanServerNotificationFilter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the {@link MBeanMetadata} of the MBeans of a single connection, so
+ * that collecting an MBean only costs a getAttributes() call.
+ * <p/>
+ * Entries expire after a fixed time and the cache is bounded in size. When
+ * listening to the MBean server delegate, entries are also invalidated as
+ * soon as their MBean is unregistered.
+ */
+@ThreadSafe
+public class MBeanMetadataCache {
+
+	private static final Logger log = LoggerFactory.getLogger(MBeanMetadataCache.class);
+
+	@Nonnull private final Cache<ObjectName, MBeanMetadata> cache;
+	@Nonnull private final NotificationListener unregistrationListener = new UnregistrationListener();
+
+	public MBeanMetadataCache(long ttl, @Nonnull TimeUnit unit, long maximumSize) {
+		this(ttl, unit, maximumSize, Ticker.systemTicker());
+	}
+
+	@VisibleForTesting
+	MBeanMetadataCache(long ttl, @Nonnull TimeUnit unit, long maximumSize, @Nonnull Ticker ticker) {
+		this.cache = CacheBuilder.newBuilder()
+				.expireAfterWrite(ttl, unit)
+				.maximumSize(maximumSize)
+				.ticker(ticker)
+				.build();
+	}
+
+	@Nonnull
+	public MBeanMetadata get(@Nonnull MBeanServerConnection connection, @Nonnull ObjectName name)
+			throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+		MBeanMetadata metadata = cache.getIfPresent(name);
+		if (metadata == null) {
+			metadata = MBeanMetadata.fetch(connection, name);
+			cache.put(name, metadata);
+		}
+		return metadata;
+	}
+
+	public void invalidate(@Nonnull ObjectName name) {
+		cache.invalidate(name);
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	/**
+	 * Invalidates entries when their MBean is unregistered from the given connection.
+	 */
+	public void listenTo(@Nonnull MBeanServerConnection connection) throws IOException, InstanceNotFoundException {
+		MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+		filter.disableAllTypes();
+		filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+		filter.enableAllObjectNames();
+		connection.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, unregistrationListener, filter, null);
+	}
+
+	public void stopListeningTo(@Nonnull MBeanServerConnection connection) {
+		try {
+			connection.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, unregistrationListener);
+		} catch (InstanceNotFoundException | ListenerNotFoundException | IOException e) {
+			log.debug("Could not remove MBean unregistration listener", e);
+		}
+	}
+
+	@VisibleForTesting
+	void handleNotification(@Nonnull Notification notification) {
+		if (notification instanceof MBeanServerNotification
+				&& MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+			invalidate(((MBeanServerNotification) notification).getMBeanName());
+		}
+	}
+
+	private final class UnregistrationListener implements NotificationListener {
+		@Override
+		public void handleNotification(Notification notification, Object handback) {
+			MBeanMetadataCache.this.handleNotification(notification);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the expansion of {@link ObjectName} patterns for a single connection.
+ * <p/>
+ * Once a pattern has been expanded, the set of matching names is kept up to
+ * date with the registration and unregistration notifications of the MBean
+ * server delegate, so that wildcard queries do not transfer the whole set of
+ * names on each collection. Notifications can be lost on remote connections,
+ * so each pattern is still fully expanded again every resync period.
+ * <p/>
+ * Until {@link #listenTo(MBeanServerConnection)} succeeds, and for names that
+ * are not patterns, all calls go straight to the MBean server.
+ */
+@ThreadSafe
+public class MBeanNameCache {
+
+	private static final Logger log = LoggerFactory.getLogger(MBeanNameCache.class);
+
+	private final long resyncPeriodNanos;
+	@Nonnull private final Ticker ticker;
+	@Nonnull private final ConcurrentMap<ObjectName, Expansion> expansions = new ConcurrentHashMap<>();
+	@Nonnull private final NotificationListener registrationListener = new RegistrationListener();
+	private volatile boolean listening = false;
+
+	public MBeanNameCache(long resyncPeriod, @Nonnull TimeUnit unit) {
+		this(resyncPeriod, unit, Ticker.systemTicker());
+	}
+
+	@VisibleForTesting
+	MBeanNameCache(long resyncPeriod, @Nonnull TimeUnit unit, @Nonnull Ticker ticker) {
+		this.resyncPeriodNanos = unit.toNanos(resyncPeriod);
+		this.ticker = ticker;
+	}
+
+	@Nonnull
+	public Set<ObjectName> queryNames(@Nonnull MBeanServerConnection connection, @Nullable ObjectName name) throws IOException {
+		if (!listening || name == null || !name.isPattern()) {
+			return connection.queryNames(name, null);
+		}
+
+		Expansion expansion = expansions.get(name);
+		if (expansion == null) {
+			Expansion created = new Expansion(name);
+			expansion = expansions.putIfAbsent(name, created);
+			if (expansion == null) expansion = created;
+		}
+
+		Set<ObjectName> names = expansion.namesIfSyncedAfter(ticker.read() - resyncPeriodNanos);
+		if (names != null) return names;
+
+		long syncTime = ticker.read();
+		expansion.startSync();
+		try {
+			return expansion.finishSync(connection.queryNames(name, null), syncTime);
+		} catch (IOException | RuntimeException e) {
+			expansion.abortSync();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts maintaining pattern expansions incrementally. Caching is only
+	 * enabled once this succeeds.
+	 */
+	public void listenTo(@Nonnull MBeanServerConnection connection) throws IOException, InstanceNotFoundException {
+		if (resyncPeriodNanos <= 0) return;
+
+		MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+		filter.disableAllTypes();
+		filter.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+		filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+		filter.enableAllObjectNames();
+		connection.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener, filter, null);
+		listening = true;
+	}
+
+	public void stopListeningTo(@Nonnull MBeanServerConnection connection) {
+		if (!listening) return;
+		listening = false;
+		expansions.clear();
+		try {
+			connection.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener);
+		} catch (InstanceNotFoundException | ListenerNotFoundException | IOException e) {
+			log.debug("Could not remove MBean registration listener", e);
+		}
+	}
+
+	@VisibleForTesting
+	void handleNotification(@Nonnull Notification notification) {
+		if (!(notification instanceof MBeanServerNotification)) return;
+
+		ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+		boolean registered;
+		if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
+			registered = true;
+		} else if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+			registered = false;
+		} else {
+			return;
+		}
+
+		for (Expansion expansion : expansions.values()) {
+			if (expansion.pattern.apply(name)) {
+				expansion.update(name, registered);
+			}
+		}
+	}
+
+	/**
+	 * The names matching a single pattern. Notifications received while the
+	 * pattern is being expanded are recorded and replayed on the result of
+	 * the expansion, as it might or might not already include them.
+	 */
+	@ThreadSafe
+	private static final class Expansion {
+		@Nonnull private final ObjectName pattern;
+		@GuardedBy("this") @Nullable private Set<ObjectName> names;
+		@GuardedBy("this") private long syncTime;
+		@GuardedBy("this") @Nullable private Map<ObjectName, Boolean> updatesDuringSync;
+		/** Shared connections can expand the same pattern from several threads. */
+		@GuardedBy("this") private int syncsInProgress = 0;
+
+		private Expansion(@Nonnull ObjectName pattern) {
+			this.pattern = pattern;
+		}
+
+		@Nullable
+		synchronized Set<ObjectName> namesIfSyncedAfter(long time) {
+			if (names == null || syncTime - time <= 0) return null;
+			return ImmutableSet.copyOf(names);
+		}
+
+		synchronized void startSync() {
+			if (syncsInProgress++ == 0) updatesDuringSync = new HashMap<>();
+		}
+
+		@Nonnull
+		synchronized Set<ObjectName> finishSync(@Nonnull Set<ObjectName> expansion, long time) {
+			Set<ObjectName> synced = new HashSet<>(expansion);
+			if (updatesDuringSync != null) {
+				for (Map.Entry<ObjectName, Boolean> update : updatesDuringSync.entrySet()) {
+					if (update.getValue()) synced.add(update.getKey());
+					else synced.remove(update.getKey());
+				}
+			}
+			endSync();
+			names = synced;
+			syncTime = time;
+			return ImmutableSet.copyOf(synced);
+		}
+
+		synchronized void abortSync() {
+			endSync();
+		}
+
+		@GuardedBy("this")
+		private void endSync() {
+			if (--syncsInProgress == 0) updatesDuringSync = null;
+		}
+
+		synchronized void update(@Nonnull ObjectName name, boolean registered) {
+			if (updatesDuringSync != null) updatesDuringSync.put(name, registered);
+			if (names == null) return;
+			if (registered) names.add(name);
+			else names.remove(name);
+		}
+	}
+
+	private final class RegistrationListener implements NotificationListener {
+		@Override
+		public void handleNotification(Notification notification, Object handback) {
+			MBeanNameCache.this.handleNotification(notification);
+		}
+	}
+}
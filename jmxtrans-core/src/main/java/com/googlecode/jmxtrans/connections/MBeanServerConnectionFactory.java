@@ -23,21 +23,125 @@
 package com.googlecode.jmxtrans.connections;
 
 import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
 import javax.management.remote.JMXConnector;
 import java.io.IOException;
 
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 public class MBeanServerConnectionFactory extends BaseKeyedPoolableObjectFactory<JmxConnectionProvider, JMXConnection> {
+
+	private static final Logger log = LoggerFactory.getLogger(MBeanServerConnectionFactory.class);
+
+	public static final long DEFAULT_METADATA_CACHE_TTL_SECONDS = SECONDS.convert(10, MINUTES);
+	public static final long DEFAULT_METADATA_CACHE_SIZE = 10000;
+	public static final long DEFAULT_NAME_CACHE_RESYNC_SECONDS = SECONDS.convert(5, MINUTES);
+
+	private final long metadataCacheTtlSeconds;
+	private final long metadataCacheSize;
+	private final long nameCacheResyncSeconds;
+	@Nullable private final CircuitBreakers circuitBreakers;
+
+	public MBeanServerConnectionFactory() {
+		this(DEFAULT_METADATA_CACHE_TTL_SECONDS, DEFAULT_METADATA_CACHE_SIZE, DEFAULT_NAME_CACHE_RESYNC_SECONDS, null);
+	}
+
+	/**
+	 * @param metadataCacheTtlSeconds how long the metadata of MBeans is cached
+	 *                                for each connection, 0 to disable caching.
+	 * @param metadataCacheSize       the maximum number of MBeans cached per connection.
+	 * @param nameCacheResyncSeconds  how often the expansion of wildcard queries
+	 *                                is fully refreshed, 0 to disable caching.
+	 * @param circuitBreakers         guard the connections to remote servers, if not null.
+	 */
+	public MBeanServerConnectionFactory(
+			long metadataCacheTtlSeconds,
+			long metadataCacheSize,
+			long nameCacheResyncSeconds,
+			@Nullable CircuitBreakers circuitBreakers) {
+		this.metadataCacheTtlSeconds = metadataCacheTtlSeconds;
+		this.metadataCacheSize = metadataCacheSize;
+		this.nameCacheResyncSeconds = nameCacheResyncSeconds;
+		this.circuitBreakers = circuitBreakers;
+	}
+
 	@Override
 	@Nonnull
 	public JMXConnection makeObject(@Nonnull JmxConnectionProvider server) throws IOException {
 		if (server.isLocal()) {
-			return new JMXConnection(null, server.getLocalMBeanServer());
+			MBeanServerConnection mBeanServer = server.getLocalMBeanServer();
+			return new JMXConnection(null, mBeanServer, metadataCache(mBeanServer), nameCache(mBeanServer));
+		} else if (circuitBreakers == null) {
+			return connect(server);
 		} else {
-			JMXConnector connection = server.getServerConnection();
-			return new JMXConnection(connection, connection.getMBeanServerConnection());
+			CircuitBreaker breaker = circuitBreakers.forTarget(server);
+			if (!breaker.tryAcquire()) {
+				throw new CircuitBreakerOpenException("Not connecting to " + server + ", circuit breaker is open for "
+						+ breaker.getRemainingOpenMillis() + " ms");
+			}
+			try {
+				JMXConnection connection = connect(server);
+				breaker.onSuccess();
+				return connection;
+			} catch (Throwable t) {
+				// any failure must settle the attempt, or a half open breaker would stay so forever
+				breaker.onFailure(t);
+				throw t;
+			}
+		}
+	}
+
+	/**
+	 * Checks that the connection is still alive with a cheap remote call.
+	 */
+	@Override
+	public boolean validateObject(JmxConnectionProvider server, JMXConnection connection) {
+		try {
+			connection.getMBeanServerConnection().getMBeanCount();
+			return true;
+		} catch (IOException | RuntimeException e) {
+			log.debug("Connection to {} is not alive", server, e);
+			return false;
+		}
+	}
+
+	@Nonnull
+	private JMXConnection connect(@Nonnull JmxConnectionProvider server) throws IOException {
+		JMXConnector connection = server.getServerConnection();
+		MBeanServerConnection mBeanServerConnection = connection.getMBeanServerConnection();
+		return new JMXConnection(
+				connection, mBeanServerConnection,
+				metadataCache(mBeanServerConnection), nameCache(mBeanServerConnection));
+	}
+
+	private MBeanMetadataCache metadataCache(MBeanServerConnection connection) {
+		MBeanMetadataCache cache = new MBeanMetadataCache(metadataCacheTtlSeconds, SECONDS, metadataCacheSize);
+		if (metadataCacheTtlSeconds > 0) {
+			try {
+				cache.listenTo(connection);
+			} catch (InstanceNotFoundException | IOException | SecurityException e) {
+				log.warn("Could not listen to MBean unregistrations, metadata will only be refreshed every {} seconds",
+						metadataCacheTtlSeconds, e);
+			}
+		}
+		return cache;
+	}
+
+	private MBeanNameCache nameCache(MBeanServerConnection connection) {
+		MBeanNameCache cache = new MBeanNameCache(nameCacheResyncSeconds, SECONDS);
+		try {
+			cache.listenTo(connection);
+		} catch (InstanceNotFoundException | IOException | SecurityException e) {
+			log.warn("Could not listen to MBean registrations, wildcard queries will not be cached", e);
 		}
+		return cache;
 	}
 
 	@Override
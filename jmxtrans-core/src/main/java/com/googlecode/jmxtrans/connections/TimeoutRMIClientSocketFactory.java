@@ -0,0 +1,75 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+
+/**
+ * Creates RMI client sockets with connect and read timeouts, so that a hung
+ * JVM cannot block a connection attempt forever.
+ * <p/>
+ * A timeout of 0 means no timeout.
+ */
+@Immutable
+@EqualsAndHashCode
+@ToString
+public class TimeoutRMIClientSocketFactory implements RMIClientSocketFactory, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The environment key used by the JNDI RMI registry provider to look up
+	 * the RMI connector server.
+	 */
+	public static final String JNDI_SOCKET_FACTORY = "com.sun.jndi.rmi.factory.socket";
+
+	@Getter private final int connectTimeoutMillis;
+	@Getter private final int readTimeoutMillis;
+
+	public TimeoutRMIClientSocketFactory(int connectTimeoutMillis, int readTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setSoTimeout(readTimeoutMillis);
+			socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+			return socket;
+		} catch (IOException | RuntimeException e) {
+			socket.close();
+			throw e;
+		}
+	}
+}
@@ -36,7 +36,9 @@ import com.google.inject.TypeLiteral;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 import com.googlecode.jmxtrans.cli.JmxTransConfiguration;
+import com.googlecode.jmxtrans.connections.CircuitBreakers;
 import com.googlecode.jmxtrans.connections.DatagramSocketFactory;
+import com.googlecode.jmxtrans.connections.JmxConnectionManager;
 import com.googlecode.jmxtrans.connections.MBeanServerConnectionFactory;
 import com.googlecode.jmxtrans.connections.SocketFactory;
 import com.googlecode.jmxtrans.monitoring.ManagedGenericKeyedObjectPool;
@@ -60,15 +62,22 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class JmxTransModule extends AbstractModule {
 
+	/** Threads checking the liveness of JMX connections and opening them in advance. */
+	private static final int CONNECTION_THREADS = 4;
+
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	private final JmxTransConfiguration configuration;
@@ -83,8 +92,27 @@ public class JmxTransModule extends AbstractModule {
 				.toInstance(getObjectPool(new SocketFactory(), SocketFactory.class.getSimpleName()));
 		bind(new TypeLiteral<GenericKeyedObjectPool<SocketAddress, DatagramSocket>>(){})
 				.toInstance(getObjectPool(new DatagramSocketFactory(), DatagramSocketFactory.class.getSimpleName()));
-		bind(KeyedObjectPool.class).annotatedWith(Names.named("mbeanPool"))
-				.toInstance(getObjectPool(new MBeanServerConnectionFactory(), MBeanServerConnectionFactory.class.getSimpleName()));
+		CircuitBreakers circuitBreakers = new CircuitBreakers(
+				configuration.getCircuitBreakerFailureThreshold(),
+				MILLISECONDS.convert(configuration.getCircuitBreakerInitialBackoffSeconds(), SECONDS),
+				MILLISECONDS.convert(configuration.getCircuitBreakerMaxBackoffSeconds(), SECONDS),
+				ManagementFactory.getPlatformMBeanServer());
+		bind(CircuitBreakers.class).toInstance(circuitBreakers);
+		JmxConnectionManager connectionManager = new JmxConnectionManager(
+				new MBeanServerConnectionFactory(
+						configuration.getMbeanMetadataCacheTtlSeconds(),
+						configuration.getMbeanMetadataCacheSize(),
+						configuration.getMbeanNameCacheResyncSeconds(),
+						circuitBreakers),
+				Executors.newScheduledThreadPool(CONNECTION_THREADS, threadFactory("connection")));
+		if (configuration.getConnectionLivenessCheckSeconds() > 0) {
+			connectionManager.scheduleLivenessChecks(configuration.getConnectionLivenessCheckSeconds(), SECONDS);
+		}
+		bind(JmxConnectionManager.class).toInstance(connectionManager);
+		bind(KeyedObjectPool.class).annotatedWith(Names.named("mbeanPool")).toInstance(connectionManager);
+		bindConstant().annotatedWith(Names.named("resultChunkSize")).to(configuration.getResultChunkSize());
+		bindConstant().annotatedWith(Names.named("alignCycleTimestamps")).to(configuration.isAlignCycleTimestamps());
+		bindConstant().annotatedWith(Names.named("runPeriod")).to(configuration.getRunPeriod());
 	}
 
 	@Provides
@@ -132,6 +160,19 @@ public class JmxTransModule extends AbstractModule {
 		return createExecutorService(poolSize, workQueueCapacity, componentName);
 	}
 
+	/**
+	 * Runs queries with a timeout. Queries stuck on a hung server are
+	 * abandoned to their thread until the read timeout frees it, so tasks are
+	 * rejected rather than queued once all threads are busy.
+	 */
+	@Provides
+	@Singleton
+	@Named("queryTimeoutExecutor")
+	ExecutorService queryTimeoutExecutor() {
+		return new ThreadPoolExecutor(0, configuration.getQueryWorkerPoolSize(), 60L, SECONDS,
+				new SynchronousQueue<Runnable>(), threadFactory("query-worker"));
+	}
+
 	private ThreadPoolExecutor createExecutorService(int poolSize, int workQueueCapacity, String componentName) {
 		BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<>(workQueueCapacity);
 		ThreadFactory threadFactory = threadFactory(componentName);
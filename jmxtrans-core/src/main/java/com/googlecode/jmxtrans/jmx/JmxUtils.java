@@ -22,16 +22,21 @@
  */
 package com.googlecode.jmxtrans.jmx;
 
-import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.QueryGroup;
 import com.googlecode.jmxtrans.model.Server;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.googlecode.jmxtrans.util.Clock;
+import com.googlecode.jmxtrans.util.SystemClock;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * The worker code.
@@ -40,27 +45,62 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 public class JmxUtils {
 
-	@Nonnull private static final Logger logger = LoggerFactory.getLogger(JmxUtils.class);
-
-	@Nonnull private final ThreadPoolExecutor executorService;
+	@Nonnull private final ServerBulkheads serverBulkheads;
 	@Nonnull private final ResultProcessor resultProcessor;
+	@Nonnull private final ExecutorService queryTimeoutExecutor;
+	@Nonnull private final Clock clock;
+	private final int resultChunkSize;
+	/** Whether cycle timestamps are aligned on the run period of their server. */
+	private final boolean alignCycleTimestamps;
+	/** Run period of the servers which do not set their own, in seconds. */
+	private final int runPeriod;
 
 	@Inject
 	public JmxUtils(
-			@Named("queryProcessorExecutor") @Nonnull ThreadPoolExecutor executorService,
-			@Nonnull ResultProcessor resultProcessor) {
-		this.executorService = executorService;
+			@Nonnull ServerBulkheads serverBulkheads,
+			@Nonnull ResultProcessor resultProcessor,
+			@Nonnull @Named("queryTimeoutExecutor") ExecutorService queryTimeoutExecutor,
+			@Named("resultChunkSize") int resultChunkSize,
+			@Named("alignCycleTimestamps") boolean alignCycleTimestamps,
+			@Named("runPeriod") int runPeriod) {
+		this(serverBulkheads, resultProcessor, queryTimeoutExecutor, new SystemClock(),
+				resultChunkSize, alignCycleTimestamps, runPeriod);
+	}
+
+	public JmxUtils(
+			@Nonnull ServerBulkheads serverBulkheads,
+			@Nonnull ResultProcessor resultProcessor,
+			@Nonnull ExecutorService queryTimeoutExecutor,
+			@Nonnull Clock clock,
+			int resultChunkSize,
+			boolean alignCycleTimestamps,
+			int runPeriod) {
+		this.serverBulkheads = serverBulkheads;
 		this.resultProcessor = resultProcessor;
+		this.queryTimeoutExecutor = queryTimeoutExecutor;
+		this.clock = clock;
+		this.resultChunkSize = resultChunkSize;
+		this.alignCycleTimestamps = alignCycleTimestamps;
+		this.runPeriod = runPeriod;
 	}
 
 	public void processServer(Server server) throws Exception {
-		for (Query query : server.getQueries()) {
-			ProcessQueryThread pqt = new ProcessQueryThread(resultProcessor, server, query);
-			try {
-				executorService.submit(pqt);
-			} catch (RejectedExecutionException ree) {
-				logger.error("Could not submit query {}. You could try to size the 'queryProcessorExecutor' to a larger size.", pqt, ree);
-			}
+		long epoch = cycleEpoch(server, clock.currentTimeMillis());
+		List<ProcessQueryThread> queries = new ArrayList<>();
+		for (QueryGroup queryGroup : server.getQueryGroups()) {
+			queries.add(new ProcessQueryThread(
+					resultProcessor, server, queryGroup, epoch, queryTimeoutExecutor, resultChunkSize));
 		}
+		serverBulkheads.forServer(server).executeCycle(queries);
+	}
+
+	/**
+	 * @return the timestamp shared by all the results of a collection cycle of
+	 * the server, which is the start of the current run period when aligned.
+	 */
+	long cycleEpoch(Server server, long now) {
+		if (!alignCycleTimestamps) return now;
+		long periodMillis = MILLISECONDS.convert(firstNonNull(server.getRunPeriodSeconds(), runPeriod), SECONDS);
+		return now - now % periodMillis;
 	}
 }
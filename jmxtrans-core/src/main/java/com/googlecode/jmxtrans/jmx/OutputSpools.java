@@ -0,0 +1,185 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.google.common.math.IntMath;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.ProvidedBy;
+import com.googlecode.jmxtrans.model.OutputWriter;
+import com.googlecode.jmxtrans.model.output.support.spool.SegmentLog;
+import com.googlecode.jmxtrans.model.output.support.spool.SpoolingOutputWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Holds one {@link SpoolingOutputWriter} per output writer when spooling is
+ * enabled, each one using its own sub directory of the spool directory.
+ * Spooled results do not survive a restart: the spool directory is cleared
+ * when the spools are created, and the sub directory of a writer is deleted
+ * when its spool is released.
+ * <p/>
+ * Spooled results are replayed every 100ms, a
+ * slice of replayRate batches per second at a time, so that a recovering
+ * backend is not flooded with the whole backlog at once.
+ */
+@ThreadSafe
+@ProvidedBy(OutputSpoolsProvider.class)
+public class OutputSpools {
+
+	private static final Logger log = LoggerFactory.getLogger(OutputSpools.class);
+
+	private static final int REPLAY_PERIOD_MILLIS = 100;
+	private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+	private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private static final int SEGMENTS = 8;
+
+	@Nullable private final File directory;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	private final int batchesPerReplay;
+
+	@GuardedBy("this") private final Map<OutputWriter, Spool> spools = new IdentityHashMap<>();
+	@GuardedBy("this") private int nextSpool = 0;
+	@GuardedBy("this") @Nullable private ScheduledExecutorService replayExecutor;
+
+	/**
+	 * @param directory where segments are stored, spooling is disabled if null
+	 * @param replayRate maximum number of batches of results replayed per second, per writer
+	 */
+	public OutputSpools(@Nullable File directory, long maxBytes, long maxAgeMillis, int replayRate) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		this.batchesPerReplay = IntMath.divide(replayRate, 1000 / REPLAY_PERIOD_MILLIS, RoundingMode.CEILING);
+		if (directory != null) clear(directory);
+	}
+
+	public static OutputSpools disabled() {
+		return new OutputSpools(null, 0, 0, 0);
+	}
+
+	/**
+	 * Returns the writer results should be sent to: the spool of the given
+	 * writer, or the writer itself if spooling is disabled or if its spool
+	 * could not be created.
+	 */
+	@Nonnull
+	public synchronized OutputWriter spooled(@Nonnull OutputWriter writer) {
+		if (directory == null) return writer;
+
+		Spool spool = spools.get(writer);
+		if (spool != null) return spool.writer;
+
+		File spoolDirectory = new File(directory, nextSpool++ + "-" + writer.getClass().getSimpleName());
+		try {
+			int segmentSize = Ints.saturatedCast(Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, maxBytes / SEGMENTS)));
+			SegmentLog segmentLog = new SegmentLog(spoolDirectory, segmentSize, Math.max(maxBytes, segmentSize), maxAgeMillis);
+			spool = new Spool(new SpoolingOutputWriter<>(writer, segmentLog));
+		} catch (IOException | IllegalArgumentException e) {
+			log.error("Could not create spool in {} for {}, writing without spool", spoolDirectory, writer, e);
+			return writer;
+		}
+		spool.replay = replayExecutor().scheduleWithFixedDelay(
+				spool, REPLAY_PERIOD_MILLIS, REPLAY_PERIOD_MILLIS, MILLISECONDS);
+		spools.put(writer, spool);
+		return spool.writer;
+	}
+
+	/**
+	 * Stops replaying to the given writers and discards their spooled results.
+	 * Once this returns, no spooled results are written to them anymore.
+	 */
+	public synchronized void release(@Nonnull Iterable<OutputWriter> writers) {
+		for (OutputWriter writer : writers) {
+			Spool spool = spools.remove(writer);
+			if (spool == null) continue;
+			if (spool.writer.getSpooledBatches() > 0) {
+				log.warn("Discarding {} spooled batches of results for {}", spool.writer.getSpooledBatches(), writer);
+			}
+			spool.replay.cancel(false);
+			spool.writer.close();
+		}
+	}
+
+	private static void clear(File directory) {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		for (File file : files) {
+			deleteRecursively(file);
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		if (!file.delete()) log.warn("Could not delete stale spool file {}", file);
+	}
+
+	private ScheduledExecutorService replayExecutor() {
+		if (replayExecutor == null) {
+			replayExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("jmxtrans-spool-replay-%d")
+					.build());
+		}
+		return replayExecutor;
+	}
+
+	private final class Spool implements Runnable {
+		@Nonnull private final SpoolingOutputWriter<OutputWriter> writer;
+		private ScheduledFuture<?> replay;
+
+		Spool(@Nonnull SpoolingOutputWriter<OutputWriter> writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void run() {
+			try {
+				writer.replay(System.currentTimeMillis(), batchesPerReplay);
+			} catch (RuntimeException e) {
+				log.error("Could not replay spooled results to {}", writer.getTarget(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.googlecode.jmxtrans.cli.JmxTransConfiguration;
+
+import javax.annotation.Nonnull;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Creates the {@link OutputSpools} from the configuration, once.
+ */
+@Singleton
+public class OutputSpoolsProvider implements Provider<OutputSpools> {
+
+	@Nonnull private final JmxTransConfiguration configuration;
+	private OutputSpools outputSpools;
+
+	@Inject
+	public OutputSpoolsProvider(@Nonnull JmxTransConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	@Override
+	public synchronized OutputSpools get() {
+		if (outputSpools == null) {
+			outputSpools = new OutputSpools(
+					configuration.getSpoolDirectory(),
+					configuration.getSpoolMaxSizeMb() * 1024L * 1024L,
+					SECONDS.toMillis(configuration.getSpoolMaxAgeSeconds()),
+					configuration.getSpoolReplayRate());
+		}
+		return outputSpools;
+	}
+}
@@ -22,39 +22,74 @@
  */
 package com.googlecode.jmxtrans.jmx;
 
+import com.googlecode.jmxtrans.connections.CircuitBreakerOpenException;
 import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.QueryGroup;
 import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.ResultSink;
 import com.googlecode.jmxtrans.model.Server;
 import lombok.ToString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ExecutorService;
 
 @ThreadSafe
-@ToString(exclude = {"resultProcessor"})
+@ToString(exclude = {"resultProcessor", "queryExecutor"})
 public class ProcessQueryThread implements Runnable {
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	@Nonnull private final Server server;
-	@Nonnull private final Query query;
+	@Nonnull private final QueryGroup queryGroup;
 	@Nonnull private final ResultProcessor resultProcessor;
+	/** Timestamp of the collection cycle, given to all the results. */
+	private final long epoch;
+	/** Runs the queries of servers with a query timeout, so that they can be abandoned. */
+	@Nullable private final ExecutorService queryExecutor;
+	/** Number of MBeans whose results are submitted together, 0 to submit them once all are fetched. */
+	private final int chunkSize;
 
 	public ProcessQueryThread(@Nonnull ResultProcessor resultProcessor, @Nonnull Server server, @Nonnull Query query) {
+		this(resultProcessor, server, QueryGroup.of(query), System.currentTimeMillis(), null, 0);
+	}
+
+	public ProcessQueryThread(
+			@Nonnull ResultProcessor resultProcessor,
+			@Nonnull Server server,
+			@Nonnull QueryGroup queryGroup,
+			long epoch,
+			@Nullable ExecutorService queryExecutor,
+			int chunkSize) {
 		this.resultProcessor = resultProcessor;
 		this.server = server;
-		this.query = query;
+		this.queryGroup = queryGroup;
+		this.epoch = epoch;
+		this.queryExecutor = queryExecutor;
+		this.chunkSize = chunkSize;
 	}
 
 	@Override
 	public void run() {
+		ResultSink sink = new ResultSink() {
+			@Override
+			public void accept(@Nonnull Query query, @Nonnull Iterable<Result> results) {
+				resultProcessor.submit(server, query, results);
+			}
+		};
 		try {
-			Iterable<Result> results = server.execute(query);
-			resultProcessor.submit(server, query, results);
+			if (queryExecutor == null) {
+				server.execute(queryGroup, epoch, chunkSize, sink);
+			} else {
+				server.execute(queryGroup, epoch, chunkSize, sink, queryExecutor);
+			}
+		} catch (CircuitBreakerOpenException e) {
+			log.debug("Skipping queries {} on server {}: {}", queryGroup.getQueries(), server, e.getMessage());
 		} catch (Exception e) {
-			log.error("Error executing query {} on server {}", query, server, e);
+			log.error("Error executing queries {} on server {}", queryGroup.getQueries(), server, e);
 			throw new RuntimeException(e);
 		}
 	}
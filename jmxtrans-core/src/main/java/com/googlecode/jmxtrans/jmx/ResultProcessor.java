@@ -22,8 +22,14 @@
  */
 package com.googlecode.jmxtrans.jmx;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.googlecode.jmxtrans.model.MetricPoint;
+import com.googlecode.jmxtrans.model.MetricPointWriter;
+import com.googlecode.jmxtrans.model.MetricPoints;
 import com.googlecode.jmxtrans.model.OutputWriter;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
@@ -42,20 +48,37 @@ public class ResultProcessor {
 	private final Logger logger = LoggerFactory.getLogger(ResultProcessor.class);
 
 	@Nonnull private final ThreadPoolExecutor executorService;
+	@Nonnull private final OutputSpools outputSpools;
 
 	@Inject
-	public ResultProcessor(@Named("resultProcessorExecutor") @Nonnull ThreadPoolExecutor executorService) {
+	public ResultProcessor(
+			@Named("resultProcessorExecutor") @Nonnull ThreadPoolExecutor executorService,
+			@Nonnull OutputSpools outputSpools) {
 		this.executorService = executorService;
+		this.outputSpools = outputSpools;
 	}
 
 	public void submit(@Nonnull final Server server, @Nonnull final Query query, @Nonnull final Iterable<Result> results) {
-		for (final OutputWriter writer : concat(query.getOutputWriterInstances(), server.getOutputWriters())) {
+		// results built as points are handed as they are, others are converted at most once
+		final Supplier<ImmutableList<MetricPoint>> points = Suppliers.memoize(new Supplier<ImmutableList<MetricPoint>>() {
+			@Override
+			public ImmutableList<MetricPoint> get() {
+				return MetricPoints.fromResults(results);
+			}
+		});
+		for (final OutputWriter outputWriter : concat(query.getOutputWriterInstances(), server.getOutputWriters())) {
+			final OutputWriter writer = outputSpools.spooled(outputWriter);
 			try {
 				executorService.submit(new Runnable() {
 					@Override
 					public void run() {
 						try {
-							writer.doWrite(server, query, results);
+							// the spool forwards points, checking the writer it wraps keeps the point path
+							if (outputWriter instanceof MetricPointWriter) {
+								((MetricPointWriter) writer).writePoints(server, query, points.get());
+							} else {
+								writer.doWrite(server, query, results);
+							}
 						} catch (Exception e) {
 							logger.warn("Could not write results {} of query {} to output writer {}", results, query, writer, e);
 						}
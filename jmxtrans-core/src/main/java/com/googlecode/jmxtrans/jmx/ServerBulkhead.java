@@ -0,0 +1,363 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.CycleOverrunPolicy;
+import com.googlecode.jmxtrans.monitoring.ServerBulkheadMXBean;
+import lombok.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.ObjectName;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of queries of a single server running at the same time
+ * on the shared query executor, so that a slow server cannot use all of its
+ * threads and starve the other servers.
+ * <p/>
+ * Queries over the limit wait in a bounded queue owned by this bulkhead and
+ * are handed to the shared executor as running queries complete. Queries
+ * that do not fit in the queue are rejected.
+ * <p/>
+ * Queries are usually submitted as collection cycles (all the queries of the
+ * server for one trigger). Only one cycle runs at a time, a cycle triggered
+ * while the previous one is still running is handled according to the
+ * {@link CycleOverrunPolicy}, and counted as missed if it is dropped.
+ * <p/>
+ * As with {@link ExecutorService#submit(Runnable)}, exceptions thrown by the
+ * queries are not propagated, queries are expected to report their own errors.
+ */
+@ThreadSafe
+@ToString(of = {"objectName", "maxConcurrentQueries", "queueCapacity", "overrunPolicy"})
+public class ServerBulkhead implements Executor, ServerBulkheadMXBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ServerBulkhead.class);
+
+	@Nonnull private final ExecutorService executor;
+	private final int maxConcurrentQueries;
+	private final int queueCapacity;
+	@Nonnull private final CycleOverrunPolicy overrunPolicy;
+	private final int maxQueuedCycles;
+	@Nonnull private final ObjectName objectName;
+
+	@GuardedBy("this") private final Queue<BulkheadTask> queue = new ArrayDeque<>();
+	@GuardedBy("this") private int inFlight = 0;
+	@GuardedBy("this") private final Deque<Cycle> pendingCycles = new ArrayDeque<>();
+	@GuardedBy("this") private boolean cycleInFlight = false;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong completedCycles = new AtomicLong();
+	private final AtomicLong missedCycles = new AtomicLong();
+
+	/**
+	 * @param maxConcurrentQueries the number of queries allowed to run at the
+	 *                             same time, unlimited if not positive.
+	 * @param maxQueuedCycles      the number of cycles allowed to wait, only
+	 *                             used with {@link CycleOverrunPolicy#QUEUE}.
+	 */
+	public ServerBulkhead(
+			@Nonnull ExecutorService executor,
+			int maxConcurrentQueries,
+			int queueCapacity,
+			@Nonnull CycleOverrunPolicy overrunPolicy,
+			int maxQueuedCycles,
+			@Nonnull ObjectName objectName) {
+		this.executor = executor;
+		this.maxConcurrentQueries = maxConcurrentQueries > 0 ? maxConcurrentQueries : Integer.MAX_VALUE;
+		this.queueCapacity = queueCapacity;
+		this.overrunPolicy = overrunPolicy;
+		this.maxQueuedCycles = maxQueuedCycles;
+		this.objectName = objectName;
+	}
+
+	/**
+	 * Runs all the queries of a collection cycle, unless the previous cycle is
+	 * still running.
+	 */
+	public void executeCycle(@Nonnull Iterable<? extends Runnable> queries) {
+		Cycle cycle = new Cycle(ImmutableList.copyOf(queries));
+		synchronized (this) {
+			if (cycleInFlight) {
+				overrun(cycle);
+				return;
+			}
+			cycleInFlight = true;
+		}
+		cycle.start();
+	}
+
+	@GuardedBy("this")
+	private void overrun(@Nonnull Cycle cycle) {
+		switch (overrunPolicy) {
+			case COALESCE:
+				if (!pendingCycles.isEmpty()) {
+					pendingCycles.clear();
+					missedCycle();
+				}
+				pendingCycles.add(cycle);
+				break;
+			case QUEUE:
+				if (pendingCycles.size() >= maxQueuedCycles) {
+					missedCycle();
+				} else {
+					pendingCycles.add(cycle);
+				}
+				break;
+			default:
+				missedCycle();
+		}
+	}
+
+	private void missedCycle() {
+		long missed = missedCycles.incrementAndGet();
+		log.warn("Previous collection cycle of {} is still running, missed {} cycles so far", objectName, missed);
+	}
+
+	private void onCycleCompletion() {
+		completedCycles.incrementAndGet();
+		Cycle next;
+		synchronized (this) {
+			next = pendingCycles.poll();
+			if (next == null) {
+				cycleInFlight = false;
+				return;
+			}
+		}
+		next.start();
+	}
+
+	@Override
+	public void execute(@Nonnull Runnable command) {
+		BulkheadTask task = new BulkheadTask(command);
+		synchronized (this) {
+			if (inFlight >= maxConcurrentQueries) {
+				if (queue.size() >= queueCapacity) {
+					rejected.incrementAndGet();
+					throw new RejectedExecutionException("Too many queries waiting for " + objectName);
+				}
+				queue.add(task);
+				submitted.incrementAndGet();
+				return;
+			}
+			inFlight++;
+		}
+		try {
+			executor.submit(task);
+			submitted.incrementAndGet();
+		} catch (RejectedExecutionException ree) {
+			synchronized (this) {
+				inFlight--;
+			}
+			rejected.incrementAndGet();
+			throw ree;
+		}
+	}
+
+	/**
+	 * Hands the next queued query over to the shared executor, reusing the slot
+	 * of the query that just completed.
+	 */
+	private void onCompletion() {
+		completed.incrementAndGet();
+		while (true) {
+			BulkheadTask next;
+			synchronized (this) {
+				next = queue.poll();
+				if (next == null) {
+					inFlight--;
+					return;
+				}
+			}
+			try {
+				executor.submit(next);
+				return;
+			} catch (RejectedExecutionException ree) {
+				// the shared executor is full, drop this query and try the next one
+				rejected.incrementAndGet();
+				log.error("Could not submit query {}. You could try to size the 'queryProcessorExecutor' to a larger size.", next, ree);
+				next.abandon();
+			}
+		}
+	}
+
+	@Override
+	public int getMaxConcurrentQueries() {
+		return maxConcurrentQueries;
+	}
+
+	@Override
+	public synchronized int getInFlightCount() {
+		return inFlight;
+	}
+
+	@Override
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	@Override
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	@Override
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public String getCycleOverrunPolicy() {
+		return overrunPolicy.name();
+	}
+
+	@Override
+	public synchronized boolean isCycleInFlight() {
+		return cycleInFlight;
+	}
+
+	@Override
+	public synchronized int getQueuedCycleCount() {
+		return pendingCycles.size();
+	}
+
+	@Override
+	public long getCompletedCycleCount() {
+		return completedCycles.get();
+	}
+
+	@Override
+	public long getMissedCycleCount() {
+		return missedCycles.get();
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@ToString(of = "command")
+	private final class BulkheadTask implements Runnable {
+		@Nonnull private final Runnable command;
+
+		private BulkheadTask(@Nonnull Runnable command) {
+			this.command = command;
+		}
+
+		@Override
+		public void run() {
+			try {
+				command.run();
+			} finally {
+				onCompletion();
+			}
+		}
+
+		/** The task will never run. */
+		private void abandon() {
+			if (command instanceof CycleQuery) ((CycleQuery) command).done();
+		}
+	}
+
+	/**
+	 * The queries of one trigger of the server. The cycle completes when all
+	 * of its queries completed, or were rejected.
+	 */
+	private final class Cycle {
+		@Nonnull private final ImmutableList<Runnable> queries;
+		@Nonnull private final AtomicInteger remaining;
+
+		private Cycle(@Nonnull ImmutableList<Runnable> queries) {
+			this.queries = queries;
+			this.remaining = new AtomicInteger(queries.size());
+		}
+
+		private void start() {
+			if (queries.isEmpty()) {
+				onCycleCompletion();
+				return;
+			}
+			for (Runnable query : queries) {
+				CycleQuery cycleQuery = new CycleQuery(this, query);
+				try {
+					execute(cycleQuery);
+				} catch (RejectedExecutionException ree) {
+					log.error("Could not submit query {}. You could try to size the 'queryProcessorExecutor' to a larger size, " +
+							"or increase the number of queued queries allowed per server.", query, ree);
+					cycleQuery.done();
+				}
+			}
+		}
+
+		private void queryDone() {
+			if (remaining.decrementAndGet() == 0) onCycleCompletion();
+		}
+	}
+
+	@ToString(of = "query")
+	private static final class CycleQuery implements Runnable {
+		@Nonnull private final Cycle cycle;
+		@Nonnull private final Runnable query;
+
+		private CycleQuery(@Nonnull Cycle cycle, @Nonnull Runnable query) {
+			this.cycle = cycle;
+			this.query = query;
+		}
+
+		@Override
+		public void run() {
+			try {
+				query.run();
+			} finally {
+				done();
+			}
+		}
+
+		private void done() {
+			cycle.queryDone();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.ProvidedBy;
+import com.googlecode.jmxtrans.model.CycleOverrunPolicy;
+import com.googlecode.jmxtrans.model.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds one {@link ServerBulkhead} per server, all sharing the query
+ * processor executor. The concurrency of each server is limited by its
+ * numQueryThreads (no limit if not set), and overlapping collection cycles
+ * are handled according to the configured {@link CycleOverrunPolicy}.
+ * <p/>
+ * Each bulkhead is registered as an MBean under
+ * com.googlecode.jmxtrans:Type=ServerBulkhead,Server=...,Id=... The id tells
+ * apart the servers configured several times for the same JVM.
+ */
+@ThreadSafe
+@ProvidedBy(ServerBulkheadsProvider.class)
+public class ServerBulkheads {
+
+	private static final Logger log = LoggerFactory.getLogger(ServerBulkheads.class);
+
+	@Nonnull private final ExecutorService executor;
+	private final int queueCapacity;
+	@Nonnull private final CycleOverrunPolicy overrunPolicy;
+	private final int maxQueuedCycles;
+	@Nonnull private final MBeanServer mbeanServer;
+	@Nonnull private final ConcurrentMap<Server, ServerBulkhead> bulkheads = new ConcurrentHashMap<>();
+	@Nonnull private final AtomicInteger ids = new AtomicInteger();
+	@Nonnull private final Set<ObjectName> registered = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName, Boolean>());
+
+	public ServerBulkheads(
+			@Nonnull ExecutorService executor,
+			int queueCapacity,
+			@Nonnull CycleOverrunPolicy overrunPolicy,
+			int maxQueuedCycles,
+			@Nonnull MBeanServer mbeanServer) {
+		this.executor = executor;
+		this.queueCapacity = queueCapacity;
+		this.overrunPolicy = overrunPolicy;
+		this.maxQueuedCycles = maxQueuedCycles;
+		this.mbeanServer = mbeanServer;
+	}
+
+	@Nonnull
+	public ServerBulkhead forServer(@Nonnull Server server) throws MalformedObjectNameException {
+		ServerBulkhead bulkhead = bulkheads.get(server);
+		if (bulkhead != null) return bulkhead;
+
+		ServerBulkhead created = new ServerBulkhead(
+				executor, server.getNumQueryThreads(), queueCapacity, overrunPolicy, maxQueuedCycles, objectName(server));
+		bulkhead = bulkheads.putIfAbsent(server, created);
+		if (bulkhead != null) return bulkhead;
+
+		register(created);
+		return created;
+	}
+
+	/**
+	 * Drops the bulkheads of the servers that are not part of the given list anymore.
+	 */
+	public void retain(@Nonnull Iterable<Server> servers) {
+		ImmutableSet<Server> retained = ImmutableSet.copyOf(servers);
+		for (Map.Entry<Server, ServerBulkhead> entry : bulkheads.entrySet()) {
+			if (!retained.contains(entry.getKey()) && bulkheads.remove(entry.getKey(), entry.getValue())) {
+				unregister(entry.getValue());
+			}
+		}
+	}
+
+	private void register(@Nonnull ServerBulkhead bulkhead) {
+		try {
+			mbeanServer.registerMBean(bulkhead, bulkhead.getObjectName());
+			registered.add(bulkhead.getObjectName());
+		} catch (JMException e) {
+			log.warn("Could not register bulkhead MBean {}", bulkhead.getObjectName(), e);
+		}
+	}
+
+	private void unregister(@Nonnull ServerBulkhead bulkhead) {
+		// never unregister an MBean registered by someone else under the same name
+		if (!registered.remove(bulkhead.getObjectName())) return;
+		try {
+			mbeanServer.unregisterMBean(bulkhead.getObjectName());
+		} catch (JMException e) {
+			log.warn("Could not unregister bulkhead MBean {}", bulkhead.getObjectName(), e);
+		}
+	}
+
+	@Nonnull
+	private ObjectName objectName(@Nonnull Server server) throws MalformedObjectNameException {
+		String target = server.getPort() == null ? server.getSource() : server.getSource() + ":" + server.getPort();
+		return new ObjectName("com.googlecode.jmxtrans:Type=ServerBulkhead,Server=" + ObjectName.quote(String.valueOf(target))
+				+ ",Id=" + ids.incrementAndGet());
+	}
+}
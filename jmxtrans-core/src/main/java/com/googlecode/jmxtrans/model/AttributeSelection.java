@@ -0,0 +1,185 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the attributes to fetch from an MBean when a query does not list
+ * them explicitly.
+ *
+ * Attributes can be restricted to the ones declared with a numeric or boolean
+ * type, and to the ones whose name matches include and exclude globs
+ * (<code>*</code> and <code>?</code> wildcards). The selection only depends on
+ * the names and types of the attributes of an MBean, so it is resolved once
+ * per distinct set of attributes, however many MBeans share it.
+ */
+@ThreadSafe
+public class AttributeSelection {
+
+	private static final int MAX_CACHED_SELECTIONS = 1000;
+
+	private static final ImmutableSet<String> NUMERIC_TYPES = ImmutableSet.of(
+			"byte", "short", "int", "long", "float", "double", "boolean",
+			Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+			Float.class.getName(), Double.class.getName(), Boolean.class.getName(), Number.class.getName(),
+			"java.math.BigInteger", "java.math.BigDecimal",
+			"java.util.concurrent.atomic.AtomicInteger", "java.util.concurrent.atomic.AtomicLong");
+
+	private final boolean numericOnly;
+	@Nonnull private final ImmutableList<Pattern> includes;
+	@Nonnull private final ImmutableList<Pattern> excludes;
+	@Nonnull private final Cache<Signature, ImmutableList<String>> selections = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHED_SELECTIONS)
+			.build();
+
+	public AttributeSelection(boolean numericOnly, @Nonnull List<String> includes, @Nonnull List<String> excludes) {
+		this.numericOnly = numericOnly;
+		this.includes = toPatterns(includes);
+		this.excludes = toPatterns(excludes);
+	}
+
+	/**
+	 * @return true if all the attributes of an MBean are selected.
+	 */
+	public boolean selectsAll() {
+		return !numericOnly && includes.isEmpty() && excludes.isEmpty();
+	}
+
+	@Nonnull
+	public List<String> select(@Nonnull MBeanInfo info) {
+		MBeanAttributeInfo[] attributes = info.getAttributes();
+		Signature signature = new Signature(attributes);
+		ImmutableList<String> selection = selections.getIfPresent(signature);
+		if (selection == null) {
+			selection = resolve(attributes);
+			selections.put(signature, selection);
+		}
+		return selection;
+	}
+
+	private ImmutableList<String> resolve(MBeanAttributeInfo[] attributes) {
+		ImmutableList.Builder<String> names = ImmutableList.builder();
+		for (MBeanAttributeInfo attribute : attributes) {
+			if (isSelected(attribute)) {
+				names.add(attribute.getName());
+			}
+		}
+		return names.build();
+	}
+
+	private boolean isSelected(MBeanAttributeInfo attribute) {
+		if (numericOnly && !(attribute.isReadable() && NUMERIC_TYPES.contains(attribute.getType()))) {
+			return false;
+		}
+		if (!includes.isEmpty() && !matchesAny(includes, attribute.getName())) {
+			return false;
+		}
+		return !matchesAny(excludes, attribute.getName());
+	}
+
+	private static boolean matchesAny(List<Pattern> patterns, String name) {
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(name).matches()) return true;
+		}
+		return false;
+	}
+
+	private static ImmutableList<Pattern> toPatterns(List<String> globs) {
+		ImmutableList.Builder<Pattern> patterns = ImmutableList.builder();
+		for (String glob : globs) {
+			patterns.add(toPattern(glob));
+		}
+		return patterns.build();
+	}
+
+	private static Pattern toPattern(String glob) {
+		StringBuilder regex = new StringBuilder();
+		int literalStart = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (i > literalStart) {
+					regex.append(Pattern.quote(glob.substring(literalStart, i)));
+				}
+				regex.append(c == '*' ? ".*" : ".");
+				literalStart = i + 1;
+			}
+		}
+		if (glob.length() > literalStart) {
+			regex.append(Pattern.quote(glob.substring(literalStart)));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * What the selection of attributes depends on: their names, types and
+	 * readability.
+	 */
+	@Immutable
+	private static final class Signature {
+		private final String[] names;
+		private final String[] types;
+		private final boolean[] readable;
+		private final int hashCode;
+
+		private Signature(MBeanAttributeInfo[] attributes) {
+			names = new String[attributes.length];
+			types = new String[attributes.length];
+			readable = new boolean[attributes.length];
+			for (int i = 0; i < attributes.length; i++) {
+				names[i] = attributes[i].getName();
+				types[i] = attributes[i].getType();
+				readable[i] = attributes[i].isReadable();
+			}
+			hashCode = 31 * (31 * Arrays.hashCode(names) + Arrays.hashCode(types)) + Arrays.hashCode(readable);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Signature)) return false;
+			Signature that = (Signature) o;
+			return Arrays.equals(names, that.names)
+					&& Arrays.equals(types, that.types)
+					&& Arrays.equals(readable, that.readable);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
@@ -23,7 +23,7 @@
 package com.googlecode.jmxtrans.model;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import javax.management.Attribute;
 import javax.management.ObjectInstance;
@@ -40,6 +40,8 @@ import java.util.Set;
 
 import static com.google.common.collect.ImmutableList.Builder;
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static org.apache.commons.lang.math.NumberUtils.isNumber;
 
 public class JmxResultProcessor {
 
@@ -48,27 +50,70 @@ public class JmxResultProcessor {
 	private final String className;
 	private final String objDomain;
 	private final List<Attribute> attributes;
+	/** Keys of composite, tabular, map and array values to keep, all of them if empty. */
+	private final ImmutableSet<String> keys;
+	private final boolean numericOnly;
+	/** Timestamp of all the results, so that a collection cycle is reported at a single point in time. */
+	private final long epoch;
 
 	public JmxResultProcessor(Query query, ObjectInstance objectInstance, List<Attribute> attributes, String className, String objDomain) {
+		this(query, objectInstance, attributes, className, objDomain, System.currentTimeMillis());
+	}
+
+	public JmxResultProcessor(Query query, ObjectInstance objectInstance, List<Attribute> attributes, String className, String objDomain, long epoch) {
 		this.query = query;
 		this.objectInstance = objectInstance;
 		this.className = className;
 		this.objDomain = objDomain;
 		this.attributes = attributes;
+		this.keys = ImmutableSet.copyOf(query.getKeys());
+		this.numericOnly = query.isNumericOnly();
+		this.epoch = epoch;
 	}
 
 	public ImmutableList<Result> getResults() {
-		Builder<Result> accumulator = ImmutableList.builder();
+		final Builder<Result> results = ImmutableList.builder();
+		Accumulator accumulator = new Accumulator() {
+			@Override
+			public void add(String attributeName, Map<String, Object> values) {
+				results.add(getNewResultObject(attributeName, values));
+			}
+		};
+		for (Attribute attribute : attributes) {
+			getResult(accumulator, attribute);
+		}
+		return results.build();
+	}
+
+	/**
+	 * Builds the numeric values straight as points, without the intermediate
+	 * results. Other values are skipped.
+	 */
+	public MetricPoints getPoints() {
+		final Builder<MetricPoint> points = ImmutableList.builder();
+		final String typeName = objectInstance.getObjectName().getKeyPropertyListString();
+		Accumulator accumulator = new Accumulator() {
+			@Override
+			public void add(String attributeName, Map<String, Object> values) {
+				for (Map.Entry<String, Object> value : values.entrySet()) {
+					if (value.getValue() instanceof Number) {
+						MetricIdentity identity = MetricIdentity.of(
+								attributeName, className, objDomain, typeName, query.getResultAlias(), value.getKey());
+						points.add(MetricPoint.of(identity, epoch, (Number) value.getValue()));
+					}
+				}
+			}
+		};
 		for (Attribute attribute : attributes) {
 			getResult(accumulator, attribute);
 		}
-		return accumulator.build();
+		return MetricPoints.of(points.build());
 	}
 
 	/**
 	 * Used when the object is effectively a java type
 	 */
-	private void getResult(Builder<Result> accumulator, Attribute attribute) {
+	private void getResult(Accumulator accumulator, Attribute attribute) {
 		Object value = attribute.getValue();
 		if (value == null) {
 			return;
@@ -83,75 +128,81 @@ public class JmxResultProcessor {
 		} else if (value instanceof ObjectName[]) {
 			Map<String, Object> values = newHashMap();
 			for (ObjectName obj : (ObjectName[]) value) {
-				values.put(obj.getCanonicalName(), obj.getKeyPropertyListString());
+				if (isKept(obj.getCanonicalName())) {
+					putValue(values, obj.getCanonicalName(), obj.getKeyPropertyListString());
+				}
 			}
-			Result r = getNewResultObject(attribute.getName(), values);
-			accumulator.add(r);
+			addResult(accumulator, attribute.getName(), values);
 		} else if (value.getClass().isArray()) {
 			// OMFG: this is nutty. some of the items in the array can be
 			// primitive! great interview question!
 			Map<String, Object> values = newHashMap();
 			for (int i = 0; i < Array.getLength(value); i++) {
-				Object val = Array.get(value, i);
-				values.put(attribute.getName() + "." + i, val);
+				String key = attribute.getName() + "." + i;
+				if (isKept(key)) {
+					putValue(values, key, Array.get(value, i));
+				}
 			}
-			accumulator.add(getNewResultObject(attribute.getName(), values));
+			addResult(accumulator, attribute.getName(), values);
 		} else if (value instanceof TabularDataSupport) {
 			TabularDataSupport tds = (TabularDataSupport) value;
 			Map<String, Object> values = Collections.emptyMap();
-			Result r = getNewResultObject(attribute.getName(), values);
 			processTabularDataSupport(accumulator, attribute.getName(), tds);
-			accumulator.add(r);
+			addResult(accumulator, attribute.getName(), values);
 		}  else if (value instanceof Map) {
-			Result r = getNewResultObject(attribute.getName(), convertKeysToString((Map<Object, Object>) value));
-			accumulator.add(r);
-		} else {
+			addResult(accumulator, attribute.getName(), convertKeysToString((Map<Object, Object>) value));
+		} else if (!numericOnly || isNumeric(value)) {
 			Map<String, Object> values = newHashMap();
 			values.put(attribute.getName(), value);
-			Result r = getNewResultObject(attribute.getName(), values);
-			accumulator.add(r);
+			addResult(accumulator, attribute.getName(), values);
 		}
 	}
 
-	private <K, V> ImmutableMap<String, V> convertKeysToString(Map<K, V> value) {
-		ImmutableMap.Builder<String, V> values = ImmutableMap.builder();
+	private <K, V> Map<String, Object> convertKeysToString(Map<K, V> value) {
+		Map<String, Object> values = newLinkedHashMap();
 		for (Map.Entry<K, V> entry : value.entrySet()) {
-			values.put(entry.getKey().toString(), entry.getValue());
+			String key = entry.getKey().toString();
+			if (isKept(key)) {
+				putValue(values, key, entry.getValue());
+			}
 		}
-		return values.build();
+		return values;
 	}
 
 	/**
 	 * Populates the Result objects. This is a recursive function. Query
 	 * contains the keys that we want to get the values of.
 	 */
-	private void getResult(Builder<Result> accumulator, String attributeName, CompositeData cds) {
+	private void getResult(Accumulator accumulator, String attributeName, CompositeData cds) {
 		CompositeType t = cds.getCompositeType();
 
 		Map<String, Object> values = newHashMap();
 
-		Set<String> keys = t.keySet();
-		for (String key : keys) {
+		Set<String> compositeKeys = t.keySet();
+		for (String key : compositeKeys) {
+			// filter before getting the value, so that skipped tabular data is never walked
+			if (!isKept(key)) {
+				continue;
+			}
 			Object value = cds.get(key);
 			if (value instanceof TabularDataSupport) {
 				TabularDataSupport tds = (TabularDataSupport) value;
 				processTabularDataSupport(accumulator, attributeName + "." + key, tds);
-				values.put(key, value);
+				putValue(values, key, value);
 			} else if (value instanceof CompositeDataSupport) {
 				// now recursively go through everything.
 				CompositeDataSupport cds2 = (CompositeDataSupport) value;
 				getResult(accumulator, attributeName, cds2);
 				return; // because we don't want to add to the list yet.
 			} else {
-				values.put(key, value);
+				putValue(values, key, value);
 			}
 		}
-		Result r = getNewResultObject(attributeName, values);
-		accumulator.add(r);
+		addResult(accumulator, attributeName, values);
 	}
 
 	private void processTabularDataSupport(
-			Builder<Result> accumulator, String attributeName,
+			Accumulator accumulator, String attributeName,
 			TabularDataSupport tds) {
 		Set<Map.Entry<Object, Object>> entries = tds.entrySet();
 		for (Map.Entry<Object, Object> entry : entries) {
@@ -180,10 +231,43 @@ public class JmxResultProcessor {
 		}
 	}
 
+	private boolean isKept(String key) {
+		return keys.isEmpty() || keys.contains(key);
+	}
+
+	private void putValue(Map<String, Object> values, String key, Object value) {
+		if (numericOnly && !isNumeric(value)) {
+			return;
+		}
+		values.put(key, value);
+	}
+
+	private void addResult(Accumulator accumulator, String attributeName, Map<String, Object> values) {
+		// with numericOnly, attributes with nothing left to write don't produce results
+		if (numericOnly && values.isEmpty()) {
+			return;
+		}
+		accumulator.add(attributeName, values);
+	}
+
+	/**
+	 * Numbers, numeric strings and booleans, which writers can convert to
+	 * numbers.
+	 */
+	private static boolean isNumeric(Object value) {
+		if (value instanceof Number || value instanceof Boolean) return true;
+		return value instanceof String && isNumber((String) value);
+	}
+
+	/** Receives the values of each attribute once they are flattened. */
+	private interface Accumulator {
+		void add(String attributeName, Map<String, Object> values);
+	}
+
 	/**
 	 * Builds up the base Result object
 	 */
 	private Result getNewResultObject(String attributeName, Map<String, Object> values) {
-		return new Result(System.currentTimeMillis(), attributeName, className, objDomain, query.getResultAlias(), objectInstance.getObjectName().getKeyPropertyListString(), values);
+		return new Result(epoch, attributeName, className, objDomain, query.getResultAlias(), objectInstance.getObjectName().getKeyPropertyListString(), values);
 	}
 }
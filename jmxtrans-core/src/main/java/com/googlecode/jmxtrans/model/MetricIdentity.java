@@ -0,0 +1,97 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Identifies a single metric: the attribute of an MBean plus the key of the
+ * value inside that attribute.
+ *
+ * Identities are interned, so that the same metric collected at every run
+ * resolves to a single shared instance and can be compared by reference.
+ */
+@ThreadSafe
+@Immutable
+@EqualsAndHashCode
+@ToString
+public final class MetricIdentity {
+
+	private static final Interner<MetricIdentity> INTERNER = Interners.newWeakInterner();
+
+	@Getter private final String attributeName;
+	@Getter private final String className;
+	@Getter private final String objDomain;
+	@Getter private final String typeName;
+	@Getter private final String keyAlias;
+	@Nonnull @Getter private final String valueKey;
+
+	private MetricIdentity(
+			String attributeName, String className, String objDomain, String typeName, String keyAlias,
+			@Nonnull String valueKey) {
+		this.attributeName = attributeName;
+		this.className = className;
+		this.objDomain = objDomain;
+		this.typeName = typeName;
+		this.keyAlias = keyAlias;
+		this.valueKey = valueKey;
+	}
+
+	@Nonnull
+	public static MetricIdentity of(
+			@Nullable String attributeName, @Nullable String className, @Nullable String objDomain,
+			@Nullable String typeName, @Nullable String keyAlias, @Nonnull String valueKey) {
+		return INTERNER.intern(new MetricIdentity(attributeName, className, objDomain, typeName, keyAlias, valueKey));
+	}
+
+	@Nonnull
+	public static MetricIdentity of(@Nonnull Result result, @Nonnull String valueKey) {
+		return of(result.getAttributeName(), result.getClassName(), result.getObjDomain(),
+				result.getTypeName(), result.getKeyAlias(), valueKey);
+	}
+
+	/**
+	 * @return true if both identities come from the same attribute of the same
+	 * MBean, whatever their value key.
+	 */
+	public boolean isSameAttribute(@Nonnull MetricIdentity other) {
+		return equal(attributeName, other.attributeName)
+				&& equal(className, other.className)
+				&& equal(objDomain, other.objDomain)
+				&& equal(typeName, other.typeName)
+				&& equal(keyAlias, other.keyAlias);
+	}
+
+	private static boolean equal(@Nullable String a, @Nullable String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
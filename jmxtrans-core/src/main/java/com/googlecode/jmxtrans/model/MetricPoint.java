@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.ImmutableMap;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single numeric value of a metric at a point in time.
+ *
+ * This is a flat, primitive alternative to {@link Result}: the value is kept
+ * unboxed and the identity is shared with every other point of the same
+ * metric. Integral values keep their exact <code>long</code> value, other
+ * numbers are kept as <code>double</code>.
+ */
+@ThreadSafe
+@Immutable
+@EqualsAndHashCode
+@ToString
+public final class MetricPoint {
+
+	@Nonnull @Getter private final MetricIdentity identity;
+	@Getter private final long epoch;
+	@Getter private final boolean integral;
+	private final long longValue;
+	private final double doubleValue;
+
+	private MetricPoint(@Nonnull MetricIdentity identity, long epoch, boolean integral, long longValue, double doubleValue) {
+		this.identity = identity;
+		this.epoch = epoch;
+		this.integral = integral;
+		this.longValue = longValue;
+		this.doubleValue = doubleValue;
+	}
+
+	@Nonnull
+	public static MetricPoint of(@Nonnull MetricIdentity identity, long epoch, long value) {
+		return new MetricPoint(identity, epoch, true, value, value);
+	}
+
+	@Nonnull
+	public static MetricPoint of(@Nonnull MetricIdentity identity, long epoch, double value) {
+		return new MetricPoint(identity, epoch, false, (long) value, value);
+	}
+
+	/**
+	 * Unboxes a number collected from an MBean, keeping integral types exact.
+	 */
+	@Nonnull
+	public static MetricPoint of(@Nonnull MetricIdentity identity, long epoch, @Nonnull Number value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+				|| value instanceof AtomicLong || value instanceof AtomicInteger) {
+			return of(identity, epoch, value.longValue());
+		}
+		return of(identity, epoch, value.doubleValue());
+	}
+
+	public long getLongValue() {
+		return longValue;
+	}
+
+	public double getDoubleValue() {
+		return doubleValue;
+	}
+
+	/**
+	 * @return the value, boxed as a {@link Long} or a {@link Double}.
+	 */
+	@Nonnull
+	public Number getValue() {
+		if (integral) {
+			return longValue;
+		}
+		return doubleValue;
+	}
+
+	/**
+	 * Adapts this point to a {@link Result} holding this single value.
+	 */
+	@Nonnull
+	public Result toResult() {
+		return new Result(epoch, identity.getAttributeName(), identity.getClassName(), identity.getObjDomain(),
+				identity.getKeyAlias(), identity.getTypeName(), ImmutableMap.<String, Object>of(identity.getValueKey(), getValue()));
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Points of a query, seen as the {@link Result}s that writers which do not
+ * consume points expect.
+ *
+ * Queries whose writers all consume points hand their points around as
+ * instances of this class, so that they flow through the same paths as
+ * results. Results are only built, by regrouping consecutive points of the
+ * same attribute and epoch, when something iterates over them.
+ */
+@ThreadSafe
+@Immutable
+@EqualsAndHashCode
+@ToString
+public final class MetricPoints implements Iterable<Result> {
+
+	@Nonnull @Getter private final ImmutableList<MetricPoint> points;
+
+	private MetricPoints(@Nonnull ImmutableList<MetricPoint> points) {
+		this.points = points;
+	}
+
+	@Nonnull
+	public static MetricPoints of(@Nonnull Iterable<MetricPoint> points) {
+		return new MetricPoints(ImmutableList.copyOf(points));
+	}
+
+	/**
+	 * @return true if there is at least one writer, and all of them consume points.
+	 */
+	public static boolean areConsumedBy(@Nonnull Iterable<OutputWriter> writers) {
+		boolean any = false;
+		for (OutputWriter writer : writers) {
+			if (!(writer instanceof MetricPointWriter)) return false;
+			any = true;
+		}
+		return any;
+	}
+
+	/**
+	 * Returns the points of results built as points, or flattens results to
+	 * one point per numeric value. Values which are not numbers (strings,
+	 * booleans, ...) have no primitive representation and are skipped.
+	 */
+	@Nonnull
+	public static ImmutableList<MetricPoint> fromResults(@Nonnull Iterable<Result> results) {
+		if (results instanceof MetricPoints) return ((MetricPoints) results).points;
+
+		ImmutableList.Builder<MetricPoint> points = ImmutableList.builder();
+		for (Result result : results) {
+			for (Map.Entry<String, Object> value : result.getValues().entrySet()) {
+				if (!(value.getValue() instanceof Number)) {
+					continue;
+				}
+				MetricIdentity identity = MetricIdentity.of(result, value.getKey());
+				points.add(MetricPoint.of(identity, result.getEpoch(), (Number) value.getValue()));
+			}
+		}
+		return points.build();
+	}
+
+	/**
+	 * Joins the results of several MBeans, keeping them as points if they all
+	 * are.
+	 */
+	@Nonnull
+	public static Iterable<Result> concat(@Nonnull List<Iterable<Result>> parts) {
+		boolean allPoints = !parts.isEmpty();
+		for (Iterable<Result> part : parts) {
+			allPoints &= part instanceof MetricPoints;
+		}
+		if (!allPoints) return ImmutableList.copyOf(Iterables.concat(parts));
+
+		ImmutableList.Builder<MetricPoint> points = ImmutableList.builder();
+		for (Iterable<Result> part : parts) {
+			points.addAll(((MetricPoints) part).points);
+		}
+		return new MetricPoints(points.build());
+	}
+
+	@Override
+	public Iterator<Result> iterator() {
+		final Iterator<MetricPoint> iterator = points.iterator();
+		return new AbstractIterator<Result>() {
+			private MetricPoint next = iterator.hasNext() ? iterator.next() : null;
+
+			@Override
+			protected Result computeNext() {
+				if (next == null) return endOfData();
+
+				MetricPoint first = next;
+				Map<String, Object> values = new LinkedHashMap<>();
+				do {
+					values.put(next.getIdentity().getValueKey(), next.getValue());
+					next = iterator.hasNext() ? iterator.next() : null;
+				} while (next != null
+						&& next.getEpoch() == first.getEpoch()
+						&& next.getIdentity().isSameAttribute(first.getIdentity()));
+
+				MetricIdentity identity = first.getIdentity();
+				return new Result(first.getEpoch(), identity.getAttributeName(), identity.getClassName(),
+						identity.getObjDomain(), identity.getKeyAlias(), identity.getTypeName(), values);
+			}
+		};
+	}
+}
@@ -28,6 +28,7 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.googlecode.jmxtrans.connections.MBeanMetadata;
 import com.googlecode.jmxtrans.model.naming.typename.PrependingTypeNameValuesStringBuilder;
 import com.googlecode.jmxtrans.model.naming.typename.TypeNameValuesStringBuilder;
 import com.googlecode.jmxtrans.model.naming.typename.UseAllTypeNameValuesStringBuilder;
@@ -42,18 +43,16 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
-import javax.management.AttributeList;
+import javax.management.Attribute;
 import javax.management.InstanceNotFoundException;
 import javax.management.IntrospectionException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
-import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import java.io.IOException;
-import java.rmi.UnmarshalException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -73,10 +72,10 @@ import static java.util.Arrays.asList;
  * @author jon
  */
 @JsonSerialize(include = NON_NULL)
-@JsonPropertyOrder(value = {"obj", "attr", "typeNames", "resultAlias", "keys", "allowDottedKeys", "useAllTypeNames", "outputWriters"})
+@JsonPropertyOrder(value = {"obj", "attr", "typeNames", "resultAlias", "keys", "allowDottedKeys", "useAllTypeNames", "numericOnly", "numericAttributesOnly", "attrIncludes", "attrExcludes", "outputWriters"})
 @ThreadSafe
-@EqualsAndHashCode(exclude = {"outputWriters", "outputWriterInstances"})
-@ToString(exclude = {"outputWriters", "typeNameValuesStringBuilder"})
+@EqualsAndHashCode(exclude = {"outputWriters", "outputWriterInstances", "attributeSelection"})
+@ToString(exclude = {"outputWriters", "typeNameValuesStringBuilder", "attributeSelection"})
 public class Query {
 
 	private static final Logger logger = LoggerFactory.getLogger(Query.class);
@@ -115,10 +114,76 @@ public class Query {
 	@Getter private final boolean useObjDomainAsKey;
 	@Getter private final boolean allowDottedKeys;
 	@Getter private final boolean useAllTypeNames;
+
+	/**
+	 * Only collect numeric values (numbers, numeric strings and booleans), as
+	 * most output writers ignore everything else anyway. Other values are
+	 * skipped before any result is built.
+	 */
+	@Getter private final boolean numericOnly;
+
+	/**
+	 * When no attribute is listed in attr, only fetch the attributes declared
+	 * with a numeric or boolean type.
+	 */
+	@Getter private final boolean numericAttributesOnly;
+
+	/**
+	 * When no attribute is listed in attr, only fetch the attributes matching
+	 * one of these globs, and none of the excluded ones.
+	 */
+	@Nonnull @Getter private final ImmutableList<String> attrIncludes;
+	@Nonnull @Getter private final ImmutableList<String> attrExcludes;
+	@Nonnull private final AttributeSelection attributeSelection;
 	@Nonnull @Getter private final ImmutableList<OutputWriterFactory> outputWriters;
 	@Nonnull @Getter private final Iterable<OutputWriter> outputWriterInstances;
 	private final TypeNameValuesStringBuilder typeNameValuesStringBuilder;
 
+	public Query(
+			String obj,
+			List<String> keys,
+			List<String> attr,
+			List<String> typeNames,
+			String resultAlias,
+			boolean useObjDomainAsKey,
+			boolean allowDottedKeys,
+			boolean useAllTypeNames,
+			List<OutputWriterFactory> outputWriters
+	) {
+		this(obj, keys, attr, typeNames, resultAlias, useObjDomainAsKey, allowDottedKeys, useAllTypeNames,
+				false, false, null, null, outputWriters);
+	}
+
+	public Query(
+			String obj,
+			List<String> keys,
+			List<String> attr,
+			Set<String> typeNames,
+			String resultAlias,
+			boolean useObjDomainAsKey,
+			boolean allowDottedKeys,
+			boolean useAllTypeNames,
+			List<OutputWriterFactory> outputWriters
+	) {
+		this(obj, keys, attr, typeNames, resultAlias, useObjDomainAsKey, allowDottedKeys, useAllTypeNames,
+				false, false, null, null, outputWriters);
+	}
+
+	public Query(
+			String obj,
+			List<String> keys,
+			List<String> attr,
+			Set<String> typeNames,
+			String resultAlias,
+			boolean useObjDomainAsKey,
+			boolean allowDottedKeys,
+			boolean useAllTypeNames,
+			ImmutableList<OutputWriter> outputWriters
+	) {
+		this(obj, keys, attr, typeNames, resultAlias, useObjDomainAsKey, allowDottedKeys, useAllTypeNames,
+				false, false, null, null, outputWriters);
+	}
+
 	@JsonCreator
 	public Query(
 			@JsonProperty("obj") String obj,
@@ -129,12 +194,16 @@ public class Query {
 			@JsonProperty("useObjDomainAsKey") boolean useObjDomainAsKey,
 			@JsonProperty("allowDottedKeys") boolean allowDottedKeys,
 			@JsonProperty("useAllTypeNames") boolean useAllTypeNames,
+			@JsonProperty("numericOnly") boolean numericOnly,
+			@JsonProperty("numericAttributesOnly") boolean numericAttributesOnly,
+			@JsonProperty("attrIncludes") List<String> attrIncludes,
+			@JsonProperty("attrExcludes") List<String> attrExcludes,
 			@JsonProperty("outputWriters") List<OutputWriterFactory> outputWriters
 	) {
 		// For typeName, note the using copyOf does not change the order of
 		// the elements.
 		this(obj, keys, attr, ImmutableSet.copyOf(firstNonNull(typeNames, Collections.<String>emptySet())), resultAlias, useObjDomainAsKey, allowDottedKeys, useAllTypeNames,
-				outputWriters, ImmutableList.<OutputWriter>of());
+				numericOnly, numericAttributesOnly, attrIncludes, attrExcludes, outputWriters, ImmutableList.<OutputWriter>of());
 	}
 
 	public Query(
@@ -146,10 +215,14 @@ public class Query {
 			boolean useObjDomainAsKey,
 			boolean allowDottedKeys,
 			boolean useAllTypeNames,
+			boolean numericOnly,
+			boolean numericAttributesOnly,
+			List<String> attrIncludes,
+			List<String> attrExcludes,
 			List<OutputWriterFactory> outputWriters
 	) {
 		this(obj, keys, attr, typeNames, resultAlias, useObjDomainAsKey, allowDottedKeys, useAllTypeNames,
-				outputWriters, ImmutableList.<OutputWriter>of());
+				numericOnly, numericAttributesOnly, attrIncludes, attrExcludes, outputWriters, ImmutableList.<OutputWriter>of());
 	}
 
 	public Query(
@@ -161,10 +234,14 @@ public class Query {
 			boolean useObjDomainAsKey,
 			boolean allowDottedKeys,
 			boolean useAllTypeNames,
+			boolean numericOnly,
+			boolean numericAttributesOnly,
+			List<String> attrIncludes,
+			List<String> attrExcludes,
 			ImmutableList<OutputWriter> outputWriters
 	) {
 		this(obj, keys, attr, typeNames, resultAlias, useObjDomainAsKey, allowDottedKeys, useAllTypeNames,
-				ImmutableList.<OutputWriterFactory>of(), outputWriters);
+				numericOnly, numericAttributesOnly, attrIncludes, attrExcludes, ImmutableList.<OutputWriterFactory>of(), outputWriters);
 	}
 
 	private Query(
@@ -176,6 +253,10 @@ public class Query {
 			boolean useObjDomainAsKey,
 			boolean allowDottedKeys,
 			boolean useAllTypeNames,
+			boolean numericOnly,
+			boolean numericAttributesOnly,
+			List<String> attrIncludes,
+			List<String> attrExcludes,
 			List<OutputWriterFactory> outputWriterFactories,
 			List<OutputWriter> outputWriters
 	) {
@@ -190,6 +271,11 @@ public class Query {
 		this.keys = copyOf(firstNonNull(keys, Collections.<String>emptyList()));
 		this.allowDottedKeys = allowDottedKeys;
 		this.useAllTypeNames = useAllTypeNames;
+		this.numericOnly = numericOnly;
+		this.numericAttributesOnly = numericAttributesOnly;
+		this.attrIncludes = copyOf(firstNonNull(attrIncludes, Collections.<String>emptyList()));
+		this.attrExcludes = copyOf(firstNonNull(attrExcludes, Collections.<String>emptyList()));
+		this.attributeSelection = new AttributeSelection(numericAttributesOnly, this.attrIncludes, this.attrExcludes);
 		this.outputWriters = copyOf(firstNonNull(outputWriterFactories, ImmutableList.<OutputWriterFactory>of()));
 		// We need to preserve the order of typeNames. So note that copyOf
 		// does not mess with the order. 
@@ -209,36 +295,58 @@ public class Query {
 	}
 
 	public Iterable<Result> fetchResults(MBeanServerConnection mbeanServer, ObjectName queryName) throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
-		MBeanInfo info = mbeanServer.getMBeanInfo(queryName);
-		ObjectInstance oi = mbeanServer.getObjectInstance(queryName);
-
-		List<String> attributes;
-		if (attr.isEmpty()) {
-			attributes = new ArrayList<>();
-			for (MBeanAttributeInfo attrInfo : info.getAttributes()) {
-				attributes.add(attrInfo.getName());
-			}
-		} else {
-			attributes = attr;
-		}
+		return fetchResults(mbeanServer, queryName, MBeanMetadata.fetch(mbeanServer, queryName));
+	}
 
-		try {
-			if (!attributes.isEmpty()) {
-				logger.debug("Executing queryName [{}] from query [{}]", queryName.getCanonicalName(), this);
+	/**
+	 * Fetches the attributes of an MBean whose metadata is already known (and
+	 * probably cached), so that only a single call to the MBean server is needed.
+	 */
+	public Iterable<Result> fetchResults(MBeanServerConnection mbeanServer, ObjectName queryName, MBeanMetadata metadata) throws InstanceNotFoundException, ReflectionException, IOException {
+		return QueryGroup.of(this).fetchResults(mbeanServer, queryName, metadata).get(0);
+	}
 
-				AttributeList al = mbeanServer.getAttributes(queryName, attributes.toArray(new String[attributes.size()]));
+	/**
+	 * @return the attributes this query collects: the attributes of the MBean
+	 * picked by the attribute selection if none are configured.
+	 */
+	public List<String> getAttributesToFetch(MBeanInfo info) {
+		if (!attr.isEmpty()) return attr;
+		if (!attributeSelection.selectsAll()) return attributeSelection.select(info);
 
-				return new JmxResultProcessor(this, oi, al.asList(), info.getClassName(), queryName.getDomain()).getResults();
-			}
-		} catch (UnmarshalException ue) {
-			if ((ue.getCause() != null) && (ue.getCause() instanceof ClassNotFoundException)) {
-				logger.debug("Bad unmarshall, continuing. This is probably ok and due to something like this: "
-						+ "http://ehcache.org/xref/net/sf/ehcache/distribution/RMICacheManagerPeerListener.html#52", ue.getMessage());
-			} else {
-				throw ue;
-			}
+		List<String> attributes = new ArrayList<>();
+		for (MBeanAttributeInfo attrInfo : info.getAttributes()) {
+			attributes.add(attrInfo.getName());
 		}
-		return ImmutableList.of();
+		return attributes;
+	}
+
+	/**
+	 * Builds the results of this query from attributes fetched from the MBean.
+	 */
+	public Iterable<Result> processAttributes(ObjectName queryName, MBeanMetadata metadata, List<Attribute> attributes) {
+		return processAttributes(queryName, metadata, attributes, System.currentTimeMillis());
+	}
+
+	/**
+	 * Builds the results of this query from attributes fetched from the MBean,
+	 * all of them timestamped with the given epoch.
+	 */
+	public Iterable<Result> processAttributes(ObjectName queryName, MBeanMetadata metadata, List<Attribute> attributes, long epoch) {
+		if (attributes.isEmpty()) return ImmutableList.of();
+		MBeanInfo info = metadata.getInfo();
+		return new JmxResultProcessor(this, metadata.getObjectInstance(), attributes, info.getClassName(), queryName.getDomain(), epoch).getResults();
+	}
+
+	/**
+	 * Builds the numeric values of this query as points, for writers which
+	 * all consume points. Values are filtered and named as by
+	 * {@link #processAttributes(ObjectName, MBeanMetadata, List, long)}.
+	 */
+	public MetricPoints processPoints(ObjectName queryName, MBeanMetadata metadata, List<Attribute> attributes, long epoch) {
+		if (attributes.isEmpty()) return MetricPoints.of(ImmutableList.<MetricPoint>of());
+		MBeanInfo info = metadata.getInfo();
+		return new JmxResultProcessor(this, metadata.getObjectInstance(), attributes, info.getClassName(), queryName.getDomain(), epoch).getPoints();
 	}
 
 	private TypeNameValuesStringBuilder makeTypeNameValuesStringBuilder() {
@@ -278,6 +386,10 @@ public class Query {
 		@Setter private boolean useObjDomainAsKey;
 		@Setter private boolean allowDottedKeys;
 		@Setter private boolean useAllTypeNames;
+		@Setter private boolean numericOnly;
+		@Setter private boolean numericAttributesOnly;
+		private final List<String> attrIncludes = newArrayList();
+		private final List<String> attrExcludes = newArrayList();
 		private final List<OutputWriterFactory> outputWriterFactories = newArrayList();
 		private final List<OutputWriter> outputWriters = newArrayList();
 		// We need to pick an order preserving Set implementation here to
@@ -295,6 +407,10 @@ public class Query {
 			this.useObjDomainAsKey = query.useObjDomainAsKey;
 			this.allowDottedKeys = query.allowDottedKeys;
 			this.useAllTypeNames = query.useAllTypeNames;
+			this.numericOnly = query.numericOnly;
+			this.numericAttributesOnly = query.numericAttributesOnly;
+			this.attrIncludes.addAll(query.attrIncludes);
+			this.attrExcludes.addAll(query.attrExcludes);
 			this.typeNames.addAll(query.typeNames);
 		}
 
@@ -303,6 +419,16 @@ public class Query {
 			return this;
 		}
 
+		public Builder addAttrIncludes(String... attrIncludes) {
+			this.attrIncludes.addAll(asList(attrIncludes));
+			return this;
+		}
+
+		public Builder addAttrExcludes(String... attrExcludes) {
+			this.attrExcludes.addAll(asList(attrExcludes));
+			return this;
+		}
+
 		public Builder addKey(String keys) {
 			return addKeys(keys);
 		}
@@ -342,6 +468,10 @@ public class Query {
 						this.useObjDomainAsKey,
 						this.allowDottedKeys,
 						this.useAllTypeNames,
+						this.numericOnly,
+						this.numericAttributesOnly,
+						this.attrIncludes,
+						this.attrExcludes,
 						this.outputWriterFactories
 				);
 			}
@@ -354,6 +484,10 @@ public class Query {
 					this.useObjDomainAsKey,
 					this.allowDottedKeys,
 					this.useAllTypeNames,
+					this.numericOnly,
+					this.numericAttributesOnly,
+					this.attrIncludes,
+					this.attrExcludes,
 					copyOf(this.outputWriters)
 			);
 		}
@@ -0,0 +1,248 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.connections.MBeanMetadata;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.Attribute;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.rmi.UnmarshalException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.Iterables.concat;
+
+/**
+ * Queries of a server sharing the same {@link ObjectName}.
+ * <p/>
+ * The union of their attributes is fetched with a single getAttributes() call
+ * per MBean, and the attributes are then handed back to each query, so that
+ * overlapping queries produce the same results as if they were run alone.
+ */
+@Immutable
+@ThreadSafe
+@EqualsAndHashCode
+@ToString
+public class QueryGroup {
+
+	private static final Logger logger = LoggerFactory.getLogger(QueryGroup.class);
+
+	@Nonnull @Getter private final ObjectName objectName;
+	@Nonnull @Getter private final ImmutableList<Query> queries;
+
+	private QueryGroup(@Nonnull ObjectName objectName, @Nonnull ImmutableList<Query> queries) {
+		this.objectName = objectName;
+		this.queries = queries;
+	}
+
+	@Nonnull
+	public static QueryGroup of(@Nonnull Query query) {
+		return new QueryGroup(query.getObjectName(), ImmutableList.of(query));
+	}
+
+	/**
+	 * Groups queries by {@link ObjectName}, keeping the order in which they
+	 * first appear.
+	 */
+	@Nonnull
+	public static ImmutableList<QueryGroup> groupByObjectName(@Nonnull Iterable<Query> queries) {
+		Map<ObjectName, ImmutableList.Builder<Query>> groups = new LinkedHashMap<>();
+		for (Query query : queries) {
+			ImmutableList.Builder<Query> group = groups.get(query.getObjectName());
+			if (group == null) {
+				group = ImmutableList.builder();
+				groups.put(query.getObjectName(), group);
+			}
+			group.add(query);
+		}
+
+		ImmutableList.Builder<QueryGroup> result = ImmutableList.builder();
+		for (Map.Entry<ObjectName, ImmutableList.Builder<Query>> group : groups.entrySet()) {
+			result.add(new QueryGroup(group.getKey(), group.getValue().build()));
+		}
+		return result.build();
+	}
+
+	/**
+	 * @return the results of each query of this group, in the same order as {@link #getQueries()}.
+	 */
+	@Nonnull
+	public ImmutableList<Iterable<Result>> fetchResults(
+			@Nonnull MBeanServerConnection mbeanServer,
+			@Nonnull ObjectName queryName,
+			@Nonnull MBeanMetadata metadata) throws InstanceNotFoundException, ReflectionException, IOException {
+		return fetchResults(mbeanServer, queryName, metadata, System.currentTimeMillis());
+	}
+
+	/**
+	 * @return the results of each query of this group, timestamped with the
+	 * given epoch, in the same order as {@link #getQueries()}.
+	 */
+	@Nonnull
+	public ImmutableList<Iterable<Result>> fetchResults(
+			@Nonnull MBeanServerConnection mbeanServer,
+			@Nonnull ObjectName queryName,
+			@Nonnull MBeanMetadata metadata,
+			long epoch) throws InstanceNotFoundException, ReflectionException, IOException {
+		return fetchResults(mbeanServer, queryName, metadata, epoch, null);
+	}
+
+	/**
+	 * Same as {@link #fetchResults(MBeanServerConnection, ObjectName, MBeanMetadata, long)},
+	 * the results of the queries whose writers, including the given writers
+	 * of the server, all consume points being built as {@link MetricPoints}.
+	 */
+	@Nonnull
+	public ImmutableList<Iterable<Result>> fetchResults(
+			@Nonnull MBeanServerConnection mbeanServer,
+			@Nonnull ObjectName queryName,
+			@Nonnull MBeanMetadata metadata,
+			long epoch,
+			@Nullable Iterable<OutputWriter> serverWriters) throws InstanceNotFoundException, ReflectionException, IOException {
+		MBeanInfo info = metadata.getInfo();
+
+		Set<String> attributes = new LinkedHashSet<>();
+		for (Query query : queries) {
+			attributes.addAll(query.getAttributesToFetch(info));
+		}
+		if (attributes.isEmpty()) return emptyResults();
+
+		logger.debug("Executing queryName [{}] from queries [{}]", queryName.getCanonicalName(), queries);
+		List<Attribute> fetched = fetchAttributes(mbeanServer, queryName, attributes);
+		if (fetched == null) {
+			// one of the attributes could not be read, do not let it take
+			// the attributes of the other queries down with it
+			return fetchResultsQueryByQuery(mbeanServer, queryName, metadata, epoch, serverWriters);
+		}
+
+		Map<String, Attribute> attributesByName = new LinkedHashMap<>();
+		for (Attribute attribute : fetched) {
+			attributesByName.put(attribute.getName(), attribute);
+		}
+
+		ImmutableList.Builder<Iterable<Result>> results = ImmutableList.builder();
+		for (Query query : queries) {
+			results.add(process(query, queryName, metadata, attributesOf(query, info, attributesByName), epoch, serverWriters));
+		}
+		return results.build();
+	}
+
+	@Nonnull
+	private ImmutableList<Iterable<Result>> fetchResultsQueryByQuery(
+			@Nonnull MBeanServerConnection mbeanServer,
+			@Nonnull ObjectName queryName,
+			@Nonnull MBeanMetadata metadata,
+			long epoch,
+			@Nullable Iterable<OutputWriter> serverWriters) throws InstanceNotFoundException, ReflectionException, IOException {
+		if (queries.size() == 1) return emptyResults();
+
+		ImmutableList.Builder<Iterable<Result>> results = ImmutableList.builder();
+		for (Query query : queries) {
+			List<Attribute> fetched = fetchAttributes(mbeanServer, queryName, query.getAttributesToFetch(metadata.getInfo()));
+			if (fetched == null) {
+				results.add(ImmutableList.<Result>of());
+			} else {
+				results.add(process(query, queryName, metadata, fetched, epoch, serverWriters));
+			}
+		}
+		return results.build();
+	}
+
+	@Nonnull
+	private static Iterable<Result> process(
+			@Nonnull Query query,
+			@Nonnull ObjectName queryName,
+			@Nonnull MBeanMetadata metadata,
+			@Nonnull List<Attribute> attributes,
+			long epoch,
+			@Nullable Iterable<OutputWriter> serverWriters) {
+		if (serverWriters != null
+				&& MetricPoints.areConsumedBy(concat(query.getOutputWriterInstances(), serverWriters))) {
+			return query.processPoints(queryName, metadata, attributes, epoch);
+		}
+		return query.processAttributes(queryName, metadata, attributes, epoch);
+	}
+
+	/**
+	 * @return the attributes, or null if they could not be unmarshalled
+	 * because the class of one of them is not available.
+	 */
+	@Nullable
+	private static List<Attribute> fetchAttributes(
+			@Nonnull MBeanServerConnection mbeanServer,
+			@Nonnull ObjectName queryName,
+			@Nonnull Collection<String> attributes) throws InstanceNotFoundException, ReflectionException, IOException {
+		try {
+			return mbeanServer.getAttributes(queryName, attributes.toArray(new String[attributes.size()])).asList();
+		} catch (UnmarshalException ue) {
+			if ((ue.getCause() != null) && (ue.getCause() instanceof ClassNotFoundException)) {
+				logger.debug("Bad unmarshall, continuing. This is probably ok and due to something like this: "
+						+ "http://ehcache.org/xref/net/sf/ehcache/distribution/RMICacheManagerPeerListener.html#52", ue.getMessage());
+				return null;
+			}
+			throw ue;
+		}
+	}
+
+	@Nonnull
+	private static List<Attribute> attributesOf(
+			@Nonnull Query query,
+			@Nonnull MBeanInfo info,
+			@Nonnull Map<String, Attribute> attributesByName) {
+		Collection<String> names = query.getAttributesToFetch(info);
+		ImmutableList.Builder<Attribute> attributes = ImmutableList.builder();
+		for (String name : names) {
+			Attribute attribute = attributesByName.get(name);
+			if (attribute != null) attributes.add(attribute);
+		}
+		return attributes.build();
+	}
+
+	@Nonnull
+	private ImmutableList<Iterable<Result>> emptyResults() {
+		ImmutableList.Builder<Iterable<Result>> results = ImmutableList.builder();
+		for (int i = 0; i < queries.size(); i++) {
+			results.add(ImmutableList.<Result>of());
+		}
+		return results.build();
+	}
+}
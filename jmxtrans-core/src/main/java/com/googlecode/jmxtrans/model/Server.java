@@ -28,12 +28,17 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Iterables;
 import com.google.inject.name.Named;
 import com.googlecode.jmxtrans.connections.JMXConnection;
 import com.googlecode.jmxtrans.connections.JmxConnectionProvider;
+import com.googlecode.jmxtrans.connections.JmxEndpoint;
+import com.googlecode.jmxtrans.connections.TimeoutRMIClientSocketFactory;
 import com.sun.tools.attach.VirtualMachine;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -46,6 +51,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
@@ -62,14 +68,31 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.fasterxml.jackson.databind.annotation.JsonSerialize.Inclusion.NON_NULL;
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.ImmutableSet.copyOf;
+import static com.google.common.math.IntMath.divide;
+import static com.googlecode.jmxtrans.connections.TimeoutRMIClientSocketFactory.JNDI_SOCKET_FACTORY;
+import static java.math.RoundingMode.CEILING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static javax.management.remote.JMXConnectorFactory.PROTOCOL_PROVIDER_PACKAGES;
 import static javax.naming.Context.SECURITY_CREDENTIALS;
 import static javax.naming.Context.SECURITY_PRINCIPAL;
@@ -91,17 +114,25 @@ import static javax.naming.Context.SECURITY_PRINCIPAL;
 		"password",
 		"cronExpression",
 		"numQueryThreads",
+		"connectTimeoutSeconds",
+		"readTimeoutSeconds",
+		"queryTimeoutSeconds",
+		"queryParallelism",
 		"protocolProviderPackages"
 })
 @Immutable
 @ThreadSafe
-@EqualsAndHashCode(exclude = {"queries", "pool", "outputWriters", "outputWriterFactories"})
+@EqualsAndHashCode(exclude = {"queries", "queryGroups", "pool", "outputWriters", "outputWriterFactories"})
 @ToString(of = {"pid", "host", "port", "url", "cronExpression", "numQueryThreads"})
 public class Server implements JmxConnectionProvider {
 
 	private static final String CONNECTOR_ADDRESS = "com.sun.management.jmxremote.localConnectorAddress";
 	private static final String FRONT = "service:jmx:rmi:///jndi/rmi://";
 	private static final String BACK = "/jmxrmi";
+	private static final String NOTIFICATION_FETCH_TIMEOUT = "jmx.remote.x.notification.fetch.timeout";
+	/** Below this number of MBeans, a partition costs more to schedule than it saves. */
+	private static final int MIN_PARTITION_SIZE = 100;
+	private static final long PARTITION_POLL_MILLIS = 100;
 
 	private static final Logger logger = LoggerFactory.getLogger(Server.class);
 
@@ -141,6 +172,30 @@ public class Server implements JmxConnectionProvider {
 	/** The number of query threads for this server. */
 	@Getter private final int numQueryThreads;
 
+	/**
+	 * Timeouts used to connect to and read from the RMI registry of this
+	 * server. No timeout if null.
+	 */
+	@Getter @Nullable private final Integer connectTimeoutSeconds;
+	@Getter @Nullable private final Integer readTimeoutSeconds;
+
+	/**
+	 * Maximum time a single query can take, including connecting to the
+	 * server. When it expires, the query is abandoned and its connection is
+	 * invalidated. No timeout if null.
+	 */
+	@Getter @Nullable private final Integer queryTimeoutSeconds;
+
+	/**
+	 * Maximum number of partitions a large expansion of a query is split into,
+	 * each fetched in parallel by a query worker. Expansions smaller than
+	 * {@link #MIN_PARTITION_SIZE} MBeans per partition are not split. The
+	 * results of the partitions are streamed to the output writers as they
+	 * arrive, at most max(chunkSize, {@link #MIN_PARTITION_SIZE}) MBeans
+	 * waiting in memory for the query thread.
+	 */
+	@Getter private final int queryParallelism;
+
 	/**
 	 * Whether the current local Java process should be used or not (useful for
 	 * polling the embedded JVM when using JmxTrans inside a JVM to poll JMX
@@ -150,6 +205,9 @@ public class Server implements JmxConnectionProvider {
 
 	@Getter private final ImmutableSet<Query> queries;
 
+	/** The queries of this server, grouped so that each MBean is only fetched once per collection. */
+	@JsonIgnore @Getter private final ImmutableList<QueryGroup> queryGroups;
+
 	@Nonnull @Getter private final Iterable<OutputWriter> outputWriters;
 
 	private final KeyedObjectPool<JmxConnectionProvider, JMXConnection> pool;
@@ -168,13 +226,18 @@ public class Server implements JmxConnectionProvider {
 			@JsonProperty("cronExpression") String cronExpression,
 			@JsonProperty("runPeriodSeconds") Integer runPeriodSeconds,
 			@JsonProperty("numQueryThreads") Integer numQueryThreads,
+			@JsonProperty("connectTimeoutSeconds") Integer connectTimeoutSeconds,
+			@JsonProperty("readTimeoutSeconds") Integer readTimeoutSeconds,
+			@JsonProperty("queryTimeoutSeconds") Integer queryTimeoutSeconds,
+			@JsonProperty("queryParallelism") Integer queryParallelism,
 			@JsonProperty("local") boolean local,
 			@JsonProperty("queries") List<Query> queries,
 			@JsonProperty("outputWriters") List<OutputWriterFactory> outputWriters,
 			@JacksonInject @Named("mbeanPool") KeyedObjectPool<JmxConnectionProvider, JMXConnection> pool) {
 
 		this(alias, pid, host, port, username, password, protocolProviderPackages, url, cronExpression,
-				runPeriodSeconds, numQueryThreads, local, queries, outputWriters, ImmutableList.<OutputWriter>of(),
+				runPeriodSeconds, numQueryThreads, connectTimeoutSeconds, readTimeoutSeconds, queryTimeoutSeconds,
+				queryParallelism, local, queries, outputWriters, ImmutableList.<OutputWriter>of(),
 				pool);
 	}
 
@@ -190,13 +253,18 @@ public class Server implements JmxConnectionProvider {
 			String cronExpression,
 			Integer runPeriodSeconds,
 			Integer numQueryThreads,
+			Integer connectTimeoutSeconds,
+			Integer readTimeoutSeconds,
+			Integer queryTimeoutSeconds,
+			Integer queryParallelism,
 			boolean local,
 			List<Query> queries,
 			ImmutableList<OutputWriter> outputWriters,
 			KeyedObjectPool<JmxConnectionProvider, JMXConnection> pool) {
 
 		this(alias, pid, host, port, username, password, protocolProviderPackages, url, cronExpression,
-				runPeriodSeconds, numQueryThreads, local, queries, ImmutableList.<OutputWriterFactory>of(),
+				runPeriodSeconds, numQueryThreads, connectTimeoutSeconds, readTimeoutSeconds, queryTimeoutSeconds,
+				queryParallelism, local, queries, ImmutableList.<OutputWriterFactory>of(),
 				outputWriters, pool);
 	}
 
@@ -212,6 +280,10 @@ public class Server implements JmxConnectionProvider {
 			String cronExpression,
 			Integer runPeriodSeconds,
 			Integer numQueryThreads,
+			Integer connectTimeoutSeconds,
+			Integer readTimeoutSeconds,
+			Integer queryTimeoutSeconds,
+			Integer queryParallelism,
 			boolean local,
 			List<Query> queries,
 			List<OutputWriterFactory> outputWriterFactories,
@@ -237,8 +309,14 @@ public class Server implements JmxConnectionProvider {
 
 		this.runPeriodSeconds = runPeriodSeconds;
 		this.numQueryThreads = firstNonNull(numQueryThreads, 0);
+		this.connectTimeoutSeconds = connectTimeoutSeconds;
+		this.readTimeoutSeconds = readTimeoutSeconds;
+		this.queryTimeoutSeconds = queryTimeoutSeconds;
+		this.queryParallelism = firstNonNull(queryParallelism, 1);
+		checkArgument(this.queryParallelism > 0, "queryParallelism must be positive");
 		this.local = local;
 		this.queries = copyOf(queries);
+		this.queryGroups = QueryGroup.groupByObjectName(this.queries);
 
 		// when connecting in local, we cache the host after retrieving it from the network card
 		if(pid != null) {
@@ -258,27 +336,244 @@ public class Server implements JmxConnectionProvider {
 	}
 
 	public Iterable<Result> execute(Query query) throws Exception {
+		return execute(QueryGroup.of(query)).get(0);
+	}
+
+	/**
+	 * @return the results of each query of the group, in the same order as {@link QueryGroup#getQueries()}.
+	 */
+	public ImmutableList<Iterable<Result>> execute(QueryGroup group) throws Exception {
+		CollectingSink sink = new CollectingSink(group);
+		execute(group, System.currentTimeMillis(), 0, sink);
+		return sink.build();
+	}
+
+	/**
+	 * Executes the queries of the group, handing their results to the sink
+	 * every chunkSize MBeans instead of collecting them all first. With a
+	 * chunkSize of 0, the results of each query are handed over once, after
+	 * all MBeans have been fetched.
+	 * <p/>
+	 * The sink is called at least once for each query, with empty results if
+	 * no MBean matched. All the results are timestamped with the given epoch,
+	 * usually the time the collection cycle started.
+	 */
+	public void execute(QueryGroup group, long epoch, int chunkSize, @Nonnull ResultSink sink) throws Exception {
+		execute(group, epoch, chunkSize, sink, new BorrowedConnection(), null);
+	}
+
+	/**
+	 * Executes the queries of the group, waiting at most queryTimeoutSeconds.
+	 * <p/>
+	 * The queries are run by the given executor. On timeout, they are
+	 * abandoned and their connection is invalidated, as the JVM on the other
+	 * side is most probably hung. The thread running them is only freed once
+	 * the read timeout expires. When the executor has no thread left, the
+	 * queries time out right away.
+	 */
+	public ImmutableList<Iterable<Result>> execute(QueryGroup group, @Nonnull ExecutorService executor) throws Exception {
+		CollectingSink sink = new CollectingSink(group);
+		execute(group, System.currentTimeMillis(), 0, sink, executor);
+		return sink.build();
+	}
+
+	/**
+	 * Streams the results of the queries of the group as
+	 * {@link #execute(QueryGroup, long, int, ResultSink)} does, waiting at most
+	 * queryTimeoutSeconds. Once the queries are abandoned, the sink is not
+	 * called anymore.
+	 * <p/>
+	 * Large expansions are split in up to queryParallelism partitions, fetched
+	 * in parallel by the executor.
+	 */
+	public void execute(
+			final QueryGroup group, final long epoch, final int chunkSize, @Nonnull final ResultSink sink,
+			@Nonnull ExecutorService executor) throws Exception {
+		if (queryTimeoutSeconds == null) {
+			execute(group, epoch, chunkSize, sink, new BorrowedConnection(), executor);
+			return;
+		}
+
+		final ExecutorService partitionExecutor = executor;
+		final BorrowedConnection borrowed = new BorrowedConnection();
+		Future<Void> future;
+		try {
+			future = executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					execute(group, epoch, chunkSize, sink, borrowed, partitionExecutor);
+					return null;
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			throw rejected(group, ree);
+		}
+
+		try {
+			future.get(queryTimeoutSeconds, SECONDS);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfPossible(e.getCause(), Exception.class);
+			throw e;
+		} catch (TimeoutException e) {
+			// abandon before interrupting, so that the interrupted execution does not return the connection
+			final JMXConnection jmxConnection = borrowed.abandon();
+			future.cancel(true);
+			if (jmxConnection != null) {
+				// closing a connection to a hung JVM can block as well
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							invalidate(jmxConnection);
+						}
+					});
+				} catch (RejectedExecutionException ree) {
+					invalidate(jmxConnection);
+				}
+			}
+			throw e;
+		}
+	}
+
+	private TimeoutException rejected(QueryGroup group, RejectedExecutionException ree) {
+		TimeoutException timeout = new TimeoutException(
+				"No thread left to run queries " + group.getQueries() + " on " + this);
+		timeout.initCause(ree);
+		return timeout;
+	}
+
+	private void execute(
+			QueryGroup group, long epoch, int chunkSize, ResultSink sink, BorrowedConnection borrowed,
+			@Nullable ExecutorService executor) throws Exception {
 		JMXConnection jmxConnection = pool.borrowObject(this);
+		if (!borrowed.set(jmxConnection)) {
+			invalidate(jmxConnection);
+			throw new TimeoutException("Queries " + group.getQueries() + " were abandoned while connecting to " + this);
+		}
+		Chunks chunks = new Chunks(group, sink, borrowed, chunkSize);
+		List<Future<?>> partitions = ImmutableList.of();
+		PartitionResults partitionResults = null;
 		try {
-			ImmutableList.Builder<Result> results = ImmutableList.builder();
 			MBeanServerConnection connection = jmxConnection.getMBeanServerConnection();
 
-			for (ObjectName queryName : query.queryNames(connection)) {
-				results.addAll(query.fetchResults(connection, queryName));
+			Collection<ObjectName> queryNames = jmxConnection.queryNames(group.getObjectName());
+			int partitionCount = executor == null ? 1 : partitionCount(queryNames.size());
+			if (partitionCount > 1) {
+				// the first partition is fetched by this thread, which also hands the
+				// results of the other partitions to the sink as they arrive
+				List<List<ObjectName>> split = Lists.partition(
+						ImmutableList.copyOf(queryNames), divide(queryNames.size(), partitionCount, CEILING));
+				partitionResults = new PartitionResults(split.size() - 1, Math.max(chunkSize, MIN_PARTITION_SIZE));
+				partitions = fetchInParallel(group, epoch, split.subList(1, split.size()), partitionResults, executor);
+				queryNames = split.get(0);
 			}
-			pool.returnObject(this, jmxConnection);
-			return results.build();
+
+			for (ObjectName queryName : queryNames) {
+				chunks.add(group.fetchResults(connection, queryName, jmxConnection.getMetadata(queryName), epoch, outputWriters));
+				if (partitionResults != null) partitionResults.drainTo(chunks);
+			}
+			// if the queries have been abandoned, the connection is already invalidated
+			if (borrowed.release()) pool.returnObject(this, jmxConnection);
 		} catch (Exception e) {
-			// since we will invalidate the connection in the pool, prevent connection leaks
+			cancel(partitions);
+			if (borrowed.release()) release(jmxConnection, e);
+			throw e;
+		}
+
+		if (partitionResults != null) {
 			try {
-				jmxConnection.close();
-			} catch (IOException | RuntimeException re) {
-				// drop these, we don't really know what caused the original exception.
-				logger.warn("An error occurred trying to close a JMX Connection during error handling.", re);
+				partitionResults.awaitAll(chunks);
+			} catch (Exception e) {
+				cancel(partitions);
+				throw e;
 			}
-			pool.invalidateObject(this, jmxConnection);
+		}
+		chunks.flush(true);
+	}
+
+	private int partitionCount(int mbeanCount) {
+		return Math.max(1, Math.min(queryParallelism, mbeanCount / MIN_PARTITION_SIZE));
+	}
+
+	@Nonnull
+	private List<Future<?>> fetchInParallel(
+			final QueryGroup group, final long epoch, List<List<ObjectName>> partitions,
+			final PartitionResults results, ExecutorService executor) throws TimeoutException {
+		List<Future<?>> futures = new ArrayList<>(partitions.size());
+		for (final List<ObjectName> partition : partitions) {
+			try {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						try {
+							fetchPartition(group, epoch, partition, results);
+							results.done(null);
+						} catch (Exception e) {
+							results.done(e);
+						}
+						return null;
+					}
+				}));
+			} catch (RejectedExecutionException ree) {
+				cancel(futures);
+				throw rejected(group, ree);
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Fetches the MBeans of a partition over a connection borrowed for it. As
+	 * JMX connections are shared, this is usually the same connection as the
+	 * other partitions, which the RMI transport multiplexes over several
+	 * sockets when calls are concurrent.
+	 */
+	private void fetchPartition(
+			QueryGroup group, long epoch, List<ObjectName> queryNames, PartitionResults results) throws Exception {
+		JMXConnection jmxConnection = pool.borrowObject(this);
+		try {
+			MBeanServerConnection connection = jmxConnection.getMBeanServerConnection();
+			for (ObjectName queryName : queryNames) {
+				results.put(group.fetchResults(connection, queryName, jmxConnection.getMetadata(queryName), epoch, outputWriters));
+			}
+		} catch (Exception e) {
+			release(jmxConnection, e);
 			throw e;
 		}
+		pool.returnObject(this, jmxConnection);
+	}
+
+	private static void cancel(Iterable<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Hands a connection back to the pool after a failed query. Connections
+	 * are shared by all the servers of a JVM, so only connection level
+	 * failures invalidate them: an MBean that disappeared or failed must not
+	 * close the connection under the other queries using it.
+	 */
+	private void release(JMXConnection jmxConnection, Exception failure) {
+		if (failure instanceof IOException) {
+			invalidate(jmxConnection);
+			return;
+		}
+		try {
+			pool.returnObject(this, jmxConnection);
+		} catch (Exception e) {
+			logger.warn("Could not return JMX Connection to {}", this, e);
+		}
+	}
+
+	/** Invalidating the connection in the pool also closes it. */
+	private void invalidate(JMXConnection jmxConnection) {
+		try {
+			pool.invalidateObject(this, jmxConnection);
+		} catch (Exception e) {
+			logger.warn("Could not invalidate JMX Connection to {}", this, e);
+		}
 	}
 
 	/**
@@ -296,7 +591,7 @@ public class Server implements JmxConnectionProvider {
 			return environment.build();
 		}
 
-		ImmutableMap.Builder<String, String[]> environment = ImmutableMap.builder();
+		ImmutableMap.Builder<String, Object> environment = ImmutableMap.builder();
 		if ((username != null) && (password != null)) {
 			String[] credentials = new String[] {
 					username,
@@ -304,6 +599,15 @@ public class Server implements JmxConnectionProvider {
 			};
 			environment.put(JMXConnector.CREDENTIALS, credentials);
 		}
+		if (connectTimeoutSeconds != null || readTimeoutSeconds != null) {
+			int connectTimeoutMillis = (int) MILLISECONDS.convert(firstNonNull(connectTimeoutSeconds, 0), SECONDS);
+			int readTimeoutMillis = (int) MILLISECONDS.convert(firstNonNull(readTimeoutSeconds, 0), SECONDS);
+			environment.put(JNDI_SOCKET_FACTORY, new TimeoutRMIClientSocketFactory(connectTimeoutMillis, readTimeoutMillis));
+			if (readTimeoutMillis > 0) {
+				// notifications are fetched with long polling, which must not trigger the read timeout
+				environment.put(NOTIFICATION_FETCH_TIMEOUT, readTimeoutMillis / 2L);
+			}
+		}
 
 		return environment.build();
 	}
@@ -319,6 +623,14 @@ public class Server implements JmxConnectionProvider {
 		return JMXConnectorFactory.connect(url, this.getEnvironment());
 	}
 
+	@Override
+	@JsonIgnore
+	public JmxEndpoint getEndpoint() {
+		if (local) return JmxEndpoint.local();
+		if (pid != null) return JmxEndpoint.ofPid(pid);
+		return JmxEndpoint.ofUrl(firstNonNull(getUrl(), getHost()), username, password);
+	}
+
 	@Override
 	@JsonIgnore
 	public MBeanServer getLocalMBeanServer() {
@@ -440,6 +752,167 @@ public class Server implements JmxConnectionProvider {
 
 	}
 
+	/** Results of the MBeans fetched since the last time they were handed to the sink. */
+	@NotThreadSafe
+	private static final class Chunks {
+		private final QueryGroup group;
+		private final ResultSink sink;
+		private final BorrowedConnection borrowed;
+		private final int chunkSize;
+		private final List<List<Iterable<Result>>> results = new ArrayList<>();
+		private final boolean[] flushed;
+		private int size = 0;
+
+		private Chunks(QueryGroup group, ResultSink sink, BorrowedConnection borrowed, int chunkSize) {
+			this.group = group;
+			this.sink = sink;
+			this.borrowed = borrowed;
+			this.chunkSize = chunkSize;
+			for (int i = 0; i < group.getQueries().size(); i++) {
+				results.add(new ArrayList<Iterable<Result>>());
+			}
+			this.flushed = new boolean[group.getQueries().size()];
+		}
+
+		/** Adds the results of an MBean, handing the chunk to the sink once it is full. */
+		void add(List<Iterable<Result>> queryResults) throws Exception {
+			for (int i = 0; i < queryResults.size(); i++) {
+				results.get(i).add(queryResults.get(i));
+			}
+			size++;
+			if (chunkSize > 0 && size >= chunkSize) flush(false);
+		}
+
+		/** @param last whether this is the last chunk, in which case every query is handed over. */
+		void flush(boolean last) throws Exception {
+			for (int i = 0; i < results.size(); i++) {
+				Iterable<Result> chunk = MetricPoints.concat(results.get(i));
+				results.get(i).clear();
+				if (Iterables.isEmpty(chunk) && (flushed[i] || !last)) continue;
+				if (borrowed.isAbandoned()) return;
+				sink.accept(group.getQueries().get(i), chunk);
+				flushed[i] = true;
+			}
+			size = 0;
+		}
+	}
+
+	/**
+	 * Results of the MBeans fetched by the partitions running in other
+	 * threads. The queue is bounded, so that partitions wait for the query
+	 * thread to hand their results to the sink instead of piling them up in
+	 * memory.
+	 */
+	@ThreadSafe
+	private static final class PartitionResults {
+		private final BlockingQueue<ImmutableList<Iterable<Result>>> queue;
+		private final AtomicInteger running;
+		private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+		private PartitionResults(int partitions, int capacity) {
+			this.queue = new ArrayBlockingQueue<>(capacity);
+			this.running = new AtomicInteger(partitions);
+		}
+
+		void put(ImmutableList<Iterable<Result>> mbeanResults) throws InterruptedException {
+			queue.put(mbeanResults);
+		}
+
+		/** Called by each partition once it is over, with its failure if any. */
+		void done(@Nullable Exception partitionFailure) {
+			if (partitionFailure != null) failure.compareAndSet(null, partitionFailure);
+			running.decrementAndGet();
+		}
+
+		/** Hands the results fetched so far to the chunks, without waiting. */
+		void drainTo(Chunks chunks) throws Exception {
+			rethrowFailure();
+			ImmutableList<Iterable<Result>> mbeanResults;
+			while ((mbeanResults = queue.poll()) != null) {
+				chunks.add(mbeanResults);
+			}
+		}
+
+		/** Hands the results to the chunks until every partition is over. */
+		void awaitAll(Chunks chunks) throws Exception {
+			while (running.get() > 0) {
+				rethrowFailure();
+				ImmutableList<Iterable<Result>> mbeanResults = queue.poll(PARTITION_POLL_MILLIS, MILLISECONDS);
+				if (mbeanResults != null) chunks.add(mbeanResults);
+			}
+			// every partition is over, nothing can be added to the queue anymore
+			drainTo(chunks);
+		}
+
+		private void rethrowFailure() throws Exception {
+			Exception partitionFailure = failure.get();
+			if (partitionFailure != null) throw partitionFailure;
+		}
+	}
+
+	/** Collects the results of every query of a group. */
+	@NotThreadSafe
+	private static final class CollectingSink implements ResultSink {
+		private final QueryGroup group;
+		private final Map<Query, List<Iterable<Result>>> results = new IdentityHashMap<>();
+
+		private CollectingSink(QueryGroup group) {
+			this.group = group;
+			for (Query query : group.getQueries()) {
+				results.put(query, new ArrayList<Iterable<Result>>());
+			}
+		}
+
+		@Override
+		public void accept(@Nonnull Query query, @Nonnull Iterable<Result> queryResults) {
+			results.get(query).add(queryResults);
+		}
+
+		ImmutableList<Iterable<Result>> build() {
+			ImmutableList.Builder<Iterable<Result>> built = ImmutableList.builder();
+			for (Query query : group.getQueries()) {
+				built.add(MetricPoints.concat(results.get(query)));
+			}
+			return built.build();
+		}
+	}
+
+	/**
+	 * The connection used by an execution, which can be abandoned by another
+	 * thread when the execution times out.
+	 */
+	@ThreadSafe
+	private static final class BorrowedConnection {
+		@GuardedBy("this") @Nullable private JMXConnection connection;
+		@GuardedBy("this") private boolean abandoned = false;
+
+		/** @return false if the execution has already been abandoned. */
+		synchronized boolean set(@Nonnull JMXConnection connection) {
+			if (abandoned) return false;
+			this.connection = connection;
+			return true;
+		}
+
+		/** @return true if the caller still owns the connection. */
+		synchronized boolean release() {
+			connection = null;
+			return !abandoned;
+		}
+
+		synchronized boolean isAbandoned() {
+			return abandoned;
+		}
+
+		/** @return the connection to invalidate, if any. */
+		@Nullable
+		synchronized JMXConnection abandon() {
+			abandoned = true;
+			JMXConnection abandonedConnection = connection;
+			connection = null;
+			return abandonedConnection;
+		}
+	}
+
 	public static Builder builder() {
 		return new Builder();
 	}
@@ -462,6 +935,10 @@ public class Server implements JmxConnectionProvider {
 		@Setter private String cronExpression;
 		@Setter private Integer runPeriodSeconds;
 		@Setter private Integer numQueryThreads;
+		@Setter private Integer connectTimeoutSeconds;
+		@Setter private Integer readTimeoutSeconds;
+		@Setter private Integer queryTimeoutSeconds;
+		@Setter private Integer queryParallelism;
 		@Setter private boolean local;
 		private final List<OutputWriterFactory> outputWriterFactories = new ArrayList<>();
 		private final List<OutputWriter> outputWriters = new ArrayList<>();
@@ -482,6 +959,10 @@ public class Server implements JmxConnectionProvider {
 			this.cronExpression = server.cronExpression;
 			this.runPeriodSeconds = server.runPeriodSeconds;
 			this.numQueryThreads = server.numQueryThreads;
+			this.connectTimeoutSeconds = server.connectTimeoutSeconds;
+			this.readTimeoutSeconds = server.readTimeoutSeconds;
+			this.queryTimeoutSeconds = server.queryTimeoutSeconds;
+			this.queryParallelism = server.queryParallelism;
 			this.local = server.local;
 			this.queries.addAll(server.queries);
 			this.pool = server.pool;
@@ -526,6 +1007,10 @@ public class Server implements JmxConnectionProvider {
 						cronExpression,
 						runPeriodSeconds,
 						numQueryThreads,
+						connectTimeoutSeconds,
+						readTimeoutSeconds,
+						queryTimeoutSeconds,
+						queryParallelism,
 						local,
 						queries,
 						outputWriterFactories,
@@ -543,6 +1028,10 @@ public class Server implements JmxConnectionProvider {
 					cronExpression,
 					runPeriodSeconds,
 					numQueryThreads,
+					connectTimeoutSeconds,
+					readTimeoutSeconds,
+					queryTimeoutSeconds,
+					queryParallelism,
 					local,
 					queries,
 					ImmutableList.copyOf(outputWriters),
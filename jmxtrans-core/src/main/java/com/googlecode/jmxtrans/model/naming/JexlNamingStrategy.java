@@ -34,6 +34,7 @@ import org.apache.commons.jexl2.MapContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 /**
@@ -55,9 +56,14 @@ import java.util.Map;
  * <dt>result</dt>
  * <dd>the full Result object.</dd>
  * </dl>
+ * <p/>
+ * Expressions which only concatenate literals and the variables above (but not <code>result</code>) are compiled to a
+ * {@link NamingTemplate}, and the names they produce are memoized per class name, alias, type name and attribute.
+ * Other expressions, and subclasses which customize {@link #populateContext(JexlContext, Result)}, are interpreted by
+ * JEXL for each result.
  */
 
-@EqualsAndHashCode
+@EqualsAndHashCode(exclude = {"template", "names"})
 public class JexlNamingStrategy implements NamingStrategy {
 	private static final Logger LOG = LoggerFactory.getLogger(JexlNamingStrategy.class);
 
@@ -71,14 +77,15 @@ public class JexlNamingStrategy implements NamingStrategy {
 
 	protected JexlEngine jexl;
 	protected Expression parsedExpr;
+	@Nullable private NamingTemplate template;
+	private final MetricNameCache names = new MetricNameCache(MetricNameCache.DEFAULT_MAXIMUM_SIZE);
 
 
 	/**
 	 * Create a new naming strategy using an JEXL expression and the default expression.
 	 */
 	public JexlNamingStrategy() throws JexlException {
-		jexl = new JexlEngine();
-		this.parsedExpr = jexl.createExpression(DEFAULT_EXPRESSION);
+		this(DEFAULT_EXPRESSION);
 	}
 
 	/**
@@ -88,7 +95,7 @@ public class JexlNamingStrategy implements NamingStrategy {
 	 */
 	public JexlNamingStrategy(String expr) throws JexlException {
 		jexl = new JexlEngine();
-		this.parsedExpr = jexl.createExpression(expr);
+		setExpression(expr);
 	}
 
 	/**
@@ -99,6 +106,9 @@ public class JexlNamingStrategy implements NamingStrategy {
 	 */
 	@Override
 	public String formatName(Result result) {
+		if (template != null) {
+			return formatCompiledName(result);
+		}
 		String formatted;
 		JexlContext context = new MapContext();
 
@@ -113,8 +123,22 @@ public class JexlNamingStrategy implements NamingStrategy {
 		return formatted;
 	}
 
+	private String formatCompiledName(Result result) {
+		NameKey key = new NameKey(result);
+		String formatted = names.getIfPresent(key);
+		if (formatted == null) {
+			formatted = (String) template.evaluate(result, jexl.getArithmetic());
+			if (formatted != null) {
+				names.put(key, formatted);
+			}
+		}
+		return formatted;
+	}
+
 	public void setExpression(String expr) throws JexlException {
 		this.parsedExpr = this.jexl.createExpression(expr);
+		this.template = getClass() == JexlNamingStrategy.class ? NamingTemplate.compile(expr) : null;
+		this.names.invalidateAll();
 	}
 
 	/**
@@ -139,4 +163,20 @@ public class JexlNamingStrategy implements NamingStrategy {
 
 		context.set(VAR_RESULT, result);
 	}
+
+	/** Everything a compiled template depends on. */
+	@EqualsAndHashCode
+	private static final class NameKey {
+		private final String className;
+		private final String keyAlias;
+		private final String typeName;
+		private final String attributeName;
+
+		private NameKey(Result result) {
+			this.className = result.getClassName();
+			this.keyAlias = result.getKeyAlias();
+			this.typeName = result.getTypeName();
+			this.attributeName = result.getAttributeName();
+		}
+	}
 }
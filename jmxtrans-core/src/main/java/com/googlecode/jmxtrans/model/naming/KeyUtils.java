@@ -25,10 +25,17 @@ package com.googlecode.jmxtrans.model.naming;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
 import com.googlecode.jmxtrans.model.Server;
+import lombok.EqualsAndHashCode;
 
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Builds the dotted metric names used by most output writers.
+ *
+ * Names are memoized in the {@link MetricNameCache#shared() shared metric name
+ * cache}, so that sanitizing only happens the first time a metric is seen.
+ */
 public final class KeyUtils {
 
 	private KeyUtils() {}
@@ -45,6 +52,35 @@ public final class KeyUtils {
 	 * @return the key string
 	 */
 	public static String getKeyString(Server server, Query query, Result result, Map.Entry<String, Object> values, List<String> typeNames, String rootPrefix) {
+		return getCachedKeyString(server, query, result, values, typeNames, rootPrefix, false);
+	}
+
+	/**
+	 * Gets the key string, with parentheses replaced by underscores, as expected
+	 * by Graphite and Kafka.
+	 *
+	 * @see #getKeyString(Server, Query, Result, Map.Entry, List, String)
+	 */
+	public static String getKeyStringWithoutParentheses(Server server, Query query, Result result, Map.Entry<String, Object> values, List<String> typeNames, String rootPrefix) {
+		return getCachedKeyString(server, query, result, values, typeNames, rootPrefix, true);
+	}
+
+	private static String getCachedKeyString(
+			Server server, Query query, Result result, Map.Entry<String, Object> values, List<String> typeNames,
+			String rootPrefix, boolean replaceParentheses) {
+		KeyStringKey key = new KeyStringKey(server, query, result, values.getKey(), typeNames, rootPrefix, replaceParentheses);
+		MetricNameCache cache = MetricNameCache.shared();
+		String keyString = cache.getIfPresent(key);
+		if (keyString == null) {
+			keyString = buildKeyString(server, query, result, values, typeNames, rootPrefix, replaceParentheses);
+			cache.put(key, keyString);
+		}
+		return keyString;
+	}
+
+	private static String buildKeyString(
+			Server server, Query query, Result result, Map.Entry<String, Object> values, List<String> typeNames,
+			String rootPrefix, boolean replaceParentheses) {
 		StringBuilder sb = new StringBuilder();
 		addRootPrefix(rootPrefix, sb);
 		addAlias(server, sb);
@@ -53,6 +89,9 @@ public final class KeyUtils {
 		sb.append(".");
 		addTypeName(query, result, typeNames, sb);
 		addKeyString(query, result, values, sb);
+		if (replaceParentheses) {
+			replaceParentheses(sb);
+		}
 		return sb.toString();
 	}
 
@@ -66,6 +105,17 @@ public final class KeyUtils {
 	 * @return the key string
 	 */
 	public static String getKeyString(Query query, Result result, Map.Entry<String, Object> values, List<String> typeNames) {
+		KeyStringKey key = new KeyStringKey(null, query, result, values.getKey(), typeNames, null, false);
+		MetricNameCache cache = MetricNameCache.shared();
+		String keyString = cache.getIfPresent(key);
+		if (keyString == null) {
+			keyString = buildKeyString(query, result, values, typeNames);
+			cache.put(key, keyString);
+		}
+		return keyString;
+	}
+
+	private static String buildKeyString(Query query, Result result, Map.Entry<String, Object> values, List<String> typeNames) {
 		StringBuilder sb = new StringBuilder();
 		addMBeanIdentifier(query, result, sb);
 		sb.append(".");
@@ -87,7 +137,8 @@ public final class KeyUtils {
 			alias = server.getAlias();
 		} else {
 			alias = server.getHost() + "_" + server.getPort();
-			alias = StringUtils.cleanupStr(alias);
+			StringUtils.cleanupStr(sb, alias, false, false);
+			return;
 		}
 		sb.append(alias);
 	}
@@ -109,23 +160,41 @@ public final class KeyUtils {
 		if (result.getKeyAlias() != null) {
 			sb.append(result.getKeyAlias());
 		} else if (query.isUseObjDomainAsKey()) {
-			sb.append(StringUtils.cleanupStr(result.getObjDomain(), query.isAllowDottedKeys()));
+			appendCleaned(sb, result.getObjDomain(), query.isAllowDottedKeys());
 		} else {
-			sb.append(StringUtils.cleanupStr(result.getClassName()));
+			appendCleaned(sb, result.getClassName(), false);
 		}
 	}
 
 	private static void addTypeName(Query query, Result result, List<String> typeNames, StringBuilder sb) {
-		String typeName = StringUtils.cleanupStr(query.makeTypeNameValueString(typeNames, result.getTypeName()), query.isAllowDottedKeys());
-		if (typeName != null && typeName.length() > 0) {
-			sb.append(typeName);
+		int start = sb.length();
+		StringUtils.cleanupStr(sb, query.makeTypeNameValueString(typeNames, result.getTypeName()), query.isAllowDottedKeys(), false);
+		if (sb.length() > start) {
 			sb.append(".");
 		}
 	}
 
 	private static void addKeyString(Query query, Result result, Map.Entry<String, Object> values, StringBuilder sb) {
 		String keyStr = computeKey(result, values);
-		sb.append(StringUtils.cleanupStr(keyStr, query.isAllowDottedKeys()));
+		StringUtils.cleanupStr(sb, keyStr, query.isAllowDottedKeys(), false);
+	}
+
+	private static void appendCleaned(StringBuilder sb, String name, boolean allowDottedKeys) {
+		if (name == null) {
+			// keep the name we always generated for missing identifiers
+			sb.append("null");
+		} else {
+			StringUtils.cleanupStr(sb, name, allowDottedKeys, false);
+		}
+	}
+
+	private static void replaceParentheses(StringBuilder sb) {
+		for (int i = 0; i < sb.length(); i++) {
+			char c = sb.charAt(i);
+			if (c == '(' || c == ')') {
+				sb.setCharAt(i, '_');
+			}
+		}
 	}
 
 	private static String computeKey(Result result, Map.Entry<String, Object> values) {
@@ -138,4 +207,49 @@ public final class KeyUtils {
 		return keyStr;
 	}
 
+	/**
+	 * Every input the key string depends on. A null server means the key string
+	 * is built without root prefix nor alias.
+	 */
+	@EqualsAndHashCode
+	private static final class KeyStringKey {
+		private final boolean withServer;
+		private final String serverAlias;
+		private final String host;
+		private final String port;
+		private final String rootPrefix;
+		private final boolean useObjDomainAsKey;
+		private final boolean allowDottedKeys;
+		private final boolean useAllTypeNames;
+		private final String keyAlias;
+		private final String objDomain;
+		private final String className;
+		private final String typeName;
+		private final String attributeName;
+		private final String valueKey;
+		private final List<String> typeNames;
+		private final boolean replaceParentheses;
+
+		private KeyStringKey(
+				Server server, Query query, Result result, String valueKey, List<String> typeNames, String rootPrefix,
+				boolean replaceParentheses) {
+			this.withServer = server != null;
+			this.serverAlias = server == null ? null : server.getAlias();
+			this.host = server == null ? null : server.getHost();
+			this.port = server == null ? null : server.getPort();
+			this.rootPrefix = rootPrefix;
+			this.useObjDomainAsKey = query.isUseObjDomainAsKey();
+			this.allowDottedKeys = query.isAllowDottedKeys();
+			this.useAllTypeNames = query.isUseAllTypeNames();
+			this.keyAlias = result.getKeyAlias();
+			this.objDomain = result.getObjDomain();
+			this.className = result.getClassName();
+			this.typeName = result.getTypeName();
+			this.attributeName = result.getAttributeName();
+			this.valueKey = valueKey;
+			this.typeNames = typeNames;
+			this.replaceParentheses = replaceParentheses;
+		}
+	}
+
 }
@@ -0,0 +1,78 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.naming;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded cache of computed metric names.
+ *
+ * The components a metric name is built from (server, query, MBean, attribute
+ * and value key) are the same from one collection to the next, so names only
+ * need to be sanitized once. Output writers are instantiated outside of
+ * Guice, so a single instance is shared through {@link #shared()}.
+ *
+ * Keys must implement equals and hashCode over every component of the name.
+ */
+@ThreadSafe
+public final class MetricNameCache {
+
+	public static final long DEFAULT_MAXIMUM_SIZE = 100000;
+
+	private static final MetricNameCache SHARED = new MetricNameCache(DEFAULT_MAXIMUM_SIZE);
+
+	@Nonnull private final Cache<Object, String> names;
+
+	public MetricNameCache(long maximumSize) {
+		this.names = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.build();
+	}
+
+	@Nonnull
+	public static MetricNameCache shared() {
+		return SHARED;
+	}
+
+	@Nullable
+	public String getIfPresent(@Nonnull Object key) {
+		return names.getIfPresent(key);
+	}
+
+	public void put(@Nonnull Object key, @Nonnull String name) {
+		names.put(key, name);
+	}
+
+	public long size() {
+		return names.size();
+	}
+
+	public void invalidateAll() {
+		names.invalidateAll();
+	}
+}
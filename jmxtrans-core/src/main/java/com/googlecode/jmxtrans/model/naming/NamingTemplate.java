@@ -0,0 +1,267 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.naming;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.naming.typename.TypeNameValue;
+import org.apache.commons.jexl2.JexlArithmetic;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.Map;
+
+import static com.googlecode.jmxtrans.model.naming.JexlNamingStrategy.VAR_ATTRIBUTE_NAME;
+import static com.googlecode.jmxtrans.model.naming.JexlNamingStrategy.VAR_CLASSNAME;
+import static com.googlecode.jmxtrans.model.naming.JexlNamingStrategy.VAR_CLASSNAME_ALIAS;
+import static com.googlecode.jmxtrans.model.naming.JexlNamingStrategy.VAR_EFFECTIVE_CLASSNAME;
+import static com.googlecode.jmxtrans.model.naming.JexlNamingStrategy.VAR_TYPENAME;
+
+/**
+ * A naming expression compiled to a sequence of literal and field segments.
+ *
+ * Only the most common form of expressions is supported: string literals and
+ * variables (<code>realclass</code>, <code>attribute</code>, <code>alias</code>,
+ * <code>class</code>, <code>typename.key</code> or <code>typename['key']</code>)
+ * joined with <code>+</code>. Segments are added with the JEXL arithmetic, so
+ * the result is the same as the one of the interpreted expression.
+ *
+ * Such expressions only depend on the class name, alias, type name and
+ * attribute name of a result.
+ */
+@Immutable
+final class NamingTemplate {
+
+	private final ImmutableList<Segment> segments;
+	private final boolean usesTypeNames;
+
+	private NamingTemplate(ImmutableList<Segment> segments) {
+		this.segments = segments;
+		boolean usesTypeNames = false;
+		for (Segment segment : segments) {
+			usesTypeNames |= segment.kind == Kind.TYPENAME;
+		}
+		this.usesTypeNames = usesTypeNames;
+	}
+
+	/**
+	 * @return the compiled expression, or null if the expression needs to be
+	 * evaluated by JEXL.
+	 */
+	@Nullable
+	static NamingTemplate compile(@Nonnull String expression) {
+		ImmutableList.Builder<Segment> segments = ImmutableList.builder();
+		Parser parser = new Parser(expression);
+		do {
+			Segment segment = parser.segment();
+			if (segment == null) {
+				return null;
+			}
+			segments.add(segment);
+		} while (parser.plus());
+		if (!parser.atEnd()) {
+			return null;
+		}
+		return new NamingTemplate(segments.build());
+	}
+
+	@Nullable
+	Object evaluate(@Nonnull Result result, @Nonnull JexlArithmetic arithmetic) {
+		Map<String, String> typeNames = usesTypeNames
+				? TypeNameValue.extractMap(result.getTypeName())
+				: Collections.<String, String>emptyMap();
+		Object value = segments.get(0).value(result, typeNames);
+		for (int i = 1; i < segments.size(); i++) {
+			value = arithmetic.add(value, segments.get(i).value(result, typeNames));
+		}
+		return value;
+	}
+
+	private enum Kind {
+		LITERAL, CLASSNAME, ATTRIBUTE_NAME, CLASSNAME_ALIAS, EFFECTIVE_CLASSNAME, TYPENAME
+	}
+
+	@Immutable
+	private static final class Segment {
+		private final Kind kind;
+		/** The literal, or the key of the type name. */
+		private final String text;
+
+		private Segment(Kind kind, String text) {
+			this.kind = kind;
+			this.text = text;
+		}
+
+		private Object value(Result result, Map<String, String> typeNames) {
+			switch (kind) {
+				case LITERAL:
+					return text;
+				case CLASSNAME:
+					return result.getClassName();
+				case ATTRIBUTE_NAME:
+					return result.getAttributeName();
+				case CLASSNAME_ALIAS:
+					return result.getKeyAlias();
+				case EFFECTIVE_CLASSNAME:
+					return result.getKeyAlias() != null ? result.getKeyAlias() : result.getClassName();
+				case TYPENAME:
+					return typeNames.get(text);
+				default:
+					throw new IllegalStateException("Unknown segment " + kind);
+			}
+		}
+	}
+
+	/**
+	 * Recognizes the supported subset of JEXL. Any other construct makes the
+	 * parser give up, so that JEXL is used instead.
+	 */
+	private static final class Parser {
+		private static final ImmutableSet<String> RESERVED_WORDS = ImmutableSet.of(
+				"or", "and", "eq", "ne", "lt", "gt", "le", "ge", "div", "mod", "not", "null", "true", "false",
+				"new", "var", "empty", "size", "if", "else", "for", "while", "return", "function");
+
+		private final String expression;
+		private int position;
+
+		private Parser(String expression) {
+			this.expression = expression;
+		}
+
+		@Nullable
+		private Segment segment() {
+			skipWhitespaces();
+			if (atEnd()) {
+				return null;
+			}
+			char c = expression.charAt(position);
+			if (c == '\'' || c == '"') {
+				String literal = literal();
+				return literal == null ? null : new Segment(Kind.LITERAL, literal);
+			}
+			String identifier = identifier();
+			if (identifier == null) {
+				return null;
+			}
+			switch (identifier) {
+				case VAR_CLASSNAME:
+					return new Segment(Kind.CLASSNAME, null);
+				case VAR_ATTRIBUTE_NAME:
+					return new Segment(Kind.ATTRIBUTE_NAME, null);
+				case VAR_CLASSNAME_ALIAS:
+					return new Segment(Kind.CLASSNAME_ALIAS, null);
+				case VAR_EFFECTIVE_CLASSNAME:
+					return new Segment(Kind.EFFECTIVE_CLASSNAME, null);
+				case VAR_TYPENAME:
+					String key = typeNameKey();
+					return key == null ? null : new Segment(Kind.TYPENAME, key);
+				default:
+					return null;
+			}
+		}
+
+		private boolean plus() {
+			skipWhitespaces();
+			if (!atEnd() && expression.charAt(position) == '+') {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean atEnd() {
+			skipWhitespaces();
+			return position >= expression.length();
+		}
+
+		@Nullable
+		private String typeNameKey() {
+			if (atEnd()) {
+				return null;
+			}
+			char c = expression.charAt(position);
+			if (c == '.') {
+				position++;
+				String key = identifier();
+				return key == null || RESERVED_WORDS.contains(key) ? null : key;
+			}
+			if (c == '[') {
+				position++;
+				skipWhitespaces();
+				if (atEnd()) {
+					return null;
+				}
+				c = expression.charAt(position);
+				String key = (c == '\'' || c == '"') ? literal() : null;
+				skipWhitespaces();
+				if (key == null || atEnd() || expression.charAt(position) != ']') {
+					return null;
+				}
+				position++;
+				return key;
+			}
+			return null;
+		}
+
+		/** A quoted string, escape sequences are left to JEXL. */
+		@Nullable
+		private String literal() {
+			char quote = expression.charAt(position);
+			int end = expression.indexOf(quote, position + 1);
+			if (end < 0) {
+				return null;
+			}
+			String literal = expression.substring(position + 1, end);
+			if (literal.indexOf('\\') >= 0) {
+				return null;
+			}
+			position = end + 1;
+			return literal;
+		}
+
+		@Nullable
+		private String identifier() {
+			int start = position;
+			while (position < expression.length() && isIdentifierPart(expression.charAt(position), position == start)) {
+				position++;
+			}
+			if (position == start) {
+				return null;
+			}
+			return expression.substring(start, position);
+		}
+
+		private static boolean isIdentifierPart(char c, boolean first) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (!first && c >= '0' && c <= '9');
+		}
+
+		private void skipWhitespaces() {
+			while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+				position++;
+			}
+		}
+	}
+}
@@ -22,12 +22,33 @@
  */
 package com.googlecode.jmxtrans.model.naming;
 
-import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
 
+/**
+ * Sanitizes metric name fragments.
+ *
+ * Sanitizing is done in a single pass over the input, looking up the action
+ * for each character in a table, and writes directly to the builder the name
+ * is being assembled in.
+ */
 public final class StringUtils {
-	private static final Pattern DOT_SLASH_UNDERSCORE_PAT = Pattern.compile("[./]");
-	private static final Pattern SLASH_UNDERSCORE_PAT = Pattern.compile("/", Pattern.LITERAL);
-	private static final Pattern SPACE_PAT = Pattern.compile("[ \"']+");
+
+	private static final byte KEEP = 0;
+	private static final byte UNDERSCORE = 1;
+	private static final byte DROP = 2;
+	private static final byte PARENTHESIS = 3;
+
+	/** Actions for ASCII characters, anything else is kept. */
+	private static final byte[] ACTIONS = new byte[128];
+
+	static {
+		ACTIONS['/'] = UNDERSCORE;
+		ACTIONS[' '] = DROP;
+		ACTIONS['"'] = DROP;
+		ACTIONS['\''] = DROP;
+		ACTIONS['('] = PARENTHESIS;
+		ACTIONS[')'] = PARENTHESIS;
+	}
 
 	private StringUtils() {}
 
@@ -45,19 +66,89 @@ public final class StringUtils {
 	 * @param allowDottedKeys whether we remove the dots or not.
 	 */
 	public static String cleanupStr(String name, boolean allowDottedKeys) {
+		return cleanupStr(name, allowDottedKeys, false);
+	}
+
+	/**
+	 * Same as {@link #cleanupStr(String, boolean)}, optionally replacing
+	 * parentheses with _ as well. Parentheses are replaced after the trailing
+	 * . or _ have been chomped, so a trailing parenthesis is kept as a _.
+	 *
+	 * @param replaceParentheses whether we replace the parentheses or not.
+	 */
+	public static String cleanupStr(String name, boolean allowDottedKeys, boolean replaceParentheses) {
 		if (name == null) {
 			return null;
 		}
-		Pattern pattern;
-		if (!allowDottedKeys) {
-			pattern = DOT_SLASH_UNDERSCORE_PAT;
-		} else {
-			pattern = SLASH_UNDERSCORE_PAT;
-		}
-		String clean = pattern.matcher(name).replaceAll("_");
-		clean = SPACE_PAT.matcher(clean).replaceAll("");
-		clean = org.apache.commons.lang.StringUtils.chomp(clean, ".");
-		clean = org.apache.commons.lang.StringUtils.chomp(clean, "_");
-		return clean;
+		if (isClean(name, allowDottedKeys, replaceParentheses)) {
+			return name;
+		}
+		StringBuilder sb = new StringBuilder(name.length());
+		cleanupStr(sb, name, allowDottedKeys, replaceParentheses);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the sanitized name to the given builder.
+	 *
+	 * @see #cleanupStr(String, boolean, boolean)
+	 */
+	public static void cleanupStr(@Nonnull StringBuilder sb, String name, boolean allowDottedKeys, boolean replaceParentheses) {
+		if (name == null) {
+			return;
+		}
+		int start = sb.length();
+		int lastParenthesis = -1;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			switch (action(c, allowDottedKeys, replaceParentheses)) {
+				case UNDERSCORE:
+					sb.append('_');
+					break;
+				case DROP:
+					break;
+				case PARENTHESIS:
+					lastParenthesis = sb.length();
+					sb.append('_');
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+		int length = sb.length();
+		if (length > start && sb.charAt(length - 1) == '.') {
+			length--;
+		}
+		if (length > start && sb.charAt(length - 1) == '_' && lastParenthesis != length - 1) {
+			length--;
+		}
+		sb.setLength(length);
+	}
+
+	private static boolean isClean(String name, boolean allowDottedKeys, boolean replaceParentheses) {
+		for (int i = 0; i < name.length(); i++) {
+			if (action(name.charAt(i), allowDottedKeys, replaceParentheses) != KEEP) {
+				return false;
+			}
+		}
+		if (name.isEmpty()) {
+			return true;
+		}
+		char last = name.charAt(name.length() - 1);
+		return last != '.' && last != '_';
+	}
+
+	private static byte action(char c, boolean allowDottedKeys, boolean replaceParentheses) {
+		if (c >= ACTIONS.length) {
+			return KEEP;
+		}
+		if (c == '.') {
+			return allowDottedKeys ? KEEP : UNDERSCORE;
+		}
+		byte action = ACTIONS[c];
+		if (action == PARENTHESIS && !replaceParentheses) {
+			return KEEP;
+		}
+		return action;
 	}
 }
@@ -22,6 +22,7 @@
  */
 package com.googlecode.jmxtrans.model.output.support;
 
+import com.googlecode.jmxtrans.exceptions.LifecycleException;
 import com.googlecode.jmxtrans.model.OutputWriter;
 import com.googlecode.jmxtrans.model.OutputWriterAdapter;
 import com.googlecode.jmxtrans.model.Query;
@@ -53,6 +54,16 @@ public class ResultTransformerOutputWriter<T extends OutputWriter> extends Outpu
 				from(results).transform(resultValuesTransformer).toList());
 	}
 
+	@Override
+	public void start() throws LifecycleException {
+		target.start();
+	}
+
+	@Override
+	public void stop() throws LifecycleException {
+		target.stop();
+	}
+
 	public static <T extends OutputWriter> ResultTransformerOutputWriter<T> booleanToNumber(boolean booleanToNumber, T target) {
 		if (booleanToNumber) return booleanToNumber(target);
 		return identity(target);
@@ -0,0 +1,292 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.spool;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
+/**
+ * Append-only log of records, stored in memory mapped segment files.
+ * <p/>
+ * Each record is written as [int length][long timestamp][payload], a length
+ * of 0 marks the end of the records of a segment. Records are read back in
+ * the order they were appended: {@link #peek(long)} returns the oldest one
+ * and {@link #remove(Record)} discards it once it has been handled. Segments
+ * are deleted as soon as all their records are consumed.
+ * <p/>
+ * The log is capped both in size, the oldest segments being dropped when the
+ * segments would use more than maxBytes on disk, and in age, records older
+ * than maxAgeMillis being skipped when read. The log does not survive a
+ * restart: the directory is cleared when the log is created, and deleted
+ * when it is closed.
+ */
+@ThreadSafe
+public class SegmentLog implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(SegmentLog.class);
+
+	private static final int HEADER_SIZE = 4 + 8;
+	private static final int END_MARKER_SIZE = 4;
+
+	@Nonnull private final File directory;
+	private final int segmentSize;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+
+	private final Deque<Segment> segments = new ArrayDeque<>();
+	private long nextSegment = 0;
+	private long nextSequence = 0;
+	private long sizeOnDisk = 0;
+	private long records = 0;
+	private long droppedRecords = 0;
+	private boolean closed = false;
+
+	public SegmentLog(@Nonnull File directory, int segmentSize, long maxBytes, long maxAgeMillis) throws IOException {
+		checkArgument(segmentSize > HEADER_SIZE + END_MARKER_SIZE, "Segment size must be larger than a record header");
+		checkArgument(maxBytes >= segmentSize, "Maximum size must be at least one segment");
+		checkArgument(maxAgeMillis > 0, "Maximum age must be positive");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		clearDirectory();
+	}
+
+	public synchronized void append(@Nonnull byte[] payload, long timestamp) throws IOException {
+		if (closed) throw new IOException("Log in " + directory + " is closed");
+
+		int recordSize = HEADER_SIZE + payload.length;
+		Segment tail = segments.peekLast();
+		if (tail == null || tail.remaining() < recordSize) {
+			tail = roll(recordSize + END_MARKER_SIZE);
+		}
+		tail.write(payload, timestamp);
+		nextSequence++;
+		records++;
+	}
+
+	/**
+	 * Returns the oldest record, skipping the records that are too old to be
+	 * replayed, or null if the log is empty.
+	 */
+	@Nullable
+	public synchronized Record peek(long now) {
+		while (true) {
+			Segment head = head();
+			if (head == null) return null;
+			if (head.nextTimestamp() < now - maxAgeMillis) {
+				head.skip();
+				records--;
+				droppedRecords++;
+				continue;
+			}
+			return new Record(head.nextSequence(), head.nextPayload());
+		}
+	}
+
+	/**
+	 * Discards a record returned by {@link #peek(long)}. Does nothing if the
+	 * record has already been dropped, which happens when the log fills up
+	 * between the calls to peek and remove.
+	 */
+	public synchronized void remove(@Nonnull Record record) {
+		Segment head = head();
+		if (head == null || head.nextSequence() != record.getSequence()) return;
+		head.skip();
+		records--;
+		if (!head.hasNext() && head != segments.peekLast()) discardHead();
+	}
+
+	public synchronized boolean isEmpty() {
+		return records == 0;
+	}
+
+	public synchronized long size() {
+		return records;
+	}
+
+	/** Number of records lost because of the size or age caps. */
+	public synchronized long getDroppedRecords() {
+		return droppedRecords;
+	}
+
+	public synchronized long getSizeOnDisk() {
+		return sizeOnDisk;
+	}
+
+	/** Discards all records and deletes the segment files and their directory. */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		while (!segments.isEmpty()) {
+			discardHead();
+		}
+		records = 0;
+		if (!directory.delete()) log.warn("Could not delete spool directory {}", directory);
+	}
+
+	/** Returns the segment holding the oldest record, or null if there is none. */
+	@Nullable
+	private Segment head() {
+		while (true) {
+			Segment head = segments.peekFirst();
+			if (head == null) return null;
+			if (head.hasNext()) return head;
+			if (head == segments.peekLast()) return null;
+			discardHead();
+		}
+	}
+
+	private Segment roll(int minimumSize) throws IOException {
+		int size = Math.max(segmentSize, minimumSize);
+		while (!segments.isEmpty() && sizeOnDisk + size > maxBytes) {
+			Segment dropped = segments.peekFirst();
+			log.warn("Spool in {} is full, dropping {} records", directory, dropped.pendingRecords());
+			records -= dropped.pendingRecords();
+			droppedRecords += dropped.pendingRecords();
+			discardHead();
+		}
+		Segment segment = new Segment(new File(directory, format("spool-%019d.log", nextSegment++)), size, nextSequence);
+		segments.addLast(segment);
+		sizeOnDisk += size;
+		return segment;
+	}
+
+	private void discardHead() {
+		Segment head = segments.removeFirst();
+		sizeOnDisk -= head.capacity();
+		head.delete();
+	}
+
+	private void clearDirectory() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create spool directory " + directory);
+		}
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		for (File file : files) {
+			if (file.getName().startsWith("spool-") && !file.delete()) {
+				log.warn("Could not delete stale spool segment {}", file);
+			}
+		}
+	}
+
+	/** A record of the log, identified by its position in the sequence of appended records. */
+	public static final class Record {
+		@Getter private final long sequence;
+		@Nonnull @Getter private final byte[] payload;
+
+		private Record(long sequence, @Nonnull byte[] payload) {
+			this.sequence = sequence;
+			this.payload = payload;
+		}
+	}
+
+	/**
+	 * A single segment file. The channel is closed as soon as the file is
+	 * mapped, the mapping stays valid until the buffer is garbage collected.
+	 */
+	private static final class Segment {
+		@Nonnull private final File file;
+		@Nonnull private final MappedByteBuffer buffer;
+		private final long firstSequence;
+		private int writePosition = 0;
+		private int readPosition = 0;
+		private long written = 0;
+		private long read = 0;
+
+		Segment(@Nonnull File file, int size, long firstSequence) throws IOException {
+			this.file = file;
+			this.firstSequence = firstSequence;
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+		}
+
+		int capacity() {
+			return buffer.capacity();
+		}
+
+		int remaining() {
+			return buffer.capacity() - writePosition - END_MARKER_SIZE;
+		}
+
+		void write(byte[] payload, long timestamp) {
+			buffer.position(writePosition);
+			buffer.putInt(payload.length + 8);
+			buffer.putLong(timestamp);
+			buffer.put(payload);
+			writePosition = buffer.position();
+			buffer.putInt(0);
+			written++;
+		}
+
+		boolean hasNext() {
+			return readPosition < writePosition;
+		}
+
+		long pendingRecords() {
+			return written - read;
+		}
+
+		long nextSequence() {
+			return firstSequence + read;
+		}
+
+		long nextTimestamp() {
+			return buffer.getLong(readPosition + 4);
+		}
+
+		byte[] nextPayload() {
+			byte[] payload = new byte[buffer.getInt(readPosition) - 8];
+			buffer.position(readPosition + HEADER_SIZE);
+			buffer.get(payload);
+			return payload;
+		}
+
+		void skip() {
+			readPosition += 4 + buffer.getInt(readPosition);
+			read++;
+		}
+
+		void delete() {
+			if (!file.delete()) log.warn("Could not delete spool segment {}", file);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.spool;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.googlecode.jmxtrans.model.Result;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+/**
+ * A batch of results as stored in the spool, with the ids of its server and
+ * query. Values keep their type when they are numbers, booleans or strings,
+ * any other value is stored as its string representation.
+ */
+@Immutable
+final class SpooledResults {
+
+	private static final byte NULL = 0;
+	private static final byte INTEGER = 1;
+	private static final byte LONG = 2;
+	private static final byte FLOAT = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte BOOLEAN = 5;
+	private static final byte STRING = 6;
+
+	@Getter private final int serverId;
+	@Getter private final int queryId;
+	@Nonnull @Getter private final ImmutableList<Result> results;
+
+	SpooledResults(int serverId, int queryId, @Nonnull ImmutableList<Result> results) {
+		this.serverId = serverId;
+		this.queryId = queryId;
+		this.results = results;
+	}
+
+	@Nonnull
+	byte[] encode() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(serverId);
+		out.writeInt(queryId);
+		out.writeInt(results.size());
+		for (Result result : results) {
+			out.writeLong(result.getEpoch());
+			writeString(out, result.getAttributeName());
+			writeString(out, result.getClassName());
+			writeString(out, result.getObjDomain());
+			writeString(out, result.getKeyAlias());
+			writeString(out, result.getTypeName());
+			out.writeInt(result.getValues().size());
+			for (Map.Entry<String, Object> value : result.getValues().entrySet()) {
+				writeString(out, value.getKey());
+				writeValue(out, value.getValue());
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	@Nonnull
+	static SpooledResults decode(@Nonnull byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		int serverId = in.readInt();
+		int queryId = in.readInt();
+		int count = in.readInt();
+		ImmutableList.Builder<Result> results = ImmutableList.builder();
+		for (int i = 0; i < count; i++) {
+			long epoch = in.readLong();
+			String attributeName = readString(in);
+			String className = readString(in);
+			String objDomain = readString(in);
+			String keyAlias = readString(in);
+			String typeName = readString(in);
+			int valueCount = in.readInt();
+			Map<String, Object> values = Maps.newLinkedHashMap();
+			for (int j = 0; j < valueCount; j++) {
+				values.put(readString(in), readValue(in));
+			}
+			results.add(new Result(epoch, attributeName, className, objDomain, keyAlias, typeName, values));
+		}
+		return new SpooledResults(serverId, queryId, results.build());
+	}
+
+	private static void writeValue(DataOutputStream out, @Nullable Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else {
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	@Nullable
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case BOOLEAN:
+				return in.readBoolean();
+			case STRING:
+				return readString(in);
+			default:
+				throw new IOException("Unknown value type " + type);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	@Nullable
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
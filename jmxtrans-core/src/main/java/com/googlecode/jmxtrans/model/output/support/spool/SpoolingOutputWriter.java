@@ -0,0 +1,226 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.spool;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.exceptions.LifecycleException;
+import com.googlecode.jmxtrans.model.MetricPoint;
+import com.googlecode.jmxtrans.model.MetricPointWriter;
+import com.googlecode.jmxtrans.model.MetricPoints;
+import com.googlecode.jmxtrans.model.OutputWriter;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.model.ValidationException;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes results to its target as long as the target accepts them. Once a
+ * write fails, results are appended to a {@link SegmentLog} instead, and are
+ * written back to the target by {@link #replay(long, int)}, in order, once it
+ * recovers. New results keep going to the spool until it is drained, so that
+ * the target receives them in the order they were collected.
+ * <p/>
+ * Servers and queries are not serialized, the spool only keeps their ids.
+ * The ids are forgotten each time the spool is drained, so that servers and
+ * queries of a previous configuration are not kept alive.
+ * <p/>
+ * Points are forwarded as they are to targets which consume points, and are
+ * spooled as results.
+ */
+@ThreadSafe
+public class SpoolingOutputWriter<T extends OutputWriter> implements MetricPointWriter, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(SpoolingOutputWriter.class);
+
+	@Nonnull @Getter private final T target;
+	@Nonnull private final SegmentLog spool;
+
+	@GuardedBy("this") private final BiMap<Server, Integer> serverIds = HashBiMap.create();
+	@GuardedBy("this") private final BiMap<Query, Integer> queryIds = HashBiMap.create();
+
+	private final Object replayLock = new Object();
+
+	public SpoolingOutputWriter(@Nonnull T target, @Nonnull SegmentLog spool) {
+		this.target = target;
+		this.spool = spool;
+	}
+
+	@Override
+	public void doWrite(Server server, Query query, Iterable<Result> results) throws Exception {
+		if (spool.isEmpty()) {
+			try {
+				target.doWrite(server, query, results);
+				return;
+			} catch (Exception e) {
+				log.warn("Could not write to {}, spooling results until it recovers", target, e);
+			}
+		}
+		append(server, query, results);
+	}
+
+	@Override
+	public void writePoints(@Nonnull Server server, @Nonnull Query query, @Nonnull Iterable<MetricPoint> points) throws Exception {
+		if (spool.isEmpty()) {
+			try {
+				if (target instanceof MetricPointWriter) {
+					((MetricPointWriter) target).writePoints(server, query, points);
+				} else {
+					target.doWrite(server, query, MetricPoints.of(points));
+				}
+				return;
+			} catch (Exception e) {
+				log.warn("Could not write to {}, spooling results until it recovers", target, e);
+			}
+		}
+		append(server, query, MetricPoints.of(points));
+	}
+
+	private synchronized void append(Server server, Query query, Iterable<Result> results) throws IOException {
+		// ids are assigned and spooled atomically, so that they cannot be forgotten in between
+		spool.append(
+				new SpooledResults(idOf(server), idOf(query), ImmutableList.copyOf(results)).encode(),
+				System.currentTimeMillis());
+	}
+
+	/**
+	 * Writes at most maxBatches spooled batches of results to the target,
+	 * stopping at the first failure.
+	 *
+	 * @return the number of batches written
+	 */
+	public int replay(long now, int maxBatches) {
+		synchronized (replayLock) {
+			for (int replayed = 0; replayed < maxBatches; replayed++) {
+				SegmentLog.Record record = spool.peek(now);
+				if (record == null) {
+					forgetIdsIfDrained();
+					return replayed;
+				}
+
+				SpooledResults batch;
+				try {
+					batch = SpooledResults.decode(record.getPayload());
+				} catch (IOException ioe) {
+					log.error("Dropping unreadable spooled results for {}", target, ioe);
+					spool.remove(record);
+					continue;
+				}
+
+				try {
+					target.doWrite(serverOf(batch.getServerId()), queryOf(batch.getQueryId()), batch.getResults());
+				} catch (Exception e) {
+					log.debug("Could not replay spooled results to {}, {} batches pending", target, spool.size(), e);
+					return replayed;
+				}
+				spool.remove(record);
+			}
+			forgetIdsIfDrained();
+			return maxBatches;
+		}
+	}
+
+	public long getSpooledBatches() {
+		return spool.size();
+	}
+
+	public long getDroppedBatches() {
+		return spool.getDroppedRecords();
+	}
+
+	private synchronized int idOf(Server server) {
+		return idOf(serverIds, server);
+	}
+
+	private synchronized int idOf(Query query) {
+		return idOf(queryIds, query);
+	}
+
+	private static <K> int idOf(BiMap<K, Integer> ids, K key) {
+		Integer id = ids.get(key);
+		if (id == null) {
+			id = ids.size();
+			ids.put(key, id);
+		}
+		return id;
+	}
+
+	private synchronized void forgetIdsIfDrained() {
+		if (!spool.isEmpty()) return;
+		serverIds.clear();
+		queryIds.clear();
+	}
+
+	private synchronized Server serverOf(int id) {
+		return serverIds.inverse().get(id);
+	}
+
+	private synchronized Query queryOf(int id) {
+		return queryIds.inverse().get(id);
+	}
+
+	@Override
+	public void start() throws LifecycleException {
+		target.start();
+	}
+
+	@Override
+	public void stop() throws LifecycleException {
+		target.stop();
+	}
+
+	/** Discards the spooled results, once a replay in progress is done. */
+	@Override
+	public void close() {
+		synchronized (replayLock) {
+			spool.close();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public Map<String, Object> getSettings() {
+		return target.getSettings();
+	}
+
+	@Override
+	public void validateSetup(Server server, Query query) throws ValidationException {
+		target.validateSetup(server, query);
+	}
+
+	@Override
+	public String toString() {
+		return "SpoolingOutputWriter(" + target + ")";
+	}
+}
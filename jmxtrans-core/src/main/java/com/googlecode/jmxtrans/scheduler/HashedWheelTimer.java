@@ -0,0 +1,205 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.scheduler;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.googlecode.jmxtrans.util.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A hashed timing wheel: a single worker thread advances a circular array of
+ * buckets, one bucket per tick. Timeouts are hashed into the bucket of their
+ * deadline and carry the number of full wheel rotations left before they
+ * expire, so adding, cancelling and expiring a timeout are all O(1).
+ * <p/>
+ * Tasks are run on the worker thread and must therefore hand off any real work
+ * to an executor.
+ */
+@ThreadSafe
+public class HashedWheelTimer {
+
+	private static final Logger log = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	@Nonnull private final Clock clock;
+	@Nonnull private final ThreadFactory threadFactory;
+	private final long tickMillis;
+	private final int mask;
+	/** Only accessed from the worker thread. */
+	@Nonnull private final Queue<Timeout>[] wheel;
+	@Nonnull private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+	private final long startTime;
+	/** Only accessed from the worker thread. */
+	private long tick = 0;
+
+	private volatile Thread worker;
+	private volatile boolean running = false;
+
+	@SuppressWarnings("unchecked")
+	public HashedWheelTimer(@Nonnull Clock clock, @Nonnull ThreadFactory threadFactory, long tickMillis, int wheelSize) {
+		checkArgument(tickMillis > 0, "tickMillis must be positive");
+		checkArgument(wheelSize > 0 && Integer.bitCount(wheelSize) == 1, "wheelSize must be a power of two");
+		this.clock = clock;
+		this.threadFactory = threadFactory;
+		this.tickMillis = tickMillis;
+		this.mask = wheelSize - 1;
+		this.wheel = new Queue[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			wheel[i] = new ArrayDeque<>();
+		}
+		this.startTime = clock.currentTimeMillis();
+	}
+
+	public synchronized void start() {
+		if (running) return;
+		running = true;
+		worker = threadFactory.newThread(new Worker());
+		worker.start();
+	}
+
+	/**
+	 * Stops the worker thread without waiting for the next tick. Pending
+	 * timeouts are discarded.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (!running) return;
+		running = false;
+		worker.interrupt();
+		worker.join();
+		worker = null;
+		pendingTimeouts.clear();
+	}
+
+	public boolean isStarted() {
+		return running;
+	}
+
+	/**
+	 * Schedules the task to run on the first tick following the given
+	 * deadline (in milliseconds, as given by the clock of this timer).
+	 */
+	@Nonnull
+	public Timeout newTimeout(@Nonnull Runnable task, long deadline) {
+		Timeout timeout = new Timeout(task, deadline);
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Processes all ticks that have elapsed at the given time.
+	 */
+	@VisibleForTesting
+	void expireTimeouts(long now) {
+		while (startTime + (tick + 1) * tickMillis <= now) {
+			transferPendingTimeouts();
+			expireBucket(wheel[(int) (tick & mask)]);
+			tick++;
+		}
+	}
+
+	private void transferPendingTimeouts() {
+		Timeout timeout;
+		while ((timeout = pendingTimeouts.poll()) != null) {
+			if (timeout.isCancelled()) continue;
+			long deadlineTick = Math.max((timeout.deadline - startTime) / tickMillis, tick);
+			timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+			wheel[(int) (deadlineTick & mask)].add(timeout);
+		}
+	}
+
+	private void expireBucket(Queue<Timeout> bucket) {
+		Iterator<Timeout> timeouts = bucket.iterator();
+		while (timeouts.hasNext()) {
+			Timeout timeout = timeouts.next();
+			if (timeout.isCancelled()) {
+				timeouts.remove();
+			} else if (timeout.remainingRounds <= 0) {
+				timeouts.remove();
+				timeout.expire();
+			} else {
+				timeout.remainingRounds--;
+			}
+		}
+	}
+
+	private final class Worker implements Runnable {
+		@Override
+		public void run() {
+			while (running) {
+				long sleepMillis = startTime + (tick + 1) * tickMillis - clock.currentTimeMillis();
+				if (sleepMillis > 0) {
+					try {
+						Thread.sleep(sleepMillis);
+					} catch (InterruptedException e) {
+						// stop() interrupts us, the loop condition takes care of exiting
+						continue;
+					}
+				}
+				expireTimeouts(clock.currentTimeMillis());
+			}
+		}
+	}
+
+	public static final class Timeout {
+		@Nonnull private final Runnable task;
+		private final long deadline;
+		/** Only accessed from the worker thread. */
+		private long remainingRounds;
+		private volatile boolean cancelled = false;
+
+		private Timeout(@Nonnull Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		private void expire() {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				log.error("Error running scheduled task {}", task, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.scheduler;
+
+import com.googlecode.jmxtrans.exceptions.LifecycleException;
+import com.googlecode.jmxtrans.jobs.ServerJob;
+import com.googlecode.jmxtrans.model.Server;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.lang.RandomStringUtils;
+import org.quartz.CronExpression;
+import org.quartz.CronTrigger;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * Schedules {@link ServerJob}s with Quartz. Kept for users relying on a custom
+ * Quartz configuration, the {@link WheelServerScheduler} is used by default.
+ */
+public class QuartzServerScheduler implements ServerScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(QuartzServerScheduler.class);
+
+	@Nonnull private final Scheduler serverScheduler;
+	@Nonnull private final ConcurrentMap<Server, String> jobNames = new ConcurrentHashMap<>();
+
+	public QuartzServerScheduler(@Nonnull Scheduler serverScheduler) {
+		this.serverScheduler = serverScheduler;
+	}
+
+	@Override
+	public void start() throws LifecycleException {
+		try {
+			serverScheduler.start();
+		} catch (SchedulerException e) {
+			throw new LifecycleException(e);
+		}
+	}
+
+	@Override
+	public void schedule(@Nonnull Server server, @Nonnull Date startDate, int runPeriodSeconds) throws LifecycleException {
+		try {
+			String name = server.getHost() + ":" + server.getPort() + "-" + System.currentTimeMillis() + "-" + RandomStringUtils.randomNumeric(10);
+			JobDetail jd = new JobDetail(name, "ServerJob", ServerJob.class);
+
+			JobDataMap map = new JobDataMap();
+			map.put(Server.class.getName(), server);
+			jd.setJobDataMap(map);
+
+			Trigger trigger;
+
+			if ((server.getCronExpression() != null) && CronExpression.isValidExpression(server.getCronExpression())) {
+				trigger = new CronTrigger();
+				((CronTrigger) trigger).setCronExpression(server.getCronExpression());
+			} else {
+				trigger = TriggerUtils.makeSecondlyTrigger(runPeriodSeconds);
+			}
+			trigger.setName(server.getHost() + ":" + server.getPort() + "-" + Long.toString(System.currentTimeMillis()));
+			trigger.setStartTime(startDate);
+
+			unschedule(server);
+			serverScheduler.scheduleJob(jd, trigger);
+			jobNames.put(server, name);
+			if (log.isDebugEnabled()) {
+				log.debug("Scheduled job: " + jd.getName() + " for server: " + server);
+			}
+		} catch (ParseException ex) {
+			throw new LifecycleException("Error parsing cron expression: " + server.getCronExpression(), ex);
+		} catch (SchedulerException ex) {
+			throw new LifecycleException("Error scheduling job for server: " + server, ex);
+		}
+	}
+
+	@Override
+	public void unschedule(@Nonnull Server server) throws LifecycleException {
+		String name = jobNames.remove(server);
+		if (name == null) return;
+		try {
+			serverScheduler.deleteJob(name, "ServerJob");
+			log.debug("Deleted scheduled job: {} for server: {}", name, server);
+		} catch (SchedulerException e) {
+			throw new LifecycleException(e);
+		}
+	}
+
+	@Override
+	public void unscheduleAll() throws LifecycleException {
+		try {
+			List<JobDetail> allJobs = new ArrayList<>();
+			String[] jobGroups = serverScheduler.getJobGroupNames();
+			for (String jobGroup : jobGroups) {
+				String[] jobNames = serverScheduler.getJobNames(jobGroup);
+				for (String jobName : jobNames) {
+					allJobs.add(serverScheduler.getJobDetail(jobName, jobGroup));
+				}
+			}
+
+			for (JobDetail jd : allJobs) {
+				serverScheduler.deleteJob(jd.getName(), jd.getGroup());
+				if (log.isDebugEnabled()) {
+					log.debug("Deleted scheduled job: " + jd.getName() + " group: " + jd.getGroup());
+				}
+			}
+			jobNames.clear();
+		} catch (SchedulerException e) {
+			throw new LifecycleException(e);
+		}
+	}
+
+	// There is a sleep to work around a Quartz issue. The issue is marked to be
+	// fixed, but will require further analysis. This should not be reported by
+	// Findbugs, but as a more complex issue.
+	@Override
+	@SuppressFBWarnings(value = "SWL_SLEEP_WITH_LOCK_HELD", justification = "Workaround for Quartz issue")
+	public synchronized void shutdown() throws LifecycleException {
+		try {
+			if (serverScheduler.isStarted()) {
+				serverScheduler.shutdown(true);
+				log.debug("Shutdown server scheduler");
+				try {
+					// FIXME: Quartz issue, need to sleep
+					Thread.sleep(1500);
+				} catch (InterruptedException e) {
+					log.error(e.getMessage(), e);
+					currentThread().interrupt();
+				}
+			}
+		} catch (SchedulerException e) {
+			throw new LifecycleException(e);
+		}
+	}
+}
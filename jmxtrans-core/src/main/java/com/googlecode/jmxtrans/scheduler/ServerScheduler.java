@@ -0,0 +1,55 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.scheduler;
+
+import com.google.inject.ProvidedBy;
+import com.googlecode.jmxtrans.exceptions.LifecycleException;
+import com.googlecode.jmxtrans.model.Server;
+
+import javax.annotation.Nonnull;
+import java.util.Date;
+
+/**
+ * Triggers the periodic collection of {@link Server}s.
+ */
+@ProvidedBy(ServerSchedulerProvider.class)
+public interface ServerScheduler {
+
+	void start() throws LifecycleException;
+
+	/**
+	 * Schedules the server to be processed, first at startDate and then either
+	 * according to its (deprecated) cron expression or every runPeriodSeconds.
+	 */
+	void schedule(@Nonnull Server server, @Nonnull Date startDate, int runPeriodSeconds) throws LifecycleException;
+
+	/**
+	 * Stops triggering a previously scheduled server. Servers are matched by
+	 * equality, not by identity.
+	 */
+	void unschedule(@Nonnull Server server) throws LifecycleException;
+
+	void unscheduleAll() throws LifecycleException;
+
+	void shutdown() throws LifecycleException;
+}
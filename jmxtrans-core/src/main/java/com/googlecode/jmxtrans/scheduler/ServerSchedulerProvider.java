@@ -0,0 +1,85 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.scheduler;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.googlecode.jmxtrans.cli.JmxTransConfiguration;
+import com.googlecode.jmxtrans.jmx.JmxUtils;
+import com.googlecode.jmxtrans.util.SystemClock;
+import org.quartz.Scheduler;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Creates the Quartz based scheduler if requested in the configuration, the
+ * built-in {@link WheelServerScheduler} otherwise. The scheduler is created
+ * once and shared.
+ */
+@Singleton
+public class ServerSchedulerProvider implements Provider<ServerScheduler> {
+
+	/** Scheduling resolution of the built-in scheduler. */
+	private static final long WHEEL_TICK_MILLIS = 100;
+	/** Number of buckets of the timing wheel, one full rotation covers ~51 seconds. */
+	private static final int WHEEL_SIZE = 512;
+
+	@Nonnull private final JmxTransConfiguration configuration;
+	@Nonnull private final Provider<Scheduler> quartzScheduler;
+	@Nonnull private final Provider<JmxUtils> jmxUtils;
+	private ServerScheduler serverScheduler;
+
+	@Inject
+	public ServerSchedulerProvider(
+			@Nonnull JmxTransConfiguration configuration,
+			@Nonnull Provider<Scheduler> quartzScheduler,
+			@Nonnull Provider<JmxUtils> jmxUtils) {
+		this.configuration = configuration;
+		this.quartzScheduler = quartzScheduler;
+		this.jmxUtils = jmxUtils;
+	}
+
+	@Override
+	public synchronized ServerScheduler get() {
+		if (serverScheduler == null) serverScheduler = createServerScheduler();
+		return serverScheduler;
+	}
+
+	private ServerScheduler createServerScheduler() {
+		if (configuration.isUseQuartzScheduler()) {
+			return new QuartzServerScheduler(quartzScheduler.get());
+		}
+		SystemClock clock = new SystemClock();
+		HashedWheelTimer timer = new HashedWheelTimer(
+				clock,
+				new ThreadFactoryBuilder()
+						.setDaemon(true)
+						.setNameFormat("jmxtrans-scheduler-%d")
+						.build(),
+				WHEEL_TICK_MILLIS,
+				WHEEL_SIZE);
+		return new WheelServerScheduler(timer, jmxUtils.get(), clock);
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.scheduler;
+
+import com.googlecode.jmxtrans.exceptions.LifecycleException;
+import com.googlecode.jmxtrans.jmx.JmxUtils;
+import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.util.Clock;
+import lombok.ToString;
+import org.quartz.CronExpression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Schedules servers on a {@link HashedWheelTimer}. A scheduled server costs a
+ * single timeout object, and each firing only hands the server over to
+ * {@link JmxUtils#processServer(Server)}.
+ * <p/>
+ * Periods are drift free: the next deadline is computed from the previous
+ * deadline, not from the time the job actually ran.
+ */
+@ThreadSafe
+public class WheelServerScheduler implements ServerScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(WheelServerScheduler.class);
+
+	@Nonnull private final HashedWheelTimer timer;
+	@Nonnull private final JmxUtils jmxUtils;
+	@Nonnull private final Clock clock;
+	@Nonnull private final ConcurrentMap<Server, ServerTrigger> triggers = new ConcurrentHashMap<>();
+
+	public WheelServerScheduler(@Nonnull HashedWheelTimer timer, @Nonnull JmxUtils jmxUtils, @Nonnull Clock clock) {
+		this.timer = timer;
+		this.jmxUtils = jmxUtils;
+		this.clock = clock;
+	}
+
+	@Override
+	public void start() {
+		timer.start();
+	}
+
+	@Override
+	public void schedule(@Nonnull Server server, @Nonnull Date startDate, int runPeriodSeconds) throws LifecycleException {
+		CronExpression cronExpression = null;
+		if ((server.getCronExpression() != null) && CronExpression.isValidExpression(server.getCronExpression())) {
+			try {
+				cronExpression = new CronExpression(server.getCronExpression());
+			} catch (ParseException ex) {
+				throw new LifecycleException("Error parsing cron expression: " + server.getCronExpression(), ex);
+			}
+		} else if (runPeriodSeconds <= 0) {
+			throw new LifecycleException("Run period must be positive for server: " + server);
+		}
+
+		ServerTrigger trigger = new ServerTrigger(server, MILLISECONDS.convert(runPeriodSeconds, SECONDS), cronExpression);
+		long firstDeadline = startDate.getTime();
+		if (cronExpression != null) {
+			Long nextCronDeadline = trigger.nextCronDeadline(startDate.getTime());
+			if (nextCronDeadline == null) {
+				log.warn("Cron expression {} of server {} will never fire, not scheduling it", server.getCronExpression(), server);
+				return;
+			}
+			firstDeadline = nextCronDeadline;
+		}
+		ServerTrigger previous = triggers.put(server, trigger);
+		if (previous != null) previous.cancel();
+		trigger.scheduleAt(firstDeadline);
+		log.debug("Scheduled server {} starting at {}", server, startDate);
+	}
+
+	@Override
+	public void unschedule(@Nonnull Server server) {
+		ServerTrigger trigger = triggers.remove(server);
+		if (trigger != null) {
+			trigger.cancel();
+			log.debug("Unscheduled server {}", server);
+		}
+	}
+
+	@Override
+	public void unscheduleAll() {
+		for (Server server : triggers.keySet()) {
+			unschedule(server);
+		}
+	}
+
+	@Override
+	public void shutdown() throws LifecycleException {
+		unscheduleAll();
+		try {
+			timer.stop();
+			log.debug("Shutdown server scheduler");
+		} catch (InterruptedException e) {
+			currentThread().interrupt();
+			throw new LifecycleException(e);
+		}
+	}
+
+	@ToString(of = {"server", "periodMillis", "cronExpression"})
+	private final class ServerTrigger implements Runnable {
+		@Nonnull private final Server server;
+		private final long periodMillis;
+		@Nullable private final CronExpression cronExpression;
+		private volatile HashedWheelTimer.Timeout timeout;
+		private volatile boolean cancelled = false;
+
+		private ServerTrigger(@Nonnull Server server, long periodMillis, @Nullable CronExpression cronExpression) {
+			this.server = server;
+			this.periodMillis = periodMillis;
+			this.cronExpression = cronExpression;
+		}
+
+		private void scheduleAt(long deadline) {
+			timeout = timer.newTimeout(this, deadline);
+			// cancel() might have run between the check in run() and the assignment above
+			if (cancelled) timeout.cancel();
+		}
+
+		@Override
+		public void run() {
+			if (cancelled) return;
+			long deadline = timeout.getDeadline();
+			Long next = nextDeadline(deadline);
+			if (next != null) scheduleAt(next);
+
+			if (cronExpression == null && clock.currentTimeMillis() - deadline >= periodMillis) {
+				log.warn("Skipping run of server {} due at {}, the scheduler is late by more than a period", server, new Date(deadline));
+				return;
+			}
+
+			log.debug("+++++ Started server job: {}", server);
+			try {
+				jmxUtils.processServer(server);
+			} catch (Exception e) {
+				log.error("Error processing server {}", server, e);
+			}
+			log.debug("+++++ Finished server job: {}", server);
+		}
+
+		@Nullable
+		private Long nextDeadline(long previousDeadline) {
+			if (cronExpression != null) return nextCronDeadline(previousDeadline);
+
+			long next = previousDeadline + periodMillis;
+			// if we fell behind by more than a period, skip the missed runs instead of firing them in a burst
+			long lateness = clock.currentTimeMillis() - next;
+			if (lateness >= periodMillis) {
+				next += (lateness / periodMillis) * periodMillis;
+			}
+			return next;
+		}
+
+		@Nullable
+		private Long nextCronDeadline(long after) {
+			Date next = cronExpression.getNextValidTimeAfter(new Date(after));
+			return next == null ? null : next.getTime();
+		}
+
+		private void cancel() {
+			cancelled = true;
+			HashedWheelTimer.Timeout current = timeout;
+			if (current != null) current.cancel();
+		}
+	}
+}
@@ -29,9 +29,13 @@ import javax.annotation.Nonnull;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.inject.Inject;
 import com.googlecode.jmxtrans.model.JmxProcess;
 
+import static com.google.common.base.Charsets.UTF_8;
+
 public class JsonUtils {
 
 	@Nonnull private final ObjectMapper mapper;
@@ -55,4 +59,12 @@ public class JsonUtils {
 		jmx.setName(file.getName());
 		return jmx;
 	}
+
+	/**
+	 * Hashes the json tree of a File, ignoring whitespace and formatting.
+	 */
+	public HashCode hashContent(File file) throws IOException {
+		JsonNode jsonNode = mapper.readTree(file);
+		return Hashing.murmur3_128().hashString(jsonNode.toString(), UTF_8);
+	}
 }
@@ -23,6 +23,7 @@
 package com.googlecode.jmxtrans;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 import com.googlecode.jmxtrans.cli.JmxTransConfiguration;
 import com.googlecode.jmxtrans.exceptions.LifecycleException;
 import com.googlecode.jmxtrans.model.Query;
@@ -32,15 +33,20 @@ import com.googlecode.jmxtrans.model.ValidationException;
 import com.googlecode.jmxtrans.test.RequiresIO;
 import com.googlecode.jmxtrans.util.JsonUtils;
 import com.kaching.platform.testing.AllowLocalFileAccess;
+import com.google.common.io.Files;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.collect.ImmutableList.of;
 import static com.googlecode.jmxtrans.guice.JmxTransModule.createInjector;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -49,6 +55,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 @Category(RequiresIO.class)
 public class ConfigurationParserTest {
 
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
 	private ConfigurationParser configurationParser;
 
 	@Before
@@ -201,4 +209,17 @@ public class ConfigurationParserTest {
 		assertThat(existing.get(1).getQueries()).hasSize(2);
 	}
 
+	@Test
+	public void hashIgnoresFormatting() throws IOException {
+		File jsonFile = folder.newFile("servers.json");
+		Files.write("{\"servers\":[{\"host\":\"example.net\",\"port\":\"123\"}]}", jsonFile, UTF_8);
+		HashCode hash = configurationParser.hash(of(jsonFile));
+
+		Files.write("{\n\t\"servers\" : [ {\n\t\t\"host\" : \"example.net\",\n\t\t\"port\" : \"123\"\n\t} ]\n}\n", jsonFile, UTF_8);
+		assertThat(configurationParser.hash(of(jsonFile))).isEqualTo(hash);
+
+		Files.write("{\"servers\":[{\"host\":\"example.net\",\"port\":\"124\"}]}", jsonFile, UTF_8);
+		assertThat(configurationParser.hash(of(jsonFile))).isNotEqualTo(hash);
+	}
+
 }
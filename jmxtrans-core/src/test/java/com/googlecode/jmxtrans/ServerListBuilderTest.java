@@ -123,6 +123,24 @@ public class ServerListBuilderTest {
 				.isSameAs(createdQuery.getOutputWriterInstances().iterator().next());
 	}
 
+	@Test
+	public void outputWritersAreReusedFromPreviousBuilder() {
+		Server server = Server.builder(dummyServer())
+				.addOutputWriterFactory(new DummyOutputWriterFactory("output1"))
+				.build();
+		ServerListBuilder previousBuilder = new ServerListBuilder().add(singletonList(server));
+		Server previousServer = previousBuilder.build().get(0);
+
+		Server reloadedServer = Server.builder(dummyServer())
+				.addOutputWriterFactory(new DummyOutputWriterFactory("output1"))
+				.addOutputWriterFactory(new DummyOutputWriterFactory("output2"))
+				.build();
+		Server createdServer = new ServerListBuilder(previousBuilder).add(singletonList(reloadedServer)).build().get(0);
+
+		assertThat(createdServer.getOutputWriters()).hasSize(2);
+		assertThat(createdServer.getOutputWriters()).contains(previousServer.getOutputWriters().iterator().next());
+	}
+
 	@EqualsAndHashCode
 	@ToString
 	private static final class DummyOutputWriterFactory implements OutputWriterFactory {
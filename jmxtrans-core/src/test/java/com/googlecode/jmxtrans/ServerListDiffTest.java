@@ -0,0 +1,160 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.OutputWriter;
+import com.googlecode.jmxtrans.model.OutputWriterAdapter;
+import com.googlecode.jmxtrans.model.OutputWriterFactory;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.Server;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static com.googlecode.jmxtrans.model.QueryFixtures.dummyQuery;
+import static com.googlecode.jmxtrans.model.QueryFixtures.queryWithAllTypeNames;
+import static com.googlecode.jmxtrans.model.ServerFixtures.createServerWithOneQuery;
+import static com.googlecode.jmxtrans.model.ServerFixtures.serverWithNoQuery;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerListDiffTest {
+
+	@Test
+	public void initialLoadAddsAllServersAndStartsAllWriters() {
+		ImmutableList<Server> servers = new ServerListBuilder()
+				.add(singletonList(serverWithQuery(dummyQuery(), "output1")))
+				.build();
+
+		ServerListDiff diff = ServerListDiff.between(ImmutableList.<Server>of(), servers);
+
+		assertThat(diff.getAddedServers()).containsExactlyElementsOf(servers);
+		assertThat(diff.getRemovedServers()).isEmpty();
+		assertThat(diff.getStartedOutputWriters()).hasSize(1);
+		assertThat(diff.getStoppedOutputWriters()).isEmpty();
+	}
+
+	@Test
+	public void identicalReloadChangesNothing() {
+		ServerListBuilder previousBuilder = new ServerListBuilder()
+				.add(singletonList(serverWithQuery(dummyQuery(), "output1")));
+		ImmutableList<Server> previous = previousBuilder.build();
+		ImmutableList<Server> current = new ServerListBuilder(previousBuilder)
+				.add(singletonList(serverWithQuery(dummyQuery(), "output1")))
+				.build();
+
+		ServerListDiff diff = ServerListDiff.between(previous, current);
+
+		assertThat(diff.isEmpty()).isTrue();
+		assertThat(diff.getUnchangedServers()).hasSize(1);
+		assertThat(diff.getStartedOutputWriters()).isEmpty();
+		assertThat(diff.getStoppedOutputWriters()).isEmpty();
+	}
+
+	@Test
+	public void changedQueryReschedulesServerButKeepsWriter() {
+		ServerListBuilder previousBuilder = new ServerListBuilder()
+				.add(singletonList(serverWithQuery(dummyQuery(), "output1")));
+		ImmutableList<Server> previous = previousBuilder.build();
+		ImmutableList<Server> current = new ServerListBuilder(previousBuilder)
+				.add(singletonList(serverWithQuery(queryWithAllTypeNames(), "output1")))
+				.build();
+
+		ServerListDiff diff = ServerListDiff.between(previous, current);
+
+		assertThat(diff.getRemovedServers()).containsExactlyElementsOf(previous);
+		assertThat(diff.getAddedServers()).containsExactlyElementsOf(current);
+		assertThat(diff.getStartedOutputWriters()).isEmpty();
+		assertThat(diff.getStoppedOutputWriters()).isEmpty();
+	}
+
+	@Test
+	public void changedWriterIsStoppedAndNewOneStarted() {
+		ServerListBuilder previousBuilder = new ServerListBuilder()
+				.add(singletonList(serverWithQuery(dummyQuery(), "output1")));
+		ImmutableList<Server> previous = previousBuilder.build();
+		ImmutableList<Server> current = new ServerListBuilder(previousBuilder)
+				.add(singletonList(serverWithQuery(dummyQuery(), "output2")))
+				.build();
+
+		ServerListDiff diff = ServerListDiff.between(previous, current);
+
+		assertThat(diff.getAddedServers()).hasSize(1);
+		assertThat(diff.getRemovedServers()).hasSize(1);
+		assertThat(diff.getStoppedOutputWriters()).containsOnly(writerOf(previous.get(0)));
+		assertThat(diff.getStartedOutputWriters()).containsOnly(writerOf(current.get(0)));
+	}
+
+	@Test
+	public void otherServersAreNotAffected() {
+		Server other = createServerWithOneQuery("other.example.net", "1234", "myQuery:key=val");
+		ServerListBuilder previousBuilder = new ServerListBuilder()
+				.add(ImmutableList.of(serverWithQuery(dummyQuery(), "output1"), other));
+		ImmutableList<Server> previous = previousBuilder.build();
+		ImmutableList<Server> current = new ServerListBuilder(previousBuilder)
+				.add(singletonList(serverWithQuery(dummyQuery(), "output1")))
+				.build();
+
+		ServerListDiff diff = ServerListDiff.between(previous, current);
+
+		assertThat(diff.getRemovedServers()).containsOnly(other);
+		assertThat(diff.getAddedServers()).isEmpty();
+		assertThat(diff.getUnchangedServers()).hasSize(1);
+	}
+
+	private static Server serverWithQuery(Query query, String outputName) {
+		return Server.builder(serverWithNoQuery())
+				.addQuery(Query.builder(query)
+						.addOutputWriterFactory(new DummyOutputWriterFactory(outputName))
+						.build())
+				.build();
+	}
+
+	private static OutputWriter writerOf(Server server) {
+		return server.getQueries().iterator().next().getOutputWriterInstances().iterator().next();
+	}
+
+	@EqualsAndHashCode
+	@ToString
+	private static final class DummyOutputWriterFactory implements OutputWriterFactory {
+
+		@Nonnull private final String name;
+
+		private DummyOutputWriterFactory(@Nonnull String name) {
+			this.name = name;
+		}
+
+		@Override
+		public OutputWriter create() {
+			return new OutputWriterAdapter() {
+				@Override
+				public void doWrite(Server server, Query query, Iterable<Result> results) throws Exception {
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+
+	private FakeTicker ticker;
+	private CircuitBreaker breaker;
+
+	@Before
+	public void createBreaker() throws Exception {
+		ticker = new FakeTicker();
+		breaker = new CircuitBreaker("target", 2, 1000, 3000,
+				new ObjectName("test:type=CircuitBreaker"), ticker, new MaxJitterRandom());
+	}
+
+	@Test
+	public void breakerOpensAfterConsecutiveFailures() {
+		fail();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThat(breaker.tryAcquire()).isTrue();
+
+		fail();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+		assertThat(breaker.getRejectedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void successResetsFailures() {
+		fail();
+		breaker.onSuccess();
+		fail();
+
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	public void singleAttemptIsAllowedAfterBackoff() {
+		fail();
+		fail();
+
+		ticker.advanceMillis(999);
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		ticker.advanceMillis(1);
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		breaker.onSuccess();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+
+	@Test
+	public void backoffDoublesUpToMaximum() {
+		fail();
+		fail();
+		assertThat(breaker.getRemainingOpenMillis()).isEqualTo(1000);
+
+		ticker.advanceMillis(1000);
+		breaker.tryAcquire();
+		fail();
+		assertThat(breaker.getRemainingOpenMillis()).isEqualTo(2000);
+
+		ticker.advanceMillis(2000);
+		breaker.tryAcquire();
+		fail();
+		assertThat(breaker.getRemainingOpenMillis()).isEqualTo(3000);
+		assertThat(breaker.getOpenCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void backoffIsRandomizedDownToHalf() throws Exception {
+		breaker = new CircuitBreaker("target", 1, 1000, 3000,
+				new ObjectName("test:type=CircuitBreaker"), ticker, new MinJitterRandom());
+
+		fail();
+
+		assertThat(breaker.getRemainingOpenMillis()).isEqualTo(500);
+	}
+
+	@Test
+	public void breakerNeverOpensWithoutThreshold() throws Exception {
+		breaker = new CircuitBreaker("target", 0, 1000, 3000,
+				new ObjectName("test:type=CircuitBreaker"), ticker, new MinJitterRandom());
+
+		for (int i = 0; i < 10; i++) fail();
+
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+
+	private void fail() {
+		breaker.onFailure(new IOException("Connection refused"));
+	}
+
+	private static final class FakeTicker extends Ticker {
+		private long nanos;
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+
+		void advanceMillis(long millis) {
+			nanos += MILLISECONDS.toNanos(millis);
+		}
+	}
+
+	private static final class MaxJitterRandom extends Random {
+		@Override
+		public double nextDouble() {
+			return 1.0;
+		}
+	}
+
+	private static final class MinJitterRandom extends Random {
+		@Override
+		public double nextDouble() {
+			return 0.0;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JmxConnectionManagerTest {
+
+	private KeyedPoolableObjectFactory<JmxConnectionProvider, JMXConnection> factory;
+	private JmxConnectionManager manager;
+	private JmxConnectionProvider server;
+	private JmxConnectionProvider sameJvm;
+	private JmxConnectionProvider otherJvm;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void createManager() throws Exception {
+		factory = mock(KeyedPoolableObjectFactory.class);
+		when(factory.makeObject(any(JmxConnectionProvider.class))).thenReturn(
+				mock(JMXConnection.class), mock(JMXConnection.class), mock(JMXConnection.class));
+		when(factory.validateObject(any(JmxConnectionProvider.class), any(JMXConnection.class))).thenReturn(true);
+		manager = new JmxConnectionManager(factory, mock(ScheduledExecutorService.class));
+
+		server = provider("service:jmx:rmi:///jndi/rmi://host:1099/jmxrmi");
+		sameJvm = provider("service:jmx:rmi:///jndi/rmi://HOST:1099/jmxrmi");
+		otherJvm = provider("service:jmx:rmi:///jndi/rmi://other:1099/jmxrmi");
+	}
+
+	@Test
+	public void connectionIsSharedByServersOfTheSameJvm() throws Exception {
+		JMXConnection first = manager.borrowObject(server);
+		JMXConnection second = manager.borrowObject(sameJvm);
+		JMXConnection other = manager.borrowObject(otherJvm);
+
+		assertThat(second).isSameAs(first);
+		assertThat(other).isNotSameAs(first);
+		assertThat(manager.getNumActive()).isEqualTo(3);
+		verify(factory, times(2)).makeObject(any(JmxConnectionProvider.class));
+	}
+
+	@Test
+	public void returnedConnectionIsKeptOpen() throws Exception {
+		JMXConnection connection = manager.borrowObject(server);
+		manager.returnObject(server, connection);
+
+		assertThat(manager.borrowObject(sameJvm)).isSameAs(connection);
+		assertThat(manager.getNumIdle()).isEqualTo(0);
+		verify(factory, never()).destroyObject(any(JmxConnectionProvider.class), any(JMXConnection.class));
+	}
+
+	@Test
+	public void invalidatedConnectionIsReopened() throws Exception {
+		JMXConnection connection = manager.borrowObject(server);
+		manager.invalidateObject(server, connection);
+
+		assertThat(manager.borrowObject(sameJvm)).isNotSameAs(connection);
+		verify(factory).destroyObject(server, connection);
+	}
+
+	@Test
+	public void connectionReplacedByAnotherBorrowerIsNotDestroyedTwice() throws Exception {
+		JMXConnection connection = manager.borrowObject(server);
+		manager.invalidateObject(server, connection);
+		manager.borrowObject(server);
+
+		manager.invalidateObject(sameJvm, connection);
+
+		verify(factory, times(1)).destroyObject(any(JmxConnectionProvider.class), any(JMXConnection.class));
+	}
+
+	@Test
+	public void deadConnectionsAreClosedByLivenessCheck() throws Exception {
+		JMXConnection connection = manager.borrowObject(server);
+		manager.returnObject(server, connection);
+		when(factory.validateObject(server, connection)).thenReturn(false);
+
+		manager.checkLiveness();
+
+		verify(factory).destroyObject(server, connection);
+		assertThat(manager.borrowObject(server)).isNotSameAs(connection);
+	}
+
+	@Test
+	public void connectionsOfRemovedServersAreClosed() throws Exception {
+		JMXConnection connection = manager.borrowObject(server);
+		JMXConnection other = manager.borrowObject(otherJvm);
+
+		manager.retain(ImmutableList.of(sameJvm));
+
+		verify(factory).destroyObject(otherJvm, other);
+		verify(factory, never()).destroyObject(server, connection);
+	}
+
+	@Test
+	public void openConnectionsAreCountedOncePerJvm() throws Exception {
+		manager.borrowObject(server);
+		manager.borrowObject(sameJvm);
+		JMXConnection other = manager.borrowObject(otherJvm);
+		manager.invalidateObject(otherJvm, other);
+
+		assertThat(manager.getNumOpenConnections()).isEqualTo(1);
+	}
+
+	@Test
+	public void closingTheManagerClosesItsConnections() throws Exception {
+		JMXConnection connection = manager.borrowObject(server);
+
+		manager.close();
+
+		verify(factory).destroyObject(server, connection);
+		assertThat(manager.getNumOpenConnections()).isZero();
+	}
+
+	private static JmxConnectionProvider provider(String url) {
+		JmxConnectionProvider provider = mock(JmxConnectionProvider.class);
+		when(provider.getEndpoint()).thenReturn(JmxEndpoint.ofUrl(url, null, null));
+		return provider;
+	}
+}
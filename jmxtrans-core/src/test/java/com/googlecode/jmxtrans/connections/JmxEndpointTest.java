@@ -0,0 +1,61 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JmxEndpointTest {
+
+	@Test
+	public void hostNamesAreCaseInsensitive() {
+		assertThat(JmxEndpoint.ofUrl("service:jmx:rmi:///jndi/rmi://Host.Example.NET:1099/jmxrmi", null, null))
+				.isEqualTo(JmxEndpoint.ofUrl("service:jmx:rmi:///jndi/rmi://host.example.net:1099/jmxrmi", null, null));
+		assertThat(JmxEndpoint.ofUrl("service:jmx:remoting-jmx://Host:8004", null, null))
+				.isEqualTo(JmxEndpoint.ofUrl("service:jmx:remoting-jmx://host:8004", null, null));
+	}
+
+	@Test
+	public void pathsAreCaseSensitive() {
+		assertThat(JmxEndpoint.ofUrl("service:jmx:rmi:///jndi/rmi://host:1099/JMXRMI", null, null))
+				.isNotEqualTo(JmxEndpoint.ofUrl("service:jmx:rmi:///jndi/rmi://host:1099/jmxrmi", null, null));
+	}
+
+	@Test
+	public void credentialsAreDistinguished() {
+		assertThat(JmxEndpoint.ofUrl("service:jmx:rmi:///jndi/rmi://host:1099/jmxrmi", "user", "pass"))
+				.isNotEqualTo(JmxEndpoint.ofUrl("service:jmx:rmi:///jndi/rmi://host:1099/jmxrmi", "user", "other"));
+	}
+
+	@Test
+	public void invalidUrlsAreKeptAsIs() {
+		assertThat(JmxEndpoint.normalize(" not a url ")).isEqualTo("not a url");
+	}
+
+	@Test
+	public void passwordIsNotPrinted() {
+		assertThat(JmxEndpoint.ofUrl("service:jmx:rmi:///jndi/rmi://host:1099/jmxrmi", "user", "secret").toString())
+				.doesNotContain("secret");
+	}
+}
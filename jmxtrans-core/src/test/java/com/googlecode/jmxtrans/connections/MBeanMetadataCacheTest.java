@@ -0,0 +1,139 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MBeanMetadataCacheTest {
+
+	private FakeTicker ticker;
+	private MBeanMetadataCache cache;
+	private MBeanServerConnection connection;
+	private ObjectName name;
+
+	@Before
+	public void createCache() throws Exception {
+		ticker = new FakeTicker();
+		cache = new MBeanMetadataCache(10, MINUTES, 2, ticker);
+		connection = mock(MBeanServerConnection.class);
+		name = new ObjectName("java.lang:type=Memory");
+		when(connection.getMBeanInfo(name)).thenReturn(mock(MBeanInfo.class));
+		when(connection.getObjectInstance(name)).thenReturn(new ObjectInstance(name, "java.lang.Object"));
+	}
+
+	@Test
+	public void metadataIsFetchedOnlyOnce() throws Exception {
+		MBeanMetadata first = cache.get(connection, name);
+		MBeanMetadata second = cache.get(connection, name);
+
+		assertThat(second).isSameAs(first);
+		verify(connection, times(1)).getMBeanInfo(name);
+		verify(connection, times(1)).getObjectInstance(name);
+	}
+
+	@Test
+	public void metadataIsFetchedAgainAfterTtl() throws Exception {
+		cache.get(connection, name);
+
+		ticker.advance(SECONDS.toNanos(601));
+		cache.get(connection, name);
+
+		verify(connection, times(2)).getMBeanInfo(name);
+	}
+
+	@Test
+	public void cacheIsBoundedInSize() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			ObjectName other = new ObjectName("test:index=" + i);
+			when(connection.getMBeanInfo(other)).thenReturn(mock(MBeanInfo.class));
+			cache.get(connection, other);
+		}
+
+		assertThat(cache.size()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	public void unregistrationInvalidatesMetadata() throws Exception {
+		cache.get(connection, name);
+
+		cache.handleNotification(new MBeanServerNotification(
+				MBeanServerNotification.UNREGISTRATION_NOTIFICATION, MBeanServerDelegate.DELEGATE_NAME, 1, name));
+		cache.get(connection, name);
+
+		verify(connection, times(2)).getMBeanInfo(name);
+	}
+
+	@Test
+	public void registrationDoesNotInvalidateMetadata() throws Exception {
+		cache.get(connection, name);
+
+		cache.handleNotification(new MBeanServerNotification(
+				MBeanServerNotification.REGISTRATION_NOTIFICATION, MBeanServerDelegate.DELEGATE_NAME, 1, name));
+		cache.get(connection, name);
+
+		verify(connection, times(1)).getMBeanInfo(name);
+	}
+
+	@Test
+	public void listenerIsRegisteredOnDelegate() throws Exception {
+		cache.listenTo(connection);
+
+		verify(connection).addNotificationListener(
+				eq(MBeanServerDelegate.DELEGATE_NAME), any(NotificationListener.class), any(NotificationFilter.class), isNull());
+	}
+
+	private static final class FakeTicker extends Ticker {
+		private long nanos;
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+
+		void advance(long delta) {
+			nanos += delta;
+		}
+	}
+}
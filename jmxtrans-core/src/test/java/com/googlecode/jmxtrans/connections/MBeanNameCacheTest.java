@@ -0,0 +1,157 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.connections;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.ObjectName;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MBeanNameCacheTest {
+
+	private FakeTicker ticker;
+	private MBeanNameCache cache;
+	private MBeanServerConnection connection;
+	private ObjectName pattern;
+	private ObjectName first;
+	private ObjectName second;
+
+	@Before
+	public void createCache() throws Exception {
+		ticker = new FakeTicker();
+		cache = new MBeanNameCache(5, MINUTES, ticker);
+		connection = mock(MBeanServerConnection.class);
+		pattern = new ObjectName("kafka.log:type=Log,*");
+		first = new ObjectName("kafka.log:type=Log,partition=0");
+		second = new ObjectName("kafka.log:type=Log,partition=1");
+		when(connection.queryNames(pattern, null)).thenReturn(ImmutableSet.of(first));
+		cache.listenTo(connection);
+	}
+
+	@Test
+	public void patternIsExpandedOnlyOnce() throws Exception {
+		assertThat(cache.queryNames(connection, pattern)).containsOnly(first);
+		assertThat(cache.queryNames(connection, pattern)).containsOnly(first);
+
+		verify(connection, times(1)).queryNames(pattern, null);
+	}
+
+	@Test
+	public void registrationsAndUnregistrationsUpdateExpansion() throws Exception {
+		cache.queryNames(connection, pattern);
+
+		cache.handleNotification(notification(MBeanServerNotification.REGISTRATION_NOTIFICATION, second));
+		assertThat(cache.queryNames(connection, pattern)).containsOnly(first, second);
+
+		cache.handleNotification(notification(MBeanServerNotification.UNREGISTRATION_NOTIFICATION, first));
+		assertThat(cache.queryNames(connection, pattern)).containsOnly(second);
+
+		verify(connection, times(1)).queryNames(pattern, null);
+	}
+
+	@Test
+	public void namesNotMatchingPatternAreIgnored() throws Exception {
+		cache.queryNames(connection, pattern);
+
+		cache.handleNotification(notification(
+				MBeanServerNotification.REGISTRATION_NOTIFICATION, new ObjectName("java.lang:type=Memory")));
+
+		assertThat(cache.queryNames(connection, pattern)).containsOnly(first);
+	}
+
+	@Test
+	public void notificationsReceivedDuringExpansionAreNotLost() throws Exception {
+		when(connection.queryNames(pattern, null)).thenAnswer(new Answer<Set<ObjectName>>() {
+			@Override
+			public Set<ObjectName> answer(InvocationOnMock invocation) throws Throwable {
+				cache.handleNotification(notification(MBeanServerNotification.UNREGISTRATION_NOTIFICATION, first));
+				cache.handleNotification(notification(MBeanServerNotification.REGISTRATION_NOTIFICATION, second));
+				return ImmutableSet.of(first);
+			}
+		});
+
+		assertThat(cache.queryNames(connection, pattern)).containsOnly(second);
+	}
+
+	@Test
+	public void patternIsExpandedAgainAfterResyncPeriod() throws Exception {
+		cache.queryNames(connection, pattern);
+
+		ticker.advance(SECONDS.toNanos(301));
+		when(connection.queryNames(pattern, null)).thenReturn(ImmutableSet.of(second));
+
+		assertThat(cache.queryNames(connection, pattern)).containsOnly(second);
+		verify(connection, times(2)).queryNames(pattern, null);
+	}
+
+	@Test
+	public void namesAreNotCachedWhenNotListening() throws Exception {
+		cache.stopListeningTo(connection);
+
+		cache.queryNames(connection, pattern);
+		cache.queryNames(connection, pattern);
+
+		verify(connection, times(2)).queryNames(pattern, null);
+	}
+
+	@Test
+	public void namesThatAreNotPatternsAreNotCached() throws Exception {
+		cache.queryNames(connection, first);
+		cache.queryNames(connection, first);
+
+		verify(connection, times(2)).queryNames(first, null);
+	}
+
+	private static MBeanServerNotification notification(String type, ObjectName name) {
+		return new MBeanServerNotification(type, MBeanServerDelegate.DELEGATE_NAME, 1, name);
+	}
+
+	private static final class FakeTicker extends Ticker {
+		private long nanos;
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+
+		void advance(long delta) {
+			nanos += delta;
+		}
+	}
+}
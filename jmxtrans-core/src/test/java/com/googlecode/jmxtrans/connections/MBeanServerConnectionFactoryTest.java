@@ -30,7 +30,9 @@ import javax.management.remote.JMXConnector;
 import java.io.IOException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -73,4 +75,56 @@ public class MBeanServerConnectionFactoryTest {
 		verify(connection).close();
 	}
 
+	@Test
+	public void connectionsAreNotAttemptedWhileCircuitBreakerIsOpen() throws IOException {
+		MBeanServer mbeanServer = mock(MBeanServer.class);
+		MBeanServerConnectionFactory guardedFactory = new MBeanServerConnectionFactory(
+				0, 0, 0, new CircuitBreakers(1, 60000, 60000, mbeanServer));
+		JmxConnectionProvider server = mock(JmxConnectionProvider.class);
+		when(server.isLocal()).thenReturn(false);
+		when(server.getServerConnection()).thenThrow(new IOException("Connection refused"));
+
+		try {
+			guardedFactory.makeObject(server);
+			fail("Connection should have failed");
+		} catch (IOException expected) {
+			assertThat(expected).isNotInstanceOf(CircuitBreakerOpenException.class);
+		}
+		try {
+			guardedFactory.makeObject(server);
+			fail("Circuit breaker should be open");
+		} catch (CircuitBreakerOpenException expected) {
+			verify(server, times(1)).getServerConnection();
+		}
+	}
+
+	@Test
+	public void errorsSettleTheTrialConnection() throws IOException {
+		MBeanServer mbeanServer = mock(MBeanServer.class);
+		MBeanServerConnectionFactory guardedFactory = new MBeanServerConnectionFactory(
+				0, 0, 0, new CircuitBreakers(1, 0, 0, mbeanServer));
+		JmxConnectionProvider server = mock(JmxConnectionProvider.class);
+		JMXConnector jmxConnector = mock(JMXConnector.class);
+		when(server.isLocal()).thenReturn(false);
+		when(server.getServerConnection())
+				.thenThrow(new IOException("Connection refused"))
+				.thenThrow(new NoClassDefFoundError("javax/management/remote/rmi/RMIServer"))
+				.thenReturn(jmxConnector);
+		when(jmxConnector.getMBeanServerConnection()).thenReturn(mock(MBeanServerConnection.class));
+
+		try {
+			guardedFactory.makeObject(server);
+			fail("Connection should have failed");
+		} catch (IOException expected) {
+		}
+		try {
+			guardedFactory.makeObject(server);
+			fail("Trial connection should have failed");
+		} catch (NoClassDefFoundError expected) {
+		}
+
+		assertThat(guardedFactory.makeObject(server)).isNotNull();
+		verify(server, times(3)).getServerConnection();
+	}
+
 }
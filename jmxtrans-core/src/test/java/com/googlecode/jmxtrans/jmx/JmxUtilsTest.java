@@ -0,0 +1,60 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.util.ManualClock;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+
+import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServer;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class JmxUtilsTest {
+
+	@Test
+	public void cycleEpochIsTheTriggerTimeByDefault() {
+		assertThat(jmxUtils(false).cycleEpoch(dummyServer(), 125500)).isEqualTo(125500);
+	}
+
+	@Test
+	public void cycleEpochIsAlignedOnTheDefaultRunPeriod() {
+		assertThat(jmxUtils(true).cycleEpoch(dummyServer(), 125500)).isEqualTo(120000);
+	}
+
+	@Test
+	public void cycleEpochIsAlignedOnTheRunPeriodOfTheServer() {
+		Server server = Server.builder(dummyServer()).setRunPeriodSeconds(10).build();
+
+		assertThat(jmxUtils(true).cycleEpoch(server, 125500)).isEqualTo(120000);
+		assertThat(jmxUtils(true).cycleEpoch(server, 139999)).isEqualTo(130000);
+	}
+
+	private JmxUtils jmxUtils(boolean alignCycleTimestamps) {
+		return new JmxUtils(mock(ServerBulkheads.class), mock(ResultProcessor.class), mock(ExecutorService.class),
+				new ManualClock(0, MILLISECONDS), 0, alignCycleTimestamps, 60);
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.OutputWriter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class OutputSpoolsTest {
+
+	@Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = temporaryFolder.newFolder("spool");
+	}
+
+	@Test
+	public void spoolsOfAPreviousRunAreDeleted() throws IOException {
+		File stale = new File(directory, "3-GraphiteWriter");
+		assertThat(stale.mkdir()).isTrue();
+		assertThat(new File(stale, "spool-0000000000000000000.log").createNewFile()).isTrue();
+
+		new OutputSpools(directory, 1024 * 1024, 1000, 10);
+
+		assertThat(directory.listFiles()).isEmpty();
+	}
+
+	@Test
+	public void releasedSpoolsAreDeleted() {
+		OutputSpools spools = new OutputSpools(directory, 1024 * 1024, 1000, 10);
+		OutputWriter writer = mock(OutputWriter.class);
+
+		assertThat(spools.spooled(writer)).isNotSameAs(writer);
+		assertThat(directory.listFiles()).hasSize(1);
+
+		spools.release(ImmutableList.of(writer));
+
+		assertThat(directory.listFiles()).isEmpty();
+	}
+}
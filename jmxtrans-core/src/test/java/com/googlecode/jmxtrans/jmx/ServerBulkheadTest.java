@@ -0,0 +1,283 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.CycleOverrunPolicy;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.ImmutableList.of;
+import static com.googlecode.jmxtrans.model.CycleOverrunPolicy.COALESCE;
+import static com.googlecode.jmxtrans.model.CycleOverrunPolicy.QUEUE;
+import static com.googlecode.jmxtrans.model.CycleOverrunPolicy.SKIP;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ServerBulkheadTest {
+
+	private ManualExecutorService executor;
+	private ObjectName objectName;
+
+	@Before
+	public void createExecutor() throws Exception {
+		executor = new ManualExecutorService();
+		objectName = new ObjectName("com.googlecode.jmxtrans:Type=ServerBulkhead,Server=test");
+	}
+
+	@Test
+	public void queriesOverTheLimitAreQueued() {
+		ServerBulkhead bulkhead = bulkhead(2, 10);
+		Runnable query = mock(Runnable.class);
+
+		bulkhead.execute(query);
+		bulkhead.execute(query);
+		bulkhead.execute(query);
+
+		assertThat(executor.tasks).hasSize(2);
+		assertThat(bulkhead.getInFlightCount()).isEqualTo(2);
+		assertThat(bulkhead.getQueuedCount()).isEqualTo(1);
+		assertThat(bulkhead.getSubmittedCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void completedQueryReleasesItsSlotToQueuedQuery() {
+		ServerBulkhead bulkhead = bulkhead(1, 10);
+		Runnable query = mock(Runnable.class);
+		bulkhead.execute(query);
+		bulkhead.execute(query);
+
+		executor.runNext();
+
+		assertThat(executor.tasks).hasSize(1);
+		assertThat(bulkhead.getInFlightCount()).isEqualTo(1);
+		assertThat(bulkhead.getQueuedCount()).isEqualTo(0);
+
+		executor.runNext();
+
+		verify(query, times(2)).run();
+		assertThat(bulkhead.getInFlightCount()).isEqualTo(0);
+		assertThat(bulkhead.getCompletedCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void failingQueryReleasesItsSlot() {
+		ServerBulkhead bulkhead = bulkhead(1, 10);
+		bulkhead.execute(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+
+		executor.runNext();
+
+		assertThat(bulkhead.getInFlightCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void queriesOverQueueCapacityAreRejected() {
+		ServerBulkhead bulkhead = bulkhead(1, 1);
+		Runnable query = mock(Runnable.class);
+		bulkhead.execute(query);
+		bulkhead.execute(query);
+
+		try {
+			bulkhead.execute(query);
+			fail("Query should have been rejected");
+		} catch (RejectedExecutionException expected) {
+			assertThat(bulkhead.getRejectedCount()).isEqualTo(1);
+			assertThat(bulkhead.getQueuedCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void noLimitWhenNumQueryThreadsIsNotSet() {
+		ServerBulkhead bulkhead = bulkhead(0, 1);
+		Runnable query = mock(Runnable.class);
+		for (int i = 0; i < 100; i++) {
+			bulkhead.execute(query);
+		}
+
+		assertThat(executor.tasks).hasSize(100);
+		assertThat(bulkhead.getQueuedCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void rejectionBySharedExecutorIsCountedAndReleasesSlot() {
+		ServerBulkhead bulkhead = bulkhead(1, 10);
+		executor.rejecting = true;
+
+		try {
+			bulkhead.execute(mock(Runnable.class));
+			fail("Query should have been rejected");
+		} catch (RejectedExecutionException expected) {
+			assertThat(bulkhead.getRejectedCount()).isEqualTo(1);
+			assertThat(bulkhead.getInFlightCount()).isEqualTo(0);
+		}
+	}
+
+	@Test
+	public void cycleIsSkippedWhilePreviousCycleIsRunning() {
+		ServerBulkhead bulkhead = bulkhead(SKIP, 1);
+		Runnable query = mock(Runnable.class);
+
+		bulkhead.executeCycle(of(query, query));
+		bulkhead.executeCycle(of(query, query));
+
+		assertThat(executor.tasks).hasSize(2);
+		assertThat(bulkhead.getMissedCycleCount()).isEqualTo(1);
+
+		executor.runAll();
+		assertThat(bulkhead.isCycleInFlight()).isFalse();
+		assertThat(bulkhead.getCompletedCycleCount()).isEqualTo(1);
+
+		bulkhead.executeCycle(of(query));
+		assertThat(executor.tasks).hasSize(1);
+	}
+
+	@Test
+	public void overrunningCyclesAreCoalesced() {
+		ServerBulkhead bulkhead = bulkhead(COALESCE, 1);
+		Runnable first = mock(Runnable.class);
+		Runnable second = mock(Runnable.class);
+		Runnable third = mock(Runnable.class);
+
+		bulkhead.executeCycle(of(first));
+		bulkhead.executeCycle(of(second));
+		bulkhead.executeCycle(of(third));
+
+		assertThat(bulkhead.getQueuedCycleCount()).isEqualTo(1);
+		assertThat(bulkhead.getMissedCycleCount()).isEqualTo(1);
+
+		executor.runAll();
+		verify(first).run();
+		verify(second, never()).run();
+		verify(third).run();
+		assertThat(bulkhead.getCompletedCycleCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void overrunningCyclesAreQueuedUpToCapacity() {
+		ServerBulkhead bulkhead = bulkhead(QUEUE, 2);
+		Runnable query = mock(Runnable.class);
+
+		for (int i = 0; i < 5; i++) {
+			bulkhead.executeCycle(of(query));
+		}
+
+		assertThat(bulkhead.getQueuedCycleCount()).isEqualTo(2);
+		assertThat(bulkhead.getMissedCycleCount()).isEqualTo(2);
+
+		executor.runAll();
+		verify(query, times(3)).run();
+		assertThat(bulkhead.isCycleInFlight()).isFalse();
+	}
+
+	@Test
+	public void cycleWithRejectedQueriesCompletes() {
+		ServerBulkhead bulkhead = bulkhead(SKIP, 1);
+		executor.rejecting = true;
+
+		bulkhead.executeCycle(of(mock(Runnable.class)));
+
+		assertThat(bulkhead.isCycleInFlight()).isFalse();
+		assertThat(bulkhead.getRejectedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void emptyCycleCompletesImmediately() {
+		ServerBulkhead bulkhead = bulkhead(SKIP, 1);
+
+		bulkhead.executeCycle(ImmutableList.<Runnable>of());
+
+		assertThat(bulkhead.isCycleInFlight()).isFalse();
+		assertThat(bulkhead.getCompletedCycleCount()).isEqualTo(1);
+	}
+
+	private ServerBulkhead bulkhead(int maxConcurrentQueries, int queueCapacity) {
+		return new ServerBulkhead(executor, maxConcurrentQueries, queueCapacity, SKIP, 1, objectName);
+	}
+
+	private ServerBulkhead bulkhead(CycleOverrunPolicy overrunPolicy, int maxQueuedCycles) {
+		return new ServerBulkhead(executor, 0, 10, overrunPolicy, maxQueuedCycles, objectName);
+	}
+
+	private static final class ManualExecutorService extends AbstractExecutorService {
+		private final List<Runnable> tasks = new ArrayList<>();
+		private boolean rejecting = false;
+
+		@Override
+		public void execute(@Nonnull Runnable command) {
+			if (rejecting) throw new RejectedExecutionException();
+			tasks.add(command);
+		}
+
+		private void runNext() {
+			tasks.remove(0).run();
+		}
+
+		private void runAll() {
+			while (!tasks.isEmpty()) {
+				runNext();
+			}
+		}
+
+		@Override
+		public void shutdown() {
+		}
+
+		@Nonnull
+		@Override
+		public List<Runnable> shutdownNow() {
+			return new ArrayList<>();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.jmx;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.CycleOverrunPolicy;
+import com.googlecode.jmxtrans.model.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static com.googlecode.jmxtrans.model.ServerFixtures.createServerWithOneQuery;
+import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServer;
+import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServerBuilder;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerBulkheadsTest {
+
+	private ThreadPoolExecutor executor;
+	private MBeanServer mbeanServer;
+	private ServerBulkheads bulkheads;
+
+	@Before
+	public void createBulkheads() {
+		executor = new ThreadPoolExecutor(1, 1, 1, SECONDS, new LinkedBlockingQueue<Runnable>());
+		mbeanServer = MBeanServerFactory.newMBeanServer();
+		bulkheads = new ServerBulkheads(executor, 10, CycleOverrunPolicy.SKIP, 1, mbeanServer);
+	}
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void equalServersShareBulkhead() throws Exception {
+		ServerBulkhead bulkhead = bulkheads.forServer(dummyServer());
+
+		assertThat(bulkheads.forServer(dummyServer())).isSameAs(bulkhead);
+		assertThat(mbeanServer.isRegistered(bulkhead.getObjectName())).isTrue();
+	}
+
+	@Test
+	public void bulkheadIsLimitedByNumQueryThreads() throws Exception {
+		Server server = Server.builder(dummyServer()).setNumQueryThreads(3).build();
+
+		assertThat(bulkheads.forServer(server).getMaxConcurrentQueries()).isEqualTo(3);
+	}
+
+	@Test
+	public void bulkheadsOfRemovedServersAreDropped() throws Exception {
+		Server other = createServerWithOneQuery("other.example.net", "1234", "myQuery:key=val");
+		ServerBulkhead removed = bulkheads.forServer(dummyServer());
+		ServerBulkhead retained = bulkheads.forServer(other);
+
+		bulkheads.retain(ImmutableList.of(other));
+
+		assertThat(mbeanServer.isRegistered(removed.getObjectName())).isFalse();
+		assertThat(mbeanServer.isRegistered(retained.getObjectName())).isTrue();
+		assertThat(bulkheads.forServer(dummyServer())).isNotSameAs(removed);
+		assertThat(bulkheads.forServer(other)).isSameAs(retained);
+	}
+
+	@Test
+	public void serversOfTheSameJvmHaveTheirOwnMBean() throws Exception {
+		Server first = dummyServerBuilder().setUsername("first").build();
+		Server second = dummyServerBuilder().setUsername("second").build();
+		ServerBulkhead removed = bulkheads.forServer(first);
+		ServerBulkhead retained = bulkheads.forServer(second);
+
+		assertThat(removed.getObjectName()).isNotEqualTo(retained.getObjectName());
+		assertThat(mbeanServer.isRegistered(retained.getObjectName())).isTrue();
+
+		bulkheads.retain(ImmutableList.of(second));
+
+		assertThat(mbeanServer.isRegistered(removed.getObjectName())).isFalse();
+		assertThat(mbeanServer.isRegistered(retained.getObjectName())).isTrue();
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.openmbean.CompositeData;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AttributeSelectionTest {
+
+	private final MBeanInfo info = info("test.Pool",
+			attribute("Count", "long"),
+			attribute("Ratio", Double.class.getName()),
+			attribute("Enabled", "boolean"),
+			attribute("Name", String.class.getName()),
+			attribute("Usage", CompositeData.class.getName()),
+			attribute("PeakCount", "int"));
+
+	@Test
+	public void allAttributesAreFetchedByDefault() {
+		Query query = Query.builder().setObj("test:type=Pool").build();
+
+		assertThat(query.getAttributesToFetch(info))
+				.containsExactly("Count", "Ratio", "Enabled", "Name", "Usage", "PeakCount");
+	}
+
+	@Test
+	public void numericAndBooleanAttributesCanBeSelected() {
+		Query query = Query.builder().setObj("test:type=Pool").setNumericAttributesOnly(true).build();
+
+		assertThat(query.getAttributesToFetch(info)).containsExactly("Count", "Ratio", "Enabled", "PeakCount");
+	}
+
+	@Test
+	public void attributesAreSelectedByGlobs() {
+		Query query = Query.builder().setObj("test:type=Pool")
+				.addAttrIncludes("*Count", "Na?e")
+				.addAttrExcludes("Peak*")
+				.build();
+
+		assertThat(query.getAttributesToFetch(info)).containsExactly("Count", "Name");
+	}
+
+	@Test
+	public void explicitAttributesAreNotFiltered() {
+		Query query = Query.builder().setObj("test:type=Pool").addAttr("Name").setNumericAttributesOnly(true).build();
+
+		assertThat(query.getAttributesToFetch(info)).containsExactly("Name");
+	}
+
+	@Test
+	public void selectionIsResolvedOncePerSetOfAttributes() {
+		AttributeSelection selection = new AttributeSelection(true, ImmutableList.<String>of(), ImmutableList.<String>of());
+
+		assertThat(selection.select(info)).isSameAs(selection.select(info("test.OtherPool",
+				attribute("Count", "long"),
+				attribute("Ratio", Double.class.getName()),
+				attribute("Enabled", "boolean"),
+				attribute("Name", String.class.getName()),
+				attribute("Usage", CompositeData.class.getName()),
+				attribute("PeakCount", "int"))));
+		assertThat(selection.select(info("test.Pool", attribute("Dynamic", "long")))).containsExactly("Dynamic");
+	}
+
+	@Test
+	public void dynamicMBeansWithTheSameNumberOfAttributesAreResolvedAgain() {
+		AttributeSelection selection = new AttributeSelection(true, ImmutableList.<String>of(), ImmutableList.<String>of());
+
+		assertThat(selection.select(info("test.Dynamic", attribute("First", "long"), attribute("Label", "java.lang.String"))))
+				.containsExactly("First");
+		assertThat(selection.select(info("test.Dynamic", attribute("Second", "long"), attribute("Label", "java.lang.String"))))
+				.containsExactly("Second");
+		assertThat(selection.select(info("test.Dynamic", attribute("Second", "java.lang.String"), attribute("Label", "long"))))
+				.containsExactly("Label");
+	}
+
+	private static MBeanInfo info(String className, MBeanAttributeInfo... attributes) {
+		return new MBeanInfo(className, null, attributes, null, null, null);
+	}
+
+	private static MBeanAttributeInfo attribute(String name, String type) {
+		return new MBeanAttributeInfo(name, type, null, true, false, false);
+	}
+}
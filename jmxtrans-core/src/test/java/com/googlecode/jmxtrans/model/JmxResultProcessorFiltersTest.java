@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.ObjectInstance;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JmxResultProcessorFiltersTest {
+
+	private ObjectInstance objectInstance;
+	private Attribute usage;
+
+	@Before
+	public void createAttributes() throws Exception {
+		objectInstance = new ObjectInstance("test:type=Pool", "test.Pool");
+		CompositeType type = new CompositeType("Usage", "Usage", new String[]{"used", "max", "name"},
+				new String[]{"used", "max", "name"}, new OpenType<?>[]{SimpleType.LONG, SimpleType.LONG, SimpleType.STRING});
+		usage = new Attribute("Usage", new CompositeDataSupport(type, new String[]{"used", "max", "name"},
+				new Object[]{10L, 100L, "pool"}));
+	}
+
+	@Test
+	public void everythingIsKeptByDefault() {
+		List<Result> results = process(Query.builder().setObj("test:type=Pool").build(),
+				usage, new Attribute("Name", "pool"));
+
+		assertThat(results).hasSize(2);
+		assertThat(results.get(0).getValues()).containsOnlyKeys("used", "max", "name");
+		assertThat(results.get(1).getValues()).containsOnlyKeys("Name");
+	}
+
+	@Test
+	public void keysFilterValuesOfCompositeAttributes() {
+		Query query = Query.builder().setObj("test:type=Pool").addKeys("used", "b").build();
+
+		List<Result> results = process(query, usage,
+				new Attribute("Map", ImmutableMap.of("a", 1, "b", 2)),
+				new Attribute("Count", 3));
+
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).getValues()).containsOnlyKeys("used");
+		assertThat(results.get(1).getValues()).containsOnlyKeys("b");
+		// attributes holding a single value are not filtered
+		assertThat(results.get(2).getValues()).containsOnlyKeys("Count");
+	}
+
+	@Test
+	public void numericOnlySkipsOtherValues() {
+		Query query = Query.builder().setObj("test:type=Pool").setNumericOnly(true).build();
+
+		List<Result> results = process(query, usage,
+				new Attribute("Name", "pool"),
+				new Attribute("Enabled", true),
+				new Attribute("Names", new String[]{"a", "b"}),
+				new Attribute("Sizes", new int[]{1, 2}));
+
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).getValues()).containsOnlyKeys("used", "max");
+		assertThat(results.get(1).getAttributeName()).isEqualTo("Enabled");
+		assertThat(results.get(2).getValues()).containsOnlyKeys("Sizes.0", "Sizes.1");
+	}
+
+	@Test
+	public void allResultsShareTheGivenEpoch() {
+		List<Result> results = new JmxResultProcessor(Query.builder().setObj("test:type=Pool").build(), objectInstance,
+				ImmutableList.of(usage, new Attribute("Name", "pool")), "test.Pool", "test", 1234L).getResults();
+
+		assertThat(results).hasSize(2);
+		assertThat(results.get(0).getEpoch()).isEqualTo(1234L);
+		assertThat(results.get(1).getEpoch()).isEqualTo(1234L);
+	}
+
+	private List<Result> process(Query query, Attribute... attributes) {
+		return new JmxResultProcessor(query, objectInstance, ImmutableList.copyOf(attributes), "test.Pool", "test")
+				.getResults();
+	}
+}
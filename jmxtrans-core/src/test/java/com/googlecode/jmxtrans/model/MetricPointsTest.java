@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static com.googlecode.jmxtrans.model.ResultFixtures.booleanTrueResult;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricPointsTest {
+
+	@Test
+	public void identitiesAreInterned() {
+		MetricIdentity first = MetricIdentity.of("attr", "class", "domain", "type=Test", "alias", "key");
+		MetricIdentity second = MetricIdentity.of("attr", "class", "domain", "type=Test", "alias", "key");
+
+		assertThat(first).isSameAs(second);
+	}
+
+	@Test
+	public void integralValuesStayExact() {
+		Result result = result(0, ImmutableMap.<String, Object>of("big", Long.MAX_VALUE, "small", 3));
+
+		ImmutableList<MetricPoint> points = MetricPoints.fromResults(ImmutableList.of(result));
+
+		assertThat(points).hasSize(2);
+		assertThat(points.get(0).isIntegral()).isTrue();
+		assertThat(points.get(0).getLongValue()).isEqualTo(Long.MAX_VALUE);
+		assertThat(points.get(1).getLongValue()).isEqualTo(3L);
+	}
+
+	@Test
+	public void otherNumbersAreConvertedToDouble() {
+		Result result = result(0, ImmutableMap.<String, Object>of("float", 1.5f, "decimal", new BigDecimal("2.25")));
+
+		ImmutableList<MetricPoint> points = MetricPoints.fromResults(ImmutableList.of(result));
+
+		assertThat(points.get(0).isIntegral()).isFalse();
+		assertThat(points.get(0).getDoubleValue()).isEqualTo(1.5);
+		assertThat(points.get(1).getDoubleValue()).isEqualTo(2.25);
+	}
+
+	@Test
+	public void nonNumericValuesAreSkipped() {
+		Result result = result(0, ImmutableMap.<String, Object>of("name", "value", "count", 1));
+
+		ImmutableList<MetricPoint> points = MetricPoints.fromResults(ImmutableList.of(result, booleanTrueResult()));
+
+		assertThat(points).hasSize(1);
+		assertThat(points.get(0).getIdentity().getValueKey()).isEqualTo("count");
+	}
+
+	@Test
+	public void pointsAreRegroupedIntoResults() {
+		Result first = result(0, ImmutableMap.<String, Object>of("a", 1L, "b", 2.5));
+		Result second = result(1000, ImmutableMap.<String, Object>of("a", 3L));
+
+		MetricPoints points = MetricPoints.of(MetricPoints.fromResults(ImmutableList.of(first, second)));
+
+		assertThat(points).containsExactly(first, second);
+		assertThat(MetricPoints.fromResults(points)).isSameAs(points.getPoints());
+	}
+
+	@Test
+	public void pointsAreKeptWhenJoined() {
+		MetricPoints first = MetricPoints.of(MetricPoints.fromResults(ImmutableList.of(result(0, ImmutableMap.<String, Object>of("a", 1L)))));
+		MetricPoints second = MetricPoints.of(MetricPoints.fromResults(ImmutableList.of(result(0, ImmutableMap.<String, Object>of("b", 2L)))));
+
+		Iterable<Result> joined = MetricPoints.concat(ImmutableList.<Iterable<Result>>of(first, second));
+
+		assertThat(joined).isInstanceOf(MetricPoints.class);
+		assertThat(((MetricPoints) joined).getPoints()).hasSize(2);
+		assertThat(MetricPoints.concat(ImmutableList.<Iterable<Result>>of(first, ImmutableList.of(booleanTrueResult()))))
+				.isNotInstanceOf(MetricPoints.class)
+				.hasSize(2);
+	}
+
+	@Test
+	public void singlePointIsAdaptedToResult() {
+		MetricPoint point = MetricPoint.of(MetricIdentity.of("attr", "class", "domain", "type=Test", "alias", "key"), 42, 7L);
+
+		assertThat(point.toResult())
+				.isEqualTo(new Result(42, "attr", "class", "domain", "alias", "type=Test", ImmutableMap.<String, Object>of("key", 7L)));
+	}
+
+	private static Result result(long epoch, ImmutableMap<String, Object> values) {
+		return new Result(epoch, "attr", "class", "domain", "alias", "type=Test", values);
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.connections.MBeanMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueryGroupTest {
+
+	private ObjectName name;
+	private MBeanMetadata metadata;
+	private MBeanServerConnection connection;
+
+	@Before
+	public void createMBean() throws Exception {
+		name = new ObjectName("test:type=Test");
+		MBeanInfo info = new MBeanInfo("test.Test", null, new MBeanAttributeInfo[]{
+				new MBeanAttributeInfo("A", "int", null, true, false, false),
+				new MBeanAttributeInfo("B", "int", null, true, false, false),
+				new MBeanAttributeInfo("C", "int", null, true, false, false)
+		}, null, null, null);
+		metadata = new MBeanMetadata(info, new ObjectInstance(name, "test.Test"));
+		connection = mock(MBeanServerConnection.class);
+		when(connection.getAttributes(eq(name), any(String[].class))).thenReturn(new AttributeList(ImmutableList.of(
+				new Attribute("A", 1), new Attribute("B", 2), new Attribute("C", 3))));
+	}
+
+	@Test
+	public void queriesAreGroupedByObjectName() {
+		Query a = Query.builder().setObj("test:type=Test").addAttr("A").build();
+		Query other = Query.builder().setObj("test:type=Other").addAttr("A").build();
+		Query b = Query.builder().setObj("test:type=Test").addAttr("B").build();
+
+		ImmutableList<QueryGroup> groups = QueryGroup.groupByObjectName(ImmutableList.of(a, other, b));
+
+		assertThat(groups).hasSize(2);
+		assertThat(groups.get(0).getQueries()).containsExactly(a, b);
+		assertThat(groups.get(1).getQueries()).containsExactly(other);
+	}
+
+	@Test
+	public void unionOfAttributesIsFetchedOnce() throws Exception {
+		Query a = Query.builder().setObj("test:type=Test").addAttr("A", "B").build();
+		Query c = Query.builder().setObj("test:type=Test").addAttr("C", "B").build();
+
+		QueryGroup.groupByObjectName(ImmutableList.of(a, c)).get(0).fetchResults(connection, name, metadata);
+
+		verify(connection, times(1)).getAttributes(name, new String[]{"A", "B", "C"});
+	}
+
+	@Test
+	public void eachQueryOnlyGetsItsOwnAttributes() throws Exception {
+		Query a = Query.builder().setObj("test:type=Test").addAttr("A").build();
+		Query cb = Query.builder().setObj("test:type=Test").addAttr("C", "B").build();
+		Query all = Query.builder().setObj("test:type=Test").build();
+
+		List<Iterable<Result>> results = QueryGroup.groupByObjectName(ImmutableList.of(a, cb, all)).get(0)
+				.fetchResults(connection, name, metadata);
+
+		assertThat(attributeNames(results.get(0))).containsExactly("A");
+		assertThat(attributeNames(results.get(1))).containsExactly("C", "B");
+		assertThat(attributeNames(results.get(2))).containsExactly("A", "B", "C");
+	}
+
+	@Test
+	public void groupedResultsAreTheSameAsSingleQueryResults() throws Exception {
+		Query a = Query.builder().setObj("test:type=Test").addAttr("A").setResultAlias("alias").build();
+		Query b = Query.builder().setObj("test:type=Test").addAttr("B").build();
+
+		List<Iterable<Result>> grouped = QueryGroup.groupByObjectName(ImmutableList.of(a, b)).get(0)
+				.fetchResults(connection, name, metadata);
+		Iterable<Result> single = a.fetchResults(connection, name, metadata);
+
+		Result groupedResult = grouped.get(0).iterator().next();
+		Result singleResult = single.iterator().next();
+		assertThat(groupedResult.getAttributeName()).isEqualTo(singleResult.getAttributeName());
+		assertThat(groupedResult.getKeyAlias()).isEqualTo(singleResult.getKeyAlias());
+		assertThat(groupedResult.getValues()).isEqualTo(singleResult.getValues());
+	}
+
+	@Test
+	public void queriesWhoseWritersAllConsumePointsArePoints() throws Exception {
+		Query points = Query.builder().setObj("test:type=Test").addAttr("A", "B")
+				.addOutputWriters(ImmutableList.<OutputWriter>of(mock(MetricPointWriter.class))).build();
+		Query results = Query.builder().setObj("test:type=Test").addAttr("C")
+				.addOutputWriters(ImmutableList.of(mock(OutputWriter.class))).build();
+
+		List<Iterable<Result>> fetched = QueryGroup.groupByObjectName(ImmutableList.of(points, results)).get(0)
+				.fetchResults(connection, name, metadata, 1000L, ImmutableList.<OutputWriter>of(mock(MetricPointWriter.class)));
+
+		assertThat(fetched.get(0)).isInstanceOf(MetricPoints.class);
+		ImmutableList<MetricPoint> built = ((MetricPoints) fetched.get(0)).getPoints();
+		assertThat(built).hasSize(2);
+		assertThat(built.get(0).getIdentity()).isSameAs(MetricIdentity.of("A", "test.Test", "test", "type=Test", null, "A"));
+		assertThat(built.get(0).getLongValue()).isEqualTo(1L);
+		assertThat(built.get(0).getEpoch()).isEqualTo(1000L);
+		assertThat(fetched.get(1)).isNotInstanceOf(MetricPoints.class);
+		assertThat(attributeNames(fetched.get(0))).containsExactly("A", "B");
+	}
+
+	@Test
+	public void attributeThatCannotBeUnmarshalledOnlyEmptiesItsOwnQuery() throws Exception {
+		UnmarshalException unmarshalException = new UnmarshalException("bad class", new ClassNotFoundException("test.Missing"));
+		when(connection.getAttributes(name, new String[]{"A", "B"})).thenThrow(unmarshalException);
+		when(connection.getAttributes(name, new String[]{"B"})).thenThrow(unmarshalException);
+		when(connection.getAttributes(name, new String[]{"A"})).thenReturn(new AttributeList(ImmutableList.of(
+				new Attribute("A", 1))));
+		Query a = Query.builder().setObj("test:type=Test").addAttr("A").build();
+		Query b = Query.builder().setObj("test:type=Test").addAttr("B").build();
+
+		List<Iterable<Result>> results = QueryGroup.groupByObjectName(ImmutableList.of(a, b)).get(0)
+				.fetchResults(connection, name, metadata);
+
+		assertThat(attributeNames(results.get(0))).containsExactly("A");
+		assertThat(results.get(1)).isEmpty();
+	}
+
+	private static List<String> attributeNames(Iterable<Result> results) {
+		List<String> names = new ArrayList<>();
+		for (Result result : results) {
+			names.add(result.getAttributeName());
+		}
+		return names;
+	}
+}
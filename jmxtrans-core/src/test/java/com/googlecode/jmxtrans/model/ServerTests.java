@@ -22,19 +22,40 @@
  */
 package com.googlecode.jmxtrans.model;
 
+import com.google.common.collect.ImmutableList;
 import com.googlecode.jmxtrans.connections.JMXConnection;
 import com.googlecode.jmxtrans.connections.JmxConnectionProvider;
+import com.googlecode.jmxtrans.connections.MBeanMetadata;
+import com.googlecode.jmxtrans.connections.TimeoutRMIClientSocketFactory;
 import com.googlecode.jmxtrans.test.RequiresIO;
 import com.kaching.platform.testing.AllowDNSResolution;
 import org.apache.commons.pool.impl.GenericKeyedObjectPool;
-import org.assertj.core.util.Lists;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import javax.management.Attribute;
+import javax.management.InstanceNotFoundException;
+import javax.management.AttributeList;
+import javax.management.MBeanInfo;
 import javax.management.MBeanServerConnection;
+import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.*;
@@ -207,8 +228,8 @@ public class ServerTests {
 		when(pool.borrowObject(server)).thenReturn(conn);
 
 		Query query = mock(Query.class);
-		Iterable<ObjectName> objectNames = Lists.emptyList();
-		when(query.queryNames(mBeanConn)).thenReturn(objectNames);
+		when(query.getObjectName()).thenReturn(ObjectName.WILDCARD);
+		when(conn.queryNames(ObjectName.WILDCARD)).thenReturn(Collections.<ObjectName>emptySet());
 		server.execute(query);
 
 		verify(pool, never()).invalidateObject(server, conn);
@@ -239,7 +260,8 @@ public class ServerTests {
 
 		Query query = mock(Query.class);
 		IOException e = mock(IOException.class);
-		when(query.queryNames(mBeanConn)).thenThrow(e);
+		when(query.getObjectName()).thenReturn(ObjectName.WILDCARD);
+		when(conn.queryNames(ObjectName.WILDCARD)).thenThrow(e);
 
 		try {
 			server.execute(query);
@@ -250,8 +272,6 @@ public class ServerTests {
 			}
 		}
 
-		verify(conn).close();
-
 		verify(pool, never()).returnObject(server, conn);
 
 		InOrder orderVerifier = inOrder(pool);
@@ -275,13 +295,15 @@ public class ServerTests {
 
 		JMXConnection conn = mock(JMXConnection.class);
 		when(conn.getMBeanServerConnection()).thenReturn(mBeanConn);
-		doThrow(new IOException()).when(conn).close();
 
 		when(pool.borrowObject(server)).thenReturn(conn);
+		// invalidating the connection closes it
+		doThrow(new IOException()).when(pool).invalidateObject(server, conn);
 
 		Query query = mock(Query.class);
 		IOException e = mock(IOException.class);
-		when(query.queryNames(mBeanConn)).thenThrow(e);
+		when(query.getObjectName()).thenReturn(ObjectName.WILDCARD);
+		when(conn.queryNames(ObjectName.WILDCARD)).thenThrow(e);
 
 		try {
 			server.execute(query);
@@ -292,12 +314,315 @@ public class ServerTests {
 			}
 		}
 
-		verify(conn).close();
-
 		verify(pool, never()).returnObject(server, conn);
 
 		InOrder orderVerifier = inOrder(pool);
 		orderVerifier.verify(pool).borrowObject(server);
 		orderVerifier.verify(pool).invalidateObject(server, conn);
 	}
+
+	@Test
+	public void connectionIsReturnedWhenAnMBeanFails() throws Exception {
+		@SuppressWarnings("unchecked")
+		GenericKeyedObjectPool<JmxConnectionProvider, JMXConnection> pool = mock(GenericKeyedObjectPool.class);
+
+		Server server = Server.builder()
+				.setHost("host.example.net")
+				.setPort("4321")
+				.setLocal(true)
+				.setPool(pool)
+				.build();
+
+		JMXConnection conn = mock(JMXConnection.class);
+		when(conn.getMBeanServerConnection()).thenReturn(mock(MBeanServerConnection.class));
+		when(pool.borrowObject(server)).thenReturn(conn);
+
+		ObjectName unregistered = new ObjectName("test:type=Unregistered");
+		Query query = mock(Query.class);
+		when(query.getObjectName()).thenReturn(unregistered);
+		when(conn.queryNames(unregistered)).thenReturn(Collections.singleton(unregistered));
+		InstanceNotFoundException e = new InstanceNotFoundException();
+		when(conn.getMetadata(unregistered)).thenThrow(e);
+
+		try {
+			server.execute(query);
+			fail("No exception got throws");
+		} catch (InstanceNotFoundException e2) {
+			assertSame(e, e2);
+		}
+
+		// the connection is shared with the other servers of the JVM, it is still usable
+		verify(pool, never()).invalidateObject(server, conn);
+		verify(pool).returnObject(server, conn);
+	}
+
+	@Test
+	public void testEnvironmentContainsSocketFactoryWhenTimeoutsAreSet() {
+		Server server = Server.builder()
+				.setHost("host.example.net")
+				.setPort("4321")
+				.setConnectTimeoutSeconds(2)
+				.setReadTimeoutSeconds(10)
+				.build();
+
+		assertThat(server.getEnvironment().get(TimeoutRMIClientSocketFactory.JNDI_SOCKET_FACTORY))
+				.isEqualTo(new TimeoutRMIClientSocketFactory(2000, 10000));
+		assertThat(server.getEnvironment().get("jmx.remote.x.notification.fetch.timeout")).isEqualTo(5000L);
+	}
+
+	@Test
+	public void testEnvironmentHasNoSocketFactoryWithoutTimeouts() {
+		Server server = Server.builder()
+				.setHost("host.example.net")
+				.setPort("4321")
+				.build();
+
+		assertThat(server.getEnvironment()).doesNotContainKey(TimeoutRMIClientSocketFactory.JNDI_SOCKET_FACTORY);
+	}
+
+	@Test
+	public void testConnectionIsInvalidatedOnQueryTimeout() throws Exception {
+		@SuppressWarnings("unchecked")
+		GenericKeyedObjectPool<JmxConnectionProvider, JMXConnection> pool = mock(GenericKeyedObjectPool.class);
+
+		Server server = Server.builder()
+				.setHost("host.example.net")
+				.setPort("4321")
+				.setLocal(true)
+				.setQueryTimeoutSeconds(1)
+				.setPool(pool)
+				.build();
+
+		JMXConnection conn = mock(JMXConnection.class);
+		when(pool.borrowObject(server)).thenReturn(conn);
+
+		final CountDownLatch hung = new CountDownLatch(1);
+		Query query = mock(Query.class);
+		when(query.getObjectName()).thenReturn(ObjectName.WILDCARD);
+		when(conn.queryNames(ObjectName.WILDCARD)).thenAnswer(new Answer<Set<ObjectName>>() {
+			@Override
+			public Set<ObjectName> answer(InvocationOnMock invocation) throws Throwable {
+				hung.await();
+				return Collections.emptySet();
+			}
+		});
+
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			server.execute(QueryGroup.of(query), executor);
+			fail("Query should have timed out");
+		} catch (TimeoutException expected) {
+			verify(pool, timeout(1000)).invalidateObject(server, conn);
+		} finally {
+			hung.countDown();
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+
+		verify(pool, never()).returnObject(server, conn);
+	}
+
+	@Test
+	public void queriesTimeOutWhenNoThreadIsLeft() throws Exception {
+		@SuppressWarnings("unchecked")
+		GenericKeyedObjectPool<JmxConnectionProvider, JMXConnection> pool = mock(GenericKeyedObjectPool.class);
+		Server server = Server.builder()
+				.setHost("host.example.net")
+				.setPort("4321")
+				.setLocal(true)
+				.setQueryTimeoutSeconds(1)
+				.setPool(pool)
+				.build();
+		ExecutorService executor = mock(ExecutorService.class);
+		when(executor.submit(any(Callable.class))).thenThrow(new RejectedExecutionException());
+
+		try {
+			server.execute(QueryGroup.of(mock(Query.class)), executor);
+			fail("Query should have timed out");
+		} catch (TimeoutException expected) {
+			assertThat(expected.getCause()).isInstanceOf(RejectedExecutionException.class);
+		}
+		verifyZeroInteractions(pool);
+	}
+
+	@Test
+	public void resultsAreStreamedInChunksOfMBeans() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 5, 1);
+		ResultSink sink = mock(ResultSink.class);
+
+		server.execute(QueryGroup.of(query), 0L, 2, sink);
+
+		ArgumentCaptor<Iterable> chunks = ArgumentCaptor.forClass(Iterable.class);
+		verify(sink, times(3)).accept(same(query), chunks.capture());
+		assertThat(chunks.getAllValues().get(0)).hasSize(2);
+		assertThat(chunks.getAllValues().get(1)).hasSize(2);
+		assertThat(chunks.getAllValues().get(2)).hasSize(1);
+	}
+
+	@Test
+	public void sinkIsCalledOnceWithEmptyResultsWhenNoMBeanMatches() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 0, 1);
+		ResultSink sink = mock(ResultSink.class);
+
+		server.execute(QueryGroup.of(query), 0L, 2, sink);
+
+		verify(sink).accept(same(query), eq(ImmutableList.<Result>of()));
+	}
+
+	@Test
+	public void allMBeansAreProcessedWithTheCycleEpoch() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 5, 1);
+
+		server.execute(QueryGroup.of(query), 1234L, 2, mock(ResultSink.class));
+
+		verify(query, times(5)).processAttributes(
+				any(ObjectName.class), any(MBeanMetadata.class), anyListOf(Attribute.class), eq(1234L));
+	}
+
+	@Test
+	public void resultsAreCollectedWithoutChunkSize() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 5, 1);
+
+		assertThat(server.execute(query)).hasSize(5);
+	}
+
+	@Test
+	public void largeExpansionsAreFetchedInParallelPartitions() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 350, 4);
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		when(query.processAttributes(any(ObjectName.class), any(MBeanMetadata.class), anyListOf(Attribute.class), anyLong()))
+				.thenAnswer(new Answer<Iterable<Result>>() {
+					@Override
+					public Iterable<Result> answer(InvocationOnMock invocation) throws Throwable {
+						threads.add(Thread.currentThread());
+						return ImmutableList.of(mock(Result.class));
+					}
+				});
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			ImmutableList<Iterable<Result>> results = server.execute(QueryGroup.of(query), executor);
+
+			assertThat(results.get(0)).hasSize(350);
+			// 350 MBeans only make 3 partitions of at least 100 MBeans
+			assertThat(threads).hasSize(3);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void partitionResultsAreStreamedInChunks() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 350, 4);
+		ResultSink sink = mock(ResultSink.class);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			server.execute(QueryGroup.of(query), 0L, 50, sink, executor);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		ArgumentCaptor<Iterable> chunks = ArgumentCaptor.forClass(Iterable.class);
+		verify(sink, atLeastOnce()).accept(same(query), chunks.capture());
+		int total = 0;
+		for (Iterable<?> chunk : chunks.getAllValues()) {
+			assertThat(chunk).hasSize(50);
+			total += 50;
+		}
+		assertThat(total).isEqualTo(350);
+	}
+
+	@Test
+	public void partitionFailuresAreRethrown() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 350, 4);
+		final ObjectName failing = new ObjectName("example:index=300");
+		final IllegalStateException failure = new IllegalStateException();
+		when(query.processAttributes(any(ObjectName.class), any(MBeanMetadata.class), anyListOf(Attribute.class), anyLong()))
+				.thenAnswer(new Answer<Iterable<Result>>() {
+					@Override
+					public Iterable<Result> answer(InvocationOnMock invocation) throws Throwable {
+						if (failing.equals(invocation.getArguments()[0])) throw failure;
+						return ImmutableList.of(mock(Result.class));
+					}
+				});
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			server.execute(QueryGroup.of(query), 0L, 50, mock(ResultSink.class), executor);
+			fail("The failure of a partition should fail the query");
+		} catch (IllegalStateException e) {
+			assertSame(failure, e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void smallExpansionsAreNotSplit() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 150, 4);
+		ExecutorService executor = mock(ExecutorService.class);
+
+		assertThat(server.execute(QueryGroup.of(query), executor).get(0)).hasSize(150);
+		verifyZeroInteractions(executor);
+	}
+
+	@Test
+	public void partitionsTimeOutWhenNoThreadIsLeft() throws Exception {
+		Query query = streamingQuery();
+		Server server = streamingServer(query, 350, 4);
+		ExecutorService executor = mock(ExecutorService.class);
+		when(executor.submit(any(Callable.class))).thenThrow(new RejectedExecutionException());
+
+		try {
+			server.execute(QueryGroup.of(query), 0L, 50, mock(ResultSink.class), executor);
+			fail("Partitions should have timed out");
+		} catch (TimeoutException expected) {
+			assertThat(expected.getCause()).isInstanceOf(RejectedExecutionException.class);
+		}
+		verify(query, never()).processAttributes(
+				any(ObjectName.class), any(MBeanMetadata.class), anyListOf(Attribute.class), anyLong());
+	}
+
+	private Query streamingQuery() {
+		Query query = mock(Query.class);
+		when(query.getObjectName()).thenReturn(ObjectName.WILDCARD);
+		when(query.getOutputWriterInstances()).thenReturn(ImmutableList.<OutputWriter>of());
+		when(query.getAttributesToFetch(any(MBeanInfo.class))).thenReturn(Collections.singletonList("Value"));
+		when(query.processAttributes(any(ObjectName.class), any(MBeanMetadata.class), anyListOf(Attribute.class), anyLong()))
+				.thenReturn(ImmutableList.of(mock(Result.class)));
+		return query;
+	}
+
+	private Server streamingServer(Query query, int mbeanCount, int queryParallelism) throws Exception {
+		GenericKeyedObjectPool<JmxConnectionProvider, JMXConnection> pool = mock(GenericKeyedObjectPool.class);
+		Server server = Server.builder()
+				.setHost("host.example.net")
+				.setPort("4321")
+				.setLocal(true)
+				.setQueryParallelism(queryParallelism)
+				.setPool(pool)
+				.build();
+
+		MBeanServerConnection mBeanConn = mock(MBeanServerConnection.class);
+		when(mBeanConn.getAttributes(any(ObjectName.class), any(String[].class)))
+				.thenReturn(new AttributeList(Collections.singletonList(new Attribute("Value", 1))));
+		JMXConnection conn = mock(JMXConnection.class);
+		when(conn.getMBeanServerConnection()).thenReturn(mBeanConn);
+		Set<ObjectName> names = new LinkedHashSet<>();
+		for (int i = 0; i < mbeanCount; i++) {
+			names.add(new ObjectName("example:index=" + i));
+		}
+		when(conn.queryNames(query.getObjectName())).thenReturn(names);
+		when(conn.getMetadata(any(ObjectName.class))).thenReturn(new MBeanMetadata(
+				new MBeanInfo("Example", null, null, null, null, null),
+				new ObjectInstance("example:index=0", "Example")));
+		when(pool.borrowObject(server)).thenReturn(conn);
+		return server;
+	}
 }
@@ -0,0 +1,99 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.naming;
+
+import com.google.common.collect.ImmutableMap;
+import com.googlecode.jmxtrans.model.Result;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JexlNamingStrategyTest {
+
+	private static final String[] EXPRESSIONS = {
+			JexlNamingStrategy.DEFAULT_EXPRESSION,
+			"alias + '.' + attribute",
+			"realclass",
+			"typename.type + \"_\" + attribute",
+			"typename['name'] + '.' + realclass + '.' + attribute",
+			"'prefix.' + typename.missing + attribute",
+			"typename.type + typename.name + '.' + attribute",
+	};
+
+	private static final Result[] RESULTS = {
+			result("com.example.Pool", null, "type=Pool,name=main", "Count"),
+			result("com.example.Pool", "pools", "type=Pool,name=main", "Count"),
+			result("com.example.Pool", null, "type=1,name=2", "Count"),
+			result("com.example.Pool", null, null, "Count"),
+	};
+
+	@Test
+	public void compiledExpressionsGiveSameNamesAsJexl() {
+		for (String expression : EXPRESSIONS) {
+			assertThat(NamingTemplate.compile(expression)).as(expression).isNotNull();
+			JexlNamingStrategy compiled = new JexlNamingStrategy(expression);
+			// subclasses are always interpreted by JEXL
+			JexlNamingStrategy interpreted = new JexlNamingStrategy(expression) {};
+			for (Result result : RESULTS) {
+				assertThat(compiled.formatName(result)).as(expression + " " + result)
+						.isEqualTo(interpreted.formatName(result));
+			}
+		}
+	}
+
+	@Test
+	public void namesAreMemoized() {
+		JexlNamingStrategy strategy = new JexlNamingStrategy();
+
+		String first = strategy.formatName(RESULTS[0]);
+
+		assertThat(first).isEqualTo("com.example.Pool.Count");
+		assertThat(strategy.formatName(RESULTS[0])).isSameAs(first);
+		assertThat(strategy.formatName(RESULTS[1])).isEqualTo("pools.Count");
+	}
+
+	@Test
+	public void complexExpressionsAreLeftToJexl() {
+		assertThat(NamingTemplate.compile("result.attributeName + '.x'")).isNull();
+		assertThat(NamingTemplate.compile("attribute.toUpperCase()")).isNull();
+		assertThat(NamingTemplate.compile("'a\\'b' + attribute")).isNull();
+		assertThat(NamingTemplate.compile("1 + attribute")).isNull();
+
+		assertThat(new JexlNamingStrategy("result.attributeName + '.x'").formatName(RESULTS[0])).isEqualTo("Count.x");
+	}
+
+	@Test
+	public void changingExpressionResetsNames() {
+		JexlNamingStrategy strategy = new JexlNamingStrategy();
+		strategy.formatName(RESULTS[0]);
+
+		strategy.setExpression("attribute");
+
+		assertThat(strategy.formatName(RESULTS[0])).isEqualTo("Count");
+	}
+
+	private static Result result(String className, String keyAlias, String typeName, String attributeName) {
+		return new Result(0, attributeName, className, "com.example", keyAlias, typeName,
+				ImmutableMap.<String, Object>of(attributeName, 1));
+	}
+}
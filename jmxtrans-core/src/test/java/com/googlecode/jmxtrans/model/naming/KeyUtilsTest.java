@@ -0,0 +1,72 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.naming;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.googlecode.jmxtrans.model.Result;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.googlecode.jmxtrans.model.QueryFixtures.dummyQuery;
+import static com.googlecode.jmxtrans.model.QueryFixtures.queryUsingDomainAsKey;
+import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServer;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyUtilsTest {
+
+	private final Result result = new Result(0, "Count", "com.example.Pool(main)", "com.example", null, "type=Pool",
+			ImmutableMap.<String, Object>of("Count", 1));
+	private final Map.Entry<String, Object> value = getOnlyElement(result.getValues().entrySet());
+	private final List<String> typeNames = ImmutableList.of("type");
+
+	@Test
+	public void keyStringIsBuiltOnlyOnce() {
+		String first = KeyUtils.getKeyString(dummyServer(), dummyQuery(), result, value, typeNames, "root");
+		String second = KeyUtils.getKeyString(dummyServer(), dummyQuery(), result, value, typeNames, "root");
+
+		assertThat(first).isEqualTo("root.host_example_net_4321.com_example_Pool(main).Pool.Count");
+		assertThat(second).isSameAs(first);
+	}
+
+	@Test
+	public void everyComponentIsPartOfTheCacheKey() {
+		assertThat(KeyUtils.getKeyString(dummyServer(), queryUsingDomainAsKey(), result, value, typeNames, "root"))
+				.isEqualTo("root.host_example_net_4321.com_example.Pool.Count");
+		assertThat(KeyUtils.getKeyString(dummyServer(), dummyQuery(), result, value, typeNames, "other"))
+				.startsWith("other.");
+		assertThat(KeyUtils.getKeyString(dummyQuery(), result, value, typeNames))
+				.isEqualTo("com_example_Pool(main).Pool.Count");
+	}
+
+	@Test
+	public void parenthesesCanBeReplaced() {
+		assertThat(KeyUtils.getKeyStringWithoutParentheses(dummyServer(), dummyQuery(), result, value, typeNames, "root"))
+				.isEqualTo("root.host_example_net_4321.com_example_Pool_main_.Pool.Count");
+		assertThat(KeyUtils.getKeyString(dummyServer(), dummyQuery(), result, value, typeNames, "root"))
+				.contains("(main)");
+	}
+}
@@ -24,7 +24,10 @@ package com.googlecode.jmxtrans.model.naming;
 
 import org.junit.Test;
 
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class StringUtilsTest {
 
@@ -62,4 +65,71 @@ public class StringUtilsTest {
 		assertEquals("abcd", StringUtils.cleanupStr("\"abcd\"_\"\""));
 	}
 
+	@Test
+	public void parenthesesCanBeReplaced() {
+		assertEquals("abcd_1_", StringUtils.cleanupStr("abcd(1)", false, true));
+		assertEquals("abcd(1)", StringUtils.cleanupStr("abcd(1)", false, false));
+		assertEquals("abcd_", StringUtils.cleanupStr("abcd(.", true, true));
+		assertEquals("abcd__", StringUtils.cleanupStr("abcd_)", false, true));
+	}
+
+	@Test
+	public void cleanNamesAreNotCopied() {
+		String name = "abcd_abcd";
+		assertSame(name, StringUtils.cleanupStr(name));
+	}
+
+	@Test
+	public void appendsToExistingBuilder() {
+		StringBuilder sb = new StringBuilder("prefix.");
+		StringUtils.cleanupStr(sb, "ab cd.", false, false);
+		assertEquals("prefix.abcd", sb.toString());
+
+		sb = new StringBuilder("prefix_");
+		StringUtils.cleanupStr(sb, "\"\"", false, false);
+		assertEquals("prefix_", sb.toString());
+	}
+
+	/**
+	 * Compares the sanitizer with the regex based implementation it replaces,
+	 * for every string of up to 5 characters over the characters with a special
+	 * meaning, so that metric names don't change.
+	 */
+	@Test
+	public void sameOutputAsRegexImplementation() {
+		char[] alphabet = {'a', '.', '/', '_', ' ', '"', '\'', '(', ')', '\u00e9'};
+		char[] chars = new char[5];
+		for (int length = 0; length <= chars.length; length++) {
+			int combinations = (int) Math.pow(alphabet.length, length);
+			for (int n = 0; n < combinations; n++) {
+				int remaining = n;
+				for (int i = 0; i < length; i++) {
+					chars[i] = alphabet[remaining % alphabet.length];
+					remaining /= alphabet.length;
+				}
+				String name = new String(chars, 0, length);
+				for (boolean allowDottedKeys : new boolean[]{false, true}) {
+					String expected = regexCleanupStr(name, allowDottedKeys);
+					assertEquals(name, expected, StringUtils.cleanupStr(name, allowDottedKeys));
+					assertEquals(name, PARENTHESES.matcher(expected).replaceAll("_"),
+							StringUtils.cleanupStr(name, allowDottedKeys, true));
+				}
+			}
+		}
+	}
+
+	private static final Pattern DOT_SLASH_UNDERSCORE_PAT = Pattern.compile("[./]");
+	private static final Pattern SLASH_UNDERSCORE_PAT = Pattern.compile("/", Pattern.LITERAL);
+	private static final Pattern SPACE_PAT = Pattern.compile("[ \"']+");
+	private static final Pattern PARENTHESES = Pattern.compile("[()]");
+
+	private static String regexCleanupStr(String name, boolean allowDottedKeys) {
+		Pattern pattern = allowDottedKeys ? SLASH_UNDERSCORE_PAT : DOT_SLASH_UNDERSCORE_PAT;
+		String clean = pattern.matcher(name).replaceAll("_");
+		clean = SPACE_PAT.matcher(clean).replaceAll("");
+		clean = org.apache.commons.lang.StringUtils.chomp(clean, ".");
+		clean = org.apache.commons.lang.StringUtils.chomp(clean, "_");
+		return clean;
+	}
+
 }
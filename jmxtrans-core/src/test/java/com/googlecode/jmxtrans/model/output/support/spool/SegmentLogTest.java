@@ -0,0 +1,175 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.spool;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentLogTest {
+
+	private static final int SEGMENT_SIZE = 64;
+
+	@Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = temporaryFolder.newFolder("spool");
+	}
+
+	@Test
+	public void recordsAreReadInTheOrderTheyWereAppended() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+		for (int i = 0; i < 10; i++) {
+			log.append(record(i), 0);
+		}
+		assertThat(log.size()).isEqualTo(10);
+
+		for (int i = 0; i < 10; i++) {
+			SegmentLog.Record record = log.peek(0);
+			assertThat(record.getPayload()).isEqualTo(record(i));
+			log.remove(record);
+		}
+		assertThat(log.peek(0)).isNull();
+		assertThat(log.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void peekDoesNotConsumeRecords() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+		log.append(record(1), 0);
+
+		assertThat(log.peek(0).getPayload()).isEqualTo(record(1));
+		assertThat(log.peek(0).getPayload()).isEqualTo(record(1));
+		assertThat(log.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void consumedSegmentsAreDeleted() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+		for (int i = 0; i < 10; i++) {
+			log.append(record(i), 0);
+		}
+		int segments = directory.listFiles().length;
+		assertThat(segments).isGreaterThan(1);
+
+		for (int i = 0; i < 9; i++) {
+			log.remove(log.peek(0));
+		}
+		assertThat(directory.listFiles()).hasSize(1);
+	}
+
+	@Test
+	public void oldestSegmentsAreDroppedWhenTheLogIsFull() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 2 * SEGMENT_SIZE, 1000);
+		for (int i = 0; i < 20; i++) {
+			log.append(record(i), 0);
+		}
+
+		assertThat(log.getSizeOnDisk()).isLessThanOrEqualTo(2 * SEGMENT_SIZE);
+		assertThat(log.getDroppedRecords()).isGreaterThan(0);
+		assertThat(log.size() + log.getDroppedRecords()).isEqualTo(20);
+		// what remains are the most recent records, still in order
+		byte[] last = null;
+		SegmentLog.Record record;
+		while ((record = log.peek(0)) != null) {
+			last = record.getPayload();
+			log.remove(record);
+		}
+		assertThat(last).isEqualTo(record(19));
+	}
+
+	@Test
+	public void removingARecordDroppedSincePeekKeepsTheOthers() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 2 * SEGMENT_SIZE, 1000);
+		log.append(record(0), 0);
+		SegmentLog.Record peeked = log.peek(0);
+		for (int i = 1; i < 20; i++) {
+			log.append(record(i), 0);
+		}
+		assertThat(log.getDroppedRecords()).isGreaterThan(0);
+		long pending = log.size();
+		SegmentLog.Record oldest = log.peek(0);
+
+		log.remove(peeked);
+
+		assertThat(log.size()).isEqualTo(pending);
+		assertThat(log.peek(0).getPayload()).isEqualTo(oldest.getPayload());
+	}
+
+	@Test
+	public void expiredRecordsAreSkipped() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+		log.append(record(1), 0);
+		log.append(record(2), 500);
+		log.append(record(3), 1000);
+
+		assertThat(log.peek(1600).getPayload()).isEqualTo(record(3));
+		assertThat(log.getDroppedRecords()).isEqualTo(2);
+		assertThat(log.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void recordsLargerThanASegmentAreKept() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+		byte[] large = new byte[3 * SEGMENT_SIZE];
+		large[42] = 42;
+		log.append(large, 0);
+
+		assertThat(log.peek(0).getPayload()).isEqualTo(large);
+	}
+
+	@Test
+	public void staleSegmentsAreDeletedWhenTheLogIsCreated() throws IOException {
+		new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000).append(record(1), 0);
+
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+
+		assertThat(directory.listFiles()).isEmpty();
+		assertThat(log.peek(0)).isNull();
+	}
+
+	@Test
+	public void closingTheLogDeletesItsSegments() throws IOException {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+		log.append(record(1), 0);
+
+		log.close();
+
+		assertThat(directory).doesNotExist();
+		assertThat(log.isEmpty()).isTrue();
+	}
+
+	private static byte[] record(int i) {
+		return ("record-" + i).getBytes(UTF_8);
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.spool;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.MetricPoint;
+import com.googlecode.jmxtrans.model.MetricPointWriter;
+import com.googlecode.jmxtrans.model.MetricPoints;
+import com.googlecode.jmxtrans.model.OutputWriter;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.Server;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+
+import static com.googlecode.jmxtrans.model.QueryFixtures.dummyQuery;
+import static com.googlecode.jmxtrans.model.ResultFixtures.booleanTrueResult;
+import static com.googlecode.jmxtrans.model.ResultFixtures.numericResult;
+import static com.googlecode.jmxtrans.model.ServerFixtures.createServerWithOneQuery;
+import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServer;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SpoolingOutputWriterTest {
+
+	@Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private OutputWriter target;
+	private SpoolingOutputWriter<OutputWriter> writer;
+	private Server server;
+	private Query query;
+
+	@Before
+	public void createWriter() throws IOException {
+		target = mock(OutputWriter.class);
+		writer = new SpoolingOutputWriter<>(target, new SegmentLog(temporaryFolder.newFolder(), 1024, 1024 * 1024, 60000));
+		server = dummyServer();
+		query = dummyQuery();
+	}
+
+	@Test
+	public void resultsAreWrittenDirectlyToAHealthyTarget() throws Exception {
+		ImmutableList<Result> results = ImmutableList.of(numericResult());
+
+		writer.doWrite(server, query, results);
+
+		verify(target).doWrite(server, query, results);
+		assertThat(writer.getSpooledBatches()).isZero();
+	}
+
+	@Test
+	public void failedResultsAreReplayedOnceTheTargetRecovers() throws Exception {
+		ImmutableList<Result> results = ImmutableList.of(numericResult(), booleanTrueResult(), numericResult(1.5d));
+		doThrow(new IOException()).when(target).doWrite(server, query, results);
+
+		writer.doWrite(server, query, results);
+		assertThat(writer.getSpooledBatches()).isEqualTo(1);
+
+		doNothing().when(target).doWrite(server, query, results);
+		assertThat(writer.replay(System.currentTimeMillis(), 10)).isEqualTo(1);
+
+		// values keep their types through the spool
+		verify(target, times(2)).doWrite(server, query, results);
+		assertThat(writer.getSpooledBatches()).isZero();
+	}
+
+	@Test
+	public void resultsAreSpooledWhileABacklogIsPending() throws Exception {
+		ImmutableList<Result> first = ImmutableList.of(numericResult(1));
+		ImmutableList<Result> second = ImmutableList.of(numericResult(2));
+		doThrow(new IOException()).when(target).doWrite(server, query, first);
+
+		writer.doWrite(server, query, first);
+		writer.doWrite(server, query, second);
+
+		verify(target, times(1)).doWrite(any(Server.class), any(Query.class), any(Iterable.class));
+		assertThat(writer.getSpooledBatches()).isEqualTo(2);
+
+		doNothing().when(target).doWrite(server, query, first);
+		writer.replay(System.currentTimeMillis(), 10);
+
+		// the failed attempt, then the replay
+		InOrder inOrder = inOrder(target);
+		inOrder.verify(target, times(2)).doWrite(server, query, first);
+		inOrder.verify(target).doWrite(server, query, second);
+	}
+
+	@Test
+	public void replayStopsAtTheFirstFailure() throws Exception {
+		doThrow(new IOException()).when(target).doWrite(any(Server.class), any(Query.class), any(Iterable.class));
+		writer.doWrite(server, query, ImmutableList.of(numericResult(1)));
+		writer.doWrite(server, query, ImmutableList.of(numericResult(2)));
+
+		assertThat(writer.replay(System.currentTimeMillis(), 10)).isZero();
+		assertThat(writer.getSpooledBatches()).isEqualTo(2);
+	}
+
+	@Test
+	public void replayIsLimitedToTheGivenNumberOfBatches() throws Exception {
+		doThrow(new IOException()).when(target).doWrite(any(Server.class), any(Query.class), any(Iterable.class));
+		for (int i = 0; i < 5; i++) {
+			writer.doWrite(server, query, ImmutableList.of(numericResult(i)));
+		}
+
+		doNothing().when(target).doWrite(any(Server.class), any(Query.class), any(Iterable.class));
+		assertThat(writer.replay(System.currentTimeMillis(), 2)).isEqualTo(2);
+		assertThat(writer.getSpooledBatches()).isEqualTo(3);
+	}
+
+	@Test
+	public void serversAreResolvedAgainAfterTheSpoolIsDrained() throws Exception {
+		Server other = createServerWithOneQuery("other.example.net", "1234", "myQuery:key=val");
+		ImmutableList<Result> results = ImmutableList.of(numericResult());
+		doThrow(new IOException()).when(target).doWrite(any(Server.class), any(Query.class), any(Iterable.class));
+		writer.doWrite(server, query, results);
+		doNothing().when(target).doWrite(any(Server.class), any(Query.class), any(Iterable.class));
+		writer.replay(System.currentTimeMillis(), 10);
+
+		doThrow(new IOException()).when(target).doWrite(other, query, results);
+		writer.doWrite(other, query, results);
+		doNothing().when(target).doWrite(other, query, results);
+		writer.replay(System.currentTimeMillis(), 10);
+
+		verify(target, times(2)).doWrite(server, query, results);
+		verify(target, times(2)).doWrite(other, query, results);
+	}
+
+	@Test
+	public void pointsAreForwardedToAPointWriter() throws Exception {
+		MetricPointWriter pointTarget = mock(MetricPointWriter.class);
+		SpoolingOutputWriter<MetricPointWriter> pointWriter =
+				new SpoolingOutputWriter<>(pointTarget, new SegmentLog(temporaryFolder.newFolder(), 1024, 1024 * 1024, 60000));
+		ImmutableList<MetricPoint> points = MetricPoints.fromResults(ImmutableList.of(numericResult()));
+
+		pointWriter.writePoints(server, query, points);
+
+		verify(pointTarget).writePoints(server, query, points);
+		assertThat(pointWriter.getSpooledBatches()).isZero();
+	}
+}
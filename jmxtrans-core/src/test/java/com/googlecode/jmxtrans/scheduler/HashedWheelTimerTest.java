@@ -0,0 +1,133 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.scheduler;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googlecode.jmxtrans.util.ManualClock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashedWheelTimerTest {
+
+	private ManualClock clock;
+	private HashedWheelTimer timer;
+	private CountingTask task;
+
+	@Before
+	public void createTimer() {
+		clock = new ManualClock(1000, MILLISECONDS);
+		timer = new HashedWheelTimer(clock, new ThreadFactoryBuilder().build(), 10, 8);
+		task = new CountingTask();
+	}
+
+	@Test
+	public void timeoutIsNotExpiredBeforeItsDeadline() {
+		timer.newTimeout(task, 1055);
+
+		advanceTo(1050);
+		assertThat(task.runs.get()).isEqualTo(0);
+
+		advanceTo(1060);
+		assertThat(task.runs.get()).isEqualTo(1);
+
+		advanceTo(2000);
+		assertThat(task.runs.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void timeoutsFurtherThanOneRotationWaitForTheirRound() {
+		// one rotation of the wheel is 8 * 10 ms
+		timer.newTimeout(task, 1000 + 3 * 80 + 5);
+
+		advanceTo(1000 + 3 * 80);
+		assertThat(task.runs.get()).isEqualTo(0);
+
+		advanceTo(1000 + 3 * 80 + 10);
+		assertThat(task.runs.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void timeoutInThePastExpiresOnNextTick() {
+		advanceTo(1500);
+		timer.newTimeout(task, 1200);
+
+		advanceTo(1510);
+		assertThat(task.runs.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void cancelledTimeoutIsNotExpired() {
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(task, 1020);
+		advanceTo(1010);
+		timeout.cancel();
+
+		advanceTo(1100);
+		assertThat(task.runs.get()).isEqualTo(0);
+	}
+
+	@Test
+	public void failingTaskDoesNotPreventOtherTimeoutsFromExpiring() {
+		timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException();
+			}
+		}, 1020);
+		timer.newTimeout(task, 1020);
+
+		advanceTo(1100);
+		assertThat(task.runs.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void stopIsImmediate() throws InterruptedException {
+		HashedWheelTimer realTimer = new HashedWheelTimer(clock, new ThreadFactoryBuilder().build(), 60000, 8);
+		realTimer.start();
+		assertThat(realTimer.isStarted()).isTrue();
+
+		long start = System.currentTimeMillis();
+		realTimer.stop();
+
+		assertThat(realTimer.isStarted()).isFalse();
+		assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+	}
+
+	private void advanceTo(long time) {
+		clock.setTime(time, MILLISECONDS);
+		timer.expireTimeouts(time);
+	}
+
+	private static final class CountingTask implements Runnable {
+		private final AtomicInteger runs = new AtomicInteger();
+
+		@Override
+		public void run() {
+			runs.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.scheduler;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googlecode.jmxtrans.exceptions.LifecycleException;
+import com.googlecode.jmxtrans.jmx.JmxUtils;
+import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.util.ManualClock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static com.googlecode.jmxtrans.model.ServerFixtures.createServerWithOneQuery;
+import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServer;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class WheelServerSchedulerTest {
+
+	private ManualClock clock;
+	private HashedWheelTimer timer;
+	private JmxUtils jmxUtils;
+	private WheelServerScheduler scheduler;
+	private Server server;
+
+	@Before
+	public void createScheduler() {
+		clock = new ManualClock(0, MILLISECONDS);
+		timer = new HashedWheelTimer(clock, new ThreadFactoryBuilder().build(), 10, 64);
+		jmxUtils = mock(JmxUtils.class);
+		scheduler = new WheelServerScheduler(timer, jmxUtils, clock);
+		server = dummyServer();
+	}
+
+	@Test
+	public void serverIsProcessedEveryPeriodStartingAtStartDate() throws Exception {
+		scheduler.schedule(server, new Date(500), 1);
+
+		advanceTo(490);
+		verify(jmxUtils, never()).processServer(server);
+
+		advanceTo(510);
+		verify(jmxUtils, times(1)).processServer(server);
+
+		advanceTo(1490);
+		verify(jmxUtils, times(1)).processServer(server);
+
+		advanceTo(1510);
+		verify(jmxUtils, times(2)).processServer(server);
+	}
+
+	@Test
+	public void periodDoesNotDriftWhenTicksAreLate() throws Exception {
+		scheduler.schedule(server, new Date(500), 1);
+
+		// every firing happens late, deadlines must stay aligned on the start date
+		advanceTo(590);
+		advanceTo(1590);
+		advanceTo(2590);
+		verify(jmxUtils, times(3)).processServer(server);
+
+		advanceTo(3490);
+		verify(jmxUtils, times(3)).processServer(server);
+	}
+
+	@Test
+	public void missedPeriodsAreSkipped() throws Exception {
+		scheduler.schedule(server, new Date(500), 1);
+		advanceTo(510);
+
+		clock.setTime(10510, MILLISECONDS);
+		advanceTo(10510);
+		verify(jmxUtils, times(2)).processServer(server);
+
+		advanceTo(11510);
+		verify(jmxUtils, times(3)).processServer(server);
+	}
+
+	@Test
+	public void failingJobIsRescheduled() throws Exception {
+		doThrow(new IllegalStateException()).when(jmxUtils).processServer(server);
+		scheduler.schedule(server, new Date(500), 1);
+
+		advanceTo(510);
+		advanceTo(1510);
+		verify(jmxUtils, times(2)).processServer(server);
+	}
+
+	@Test
+	public void unscheduledServersAreNotProcessed() throws Exception {
+		scheduler.schedule(server, new Date(500), 1);
+		advanceTo(510);
+
+		scheduler.unscheduleAll();
+
+		advanceTo(5000);
+		verify(jmxUtils, times(1)).processServer(server);
+	}
+
+	@Test
+	public void onlyUnscheduledServerIsNotProcessed() throws Exception {
+		Server other = createServerWithOneQuery("other.example.net", "1234", "myQuery:key=val");
+		scheduler.schedule(server, new Date(500), 1);
+		scheduler.schedule(other, new Date(500), 1);
+		advanceTo(510);
+
+		scheduler.unschedule(server);
+
+		advanceTo(1510);
+		verify(jmxUtils, times(1)).processServer(server);
+		verify(jmxUtils, times(2)).processServer(other);
+	}
+
+	@Test
+	public void reschedulingServerReplacesPreviousSchedule() throws Exception {
+		scheduler.schedule(server, new Date(500), 1);
+		scheduler.schedule(server, new Date(800), 1);
+
+		advanceTo(510);
+		verify(jmxUtils, never()).processServer(server);
+
+		advanceTo(810);
+		advanceTo(1810);
+		verify(jmxUtils, times(2)).processServer(server);
+	}
+
+	@Test(expected = LifecycleException.class)
+	public void runPeriodMustBePositive() throws LifecycleException {
+		scheduler.schedule(server, new Date(500), 0);
+	}
+
+	private void advanceTo(long time) {
+		clock.setTime(time, MILLISECONDS);
+		timer.expireTimeouts(time);
+	}
+}
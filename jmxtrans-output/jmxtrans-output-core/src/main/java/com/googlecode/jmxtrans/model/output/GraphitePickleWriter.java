@@ -0,0 +1,214 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.model.naming.KeyUtils;
+import com.googlecode.jmxtrans.model.output.support.WriterBasedOutputWriter;
+import com.googlecode.jmxtrans.util.OnlyOnceLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Sends results to Graphite with the pickle protocol: batches of
+ * <code>(path, (timestamp, value))</code> tuples, each prefixed by its length.
+ * <p/>
+ * Pickle is a binary format, while the pool hands out character writers. The
+ * frames are built as one char per byte, so the writer must be encoded in
+ * ISO-8859-1 to send them unchanged.
+ *
+ * @see <a href="http://graphite.readthedocs.io/en/latest/feeding-carbon.html#the-pickle-protocol">The pickle protocol</a>
+ */
+@ThreadSafe
+public class GraphitePickleWriter implements WriterBasedOutputWriter {
+	private static final Logger log = LoggerFactory.getLogger(GraphitePickleWriter.class);
+	private final OnlyOnceLogger onlyOnceLogger = new OnlyOnceLogger(log);
+
+	@Nonnull private final ImmutableList<String> typeNames;
+	@Nullable private final String rootPrefix;
+	/** Maximum number of points in a single pickle frame. */
+	private final int maxBatchSize;
+
+	public GraphitePickleWriter(@Nonnull ImmutableList<String> typeNames, @Nullable String rootPrefix, int maxBatchSize) {
+		checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+		this.typeNames = typeNames;
+		this.rootPrefix = rootPrefix;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public void write(
+			@Nonnull Writer writer,
+			@Nonnull Server server,
+			@Nonnull Query query,
+			@Nonnull Iterable<Result> results) throws IOException {
+
+		Frame frame = new Frame();
+		for (Result result : results) {
+			log.debug("Query result: {}", result);
+			long timestamp = SECONDS.convert(result.getEpoch(), MILLISECONDS);
+			for (Map.Entry<String, Object> values : result.getValues().entrySet()) {
+				Number value = toNumber(values.getValue());
+				if (value == null) {
+					onlyOnceLogger.infoOnce("Unable to submit non-numeric value to Graphite: [{}] from result [{}]", values.getValue(), result);
+					continue;
+				}
+				String path = KeyUtils.getKeyStringWithoutParentheses(server, query, result, values, typeNames, rootPrefix);
+				frame.add(path, timestamp, value);
+				if (frame.size() >= maxBatchSize) frame.writeTo(writer);
+			}
+		}
+		frame.writeTo(writer);
+		writer.flush();
+	}
+
+	@Nullable
+	private static Number toNumber(@Nullable Object value) {
+		if (value instanceof Number) return (Number) value;
+		if (!(value instanceof String)) return null;
+		String string = (String) value;
+		Long longValue = Longs.tryParse(string);
+		if (longValue != null) return longValue;
+		return Doubles.tryParse(string);
+	}
+
+	private static boolean isIntegral(@Nonnull Number value) {
+		return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+				|| value instanceof AtomicLong || value instanceof AtomicInteger;
+	}
+
+	/**
+	 * A list of points pickled with protocol 2, one char per byte.
+	 */
+	@NotThreadSafe
+	private static final class Frame {
+		private static final char PROTO = 0x80;
+		private static final char EMPTY_LIST = ']';
+		private static final char MARK = '(';
+		private static final char APPENDS = 'e';
+		private static final char STOP = '.';
+		private static final char BINUNICODE = 'X';
+		private static final char BININT = 'J';
+		private static final char LONG1 = 0x8a;
+		private static final char BINFLOAT = 'G';
+		private static final char TUPLE2 = 0x86;
+
+		private final StringBuilder pickle = new StringBuilder();
+		private int size = 0;
+
+		void add(@Nonnull String path, long timestamp, @Nonnull Number value) {
+			if (size == 0) {
+				pickle.append(PROTO).append((char) 2).append(EMPTY_LIST).append(MARK);
+			}
+			pickle.append(BINUNICODE);
+			byte[] bytes = path.getBytes(UTF_8);
+			appendInt(bytes.length);
+			for (byte b : bytes) {
+				pickle.append((char) (b & 0xff));
+			}
+			appendLong(timestamp);
+			if (isIntegral(value)) {
+				appendLong(value.longValue());
+			} else {
+				pickle.append(BINFLOAT);
+				long bits = Double.doubleToLongBits(value.doubleValue());
+				for (int shift = 56; shift >= 0; shift -= 8) {
+					pickle.append((char) ((bits >>> shift) & 0xff));
+				}
+			}
+			pickle.append(TUPLE2).append(TUPLE2);
+			size++;
+		}
+
+		int size() {
+			return size;
+		}
+
+		/** Writes the frame prefixed by its length, then empties it. */
+		void writeTo(@Nonnull Writer writer) throws IOException {
+			if (size == 0) return;
+			pickle.append(APPENDS).append(STOP);
+
+			int length = pickle.length();
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				writer.write((length >>> shift) & 0xff);
+			}
+			writer.append(pickle);
+
+			pickle.setLength(0);
+			size = 0;
+		}
+
+		private void appendLong(long value) {
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+				pickle.append(BININT);
+				appendInt((int) value);
+				return;
+			}
+			// little endian two's complement, on as few bytes as needed
+			pickle.append(LONG1);
+			int start = pickle.length();
+			pickle.append((char) 0);
+			int length = 0;
+			long remaining = value;
+			do {
+				pickle.append((char) (remaining & 0xff));
+				remaining >>= 8;
+				length++;
+			} while (remaining != 0 && remaining != -1);
+			char last = pickle.charAt(pickle.length() - 1);
+			// keep the sign bit of the last byte consistent with the sign of the value
+			if ((value < 0) != ((last & 0x80) != 0)) {
+				pickle.append((char) (value < 0 ? 0xff : 0));
+				length++;
+			}
+			pickle.setCharAt(start, (char) length);
+		}
+
+		private void appendInt(int value) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				pickle.append((char) ((value >>> shift) & 0xff));
+			}
+		}
+	}
+}
@@ -125,8 +125,8 @@ public class GraphiteWriter extends BaseOutputWriter {
 					Object value = values.getValue();
 					if (isNumeric(value)) {
 
-						String line = KeyUtils.getKeyString(server, query, result, values, typeNames, rootPrefix)
-								.replaceAll("[()]", "_") + " " + value.toString() + " "
+						String line = KeyUtils.getKeyStringWithoutParentheses(server, query, result, values, typeNames, rootPrefix)
+								+ " " + value.toString() + " "
 								+ result.getEpoch() / 1000 + "\n";
 						log.debug("Graphite Message: {}", line);
 						writer.write(line);
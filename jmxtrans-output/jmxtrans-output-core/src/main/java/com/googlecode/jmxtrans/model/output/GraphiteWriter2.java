@@ -70,8 +70,8 @@ public class GraphiteWriter2 implements WriterBasedOutputWriter {
 				Object value = values.getValue();
 				if (isNumeric(value)) {
 
-					String line = KeyUtils.getKeyString(server, query, result, values, typeNames, rootPrefix)
-							.replaceAll("[()]", "_") + " " + value.toString() + " "
+					String line = KeyUtils.getKeyStringWithoutParentheses(server, query, result, values, typeNames, rootPrefix)
+							+ " " + value.toString() + " "
 							+ SECONDS.convert(result.getEpoch(), MILLISECONDS) + "\n";
 					log.debug("Graphite Message: {}", line);
 					writer.write(line);
@@ -25,10 +25,12 @@ package com.googlecode.jmxtrans.model.output;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.OutputWriter;
 import com.googlecode.jmxtrans.model.OutputWriterFactory;
 import com.googlecode.jmxtrans.model.output.support.ResultTransformerOutputWriter;
 import com.googlecode.jmxtrans.model.output.support.TcpOutputWriterBuilder;
-import com.googlecode.jmxtrans.model.output.support.WriterPoolOutputWriter;
+import com.googlecode.jmxtrans.model.output.support.WriterBasedOutputWriter;
+import com.googlecode.jmxtrans.model.output.support.nio.OverflowPolicy;
 import com.googlecode.jmxtrans.model.output.support.pool.FlushStrategy;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -36,15 +38,27 @@ import lombok.ToString;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Locale;
 
+import static com.google.common.base.Charsets.ISO_8859_1;
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.googlecode.jmxtrans.model.output.support.pool.FlushStrategyUtils.createFlushStrategy;
 
 /**
  * This low latency and thread safe output writer sends data to a host/port combination
  * in the Graphite format.
+ * <p/>
+ * Points are sent as plaintext lines, unless the protocol is set to "pickle",
+ * in which case they are sent in batches of at most maxBatchSize points.
+ * <p/>
+ * With nonBlocking, points are sent by a single event loop instead of a pool
+ * of blocking sockets, at most maxQueuedBytes of them waiting to be sent. The
+ * overflowPolicy (DROP_OLDEST, DROP_NEWEST or BLOCK) decides what happens
+ * when Graphite does not keep up.
  *
  * @see <a href="http://graphite.wikidot.com/getting-your-data-into-graphite">Getting your data into Graphite</a>
  */
@@ -54,6 +68,9 @@ import static com.googlecode.jmxtrans.model.output.support.pool.FlushStrategyUti
 public class GraphiteWriterFactory implements OutputWriterFactory {
 
 	private static final String DEFAULT_ROOT_PREFIX = "servers";
+	private static final String PICKLE_PROTOCOL = "pickle";
+	private static final int DEFAULT_MAX_BATCH_SIZE = 500;
+	private static final int DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
 
 	@Nonnull private final String rootPrefix;
 	@Nonnull private final InetSocketAddress graphiteServer;
@@ -61,6 +78,11 @@ public class GraphiteWriterFactory implements OutputWriterFactory {
 	private final boolean booleanAsNumber;
 	@Nonnull private final FlushStrategy flushStrategy;
 	private final int poolSize;
+	private final boolean pickle;
+	private final int maxBatchSize;
+	private final boolean nonBlocking;
+	private final int maxQueuedBytes;
+	@Nonnull private final OverflowPolicy overflowPolicy;
 
 	@JsonCreator
 	public GraphiteWriterFactory(
@@ -71,7 +93,12 @@ public class GraphiteWriterFactory implements OutputWriterFactory {
 			@JsonProperty("port") Integer port,
 			@JsonProperty("flushStrategy") String flushStrategy,
 			@JsonProperty("flushDelayInSeconds") Integer flushDelayInSeconds,
-			@JsonProperty("poolSize") Integer poolSize) {
+			@JsonProperty("poolSize") Integer poolSize,
+			@JsonProperty("protocol") String protocol,
+			@JsonProperty("maxBatchSize") Integer maxBatchSize,
+			@JsonProperty("nonBlocking") boolean nonBlocking,
+			@JsonProperty("maxQueuedBytes") Integer maxQueuedBytes,
+			@JsonProperty("overflowPolicy") String overflowPolicy) {
 		this.typeNames = typeNames;
 		this.booleanAsNumber = booleanAsNumber;
 		this.rootPrefix = firstNonNull(rootPrefix, DEFAULT_ROOT_PREFIX);
@@ -81,18 +108,36 @@ public class GraphiteWriterFactory implements OutputWriterFactory {
 				checkNotNull(port, "Port cannot be null."));
 		this.flushStrategy = createFlushStrategy(flushStrategy, flushDelayInSeconds);
 		this.poolSize = firstNonNull(poolSize, 1);
+		this.pickle = PICKLE_PROTOCOL.equalsIgnoreCase(protocol);
+		checkArgument(protocol == null || pickle || "plaintext".equalsIgnoreCase(protocol),
+				"Protocol must be plaintext or pickle, not %s", protocol);
+		this.maxBatchSize = firstNonNull(maxBatchSize, DEFAULT_MAX_BATCH_SIZE);
+		this.nonBlocking = nonBlocking;
+		this.maxQueuedBytes = firstNonNull(maxQueuedBytes, DEFAULT_MAX_QUEUED_BYTES);
+		this.overflowPolicy = overflowPolicy == null
+				? OverflowPolicy.DROP_OLDEST
+				: OverflowPolicy.valueOf(overflowPolicy.toUpperCase(Locale.ENGLISH));
 	}
 
 	@Override
-	public ResultTransformerOutputWriter<WriterPoolOutputWriter<GraphiteWriter2>> create() {
-		return ResultTransformerOutputWriter.booleanToNumber(
-				booleanAsNumber,
-				TcpOutputWriterBuilder.builder(graphiteServer, new GraphiteWriter2(typeNames, rootPrefix))
-						.setCharset(UTF_8)
-						.setFlushStrategy(flushStrategy)
-						.setPoolSize(poolSize)
-						.build()
-		);
+	public ResultTransformerOutputWriter<? extends OutputWriter> create() {
+		if (pickle) {
+			// pickle frames are binary, written one char per byte
+			return create(new GraphitePickleWriter(typeNames, rootPrefix, maxBatchSize), ISO_8859_1);
+		}
+		return create(new GraphiteWriter2(typeNames, rootPrefix), UTF_8);
+	}
+
+	private <T extends WriterBasedOutputWriter> ResultTransformerOutputWriter<? extends OutputWriter> create(
+			@Nonnull T target, @Nonnull Charset charset) {
+		TcpOutputWriterBuilder<T> builder = TcpOutputWriterBuilder.builder(graphiteServer, target)
+				.setCharset(charset)
+				.setFlushStrategy(flushStrategy)
+				.setPoolSize(poolSize)
+				.setMaxQueuedBytes(maxQueuedBytes)
+				.setOverflowPolicy(overflowPolicy);
+		if (nonBlocking) return ResultTransformerOutputWriter.booleanToNumber(booleanAsNumber, builder.buildNonBlocking());
+		return ResultTransformerOutputWriter.booleanToNumber(booleanAsNumber, builder.build());
 	}
 
 }
@@ -0,0 +1,67 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support;
+
+import com.googlecode.jmxtrans.exceptions.LifecycleException;
+import com.googlecode.jmxtrans.model.OutputWriterAdapter;
+import com.googlecode.jmxtrans.model.Query;
+import com.googlecode.jmxtrans.model.Result;
+import com.googlecode.jmxtrans.model.Server;
+import com.googlecode.jmxtrans.model.output.support.nio.NioDestination;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Formats results in the calling thread and hands the encoded bytes over to
+ * a {@link NioDestination}, which sends them from its event loop.
+ */
+@ThreadSafe
+public class NioOutputWriter<T extends WriterBasedOutputWriter> extends OutputWriterAdapter {
+
+	@Nonnull private final T target;
+	@Nonnull private final NioDestination destination;
+	@Nonnull private final Charset charset;
+
+	public NioOutputWriter(@Nonnull T target, @Nonnull NioDestination destination, @Nonnull Charset charset) {
+		this.target = target;
+		this.destination = destination;
+		this.charset = charset;
+	}
+
+	@Override
+	public void doWrite(Server server, Query query, Iterable<Result> results) throws Exception {
+		StringWriter writer = new StringWriter();
+		target.write(writer, server, query, results);
+		if (writer.getBuffer().length() == 0) return;
+		destination.enqueue(charset.encode(CharBuffer.wrap(writer.getBuffer())));
+	}
+
+	@Override
+	public void stop() throws LifecycleException {
+		destination.close();
+	}
+}
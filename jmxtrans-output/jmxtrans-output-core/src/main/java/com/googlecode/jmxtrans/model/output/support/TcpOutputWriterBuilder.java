@@ -23,6 +23,9 @@
 package com.googlecode.jmxtrans.model.output.support;
 
 import com.google.common.base.Charsets;
+import com.googlecode.jmxtrans.model.output.support.nio.NioDestination;
+import com.googlecode.jmxtrans.model.output.support.nio.NioEventLoop;
+import com.googlecode.jmxtrans.model.output.support.nio.OverflowPolicy;
 import com.googlecode.jmxtrans.model.output.support.pool.FlushStrategy;
 import com.googlecode.jmxtrans.model.output.support.pool.NeverFlush;
 import com.googlecode.jmxtrans.model.output.support.pool.RetryingAllocator;
@@ -50,6 +53,9 @@ public class TcpOutputWriterBuilder<T extends WriterBasedOutputWriter> {
 	@Setter private int socketTimeoutMillis = 200;
 	@Setter private int poolSize = 1;
 	@Nonnull @Setter private FlushStrategy flushStrategy = new NeverFlush();
+	/** Used by the non blocking transport only. */
+	@Setter private int maxQueuedBytes = 1024 * 1024;
+	@Nonnull @Setter private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
 
 	private TcpOutputWriterBuilder(@Nonnull InetSocketAddress server, @Nonnull T target) {
 		this.server = server;
@@ -78,4 +84,14 @@ public class TcpOutputWriterBuilder<T extends WriterBasedOutputWriter> {
 		LifecycledPool<SocketPoolable> pool = createPool();
 		return new WriterPoolOutputWriter<>(target, pool, new Timeout(1, SECONDS));
 	}
+
+	/**
+	 * Builds an output writer which never waits on the network: messages are
+	 * sent by the shared {@link NioEventLoop}, at most maxQueuedBytes of them
+	 * waiting to be sent.
+	 */
+	public NioOutputWriter<T> buildNonBlocking() {
+		NioDestination destination = new NioDestination(server, NioEventLoop.shared(), maxQueuedBytes, overflowPolicy);
+		return new NioOutputWriter<>(target, destination, charset);
+	}
 }
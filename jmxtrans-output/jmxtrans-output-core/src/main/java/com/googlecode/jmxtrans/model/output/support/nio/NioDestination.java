@@ -0,0 +1,256 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.channels.SelectionKey.OP_CONNECT;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+
+/**
+ * A TCP server messages are sent to by an {@link NioEventLoop}.
+ * <p/>
+ * Messages are queued in a buffer bounded to maxQueuedBytes, and sent by the
+ * loop whenever the socket accepts more data. When the buffer is full, the
+ * {@link OverflowPolicy} decides which messages are lost. While the server is
+ * unreachable, messages are kept in the buffer and the loop tries to
+ * reconnect every second.
+ */
+@ThreadSafe
+public class NioDestination implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(NioDestination.class);
+
+	private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+	@Nonnull private final InetSocketAddress server;
+	@Nonnull private final NioEventLoop loop;
+	private final int maxQueuedBytes;
+	@Nonnull private final OverflowPolicy overflowPolicy;
+
+	@GuardedBy("this") private final Deque<ByteBuffer> queue = new ArrayDeque<>();
+	@GuardedBy("this") private int queuedBytes = 0;
+	@GuardedBy("this") private boolean closed = false;
+	@Nonnull private final AtomicLong droppedMessages = new AtomicLong();
+	/** Whether a task is already waiting for the loop to start sending. */
+	@Nonnull private final AtomicBoolean sendRequested = new AtomicBoolean();
+	@Nonnull private final Runnable sendTask = new Runnable() {
+		@Override
+		public void run() {
+			sendRequested.set(false);
+			send();
+		}
+	};
+
+	// owned by the loop thread
+	@Nullable private SocketChannel channel;
+	@Nullable private SelectionKey key;
+	/** The message being written, already removed from the queue. */
+	@Nullable private ByteBuffer current;
+	private long nextConnectMillis = 0;
+
+	public NioDestination(
+			@Nonnull InetSocketAddress server,
+			@Nonnull NioEventLoop loop,
+			int maxQueuedBytes,
+			@Nonnull OverflowPolicy overflowPolicy) {
+		checkArgument(maxQueuedBytes > 0, "maxQueuedBytes must be positive");
+		this.server = server;
+		this.loop = loop;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.overflowPolicy = overflowPolicy;
+		loop.register(this);
+	}
+
+	/**
+	 * Queues the message to be sent by the event loop. Only blocks with the
+	 * {@link OverflowPolicy#BLOCK} policy, while the buffer is full.
+	 *
+	 * @return false if the message was dropped.
+	 */
+	public boolean enqueue(@Nonnull ByteBuffer message) throws InterruptedException {
+		int size = message.remaining();
+		synchronized (this) {
+			if (closed) return false;
+			if (size > maxQueuedBytes) return drop("message of " + size + " bytes is larger than the buffer");
+			while (queuedBytes + size > maxQueuedBytes) {
+				switch (overflowPolicy) {
+					case DROP_NEWEST:
+						return drop("buffer is full");
+					case DROP_OLDEST:
+						queuedBytes -= queue.removeFirst().remaining();
+						drop("buffer is full");
+						break;
+					case BLOCK:
+						wait();
+						if (closed) return false;
+						break;
+					default:
+						throw new IllegalStateException("Unknown overflow policy " + overflowPolicy);
+				}
+			}
+			queue.addLast(message);
+			queuedBytes += size;
+		}
+		if (sendRequested.compareAndSet(false, true)) loop.execute(sendTask);
+		return true;
+	}
+
+	public long getDroppedMessages() {
+		return droppedMessages.get();
+	}
+
+	public synchronized int getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	private boolean drop(String reason) {
+		if (droppedMessages.getAndIncrement() == 0) {
+			log.warn("Dropping messages to {}: {}", server, reason);
+		} else {
+			log.debug("Dropping message to {}: {}", server, reason);
+		}
+		return false;
+	}
+
+	@Nullable
+	private synchronized ByteBuffer poll() {
+		ByteBuffer message = queue.pollFirst();
+		if (message != null) {
+			queuedBytes -= message.remaining();
+			notifyAll();
+		}
+		return message;
+	}
+
+	private synchronized boolean hasQueuedMessages() {
+		return !queue.isEmpty();
+	}
+
+	private synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/** Starts sending queued messages, connecting first if needed. Run by the loop. */
+	void send() {
+		if (channel == null) {
+			reconnectIfNeeded();
+		} else if (key != null && key.isValid() && channel.isConnected()) {
+			key.interestOps(OP_WRITE);
+		}
+	}
+
+	/** Run by the loop. */
+	void reconnectIfNeeded() {
+		if (channel != null || isClosed() || (current == null && !hasQueuedMessages())) return;
+		if (System.currentTimeMillis() < nextConnectMillis) return;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			// create new InetSocketAddress to ensure name resolution is done again
+			boolean connected = channel.connect(new InetSocketAddress(server.getHostName(), server.getPort()));
+			key = channel.register(loop.getSelector(), connected ? OP_WRITE : OP_CONNECT, this);
+		} catch (IOException | RuntimeException e) {
+			log.info("Could not connect to {}: {}", server, e.toString());
+			disconnect();
+		}
+	}
+
+	/** Run by the loop when the channel is ready. */
+	void handle(@Nonnull SelectionKey selected) {
+		try {
+			if (selected.isConnectable() && channel.finishConnect()) {
+				log.debug("Connected to {}", server);
+				selected.interestOps(OP_WRITE);
+			}
+			if (selected.isValid() && selected.isWritable()) write(selected);
+		} catch (IOException | RuntimeException e) {
+			log.info("Lost connection to {}: {}", server, e.toString());
+			disconnect();
+		}
+	}
+
+	private void write(@Nonnull SelectionKey selected) throws IOException {
+		while (true) {
+			if (current == null) {
+				current = poll();
+				if (current == null) {
+					selected.interestOps(0);
+					return;
+				}
+			}
+			channel.write(current);
+			// the socket buffer is full, wait for the next OP_WRITE
+			if (current.hasRemaining()) return;
+			current = null;
+		}
+	}
+
+	/** Closes the channel, the loop reconnecting later if messages are queued. Run by the loop. */
+	void disconnect() {
+		if (key != null) key.cancel();
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.debug("Could not close channel to {}", server, e);
+			}
+		}
+		// the rest of a partially sent message would be garbage on a new connection
+		if (current != null && current.position() > 0) current = null;
+		channel = null;
+		key = null;
+		nextConnectMillis = System.currentTimeMillis() + RECONNECT_DELAY_MILLIS;
+	}
+
+	/**
+	 * Stops sending messages, discarding those not sent yet.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			queue.clear();
+			queuedBytes = 0;
+			notifyAll();
+		}
+		loop.unregister(this);
+	}
+}
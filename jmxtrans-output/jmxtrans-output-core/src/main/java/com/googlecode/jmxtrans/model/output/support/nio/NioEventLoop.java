@@ -0,0 +1,142 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.nio;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread owning the non blocking channels of all the
+ * {@link NioDestination}s, so that no other thread ever waits on the network.
+ * <p/>
+ * Other threads only hand over tasks, which are run by the loop between two
+ * selections.
+ */
+@ThreadSafe
+public class NioEventLoop implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(NioEventLoop.class);
+
+	/** How often disconnected destinations are given a chance to reconnect. */
+	private static final long SELECT_TIMEOUT_MILLIS = 500;
+
+	@GuardedBy("NioEventLoop.class") private static NioEventLoop shared;
+
+	@Nonnull private final Selector selector;
+	@Nonnull private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	/** Only accessed by the loop thread. */
+	@Nonnull private final Set<NioDestination> destinations = new HashSet<>();
+
+	public NioEventLoop() throws IOException {
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * @return the event loop shared by all the output writers, started on first use.
+	 */
+	@Nonnull
+	public static synchronized NioEventLoop shared() {
+		if (shared == null) {
+			try {
+				shared = new NioEventLoop();
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not open a selector", e);
+			}
+			new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("jmxtrans-nio-%d")
+					.build()
+					.newThread(shared)
+					.start();
+		}
+		return shared;
+	}
+
+	/** Runs the task on the loop thread. */
+	void execute(@Nonnull Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	@Nonnull
+	Selector getSelector() {
+		return selector;
+	}
+
+	void register(@Nonnull final NioDestination destination) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				destinations.add(destination);
+			}
+		});
+	}
+
+	void unregister(@Nonnull final NioDestination destination) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				destinations.remove(destination);
+				destination.disconnect();
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				selector.select(SELECT_TIMEOUT_MILLIS);
+				runTasks();
+				for (SelectionKey key : selector.selectedKeys()) {
+					((NioDestination) key.attachment()).handle(key);
+				}
+				selector.selectedKeys().clear();
+				for (NioDestination destination : destinations) {
+					destination.reconnectIfNeeded();
+				}
+			} catch (IOException | RuntimeException e) {
+				log.warn("Unexpected error in NIO event loop", e);
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+}
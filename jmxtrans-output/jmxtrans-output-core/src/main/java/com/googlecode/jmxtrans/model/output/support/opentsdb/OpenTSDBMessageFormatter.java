@@ -30,6 +30,7 @@ import com.googlecode.jmxtrans.model.NamingStrategy;
 import com.googlecode.jmxtrans.model.Result;
 import com.googlecode.jmxtrans.model.naming.ClassAttributeNamingStrategy;
 import com.googlecode.jmxtrans.model.naming.JexlNamingStrategy;
+import com.googlecode.jmxtrans.model.naming.MetricNameCache;
 import com.googlecode.jmxtrans.model.naming.typename.TypeNameValue;
 import com.googlecode.jmxtrans.model.naming.typename.TypeNameValuesStringBuilder;
 import lombok.EqualsAndHashCode;
@@ -118,9 +119,9 @@ public class OpenTSDBMessageFormatter {
 	 */
 	void addTag(StringBuilder resultString, String tagName, String tagValue) {
 		resultString.append(" ");
-		resultString.append(sanitizeString(tagName));
+		resultString.append(sanitizeName(tagName));
 		resultString.append("=");
-		resultString.append(sanitizeString(tagValue));
+		resultString.append(sanitizeName(tagValue));
 	}
 
 	/**
@@ -132,7 +133,7 @@ public class OpenTSDBMessageFormatter {
 	 * @return String - the formatted result string.
 	 */
 	private void formatResultString(StringBuilder resultString, String metricName, long epoch, Object value) {
-		resultString.append(sanitizeString(metricName));
+		resultString.append(sanitizeName(metricName));
 		resultString.append(" ");
 		resultString.append(Long.toString(epoch));
 		resultString.append(" ");
@@ -243,4 +244,31 @@ public class OpenTSDBMessageFormatter {
 				replaceAll("[^-_./a-zA-Z0-9]", "_");
 	}
 
+	/**
+	 * Sanitizes metric and tag names, which are the same from one run to the
+	 * next, through the shared metric name cache.
+	 */
+	private String sanitizeName(String name) {
+		SanitizedName key = new SanitizedName(getClass(), name);
+		MetricNameCache cache = MetricNameCache.shared();
+		String sanitized = cache.getIfPresent(key);
+		if (sanitized == null) {
+			sanitized = sanitizeString(name);
+			cache.put(key, sanitized);
+		}
+		return sanitized;
+	}
+
+	@EqualsAndHashCode
+	private static final class SanitizedName {
+		/** Subclasses may sanitize differently. */
+		private final Class<?> formatter;
+		private final String name;
+
+		private SanitizedName(Class<?> formatter, String name) {
+			this.formatter = formatter;
+			this.name = name;
+		}
+	}
+
 }
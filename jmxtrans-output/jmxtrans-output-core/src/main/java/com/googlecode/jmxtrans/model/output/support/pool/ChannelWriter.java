@@ -25,52 +25,104 @@ package com.googlecode.jmxtrans.model.output.support.pool;
 import com.google.common.io.Closer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 
+import static java.nio.charset.CodingErrorAction.REPLACE;
+
+/**
+ * Encodes characters straight into a reusable buffer, sent to the channel
+ * as a single write when full. Each write to a datagram channel is a packet,
+ * so the buffer is only sent up to the end of the last complete line: lines
+ * are never split across packets, unless a single one does not fit.
+ */
 @ThreadSafe
 public class ChannelWriter extends Writer {
-	@Nonnull private final Charset charset;
-	@Nonnull private final ByteBuffer buffer;
+	@GuardedBy("lock") @Nonnull private final CharsetEncoder encoder;
+	@GuardedBy("lock") @Nonnull private final ByteBuffer buffer;
 	@Nonnull private final WritableByteChannel channel;
+	/** End of the last complete line in the buffer, 0 if there is none. */
+	@GuardedBy("lock") private int lineEnd = 0;
 
 	public ChannelWriter(
 			int bufferSize,
 			@Nonnull Charset charset,
 			@Nonnull WritableByteChannel channel) {
-		this.charset = charset;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(REPLACE)
+				.onUnmappableCharacter(REPLACE);
 		this.channel = channel;
-		buffer = ByteBuffer.allocate(bufferSize);
+		buffer = ByteBuffer.allocateDirect(bufferSize);
 	}
 
 	@Override
 	public void write(char[] cbuf, int off, int len) throws IOException {
 		synchronized (lock) {
-			byte[] bytes = new String(cbuf, off, len).getBytes(charset);
+			// without a complete line, a packet at least ends where a write starts
+			int writeStart = buffer.position();
+			int end = off + len;
+			int segmentStart = off;
+			for (int i = off; i < end; i++) {
+				if (cbuf[i] != '\n') continue;
+				writeStart = encode(CharBuffer.wrap(cbuf, segmentStart, i + 1 - segmentStart), writeStart);
+				lineEnd = buffer.position();
+				segmentStart = i + 1;
+			}
+			if (segmentStart < end) encode(CharBuffer.wrap(cbuf, segmentStart, end - segmentStart), writeStart);
+		}
+	}
 
-			if (buffer.remaining() < (bytes.length + 1)) flush();
+	/**
+	 * Encodes the characters, sending the beginning of the buffer each time it
+	 * is full.
+	 *
+	 * @return the position in the buffer of the start of the current write.
+	 */
+	@GuardedBy("lock")
+	private int encode(@Nonnull CharBuffer chars, int writeStart) throws IOException {
+		encoder.reset();
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, true);
+			if (result.isUnderflow()) return writeStart;
+			if (!result.isOverflow()) result.throwException();
 
-			buffer.put(bytes, off, len);
+			int packetEnd = lineEnd > 0 ? lineEnd : writeStart;
+			// a single write which does not fit in the buffer has to be split
+			if (packetEnd == 0) packetEnd = buffer.position();
+			if (packetEnd == 0) throw new IOException("A buffer of " + buffer.capacity() + " bytes cannot hold a single character");
+			send(packetEnd);
+			writeStart = Math.max(0, writeStart - packetEnd);
 		}
 	}
 
+	/** Sends the beginning of the buffer, keeping what follows for the next packet. */
+	@GuardedBy("lock")
+	private void send(int packetEnd) throws IOException {
+		int position = buffer.position();
+		buffer.position(0);
+		buffer.limit(packetEnd);
+		channel.write(buffer);
+		buffer.limit(position);
+		buffer.position(packetEnd);
+		buffer.compact();
+		lineEnd = Math.max(0, lineEnd - packetEnd);
+	}
+
 	@Override
 	public void flush() throws IOException {
 		synchronized (lock) {
-			final int sizeOfBuffer = buffer.position();
-
 			// empty buffer
-			if (sizeOfBuffer <= 0) return;
+			if (buffer.position() <= 0) return;
 
-			// send and reset the buffer
-			buffer.flip();
-			channel.write(buffer);
-			buffer.limit(buffer.capacity());
-			buffer.rewind();
+			send(buffer.position());
 		}
 	}
 
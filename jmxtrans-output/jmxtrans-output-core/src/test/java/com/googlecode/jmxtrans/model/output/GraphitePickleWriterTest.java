@@ -0,0 +1,112 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.jmxtrans.model.output.support.WriterBasedOutputWriter;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.googlecode.jmxtrans.model.QueryFixtures.dummyQuery;
+import static com.googlecode.jmxtrans.model.ResultFixtures.dummyResults;
+import static com.googlecode.jmxtrans.model.ResultFixtures.numericResult;
+import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServer;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GraphitePickleWriterTest {
+
+	@Test
+	public void resultsAreSentInASinglePickleFrame() throws IOException {
+		WriterBasedOutputWriter outputWriter = new GraphitePickleWriter(ImmutableList.<String>of(), "servers", 500);
+		StringWriter writer = new StringWriter();
+
+		outputWriter.write(writer, dummyServer(), dummyQuery(), dummyResults());
+
+		List<String> frames = frames(writer.toString());
+		assertThat(frames).hasSize(1);
+		assertThat(frames.get(0))
+				.startsWith("\u0080\u0002](X")
+				.contains("example_net_4321")
+				// timestamp and value as 4 bytes little endian ints, in nested tuples
+				.endsWith("J\u0000\u0000\u0000\u0000J\n\u0000\u0000\u0000\u0086\u0086e.");
+	}
+
+	@Test
+	public void largeResultSetsAreSplitInBatches() throws IOException {
+		WriterBasedOutputWriter outputWriter = new GraphitePickleWriter(ImmutableList.<String>of(), "servers", 2);
+		StringWriter writer = new StringWriter();
+
+		outputWriter.write(writer, dummyServer(), dummyQuery(),
+				ImmutableList.of(numericResult(1), numericResult(2), numericResult(3)));
+
+		List<String> frames = frames(writer.toString());
+		assertThat(frames).hasSize(2);
+		assertThat(frames.get(0)).endsWith("J\u0002\u0000\u0000\u0000\u0086\u0086e.");
+		assertThat(frames.get(1)).endsWith("J\u0003\u0000\u0000\u0000\u0086\u0086e.");
+	}
+
+	@Test
+	public void largeLongsAndDoublesArePickled() throws IOException {
+		WriterBasedOutputWriter outputWriter = new GraphitePickleWriter(ImmutableList.<String>of(), "servers", 500);
+		StringWriter writer = new StringWriter();
+
+		outputWriter.write(writer, dummyServer(), dummyQuery(),
+				ImmutableList.of(numericResult(1L << 40), numericResult(-(1L << 40)), numericResult(1.5)));
+
+		String frame = frames(writer.toString()).get(0);
+		assertThat(frame)
+				.contains("\u008a\u0006\u0000\u0000\u0000\u0000\u0000\u0001\u0086")
+				.contains("\u008a\u0006\u0000\u0000\u0000\u0000\u0000\u00ff\u0086")
+				.contains("G?\u00f8\u0000\u0000\u0000\u0000\u0000\u0000\u0086");
+	}
+
+	@Test
+	public void nonNumericValuesAreSkipped() throws IOException {
+		WriterBasedOutputWriter outputWriter = new GraphitePickleWriter(ImmutableList.<String>of(), "servers", 500);
+		StringWriter writer = new StringWriter();
+
+		outputWriter.write(writer, dummyServer(), dummyQuery(), ImmutableList.of(numericResult("abc")));
+
+		assertThat(writer.toString()).isEmpty();
+	}
+
+	/** Splits the output in frames, checking their length headers. */
+	private static List<String> frames(String output) {
+		List<String> frames = new ArrayList<>();
+		int position = 0;
+		while (position < output.length()) {
+			int length = 0;
+			for (int i = 0; i < 4; i++) {
+				length = (length << 8) | output.charAt(position + i);
+			}
+			position += 4;
+			frames.add(output.substring(position, position + length));
+			position += length;
+		}
+		return frames;
+	}
+}
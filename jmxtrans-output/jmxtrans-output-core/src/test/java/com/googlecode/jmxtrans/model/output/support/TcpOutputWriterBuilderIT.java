@@ -59,6 +59,19 @@ public class TcpOutputWriterBuilderIT {
 		await().atMost(200, MILLISECONDS).until(messageReceived("message"));
 	}
 
+	@Test
+	public void messageIsSentByTheEventLoop() throws Exception {
+		NioOutputWriter<DummyWriterBasedOutputWriter> outputWriter = TcpOutputWriterBuilder.builder(
+				tcpEchoServer.getLocalSocketAddress(),
+				new DummyWriterBasedOutputWriter("message\n"))
+				.buildNonBlocking();
+
+		outputWriter.doWrite(dummyServer(), dummyQuery(), dummyResults());
+
+		await().atMost(1000, MILLISECONDS).until(messageReceived("message"));
+		outputWriter.stop();
+	}
+
 	private Callable<Boolean> messageReceived(final String message) {
 		return new Callable<Boolean>() {
 			@Override
@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.model.output.support.nio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.googlecode.jmxtrans.model.output.support.nio.OverflowPolicy.BLOCK;
+import static com.googlecode.jmxtrans.model.output.support.nio.OverflowPolicy.DROP_NEWEST;
+import static com.googlecode.jmxtrans.model.output.support.nio.OverflowPolicy.DROP_OLDEST;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The event loop is never started, so that messages stay in the buffer.
+ */
+public class NioDestinationTest {
+
+	private NioEventLoop loop;
+	private final InetSocketAddress server = InetSocketAddress.createUnresolved("graphite.example.net", 2003);
+
+	@Before
+	public void createLoop() throws Exception {
+		loop = new NioEventLoop();
+	}
+
+	@Test
+	public void messagesAreQueuedUpToTheLimit() throws Exception {
+		NioDestination destination = new NioDestination(server, loop, 10, DROP_NEWEST);
+
+		assertThat(destination.enqueue(message("12345"))).isTrue();
+		assertThat(destination.enqueue(message("12345"))).isTrue();
+
+		assertThat(destination.getQueuedBytes()).isEqualTo(10);
+		assertThat(destination.getDroppedMessages()).isZero();
+	}
+
+	@Test
+	public void dropNewestRejectsTheNewMessage() throws Exception {
+		NioDestination destination = new NioDestination(server, loop, 10, DROP_NEWEST);
+		destination.enqueue(message("12345"));
+		destination.enqueue(message("12345"));
+
+		assertThat(destination.enqueue(message("1"))).isFalse();
+
+		assertThat(destination.getQueuedBytes()).isEqualTo(10);
+		assertThat(destination.getDroppedMessages()).isEqualTo(1);
+	}
+
+	@Test
+	public void dropOldestMakesRoomForTheNewMessage() throws Exception {
+		NioDestination destination = new NioDestination(server, loop, 10, DROP_OLDEST);
+		destination.enqueue(message("12345"));
+		destination.enqueue(message("12345"));
+
+		assertThat(destination.enqueue(message("123456"))).isTrue();
+
+		assertThat(destination.getQueuedBytes()).isEqualTo(6);
+		assertThat(destination.getDroppedMessages()).isEqualTo(2);
+	}
+
+	@Test
+	public void messagesLargerThanTheBufferAreDropped() throws Exception {
+		NioDestination destination = new NioDestination(server, loop, 10, DROP_OLDEST);
+		destination.enqueue(message("12345"));
+
+		assertThat(destination.enqueue(message("12345678901"))).isFalse();
+
+		assertThat(destination.getQueuedBytes()).isEqualTo(5);
+	}
+
+	@Test
+	public void blockWaitsUntilTheDestinationIsClosed() throws Exception {
+		final NioDestination destination = new NioDestination(server, loop, 10, BLOCK);
+		destination.enqueue(message("1234567890"));
+
+		final AtomicBoolean enqueued = new AtomicBoolean(true);
+		Thread blocked = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					enqueued.set(destination.enqueue(message("1")));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		blocked.start();
+		blocked.join(100);
+		assertThat(blocked.isAlive()).isTrue();
+
+		destination.close();
+		blocked.join(1000);
+
+		assertThat(blocked.isAlive()).isFalse();
+		assertThat(enqueued.get()).isFalse();
+	}
+
+	@Test
+	public void closedDestinationsRejectMessages() throws Exception {
+		NioDestination destination = new NioDestination(server, loop, 10, BLOCK);
+		destination.close();
+
+		assertThat(destination.enqueue(message("1"))).isFalse();
+	}
+
+	private static ByteBuffer message(String message) {
+		return ByteBuffer.wrap(message.getBytes(UTF_8));
+	}
+}
@@ -29,6 +29,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -81,9 +83,46 @@ public class ChannelWriterTest {
 		assertThat(channel.toString()).isEqualTo("hello world 1" + "hello world 2");
 	}
 
+	@Test
+	public void multiByteCharactersAreEncoded() throws IOException {
+		MyByteChannel channel = new MyByteChannel(UTF_8);
+		ChannelWriter writer = new ChannelWriter(20, UTF_8, channel);
+
+		writer.write("h\u00e9llo w\u00f6rld", 2, 9);
+		writer.flush();
+
+		assertThat(channel.toString()).isEqualTo("llo w\u00f6rld");
+	}
+
+	@Test
+	public void linesAreNotSplitAcrossPackets() throws IOException {
+		MyByteChannel channel = new MyByteChannel(UTF_8);
+		ChannelWriter writer = new ChannelWriter(24, UTF_8, channel);
+
+		writer.write("metric.a");
+		writer.write(" 1\n");
+		writer.write("metric.b 2\nmetric.c");
+		writer.write(" 3\n");
+		writer.flush();
+
+		assertThat(channel.getPackets()).containsExactly("metric.a 1\nmetric.b 2\n", "metric.c 3\n");
+	}
+
+	@Test
+	public void linesLargerThanBufferAreSplit() throws IOException {
+		MyByteChannel channel = new MyByteChannel(UTF_8);
+		ChannelWriter writer = new ChannelWriter(10, UTF_8, channel);
+
+		writer.write("metric.long 1\n");
+		writer.flush();
+
+		assertThat(channel.getPackets()).containsExactly("metric.lon", "g 1\n");
+	}
+
 	private static class MyByteChannel implements WritableByteChannel {
 
 		@Nonnull private final StringBuffer buffer = new StringBuffer();
+		@Nonnull private final List<String> packets = new ArrayList<>();
 		@Nonnull private final Charset charset;
 
 		public MyByteChannel(Charset charset) {
@@ -95,6 +134,7 @@ public class ChannelWriterTest {
 			byte[] bytes = new byte[src.remaining()];
 			src.get(bytes);
 			buffer.append(new String(bytes, charset));
+			packets.add(new String(bytes, charset));
 			return 0;
 		}
 
@@ -107,6 +147,10 @@ public class ChannelWriterTest {
 		public void close() throws IOException {
 		}
 
+		public List<String> getPackets() {
+			return packets;
+		}
+
 		@Override
 		public String toString() {
 			return buffer.toString();
@@ -24,9 +24,14 @@ package com.googlecode.jmxtrans.model.output.elastic;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Utf8;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.googlecode.jmxtrans.exceptions.LifecycleException;
 import com.googlecode.jmxtrans.model.Query;
 import com.googlecode.jmxtrans.model.Result;
@@ -37,6 +42,8 @@ import io.searchbox.client.JestClient;
 import io.searchbox.client.JestClientFactory;
 import io.searchbox.client.JestResult;
 import io.searchbox.client.config.HttpClientConfig;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
 import io.searchbox.core.Index;
 import io.searchbox.indices.CreateIndex;
 import io.searchbox.indices.IndicesExists;
@@ -44,28 +51,53 @@ import io.searchbox.indices.mapping.PutMapping;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.googlecode.jmxtrans.util.NumberUtils.isNumeric;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * Feed data directly into elastic.
+ * <p/>
+ * In bulk mode, entries are buffered and sent with a single bulk request
+ * once bulkMaxActions entries or bulkMaxBytes bytes of documents are
+ * pending, and at least every bulkFlushIntervalMillis. Entries rejected
+ * individually by elastic are logged, the rest of the bulk is kept.
+ * <p/>
+ * When the bulk request itself fails, the entries of the doWrite call that
+ * triggered it are reported to the caller by the exception, so that they
+ * can be spooled. The other entries of the bulk, buffered by earlier calls,
+ * are put back in the buffer and sent again with the next bulk.
  *
  * @author Peter Paul Bakker - pp@stokpop.nl
  */
 
-@NotThreadSafe
+@ThreadSafe
 public class ElasticWriter extends BaseOutputWriter {
 	
 	private static final Logger log = LoggerFactory.getLogger(ElasticWriter.class);
 	
 	private static final String DEFAULT_ROOT_PREFIX = "jmxtrans";
 	private static final String ELASTIC_TYPE_NAME = "jmx-entry";
+	private static final int DEFAULT_BULK_MAX_ACTIONS = 1000;
+	private static final int DEFAULT_BULK_MAX_BYTES = 5 * 1024 * 1024;
+	private static final int DEFAULT_BULK_FLUSH_INTERVAL_MILLIS = 1000;
+	/** How long stop waits for a periodic flush in progress. */
+	private static final long STOP_TIMEOUT_MILLIS = 30000;
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
 	private static final Object CREATE_MAPPING_LOCK = new Object();
 
@@ -76,6 +108,25 @@ public class ElasticWriter extends BaseOutputWriter {
 	private final String connectionUrl;
 	private final String indexName;
 
+	private final boolean bulk;
+	private final int bulkMaxActions;
+	private final long bulkMaxBytes;
+	private final long bulkFlushIntervalMillis;
+
+	@GuardedBy("this") private List<Index> pendingActions = new ArrayList<>();
+	@GuardedBy("this") private long pendingBytes = 0;
+	@Nullable private ScheduledExecutorService flushExecutor;
+
+	public ElasticWriter(
+			ImmutableList<String> typeNames,
+			boolean booleanAsNumber,
+			String rootPrefix,
+			Boolean debugEnabled,
+			String connectionUrl,
+			Map<String, Object> settings) throws IOException {
+		this(typeNames, booleanAsNumber, rootPrefix, debugEnabled, connectionUrl, false, null, null, null, settings);
+	}
+
 	@JsonCreator
 	public ElasticWriter(
 			@JsonProperty("typeNames") ImmutableList<String> typeNames,
@@ -83,10 +134,22 @@ public class ElasticWriter extends BaseOutputWriter {
 			@JsonProperty("rootPrefix") String rootPrefix,
 			@JsonProperty("debug") Boolean debugEnabled,
 			@JsonProperty("connectionUrl") String connectionUrl,
+			@JsonProperty("bulk") boolean bulk,
+			@JsonProperty("bulkMaxActions") Integer bulkMaxActions,
+			@JsonProperty("bulkMaxBytes") Long bulkMaxBytes,
+			@JsonProperty("bulkFlushIntervalMillis") Long bulkFlushIntervalMillis,
 			@JsonProperty("settings") Map<String, Object> settings) throws IOException {
 
 		super(typeNames, booleanAsNumber, debugEnabled, settings);
 
+		this.bulk = bulk;
+		this.bulkMaxActions = MoreObjects.firstNonNull(bulkMaxActions, DEFAULT_BULK_MAX_ACTIONS);
+		this.bulkMaxBytes = MoreObjects.firstNonNull(bulkMaxBytes, (long) DEFAULT_BULK_MAX_BYTES);
+		this.bulkFlushIntervalMillis = MoreObjects.firstNonNull(bulkFlushIntervalMillis, (long) DEFAULT_BULK_FLUSH_INTERVAL_MILLIS);
+		checkArgument(this.bulkMaxActions > 0, "bulkMaxActions must be positive");
+		checkArgument(this.bulkMaxBytes > 0, "bulkMaxBytes must be positive");
+		checkArgument(this.bulkFlushIntervalMillis > 0, "bulkFlushIntervalMillis must be positive");
+
 		this.rootPrefix = firstNonNull(
 						rootPrefix,
 						(String) getSettings().get("rootPrefix"),
@@ -109,6 +172,8 @@ public class ElasticWriter extends BaseOutputWriter {
 
 	@Override
 	protected void internalWrite(Server server, Query query, ImmutableList<Result> results) throws Exception {
+		List<Index> actions = new ArrayList<>();
+		long bytes = 0;
 
 		for (Result result : results) {
 			log.debug("Query result: [{}]", result);
@@ -116,31 +181,129 @@ public class ElasticWriter extends BaseOutputWriter {
 			for (Entry<String, Object> values : resultValues.entrySet()) {
 				Object value = values.getValue();
 				if (isNumeric(value)) {
+					String document = toDocument(server, result, values.getKey(), value);
 
-					Map<String, Object> map = new HashMap<>();
-					map.put("serverAlias", server.getAlias());
-					map.put("server", server.getHost());
-					map.put("port", server.getPort());
-					map.put("objDomain", result.getObjDomain());
-					map.put("className", result.getClassName());
-					map.put("typeName", result.getTypeName());
-					map.put("attributeName", result.getAttributeName());
-					map.put("key", values.getKey());
-					map.put("keyAlias", result.getKeyAlias());
-					map.put("value", Double.parseDouble(value.toString()));
-					map.put("timestamp", result.getEpoch());
-
-					log.debug("Insert into Elastic: Index: [{}] Type: [{}] Map: [{}]", indexName, ELASTIC_TYPE_NAME, map);
-					Index index = new Index.Builder(map).index(indexName).type(ELASTIC_TYPE_NAME).build();
-					JestResult addToIndex = jestClient.execute(index);
-					if (!addToIndex.isSucceeded()) {
-						throw new ElasticWriterException(String.format("Unable to write entry to elastic: %s", addToIndex.getErrorMessage()));
+					log.debug("Insert into Elastic: Index: [{}] Type: [{}] Document: [{}]", indexName, ELASTIC_TYPE_NAME, document);
+					Index index = new Index.Builder(document).index(indexName).type(ELASTIC_TYPE_NAME).build();
+					if (bulk) {
+						actions.add(index);
+						bytes += Utf8.encodedLength(document);
+					} else {
+						JestResult addToIndex = jestClient.execute(index);
+						if (!addToIndex.isSucceeded()) {
+							throw new ElasticWriterException(String.format("Unable to write entry to elastic: %s", addToIndex.getErrorMessage()));
+						}
 					}
 				} else {
 					log.warn("Unable to submit non-numeric value to Elastic: [{}] from result [{}]", value, result);
 				}
 			}
 		}
+		if (!actions.isEmpty()) addToBulk(actions, bytes);
+	}
+
+	/**
+	 * Serializes an entry straight to its JSON document. Null fields are left
+	 * out of the document.
+	 */
+	private static String toDocument(Server server, Result result, String key, Object value) throws IOException {
+		StringWriter out = new StringWriter(512);
+		try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+			json.writeStartObject();
+			writeField(json, "serverAlias", server.getAlias());
+			writeField(json, "server", server.getHost());
+			writeField(json, "port", server.getPort());
+			writeField(json, "objDomain", result.getObjDomain());
+			writeField(json, "className", result.getClassName());
+			writeField(json, "typeName", result.getTypeName());
+			writeField(json, "attributeName", result.getAttributeName());
+			writeField(json, "key", key);
+			writeField(json, "keyAlias", result.getKeyAlias());
+			json.writeNumberField("value", Double.parseDouble(value.toString()));
+			json.writeNumberField("timestamp", result.getEpoch());
+			json.writeEndObject();
+		}
+		return out.toString();
+	}
+
+	private static void writeField(JsonGenerator json, String name, @Nullable String value) throws IOException {
+		if (value != null) json.writeStringField(name, value);
+	}
+
+	/**
+	 * Buffers the entries of a doWrite call, sending the bulk if it is full.
+	 * The entries are added and the bulk taken atomically, so that the entries
+	 * of this call are the last ones of the bulk.
+	 */
+	private void addToBulk(List<Index> actions, long bytes) throws IOException, ElasticWriterException {
+		List<Index> bulkActions;
+		long bulkBytes;
+		synchronized (this) {
+			pendingActions.addAll(actions);
+			pendingBytes += bytes;
+			if (pendingActions.size() < bulkMaxActions && pendingBytes < bulkMaxBytes) return;
+			bulkActions = pendingActions;
+			bulkBytes = pendingBytes;
+			pendingActions = new ArrayList<>();
+			pendingBytes = 0;
+		}
+		try {
+			send(bulkActions);
+		} catch (IOException | ElasticWriterException e) {
+			// the entries of this call are reported to the caller, the ones of earlier calls are kept
+			requeue(bulkActions.subList(0, bulkActions.size() - actions.size()), bulkBytes - bytes);
+			throw e;
+		}
+	}
+
+	/** Sends all the pending entries, putting them back in the buffer if the request fails. */
+	private void flush() throws IOException, ElasticWriterException {
+		List<Index> actions;
+		long bytes;
+		synchronized (this) {
+			if (pendingActions.isEmpty()) return;
+			actions = pendingActions;
+			bytes = pendingBytes;
+			pendingActions = new ArrayList<>();
+			pendingBytes = 0;
+		}
+		try {
+			send(actions);
+		} catch (IOException | ElasticWriterException e) {
+			requeue(actions, bytes);
+			throw e;
+		}
+	}
+
+	/** Puts entries back in front of the buffer, preserving their order. */
+	private synchronized void requeue(List<Index> actions, long bytes) {
+		if (actions.isEmpty()) return;
+		List<Index> requeued = new ArrayList<>(actions.size() + pendingActions.size());
+		requeued.addAll(actions);
+		requeued.addAll(pendingActions);
+		pendingActions = requeued;
+		pendingBytes += bytes;
+	}
+
+	/**
+	 * Sends entries in a single bulk request. Entries rejected individually
+	 * are only logged.
+	 */
+	private void send(List<Index> actions) throws IOException, ElasticWriterException {
+		Bulk bulkRequest = new Bulk.Builder()
+				.defaultIndex(indexName)
+				.defaultType(ELASTIC_TYPE_NAME)
+				.addAction(actions)
+				.build();
+		BulkResult result = jestClient.execute(bulkRequest);
+		if (result.isSucceeded()) return;
+
+		List<BulkResult.BulkResultItem> failedItems = result.getFailedItems();
+		if (failedItems.isEmpty()) {
+			throw new ElasticWriterException(String.format("Unable to write %d entries to elastic: %s", actions.size(), result.getErrorMessage()));
+		}
+		log.warn("Elastic rejected {} of {} entries, first failure: status {} [{}]",
+				failedItems.size(), actions.size(), failedItems.get(0).status, failedItems.get(0).error);
 	}
 
 	private static void createMappingIfNeeded(JestClient jestClient, String indexName, String typeName) throws ElasticWriterException, IOException {
@@ -177,11 +340,44 @@ public class ElasticWriter extends BaseOutputWriter {
 		} catch (Exception e) {
 			throw new LifecycleException("Failed to create elastic mapping.", e);
 		}
+		if (bulk) {
+			flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("jmxtrans-elastic-bulk-%d")
+					.build());
+			flushExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						flush();
+					} catch (Exception e) {
+						log.warn("Could not flush bulk of entries to elastic, retrying with the next bulk", e);
+					}
+				}
+			}, bulkFlushIntervalMillis, bulkFlushIntervalMillis, MILLISECONDS);
+		}
 	}
 
 	@Override
 	public void stop() throws LifecycleException {
 		super.stop();
+		if (flushExecutor != null) {
+			flushExecutor.shutdown();
+			try {
+				// the last flush and the client shutdown must not race with a periodic flush
+				if (!flushExecutor.awaitTermination(STOP_TIMEOUT_MILLIS, MILLISECONDS)) {
+					log.warn("Periodic flush to elastic still running after {}ms, stopping anyway", STOP_TIMEOUT_MILLIS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			flushExecutor = null;
+		}
+		try {
+			flush();
+		} catch (Exception e) {
+			log.warn("Could not flush last bulk of entries to elastic, they are lost", e);
+		}
 		jestClient.shutdownClient();
 	}
 
@@ -196,6 +392,7 @@ public class ElasticWriter extends BaseOutputWriter {
 		sb.append("rootPrefix='").append(rootPrefix).append('\'');
 		sb.append(", connectionUrl='").append(connectionUrl).append('\'');
 		sb.append(", indexName='").append(indexName).append('\'');
+		sb.append(", bulk=").append(bulk);
 		sb.append('}');
 		return sb.toString();
 	}
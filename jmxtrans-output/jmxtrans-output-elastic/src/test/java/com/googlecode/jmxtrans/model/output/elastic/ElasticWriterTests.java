@@ -31,6 +31,8 @@ import com.googlecode.jmxtrans.model.Server;
 import io.searchbox.action.Action;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
 import io.searchbox.core.DocumentResult;
 import io.searchbox.core.Index;
 import io.searchbox.indices.IndicesExists;
@@ -43,17 +45,25 @@ import org.mockito.InjectMocks;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.googlecode.jmxtrans.model.QueryFixtures.dummyQuery;
 import static com.googlecode.jmxtrans.model.ServerFixtures.dummyServer;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -69,10 +79,18 @@ public class ElasticWriterTests {
 	private DocumentResult jestResultTrue;
 	@Mock
 	private JestResult jestResultFalse;
+	@Mock
+	private BulkResult bulkResult;
 
 	@InjectMocks
 	private ElasticWriter writer = createElasticWriter();
 
+	@InjectMocks
+	private ElasticWriter bulkWriter = createBulkElasticWriter(null);
+
+	@InjectMocks
+	private ElasticWriter periodicBulkWriter = createBulkElasticWriter(10L);
+
 	private Result result;
 
 	@Before
@@ -219,6 +237,123 @@ public class ElasticWriterTests {
 		return writer;
 	}
 
+	private ElasticWriter createBulkElasticWriter(Long flushIntervalMillis) {
+		try {
+			return new ElasticWriter(ImmutableList.<String>of(), true, PREFIX, true, "http://localhost",
+					true, 2, null, flushIntervalMillis, new HashMap<String, Object>());
+		} catch (IOException e) {
+			throw new RuntimeException("Unexpected failure to creare elastic writer for test", e);
+		}
+	}
+
+	@Test
+	public void bulkModeSendsEntriesInASingleRequest() throws Exception {
+		when(mockClient.execute(isA(Bulk.class))).thenReturn(bulkResult);
+		when(bulkResult.isSucceeded()).thenReturn(true);
+		Result twoValues = new Result(1, "attributeName", "className", "objDomain", "classNameAlias", "typeName",
+				ImmutableMap.<String, Object>of("first", 1, "second", 2));
+
+		bulkWriter.doWrite(dummyServer(), dummyQuery(), ImmutableList.of(twoValues));
+
+		ArgumentCaptor<Bulk> bulk = ArgumentCaptor.forClass(Bulk.class);
+		verify(mockClient).execute(bulk.capture());
+		verify(mockClient, never()).execute(isA(Index.class));
+		String data = bulk.getValue().getData(new Gson());
+		assertThat(data).contains("\"key\":\"first\"").contains("\"key\":\"second\"");
+		assertThat(data).contains(PREFIX + "_jmx-entries");
+	}
+
+	@Test
+	public void bulkIsSentWhenTheWriterStops() throws Exception {
+		when(mockClient.execute(isA(Bulk.class))).thenReturn(bulkResult);
+		when(bulkResult.isSucceeded()).thenReturn(true);
+
+		bulkWriter.doWrite(dummyServer(), dummyQuery(), ImmutableList.of(result));
+		verify(mockClient, never()).execute(Matchers.<Action<JestResult>>any());
+
+		bulkWriter.stop();
+		verify(mockClient).execute(isA(Bulk.class));
+	}
+
+	@Test
+	public void entriesRejectedIndividuallyDoNotFailTheBulk() throws Exception {
+		when(mockClient.execute(isA(Bulk.class))).thenReturn(bulkResult);
+		when(bulkResult.isSucceeded()).thenReturn(false);
+		when(bulkResult.getFailedItems()).thenReturn(ImmutableList.of(
+				bulkResult.new BulkResultItem("index", PREFIX + "_jmx-entries", "jmx-entry", null, 429, "rejected execution")));
+
+		bulkWriter.doWrite(dummyServer(), dummyQuery(), ImmutableList.of(result, result));
+
+		verify(mockClient).execute(isA(Bulk.class));
+	}
+
+	@Test(expected = ElasticWriterException.class)
+	public void failedBulkRequestThrowsException() throws Exception {
+		when(mockClient.execute(isA(Bulk.class))).thenReturn(bulkResult);
+		when(bulkResult.isSucceeded()).thenReturn(false);
+		when(bulkResult.getFailedItems()).thenReturn(ImmutableList.<BulkResult.BulkResultItem>of());
+		when(bulkResult.getErrorMessage()).thenReturn("Elastic is unavailable");
+
+		bulkWriter.doWrite(dummyServer(), dummyQuery(), ImmutableList.of(result, result));
+	}
+
+	@Test
+	public void entriesOfEarlierWritesAreKeptWhenTheBulkRequestFails() throws Exception {
+		when(mockClient.execute(isA(Bulk.class)))
+				.thenThrow(new IOException("Elastic is unavailable"))
+				.thenReturn(bulkResult);
+		when(bulkResult.isSucceeded()).thenReturn(true);
+		Result earlier = new Result(1, "attributeName", "className", "objDomain", "classNameAlias", "typeName",
+				ImmutableMap.<String, Object>of("earlier", 1));
+		Result failing = new Result(1, "attributeName", "className", "objDomain", "classNameAlias", "typeName",
+				ImmutableMap.<String, Object>of("failing", 2));
+
+		bulkWriter.doWrite(dummyServer(), dummyQuery(), ImmutableList.of(earlier));
+		try {
+			bulkWriter.doWrite(dummyServer(), dummyQuery(), ImmutableList.of(failing));
+			fail("The failure of the bulk request should reach the caller");
+		} catch (IOException expected) {
+		}
+		bulkWriter.stop();
+
+		ArgumentCaptor<Bulk> bulks = ArgumentCaptor.forClass(Bulk.class);
+		verify(mockClient, times(2)).execute(bulks.capture());
+		String data = bulks.getAllValues().get(1).getData(new Gson());
+		assertThat(data).contains("\"key\":\"earlier\"").doesNotContain("\"key\":\"failing\"");
+	}
+
+	@Test
+	public void stopWaitsForThePeriodicFlushInProgress() throws Exception {
+		final CountDownLatch flushing = new CountDownLatch(1);
+		final AtomicBoolean flushed = new AtomicBoolean();
+		final AtomicBoolean flushedBeforeShutdown = new AtomicBoolean();
+		when(mockClient.execute(isA(IndicesExists.class))).thenReturn(jestResultTrue);
+		when(mockClient.execute(isA(Bulk.class))).thenAnswer(new Answer<BulkResult>() {
+			@Override
+			public BulkResult answer(InvocationOnMock invocation) throws Exception {
+				flushing.countDown();
+				Thread.sleep(200);
+				flushed.set(true);
+				return bulkResult;
+			}
+		});
+		when(bulkResult.isSucceeded()).thenReturn(true);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				flushedBeforeShutdown.set(flushed.get());
+				return null;
+			}
+		}).when(mockClient).shutdownClient();
+
+		periodicBulkWriter.start();
+		periodicBulkWriter.doWrite(dummyServer(), dummyQuery(), ImmutableList.of(result));
+		flushing.await();
+		periodicBulkWriter.stop();
+
+		assertThat(flushedBeforeShutdown.get()).isTrue();
+	}
+
 	@Test
 	public void checkToString() throws Exception {
 		assertTrue(writer.toString().contains("ElasticWriter"));
@@ -50,7 +50,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 
 import static com.fasterxml.jackson.core.JsonEncoding.UTF8;
-import static com.googlecode.jmxtrans.model.naming.KeyUtils.getKeyString;
+import static com.googlecode.jmxtrans.model.naming.KeyUtils.getKeyStringWithoutParentheses;
 import static com.googlecode.jmxtrans.util.NumberUtils.isNumeric;
 import static java.util.Arrays.asList;
 
@@ -127,8 +127,7 @@ public class KafkaWriter extends BaseOutputWriter {
 	}
 
 	private String createJsonMessage(Server server, Query query, List<String> typeNames, Result result, Entry<String, Object> values, Object value) throws IOException {
-		String keyString = getKeyString(server, query, result, values, typeNames, this.rootPrefix);
-		String cleanKeyString = keyString.replaceAll("[()]", "_");
+		String cleanKeyString = getKeyStringWithoutParentheses(server, query, result, values, typeNames, this.rootPrefix);
 
 		try (
 			ByteArrayOutputStream out = new ByteArrayOutputStream();
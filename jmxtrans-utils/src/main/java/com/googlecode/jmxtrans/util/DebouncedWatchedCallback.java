@@ -0,0 +1,209 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Coalesces file events into batches delivered to a {@link BatchedWatchedCallback}.
+ * <p/>
+ * A batch is delivered once no event was received for quietPeriodMillis, or
+ * at the latest maxDelayMillis after its first event, so that a directory
+ * that never settles is still picked up. Events for the same file are merged
+ * (a file created then modified is only reported as added, a file created
+ * then deleted is not reported at all).
+ * <p/>
+ * Batches are delivered from a dedicated thread, one at a time. Events
+ * received while a batch is being processed go to the next batch.
+ */
+@ThreadSafe
+public class DebouncedWatchedCallback implements WatchedCallback {
+
+	private static final Logger log = LoggerFactory.getLogger(DebouncedWatchedCallback.class);
+
+	private enum Change { ADDED, MODIFIED, DELETED }
+
+	@Nonnull private final BatchedWatchedCallback callback;
+	@Nonnull private final Clock clock;
+	private final long quietPeriodMillis;
+	private final long maxDelayMillis;
+	@Nonnull private final Thread deliveryThread;
+
+	private final Object lock = new Object();
+	private final Map<File, Change> pending = new LinkedHashMap<>();
+	private long firstEventMillis;
+	private long lastEventMillis;
+	private volatile boolean running = true;
+
+	public DebouncedWatchedCallback(
+			@Nonnull BatchedWatchedCallback callback,
+			@Nonnull Clock clock,
+			@Nonnull ThreadFactory threadFactory,
+			long quietPeriodMillis,
+			long maxDelayMillis) {
+		if (quietPeriodMillis <= 0) throw new IllegalArgumentException("Quiet period must be positive: " + quietPeriodMillis);
+		if (maxDelayMillis < quietPeriodMillis) throw new IllegalArgumentException("Max delay must be at least the quiet period: " + maxDelayMillis);
+		this.callback = callback;
+		this.clock = clock;
+		this.quietPeriodMillis = quietPeriodMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.deliveryThread = threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				deliverBatches();
+			}
+		});
+	}
+
+	public void start() {
+		deliveryThread.start();
+	}
+
+	/**
+	 * Stops delivering batches, pending changes are dropped. Does not wait for
+	 * a batch being delivered to be processed.
+	 */
+	public void stop() {
+		running = false;
+		deliveryThread.interrupt();
+	}
+
+	@Override
+	public void fileAdded(File file) {
+		record(file, Change.ADDED);
+	}
+
+	@Override
+	public void fileModified(File file) {
+		record(file, Change.MODIFIED);
+	}
+
+	@Override
+	public void fileDeleted(File file) {
+		record(file, Change.DELETED);
+	}
+
+	private void record(@Nonnull File file, @Nonnull Change change) {
+		synchronized (lock) {
+			long now = clock.currentTimeMillis();
+			if (pending.isEmpty()) firstEventMillis = now;
+			lastEventMillis = now;
+
+			Change merged = merge(pending.remove(file), change);
+			if (merged != null) pending.put(file, merged);
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Combines the change already pending for a file with a new one, returns
+	 * null if they cancel each other.
+	 */
+	@Nullable
+	private static Change merge(@Nullable Change previous, @Nonnull Change next) {
+		if (previous == null) return next;
+		switch (previous) {
+			case ADDED:
+				return next == Change.DELETED ? null : Change.ADDED;
+			case DELETED:
+				return next == Change.DELETED ? Change.DELETED : Change.MODIFIED;
+			default:
+				return next == Change.DELETED ? Change.DELETED : Change.MODIFIED;
+		}
+	}
+
+	private void deliverBatches() {
+		while (running) {
+			FileChanges batch;
+			try {
+				batch = awaitBatch();
+			} catch (InterruptedException e) {
+				// stop() interrupts us
+				continue;
+			}
+			deliver(batch);
+		}
+	}
+
+	@Nonnull
+	private FileChanges awaitBatch() throws InterruptedException {
+		synchronized (lock) {
+			for (;;) {
+				FileChanges batch = pollBatch(clock.currentTimeMillis());
+				if (batch != null) return batch;
+				if (pending.isEmpty()) lock.wait();
+				else lock.wait(Math.max(1, dueMillis() - clock.currentTimeMillis()));
+			}
+		}
+	}
+
+	private long dueMillis() {
+		return Math.min(lastEventMillis + quietPeriodMillis, firstEventMillis + maxDelayMillis);
+	}
+
+	/**
+	 * Returns the pending changes if they are due, null otherwise.
+	 */
+	@Nullable
+	@VisibleForTesting
+	FileChanges pollBatch(long now) {
+		synchronized (lock) {
+			if (pending.isEmpty() || now < dueMillis()) return null;
+
+			List<File> added = new ArrayList<>();
+			List<File> modified = new ArrayList<>();
+			List<File> deleted = new ArrayList<>();
+			for (Map.Entry<File, Change> entry : pending.entrySet()) {
+				switch (entry.getValue()) {
+					case ADDED: added.add(entry.getKey()); break;
+					case MODIFIED: modified.add(entry.getKey()); break;
+					default: deleted.add(entry.getKey());
+				}
+			}
+			pending.clear();
+			return new FileChanges(added, modified, deleted);
+		}
+	}
+
+	@VisibleForTesting
+	void deliver(@Nonnull FileChanges batch) {
+		log.debug("Delivering {} file changes", batch.size());
+		try {
+			callback.filesChanged(batch);
+		} catch (Exception e) {
+			log.error("Error processing file changes {}", batch, e);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.util;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.File;
+
+/**
+ * The net effect of a batch of file events: each file appears at most once,
+ * in the set matching its state at the end of the batch compared to its
+ * state at the beginning.
+ */
+@Immutable
+@EqualsAndHashCode
+@ToString
+public final class FileChanges {
+
+	@Nonnull @Getter private final ImmutableSet<File> added;
+	@Nonnull @Getter private final ImmutableSet<File> modified;
+	@Nonnull @Getter private final ImmutableSet<File> deleted;
+
+	public FileChanges(@Nonnull Iterable<File> added, @Nonnull Iterable<File> modified, @Nonnull Iterable<File> deleted) {
+		this.added = ImmutableSet.copyOf(added);
+		this.modified = ImmutableSet.copyOf(modified);
+		this.deleted = ImmutableSet.copyOf(deleted);
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && modified.isEmpty() && deleted.isEmpty();
+	}
+
+	public int size() {
+		return added.size() + modified.size() + deleted.size();
+	}
+}
@@ -35,13 +35,21 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
 
 /**
  * Watch a directory (or tree) for changes to files.
+ * <p/>
+ * When watching recursively, directories created later on are watched as
+ * well, and the files they already contain when they are discovered are
+ * reported as added.
  */
 public class WatchDir extends Thread {
 	private static final Logger log = LoggerFactory.getLogger(WatchDir.class);
@@ -49,15 +57,48 @@ public class WatchDir extends Thread {
 	private final WatchService watchService;
 	private final WatchedCallback watched;
 	private final Map<WatchKey,Path> keys;
+	private final Map<WatchKey,String> canonicalPaths;
+	private final Set<String> watchedDirs;
+	private final boolean recursive;
 
 	public WatchDir(File dir, WatchedCallback watched) throws IOException {
+		this(dir, watched, false);
+	}
+
+	public WatchDir(File dir, WatchedCallback watched, boolean recursive) throws IOException {
 		this.watched = watched;
+		this.recursive = recursive;
 		this.keys = newHashMap();
+		this.canonicalPaths = newHashMap();
+		this.watchedDirs = newHashSet();
 		watchService = FileSystems.getDefault().newWatchService();
+		if (recursive) registerAll(dir);
+		else register(dir);
+	}
+
+	private void register(File dir) throws IOException {
 		Path watchedPath = Paths.get(dir.getAbsolutePath());
 		WatchKey signalledKey = watchedPath.register(watchService, StandardWatchEventKind.ENTRY_CREATE, StandardWatchEventKind.ENTRY_DELETE, StandardWatchEventKind.ENTRY_MODIFY);
 		// Store the path that we're watching, so we can later retrieve it and build a proper path to the file
 		keys.put(signalledKey, watchedPath);
+		// symbolic links could make us register the same directory over and over
+		String canonicalPath = dir.getCanonicalPath();
+		canonicalPaths.put(signalledKey, canonicalPath);
+		watchedDirs.add(canonicalPath);
+	}
+
+	/**
+	 * Registers a directory and all its subdirectories, returns the files they contain.
+	 */
+	private List<File> registerAll(File dir) throws IOException {
+		List<File> files = new ArrayList<>();
+		if (watchedDirs.contains(dir.getCanonicalPath())) return files;
+		register(dir);
+		for (File file : firstNonNull(dir.listFiles(), new File[0])) {
+			if (file.isDirectory()) files.addAll(registerAll(file));
+			else files.add(file);
+		}
+		return files;
 	}
 
 	@Override
@@ -81,17 +122,29 @@ public class WatchDir extends Thread {
 
 			// VERY IMPORTANT! call reset() AFTER pollEvents() to allow the
 			// key to be reported again by the watch service
-			signalledKey.reset();
+			boolean valid = signalledKey.reset();
 
 			// Retrieve the path for the files from the key created above; this is used by the
 			// resolver below.
 			Path dir = keys.get(signalledKey);
+			if (!valid) {
+				// the directory is gone, it will have to be registered again if it is recreated
+				keys.remove(signalledKey);
+				watchedDirs.remove(canonicalPaths.remove(signalledKey));
+			}
 			try {
 				for (WatchEvent<?> e : list) {
 					if (e.kind() == StandardWatchEventKind.ENTRY_CREATE) {
 						Path context = (Path) e.context();
 						Path fullPath = dir.resolve(context);
-						watched.fileAdded(new File(fullPath.toString()));
+						File file = new File(fullPath.toString());
+						if (recursive && file.isDirectory()) {
+							for (File created : registerAll(file)) {
+								watched.fileAdded(created);
+							}
+						} else {
+							watched.fileAdded(file);
+						}
 					} else if (e.kind() == StandardWatchEventKind.ENTRY_DELETE) {
 						Path context = (Path) e.context();
 						Path fullPath = dir.resolve(context);
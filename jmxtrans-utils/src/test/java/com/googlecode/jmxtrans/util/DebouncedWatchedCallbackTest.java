@@ -0,0 +1,146 @@
+/**
+ * The MIT License
+ * Copyright © 2010 JmxTrans team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.googlecode.jmxtrans.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class DebouncedWatchedCallbackTest {
+
+	private final File file1 = new File("/tmp/config/file1.json");
+	private final File file2 = new File("/tmp/config/file2.json");
+	private final ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true).build();
+
+	private ManualClock clock;
+	private DebouncedWatchedCallback debounced;
+
+	@Before
+	public void createCallback() {
+		clock = new ManualClock(0, MILLISECONDS);
+		debounced = new DebouncedWatchedCallback(mock(BatchedWatchedCallback.class), clock, threadFactory, 100, 1000);
+	}
+
+	@Test
+	public void nothingIsDeliveredWithoutEvents() {
+		assertThat(debounced.pollBatch(10000)).isNull();
+	}
+
+	@Test
+	public void eventsAreDeliveredAfterQuietPeriod() {
+		debounced.fileAdded(file1);
+		clock.setTime(50, MILLISECONDS);
+		debounced.fileAdded(file2);
+
+		assertThat(debounced.pollBatch(120)).isNull();
+
+		FileChanges changes = debounced.pollBatch(150);
+		assertThat(changes.getAdded()).containsExactly(file1, file2);
+		assertThat(changes.getModified()).isEmpty();
+		assertThat(changes.getDeleted()).isEmpty();
+
+		assertThat(debounced.pollBatch(1000)).isNull();
+	}
+
+	@Test
+	public void continuousEventsAreDeliveredAfterMaxDelay() {
+		for (int time = 0; time < 1000; time += 50) {
+			clock.setTime(time, MILLISECONDS);
+			debounced.fileModified(file1);
+		}
+
+		assertThat(debounced.pollBatch(999)).isNull();
+		assertThat(debounced.pollBatch(1000).getModified()).containsExactly(file1);
+	}
+
+	@Test
+	public void eventsOnSameFileAreMerged() {
+		debounced.fileAdded(file1);
+		debounced.fileModified(file1);
+		debounced.fileModified(file2);
+		debounced.fileDeleted(file2);
+
+		FileChanges changes = debounced.pollBatch(100);
+		assertThat(changes.getAdded()).containsExactly(file1);
+		assertThat(changes.getModified()).isEmpty();
+		assertThat(changes.getDeleted()).containsExactly(file2);
+	}
+
+	@Test
+	public void deletedThenRecreatedFileIsModified() {
+		debounced.fileDeleted(file1);
+		debounced.fileAdded(file1);
+
+		assertThat(debounced.pollBatch(100).getModified()).containsExactly(file1);
+	}
+
+	@Test
+	public void transientFileIsNotReported() {
+		debounced.fileAdded(file1);
+		debounced.fileDeleted(file1);
+
+		assertThat(debounced.pollBatch(100)).isNull();
+	}
+
+	@Test
+	public void batchesAreDeliveredOnceOnDeliveryThread() throws Exception {
+		final CountDownLatch delivered = new CountDownLatch(1);
+		RecordingCallback callback = new RecordingCallback(delivered);
+		DebouncedWatchedCallback threaded = new DebouncedWatchedCallback(callback, new SystemClock(), threadFactory, 200, 2000);
+		threaded.start();
+		try {
+			threaded.fileAdded(file1);
+			threaded.fileModified(file2);
+
+			assertThat(delivered.await(5, SECONDS)).isTrue();
+			assertThat(callback.changes.size()).isEqualTo(2);
+		} finally {
+			threaded.stop();
+		}
+	}
+
+	private static final class RecordingCallback implements BatchedWatchedCallback {
+		private final CountDownLatch delivered;
+		private volatile FileChanges changes;
+
+		private RecordingCallback(CountDownLatch delivered) {
+			this.delivered = delivered;
+		}
+
+		@Override
+		public void filesChanged(@Nonnull FileChanges changes) {
+			this.changes = changes;
+			delivered.countDown();
+		}
+	}
+}